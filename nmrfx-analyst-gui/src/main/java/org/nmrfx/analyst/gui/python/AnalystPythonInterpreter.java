@@ -18,6 +18,7 @@
 package org.nmrfx.analyst.gui.python;
 
 import javafx.application.Application;
+import org.nmrfx.utils.PythonCodeCache;
 import org.python.core.PyObject;
 import org.python.util.InteractiveInterpreter;
 
@@ -29,7 +30,7 @@ import java.util.List;
  * Initialized at application startup or on first usage, loads a set of predefined modules.
  */
 public class AnalystPythonInterpreter {
-    private static InteractiveInterpreter interpreter;
+    private static CachingInterpreter interpreter;
 
     /**
      * This should be called only once by the main application to set command line arguments.
@@ -43,15 +44,19 @@ public class AnalystPythonInterpreter {
     /**
      * @return a shared python interpreter instance
      */
-    public static synchronized InteractiveInterpreter getInterpreter() {
+    public static InteractiveInterpreter getInterpreter() {
+        return getCachingInterpreter();
+    }
+
+    private static synchronized CachingInterpreter getCachingInterpreter() {
         if (interpreter == null) {
             interpreter = createNewInterpreter(Collections.emptyList());
         }
         return interpreter;
     }
 
-    private static InteractiveInterpreter createNewInterpreter(List<String> argv) {
-        InteractiveInterpreter interpreter = new InteractiveInterpreter();
+    private static CachingInterpreter createNewInterpreter(List<String> argv) {
+        CachingInterpreter interpreter = new CachingInterpreter();
         interpreter.exec("import os");
         interpreter.exec("import glob");
         interpreter.exec("from pyproc import *\ninitLocal()");
@@ -78,12 +83,14 @@ public class AnalystPythonInterpreter {
     }
 
     /**
-     * Execute a python script using the shared interpreter.
+     * Execute a python script using the shared interpreter. The compiled
+     * script is cached, so scripts that are run repeatedly, like the
+     * processing script, are only compiled once.
      *
      * @param script the script to execute
      */
     public static void exec(String script) {
-        getInterpreter().exec(script);
+        getCachingInterpreter().execCached(script);
     }
 
     /**
@@ -95,4 +102,14 @@ public class AnalystPythonInterpreter {
     public static void set(String name, Object value) {
         getInterpreter().set(name, value);
     }
+
+    /**
+     * An interpreter that runs scripts through the code cache, compiled with
+     * the __future__ features in effect in the interpreter.
+     */
+    private static class CachingInterpreter extends InteractiveInterpreter {
+        void execCached(String script) {
+            PythonCodeCache.exec(this, cflags, script);
+        }
+    }
 }
@@ -24,6 +24,7 @@ import javafx.beans.property.*;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.event.Event;
 import javafx.scene.Node;
 import javafx.scene.control.*;
@@ -60,6 +61,7 @@ import org.nmrfx.processor.gui.spectra.DatasetAttributes;
 import org.nmrfx.processor.gui.utils.ColorSchemes;
 import org.nmrfx.processor.gui.utils.TableColors;
 import org.nmrfx.processor.processing.Processor;
+import org.nmrfx.processor.processing.ScanProcessor;
 import org.nmrfx.utils.FormatUtils;
 import org.nmrfx.utils.GUIUtils;
 import org.nmrfx.utils.TableUtils;
@@ -477,9 +479,11 @@ public class ScanTable {
         tableView.getSelectionModel().getSelectedIndices().removeListener(selectionListener);
         tableView.getItems().removeListener(filterItemListener);
 
+        if (combineFileMode) {
+            processScanDirCombined(chartProcessor, chart, fileTableItems, scanOutputDir, outDirName, combineFileName);
+            return;
+        }
         try (PythonInterpreter processInterp = new PythonInterpreter()) {
-            List<String> fileNames = new ArrayList<>();
-
             String initScript = ChartProcessor.buildInitScript();
             processInterp.exec(initScript);
 
@@ -497,62 +501,95 @@ public class ScanTable {
                 String fileScript = ChartProcessor.buildFileScriptPart(fidFilePath, datasetFilePath);
                 processInterp.exec(FormatUtils.formatStringForPythonInterpreter(fileScript));
                 processInterp.exec(processScript);
-                fileNames.add(datasetFilePath);
                 fileTableItem.setRow(rowNum++);
-                if (combineFileMode) {
-                    fileTableItem.setDatasetName(outDirName + "/" + combineFileName);
-                } else {
-                    fileTableItem.setDatasetName(outDirName + "/" + datasetFile.getName());
-                }
+                fileTableItem.setDatasetName(outDirName + "/" + datasetFile.getName());
             }
             updateFilter();
-            if (combineFileMode) {
-                // merge datasets into single pseudo-nd dataset
-                DatasetMerger merger = new DatasetMerger();
-                File mergedFile = new File(scanOutputDir, combineFileName);
-                try {
-                    // merge all the 1D files into a pseudo 2D file
-                    merger.mergeFiles(fileNames, mergedFile);
-                    // After merging, remove the 1D files
-                    for (String fileName : fileNames) {
-                        File file = new File(fileName);
-                        AnalystApp.getFXMLControllerManager().getOrCreateActiveController().closeFile(file);
-                        Files.deleteIfExists(file.toPath());
-                        String parFileName = fileName.substring(0, fileName.lastIndexOf(".")) + ".par";
-                        File parFile = new File(parFileName);
-                        Files.deleteIfExists(parFile.toPath());
-                    }
-
-                    // load merged dataset
-                    AnalystApp.getFXMLControllerManager().getOrCreateActiveController().openDataset(mergedFile, false, true);
-                    List<Integer> rows = new ArrayList<>();
-                    rows.add(0);
-                    chart.setDrawlist(rows);
-                } catch (IOException | DatasetException ex) {
-                    ExceptionDialog eDialog = new ExceptionDialog(ex);
-                    eDialog.showAndWait();
-                }
-            } else {
-                // load first output dataset
-                File datasetFile = new File(scanOutputDir, fileRoot + 1 + ".nv");
-                AnalystApp.getFXMLControllerManager().getOrCreateActiveController().openDataset(datasetFile, false, true);
-            }
+            // load first output dataset
+            File datasetFile = new File(scanOutputDir, fileRoot + 1 + ".nv");
+            AnalystApp.getFXMLControllerManager().getOrCreateActiveController().openDataset(datasetFile, false, true);
             chart.full();
             chart.autoScale();
 
             File saveTableFile = new File(scanDir, "scntbl.txt");
             saveScanTable(saveTableFile);
-            scannerTool.miner.setDisableSubMenus(!combineFileMode);
+            scannerTool.miner.setDisableSubMenus(true);
 
         } finally {
-            tableView.getSelectionModel().getSelectedIndices().addListener(selectionListener);
-            tableView.getItems().addListener(filterItemListener);
-            getGroups();
-            ensureAllDatasetsAdded();
-            selectionChanged();
-            processingTable = false;
-            refresh();
-        }
+            finishProcessingTable();
+        }
+    }
+
+    /**
+     * Process the FIDs of the table into the rows of a single pseudo-ND
+     * dataset. The processing is done in the background, with the progress
+     * shown in the status bar of the processor controller, and the table and
+     * chart are updated when it's finished.
+     */
+    private void processScanDirCombined(ChartProcessor chartProcessor, PolyChart chart,
+                                        List<FileTableItem> fileTableItems, File scanOutputDir,
+                                        String outDirName, String combineFileName) {
+        List<String> fidFilePaths = new ArrayList<>();
+        for (FileTableItem fileTableItem : fileTableItems) {
+            fidFilePaths.add(new File(scanDir, fileTableItem.getFileName()).getAbsolutePath());
+        }
+        int nDim = fileTableItems.get(0).getNDim();
+        ScanProcessor scanProcessor = new ScanProcessor(ChartProcessor.buildInitScript(), chartProcessor.buildScript(nDim));
+        ProcessorController processorController = chartProcessor.getProcessorController();
+        scanProcessor.setProgressUpdater(processorController);
+        File mergedFile = new File(scanOutputDir, combineFileName);
+        AnalystApp.getFXMLControllerManager().getOrCreateActiveController().closeFile(mergedFile);
+
+        Task<Void> task = new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                scanProcessor.process(fidFilePaths, mergedFile);
+                return null;
+            }
+        };
+        task.setOnSucceeded(e -> {
+            try {
+                int rowNum = 1;
+                for (FileTableItem fileTableItem : fileTableItems) {
+                    fileTableItem.setRow(rowNum++);
+                    fileTableItem.setDatasetName(outDirName + "/" + combineFileName);
+                }
+                updateFilter();
+                processorController.setProcessingStatus("Processed " + fidFilePaths.size() + " FIDs", true);
+                AnalystApp.getFXMLControllerManager().getOrCreateActiveController().openDataset(mergedFile, false, true);
+                List<Integer> rows = new ArrayList<>();
+                rows.add(0);
+                chart.setDrawlist(rows);
+                chart.full();
+                chart.autoScale();
+
+                File saveTableFile = new File(scanDir, "scntbl.txt");
+                saveScanTable(saveTableFile);
+                scannerTool.miner.setDisableSubMenus(false);
+            } finally {
+                finishProcessingTable();
+            }
+        });
+        task.setOnFailed(e -> {
+            finishProcessingTable();
+            Throwable exception = task.getException();
+            processorController.setProcessingStatus(exception.getMessage(), false, exception);
+            ExceptionDialog eDialog = new ExceptionDialog(exception);
+            eDialog.showAndWait();
+        });
+        Thread thread = new Thread(task, "ScanProcessor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void finishProcessingTable() {
+        tableView.getSelectionModel().getSelectedIndices().addListener(selectionListener);
+        tableView.getItems().addListener(filterItemListener);
+        getGroups();
+        ensureAllDatasetsAdded();
+        selectionChanged();
+        processingTable = false;
+        refresh();
     }
 
     public void combineDatasets() {
@@ -446,19 +446,22 @@ public class ChartProcessor {
         }
     }
 
-    private void prepIndirectVec(NMRData nmrData, int[] rows, int[] fileIndices, Vec newVec, int j) {
+    private void prepIndirectVecs(NMRData nmrData, int[] rows, int[] fileIndices, Vec[] newVecs) {
         int index = 0;
         if (rows.length > 0) {
             index = rows[0];
         }
-        fileIndices[j] = index + j;
-        nmrData.readVector(vecDim, index + j, newVec);
-        if (nmrData.getGroupSize(vecDim) > 1) {
-            AcquisitionType type = acqMode[vecDim];
-            if (type == null) {
-                newVec.hcCombine();
-            } else {
-                newVec.eaCombine(type.getCoefficients());
+        // the vectors are adjacent, so they're read in one pass through the file
+        nmrData.readVectors(vecDim, index, newVecs);
+        for (int j = 0; j < newVecs.length; j++) {
+            fileIndices[j] = index + j;
+            if (nmrData.getGroupSize(vecDim) > 1) {
+                AcquisitionType type = acqMode[vecDim];
+                if (type == null) {
+                    newVecs[j].hcCombine();
+                } else {
+                    newVecs[j].eaCombine(type.getCoefficients());
+                }
             }
         }
     }
@@ -476,17 +479,24 @@ public class ChartProcessor {
         VecIndex vecIndex = getNextIndex(nmrData, rows);
         int nVectors = vecDim == 0 ? vectorsPerGroup : 1;
         int[] fileIndices = new int[nVectors];
+        Vec[] newVecs = new Vec[nVectors];
         for (int j = 0; j < nVectors; j++) {
-            Vec newVec = new Vec(nPoints, nmrData.isComplex(vecDim));
+            newVecs[j] = new Vec(nPoints, nmrData.isComplex(vecDim));
+        }
+        if (vecDim != 0) {
+            if ((nmrData instanceof NMRPipeData) && (vecDim > 1)) {
+                for (Vec newVec : newVecs) {
+                    newVec.zeros();
+                }
+            } else {
+                prepIndirectVecs(nmrData, rows, fileIndices, newVecs);
+            }
+        }
+        for (int j = 0; j < nVectors; j++) {
+            Vec newVec = newVecs[j];
             Vec saveVec = new Vec(nPoints, nmrData.isComplex(vecDim));
             if (vecDim == 0) {
                 prepDirectVec(nmrData, vecIndex, fileIndices, newVec, j);
-            } else {
-                if ((nmrData instanceof NMRPipeData) && (vecDim > 1)) {
-                     newVec.zeros();
-                } else {
-                    prepIndirectVec(nmrData, rows, fileIndices, newVec, j);
-                }
             }
             newVec.setPh0(0.0);
             newVec.setPh1(0.0);
@@ -49,6 +49,11 @@ public class Contour extends java.lang.Object {
     public short[][] coords = null;
     public double xOffset = 0;
     public double yOffset = 0;
+    /**
+     * Number of dataset points between matrix points, greater than 1 when
+     * contouring a reduced level of a dataset pyramid
+     */
+    public int stride = 1;
     float[][] z = null;
     float rampEnd = 4;
     float plateauEnd = 8;
@@ -303,22 +308,24 @@ public class Contour extends java.lang.Object {
     
      */
     public void drawSquares(GraphicsContextInterface g2) throws GraphicsIOException {
-        g2.setGlobalAlpha(1.0);
-        g2.setLineCap(StrokeLineCap.BUTT);
-        g2.setEffect(null);
-        g2.setLineWidth(lineWidth);
-        g2.setStroke(color);
+        drawLines(g2, traceLines());
+    }
 
-        this.g2 = g2;
+    /**
+     * Trace the lines through the cells found by marchSquares. Points are
+     * stored in dataset point coordinates.
+     *
+     * @return the traced lines
+     */
+    public ContourLines traceLines() {
+        ContourLines lines = new ContourLines();
         int ny = cells.length;
         int nx = cells[0].length;
-        final double[] x = new double[4];
-        final double[] y = new double[4];
         int[] nextX = {-1, 0, 1, 0};
         int[] nextY = {0, -1, 0, 1};
         for (int iy = 0; iy < ny - 1; iy++) {
             for (int ix = 0; ix < nx - 1; ix++) {
-                // skip over already drawn cells
+                // skip over already traced cells
                 if ((cells[iy][ix] & 32) == 32) {
                     continue;
                 }
@@ -329,29 +336,24 @@ public class Contour extends java.lang.Object {
                     int cX = ix;
                     int cY = iy;
                     boolean start = true;
-                    int nCells = 0;
                     int lastSide = 0;
                     while (true) {
                         if ((cells[cY][cX] & 32) == 32) {
-                            if (nCells > 0) {
-                                g2.stroke();
-                            }
+                            lines.endPath(false);
                             break;
                         }
                         offset = cells[cY][cX] & 255;
-                        int nextSide = drawCell(lastSide, offset, cX, cY, start);
+                        int nextSide = traceCell(lines, lastSide, offset, cX, cY, start);
                         lastSide = nextSide;
-                        nCells++;
                         start = false;
                         cX += nextX[nextSide];
                         cY += nextY[nextSide];
                         if ((cX < 0) || (cX >= (nx - 1)) || (cY < 0) || (cY >= (ny - 1))) {
-                            g2.stroke();
+                            lines.endPath(false);
                             break;
                         }
                         if ((cX == ix) && (cY == iy)) {
-                            g2.closePath();
-                            g2.stroke();
+                            lines.endPath(true);
                             break;
                         }
                     }
@@ -359,12 +361,59 @@ public class Contour extends java.lang.Object {
                 }
             }
         }
+        lines.trim();
+        return lines;
     }
 
-    int drawCell(int lastSide, int offset, int ix, int iy, boolean start) throws GraphicsIOException {
+    /**
+     * Draw lines traced by this or another contour of the same region. Points
+     * are clipped to the pixel bounds of this contour.
+     *
+     * @param g2    the graphics context
+     * @param lines the lines to draw
+     * @throws GraphicsIOException if an error occurs while drawing
+     */
+    public void drawLines(GraphicsContextInterface g2, ContourLines lines) throws GraphicsIOException {
+        g2.setGlobalAlpha(1.0);
+        g2.setLineCap(StrokeLineCap.BUTT);
+        g2.setEffect(null);
+        g2.setLineWidth(lineWidth);
+        g2.setStroke(color);
+
+        this.g2 = g2;
+        for (int iPath = 0; iPath < lines.getPathCount(); iPath++) {
+            int start = lines.getPathStart(iPath);
+            int end = lines.getPathEnd(iPath);
+            for (int i = start; i < end; i += 2) {
+                double xp = (lines.getCoord(i) - pts[0][0]) * scaleX + pix[0][0];
+                double yp = (lines.getCoord(i + 1) - pts[1][0]) * scaleY + pix[1][0];
+                if (xp < pix[0][0]) {
+                    xp = pix[0][0];
+                } else if (xp > pix[0][1]) {
+                    xp = pix[0][1];
+                }
+                if (yp > pix[1][0]) {
+                    yp = pix[1][0];
+                } else if (yp < pix[1][1]) {
+                    yp = pix[1][1];
+                }
+                if (i == start) {
+                    g2.beginPath();
+                    g2.moveTo(xp, yp);
+                } else {
+                    g2.lineTo(xp, yp);
+                }
+            }
+            if (lines.isClosed(iPath)) {
+                g2.closePath();
+            }
+            g2.stroke();
+        }
+    }
+
+    int traceCell(ContourLines lines, int lastSide, int offset, int ix, int iy, boolean start) {
         final double[] x = new double[4];
         final double[] y = new double[4];
-        boolean flipped = (offset & 16) == 16;
         offset = offset & 15;
         //    0:3 1:4 2:9 3:14
 
@@ -386,45 +435,15 @@ public class Contour extends java.lang.Object {
         x[3] = edge3x / 255.0 + ix;
         y[3] = iy + 1;
 
-        int nextSide = 0;
         int i0 = (offset >> 2) & 3;
         int i1 = offset & 3;
         if (start) {
-            double xp1 = (x[i0] + xOffset) * scaleX + pix[0][0];
-            double yp1 = (y[i0] + yOffset) * scaleY + pix[1][0];
-            if (xp1 < pix[0][0]) {
-                xp1 = pix[0][0];
-            } else if (xp1 > pix[0][1]) {
-                xp1 = pix[0][1];
-            }
-            if (yp1 > pix[1][0]) {
-                yp1 = pix[1][0];
-            } else if (yp1 < pix[1][1]) {
-                yp1 = pix[1][1];
-            }
-            g2.beginPath();
-            g2.moveTo(xp1, yp1);
-        }
-        double xp2 = (x[i1] + xOffset) * scaleX + pix[0][0];
-        double yp2 = (y[i1] + yOffset) * scaleY + pix[1][0];
-        if (xp2 < pix[0][0]) {
-            xp2 = pix[0][0];
-        } else if (xp2 > pix[0][1]) {
-            xp2 = pix[0][1];
-
-        }
-        if (yp2 > pix[1][0]) {
-            yp2 = pix[1][0];
-        } else if (yp2 < pix[1][1]) {
-            yp2 = pix[1][1];
+            lines.startPath(x[i0] * stride + xOffset + pts[0][0], y[i0] * stride + yOffset + pts[1][0]);
         }
-
-        g2.lineTo(xp2, yp2);
-        nextSide = i1;
+        lines.addPoint(x[i1] * stride + xOffset + pts[0][0], y[i1] * stride + yOffset + pts[1][0]);
         cells[iy][ix] |= 32;
 
-        return nextSide;
-
+        return i1;
     }
 
     int drawCell(int offset, int ix, int iy, boolean start) throws GraphicsIOException {
@@ -471,16 +490,16 @@ public class Contour extends java.lang.Object {
             int i0 = (offset >> 2) & 3;
             int i1 = offset & 3;
             if (start) {
-                double xp1 = (x[i0] + xOffset - pts[0][0])
+                double xp1 = (x[i0] * stride + xOffset - pts[0][0])
                         / (pts[0][1] - pts[0][0]) * (pix[0][1] - pix[0][0]) + pix[0][0];
-                double yp1 = (y[i0] + yOffset - pts[1][0])
+                double yp1 = (y[i0] * stride + yOffset - pts[1][0])
                         / (pts[1][1] - pts[1][0]) * (pix[1][1] - pix[1][0]) + pix[1][0];
                 g2.beginPath();
                 g2.moveTo(xp1, yp1);
             }
-            double xp2 = (x[i1] + xOffset - pts[0][0])
+            double xp2 = (x[i1] * stride + xOffset - pts[0][0])
                     / (pts[0][1] - pts[0][0]) * (pix[0][1] - pix[0][0]) + pix[0][0];
-            double yp2 = (y[i1] + yOffset - pts[1][0])
+            double yp2 = (y[i1] * stride + yOffset - pts[1][0])
                     / (pts[1][1] - pts[1][0]) * (pix[1][1] - pix[1][0]) + pix[1][0];
             g2.lineTo(xp2, yp2);
             nextSide = i1;
@@ -0,0 +1,144 @@
+package org.nmrfx.processor.gui.spectra;
+
+import org.nmrfx.datasets.DatasetBase;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of traced contour lines, so redrawing an unchanged spectrum
+ * (after a pan, resize or change to other chart content) doesn't repeat the
+ * contouring. Lines are keyed by dataset, plane, chunk region and contour
+ * level, so changing the contour levels uses new entries. Entries are
+ * discarded when the dataset they were made from has been written since.
+ */
+public class ContourCache {
+
+    public static final long DEFAULT_CAPACITY = 64L * 1024 * 1024;
+    private static final ContourCache INSTANCE = new ContourCache(DEFAULT_CAPACITY);
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long capacity;
+    private long bytes = 0;
+
+    /**
+     * The region of a chunk: the display dimensions, the range of points in
+     * each dataset dimension and the pyramid level it was read from.
+     */
+    public record Region(List<Integer> values) {
+
+        public static Region of(int[] dim, int[][] apt, int pyramidLevel) {
+            List<Integer> values = new ArrayList<>();
+            for (int i = 0; i < apt.length; i++) {
+                values.add(dim[i]);
+                values.add(apt[i][0]);
+                values.add(apt[i][1]);
+            }
+            values.add(pyramidLevel);
+            return new Region(List.copyOf(values));
+        }
+    }
+
+    record Key(DatasetBase dataset, Region region, float level) {
+    }
+
+    /**
+     * Cached lines. Lines are null if no values in the region are beyond the
+     * level, in which case no higher levels need to be contoured either.
+     */
+    record Entry(long modificationCount, ContourLines lines) {
+
+        long getBytes() {
+            return lines == null ? 64 : lines.getBytes();
+        }
+    }
+
+    ContourCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public static ContourCache getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void setCapacity(long capacity) {
+        this.capacity = capacity;
+        trim();
+    }
+
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get cached lines.
+     *
+     * @param dataset the dataset
+     * @param region  the chunk region
+     * @param level   the signed contour level
+     * @return the entry, or null if there are no current lines for the key
+     */
+    synchronized Entry get(DatasetBase dataset, Region region, float level) {
+        Key key = new Key(dataset, region, level);
+        Entry entry = entries.get(key);
+        if ((entry != null) && (entry.modificationCount() != dataset.getModificationCount())) {
+            entries.remove(key);
+            bytes -= entry.getBytes();
+            entry = null;
+        }
+        return entry;
+    }
+
+    /**
+     * Add lines to the cache.
+     *
+     * @param dataset           the dataset
+     * @param modificationCount the dataset modification count when the values
+     *                          were read
+     * @param region            the chunk region
+     * @param level             the signed contour level
+     * @param lines             the lines, or null if no values are beyond the
+     *                          level
+     */
+    synchronized void put(DatasetBase dataset, long modificationCount, Region region, float level, ContourLines lines) {
+        Entry entry = new Entry(modificationCount, lines);
+        Entry old = entries.put(new Key(dataset, region, level), entry);
+        if (old != null) {
+            bytes -= old.getBytes();
+        }
+        bytes += entry.getBytes();
+        trim();
+    }
+
+    /**
+     * Remove all entries for a dataset.
+     *
+     * @param dataset the dataset
+     */
+    public synchronized void invalidate(DatasetBase dataset) {
+        Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, Entry> mapEntry = iter.next();
+            if (mapEntry.getKey().dataset() == dataset) {
+                bytes -= mapEntry.getValue().getBytes();
+                iter.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    private void trim() {
+        Iterator<Entry> iter = entries.values().iterator();
+        while ((bytes > capacity) && iter.hasNext()) {
+            bytes -= iter.next().getBytes();
+            iter.remove();
+        }
+    }
+}
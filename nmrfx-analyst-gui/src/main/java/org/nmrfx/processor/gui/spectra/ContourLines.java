@@ -0,0 +1,76 @@
+package org.nmrfx.processor.gui.spectra;
+
+import java.util.Arrays;
+
+/**
+ * The traced lines of one contour level in one chunk of a dataset. Lines are
+ * stored as paths of points in dataset point coordinates, so they can be drawn
+ * again at any zoom or pan without repeating the contouring.
+ */
+public class ContourLines {
+
+    private float[] coords = new float[256];
+    private int nCoords = 0;
+    private int[] pathEnds = new int[16];
+    private boolean[] closed = new boolean[16];
+    private int nPaths = 0;
+
+    void startPath(double x, double y) {
+        if (nPaths == pathEnds.length) {
+            pathEnds = Arrays.copyOf(pathEnds, nPaths * 2);
+            closed = Arrays.copyOf(closed, nPaths * 2);
+        }
+        nPaths++;
+        addPoint(x, y);
+    }
+
+    void addPoint(double x, double y) {
+        if (nCoords + 2 > coords.length) {
+            coords = Arrays.copyOf(coords, coords.length * 2);
+        }
+        coords[nCoords++] = (float) x;
+        coords[nCoords++] = (float) y;
+        pathEnds[nPaths - 1] = nCoords;
+    }
+
+    void endPath(boolean isClosed) {
+        closed[nPaths - 1] = isClosed;
+    }
+
+    /**
+     * Release unused space once all paths have been added.
+     */
+    void trim() {
+        coords = Arrays.copyOf(coords, nCoords);
+        pathEnds = Arrays.copyOf(pathEnds, nPaths);
+        closed = Arrays.copyOf(closed, nPaths);
+    }
+
+    public int getPathCount() {
+        return nPaths;
+    }
+
+    public boolean isEmpty() {
+        return nPaths == 0;
+    }
+
+    int getPathStart(int iPath) {
+        return iPath == 0 ? 0 : pathEnds[iPath - 1];
+    }
+
+    int getPathEnd(int iPath) {
+        return pathEnds[iPath];
+    }
+
+    boolean isClosed(int iPath) {
+        return closed[iPath];
+    }
+
+    float getCoord(int i) {
+        return coords[i];
+    }
+
+    long getBytes() {
+        return 64L + (long) coords.length * Float.BYTES + (long) pathEnds.length * Integer.BYTES + closed.length;
+    }
+}
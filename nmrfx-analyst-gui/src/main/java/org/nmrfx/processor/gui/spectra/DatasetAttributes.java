@@ -27,6 +27,7 @@ import org.nmrfx.processor.DatasetUtils;
 import org.nmrfx.processor.datasets.DataCoordTransformer;
 import org.nmrfx.processor.datasets.DataGenerator;
 import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetPyramid;
 import org.nmrfx.processor.gui.PolyChart.DISDIM;
 import org.nmrfx.processor.gui.PolyChartAxes;
 import org.nmrfx.processor.math.Vec;
@@ -1067,6 +1068,49 @@ public class DatasetAttributes extends DataGenerator implements PublicPropertyCo
         return (matrix);
     }
 
+    /**
+     * Read a region of a reduced level of the dataset pyramid of the current
+     * plane. Level 0 reads the dataset itself.
+     *
+     * @param iChunk        the chunk being read
+     * @param chunkLabelStr the label of the chunk
+     * @param apt           the region in dataset points
+     * @param matrix        a matrix to reuse if it is the right size
+     * @param level         the pyramid level
+     * @return the matrix of values
+     * @throws IOException if an I/O error occurs
+     */
+    public float[][] readMatrix(int iChunk, String chunkLabelStr, int[][] apt, float[][] matrix, int level) throws IOException {
+        if (level == 0) {
+            return readMatrix(iChunk, chunkLabelStr, apt, matrix);
+        }
+        DatasetPyramid pyramid = DatasetPyramid.getPyramid(theFile, dim, apt);
+        int ny = DatasetPyramid.toLevel(level, apt[1][1]) - DatasetPyramid.toLevel(level, apt[1][0]) + 1;
+        int nx = DatasetPyramid.toLevel(level, apt[0][1]) - DatasetPyramid.toLevel(level, apt[0][0]) + 1;
+        if ((matrix == null) || (matrix.length != ny) || (matrix[0].length != nx)) {
+            matrix = new float[ny][nx];
+        }
+        pyramid.readMatrix(level, apt, matrix);
+        return matrix;
+    }
+
+    /**
+     * Get the level of the dataset pyramid that matches the number of dataset
+     * points per pixel of the displayed region.
+     *
+     * @param pix the pixel bounds of the displayed region
+     * @return the level, 0 if the dataset should be drawn at full resolution
+     */
+    public int getPyramidLevel(double[][] pix) {
+        if (!DatasetPyramid.isUseful(theFile, dim)) {
+            return 0;
+        }
+        double xPerPixel = Math.abs(ptd[0][1] - ptd[0][0]) / Math.max(1.0, Math.abs(pix[0][1] - pix[0][0]));
+        double yPerPixel = Math.abs(ptd[1][1] - ptd[1][0]) / Math.max(1.0, Math.abs(pix[1][1] - pix[1][0]));
+        return DatasetPyramid.getLevel(Math.min(xPerPixel, yPerPixel),
+                theFile.getSizeReal(dim[0]), theFile.getSizeReal(dim[1]));
+    }
+
     public int getMatrixRegion(int iChunk, int maxChunk, int mode, int[][] apt,
                                double[] offset, StringBuffer chunkLabel) {
         Float extremeValue;
@@ -42,6 +42,7 @@ import org.nmrfx.graphicsio.GraphicsContextProxy;
 import org.nmrfx.graphicsio.GraphicsIOException;
 import org.nmrfx.math.VecBase;
 import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetPyramid;
 import org.nmrfx.processor.gui.PolyChart;
 import org.nmrfx.processor.gui.PolyChartAxes;
 import org.nmrfx.processor.gui.spectra.DatasetAttributes.AXMODE;
@@ -707,14 +708,35 @@ public class DrawSpectrum {
 
     private static float[][] getData(DatasetAttributes dataAttr, int iChunk, double[] offset, float[][] z) throws IOException {
         StringBuffer chunkLabel = new StringBuffer();
-        chunkLabel.setLength(0);
+        int[][] apt = getRegion(dataAttr, iChunk, offset, chunkLabel, 0);
+        if (apt == null) {
+            return null;
+        }
+        return dataAttr.readMatrix(dataAttr.mChunk, chunkLabel.toString(), apt, z, 0);
+    }
+
+    /**
+     * Get the region of a chunk of the dataset at a level of its pyramid. A
+     * chunk covers 2048 points of the level, and the offset is set to the
+     * position, in dataset points, of the first point relative to the display
+     * origin.
+     *
+     * @return the region or null if there are no more chunks
+     */
+    private static int[][] getRegion(DatasetAttributes dataAttr, int iChunk, double[] offset, StringBuffer chunkLabel, int level) {
         int[][] apt = new int[dataAttr.getDataset().getNDim()][2];
-        int fileStatus = dataAttr.getMatrixRegion(iChunk, 2048, 0, apt,
+        int fileStatus = dataAttr.getMatrixRegion(iChunk, 2048 << level, 0, apt,
                 offset, chunkLabel);
         if (fileStatus != 0) {
             return null;
         }
-        return dataAttr.readMatrix(dataAttr.mChunk, chunkLabel.toString(), apt, z);
+        if (level > 0) {
+            for (int i = 0; i < 2; i++) {
+                int start = DatasetPyramid.toLevel(level, apt[i][0]);
+                offset[i] = DatasetPyramid.toDataset(level, start) - dataAttr.ptd[i][0];
+            }
+        }
+        return apt;
     }
 
     private static boolean setContext(Contour contour, DatasetAttributes dataAttr, int iPosNeg, int iChunk) throws GraphicsIOException {
@@ -954,10 +976,11 @@ public class DrawSpectrum {
      * A way to store a contour for asynchronous drawing. The contour is stored in a queue when computed, while an asynchronous tasks is polling the queue to actually draw them.
      * The job identifier is used to avoid drawing contours generated for a previous drawing request.
      *
-     * @param contour   the contour to draw asynchronously
+     * @param contour   the contour with the display bounds and attributes to draw with
+     * @param lines     the traced contour lines to draw
      * @param requestId the job identifier for this drawing request
      */
-    private record ContourDrawingRequest(Contour contour, long requestId) {
+    private record ContourDrawingRequest(Contour contour, ContourLines lines, long requestId) {
     }
 
     /**
@@ -1003,6 +1026,10 @@ public class DrawSpectrum {
             double[] offset = {0, 0};
             fileData.mChunk = -1;
             float[][] z = null;
+            int[][] cells = null;
+            int level = fileData.getPyramidLevel(getPix(axes.getX(), axes.getY(), fileData));
+            DatasetBase dataset = fileData.getDataset();
+            ContourCache cache = ContourCache.getInstance();
 
             do {
                 if (task.isCancelled()) {
@@ -1011,42 +1038,65 @@ public class DrawSpectrum {
                 }
                 int iChunk = fileData.mChunk + 1;
                 double[][] pix = getPix(axes.getX(), axes.getY(), fileData);
+                StringBuffer chunkLabel = new StringBuffer();
+                int[][] apt = getRegion(fileData, iChunk, offset, chunkLabel, level);
+                if (apt == null) {
+                    break;
+                }
+                ContourCache.Region region = ContourCache.Region.of(fileData.dim, apt, level);
+                long modificationCount = dataset.getModificationCount();
+                Contour tracer = new Contour(fileData.ptd, pix);
+                tracer.xOffset = offset[0];
+                tracer.yOffset = offset[1];
+                tracer.stride = 1 << level;
+                boolean haveData = false;
 
                 try {
-                    z = getData(fileData, iChunk, offset, z);
-                    if (z != null) {
-                        double xOff = offset[0];
-                        double yOff = offset[1];
-
-                        for (int iPosNeg = 0; iPosNeg < 2; iPosNeg++) {
-                            float sign = iPosNeg == 0 ? 1.0f : -1.0f;
-                            for (float level : levels) {
-                                if (!checkLevels(z, iPosNeg, sign * level)) {
-                                    break;
-                                }
-                                Contour contour = new Contour(fileData.ptd, pix);
-                                if (!setContext(contour, fileData, iPosNeg, iChunk)) {
-                                    continue;
-                                }
-                                contour.xOffset = xOff;
-                                contour.yOffset = yOff;
-
-                                int[][] cells = new int[z.length][z[0].length];
-                                if (!contour.marchSquares(sign * level, z, cells)) {
-                                    try {
-                                        ContourDrawingRequest request = new ContourDrawingRequest(contour, drawSpectrum.contourDrawingRequestId.get());
-                                        drawSpectrum.contourQueue.put(request);
-                                    } catch (InterruptedException ex) {
-                                        done = true;
-                                        return;
+                    for (int iPosNeg = 0; iPosNeg < 2; iPosNeg++) {
+                        Contour contour = new Contour(fileData.ptd, pix);
+                        if (!setContext(contour, fileData, iPosNeg, iChunk)) {
+                            continue;
+                        }
+                        float sign = iPosNeg == 0 ? 1.0f : -1.0f;
+                        for (float contourLevel : levels) {
+                            float signedLevel = sign * contourLevel;
+                            ContourLines lines;
+                            ContourCache.Entry entry = cache.get(dataset, region, signedLevel);
+                            if (entry != null) {
+                                lines = entry.lines();
+                            } else {
+                                if (!haveData) {
+                                    z = fileData.readMatrix(fileData.mChunk, chunkLabel.toString(), apt, z, level);
+                                    if ((cells == null) || (cells.length != z.length) || (cells[0].length != z[0].length)) {
+                                        cells = new int[z.length][z[0].length];
                                     }
-                                } else {
-                                    break;
+                                    haveData = true;
+                                }
+                                lines = null;
+                                if (checkLevels(z, iPosNeg, signedLevel)) {
+                                    tracer.marchSquares(signedLevel, z, cells);
+                                    lines = tracer.traceLines();
                                 }
+                                cache.put(dataset, modificationCount, region, signedLevel, lines);
+                            }
+                            // null means checkLevels found nothing above this level, so no higher
+                            // level has lines either
+                            if (lines == null) {
+                                break;
+                            }
+                            // a chunk entirely above a level has no lines at it but can at higher levels,
+                            // so go on as drawing an empty contour did before, just without queuing it
+                            if (lines.isEmpty()) {
+                                continue;
+                            }
+                            try {
+                                ContourDrawingRequest request = new ContourDrawingRequest(contour, lines, drawSpectrum.contourDrawingRequestId.get());
+                                drawSpectrum.contourQueue.put(request);
+                            } catch (InterruptedException ex) {
+                                done = true;
+                                return;
                             }
                         }
-                    } else {
-                        break;
                     }
                 } catch (GraphicsIOException ex) {
                     throw new IOException(ex.getMessage());
@@ -1135,7 +1185,7 @@ public class DrawSpectrum {
             }
 
             try {
-                request.contour.drawSquares(drawSpectrum.g2);
+                request.contour.drawLines(drawSpectrum.g2, request.lines);
             } catch (Exception ex) {
                 log.warn("Exception while drawing square", ex);
             }
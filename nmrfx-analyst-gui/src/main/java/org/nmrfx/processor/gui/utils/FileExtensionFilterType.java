@@ -11,8 +11,8 @@ import java.util.List;
 public enum FileExtensionFilterType {
     ALL_FILES("All Files", "*.*"),
     NMR_FID("NMR Fid", "fid", "ser", "*.nv", "*.dx", "*.jdx", "*.jdf", RS2DData.DATA_FILE_NAME),
-    NMR_DATASET("NMR Dataset", "*.nv", "*.ucsf", "*.dx", "*.jdx", "1r", "2rr", "3rrr", "4rrrr", RS2DData.DATA_FILE_NAME),
-    NMR_FILES("NMR Files", "fid", "ser", "*.nv", "*.ucsf", "*.dx", "*.jdx", "*.jdf", "1r", "2rr", "3rrr", "4rrrr", RS2DData.DATA_FILE_NAME),
+    NMR_DATASET("NMR Dataset", "*.nv", "*.nvz", "*.ucsf", "*.dx", "*.jdx", "1r", "2rr", "3rrr", "4rrrr", RS2DData.DATA_FILE_NAME),
+    NMR_FILES("NMR Files", "fid", "ser", "*.nv", "*.nvz", "*.ucsf", "*.dx", "*.jdx", "*.jdf", "1r", "2rr", "3rrr", "4rrrr", RS2DData.DATA_FILE_NAME),
     PDF("PDF", "*.pdf"),
     PNG("PNG", "*.png"),
     SVG("SVG", "*.svg"),
@@ -0,0 +1,66 @@
+package org.nmrfx.processor.gui.spectra;
+
+import org.junit.Test;
+import org.nmrfx.datasets.DatasetBase;
+
+import static org.junit.Assert.*;
+
+public class ContourCacheTest {
+
+    private static float[][] getPeak(int n) {
+        float[][] z = new float[n][n];
+        double center = (n - 1) / 2.0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double r2 = (i - center) * (i - center) + (j - center) * (j - center);
+                z[i][j] = (float) Math.exp(-r2 / 8.0);
+            }
+        }
+        return z;
+    }
+
+    @Test
+    public void testTraceClosedLine() {
+        int n = 16;
+        float[][] z = getPeak(n);
+        double[][] pts = {{10.0, 10.0 + n - 1}, {20.0, 20.0 + n - 1}};
+        double[][] pix = {{0.0, 100.0}, {100.0, 0.0}};
+        Contour contour = new Contour(pts, pix);
+        contour.marchSquares(0.5f, z, new int[n][n]);
+        ContourLines lines = contour.traceLines();
+        assertEquals(1, lines.getPathCount());
+        assertTrue(lines.isClosed(0));
+        // points are in dataset coordinates, around the center of the peak
+        for (int i = lines.getPathStart(0); i < lines.getPathEnd(0); i += 2) {
+            assertEquals(10.0 + 7.5, lines.getCoord(i), 3.0);
+            assertEquals(20.0 + 7.5, lines.getCoord(i + 1), 3.0);
+        }
+    }
+
+    @Test
+    public void testInvalidatedByWrite() {
+        ContourCache cache = new ContourCache(1024 * 1024);
+        DatasetBase dataset = new DatasetBase();
+        ContourCache.Region region = ContourCache.Region.of(new int[]{0, 1}, new int[][]{{0, 10}, {0, 10}}, 0);
+        ContourLines lines = new ContourLines();
+        cache.put(dataset, dataset.getModificationCount(), region, 1.0f, lines);
+        assertSame(lines, cache.get(dataset, region, 1.0f).lines());
+        assertNull(cache.get(dataset, region, 2.0f));
+        dataset.markModified();
+        assertNull(cache.get(dataset, region, 1.0f));
+    }
+
+    @Test
+    public void testCapacity() {
+        ContourCache cache = new ContourCache(1000);
+        DatasetBase dataset = new DatasetBase();
+        for (int i = 0; i < 100; i++) {
+            ContourCache.Region region = ContourCache.Region.of(new int[]{0, 1}, new int[][]{{i, i + 10}, {0, 10}}, 0);
+            cache.put(dataset, 0, region, 1.0f, null);
+        }
+        ContourCache.Region first = ContourCache.Region.of(new int[]{0, 1}, new int[][]{{0, 10}, {0, 10}}, 0);
+        ContourCache.Region last = ContourCache.Region.of(new int[]{0, 1}, new int[][]{{99, 109}, {0, 10}}, 0);
+        assertNull(cache.get(dataset, first, 1.0f));
+        assertNotNull(cache.get(dataset, last, 1.0f));
+    }
+}
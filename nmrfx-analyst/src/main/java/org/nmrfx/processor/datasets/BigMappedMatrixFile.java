@@ -17,9 +17,11 @@
  */
 package org.nmrfx.processor.datasets;
 
+import org.apache.commons.math3.complex.Complex;
 import org.nmrfx.datasets.DatasetHeaderIO;
 import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.math.VecBase;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,6 +30,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
@@ -51,7 +54,7 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
     private final int dataType;
     final boolean writable;
     private final int mapSize;
-    private final List<MapInfo> mappings = new ArrayList<>();
+    private MapInfo[] mappings = new MapInfo[0];
     private final int BYTES = 4;
 
     /**
@@ -64,6 +67,17 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
      * @throws java.io.IOException
      */
     public BigMappedMatrixFile(final Dataset dataset, File file, DatasetLayout layout, final RandomAccessFile raFile, final boolean writable) throws IOException {
+        this(dataset, file, layout, raFile, writable, MAPPING_SIZE);
+    }
+
+    /**
+     * Create a memory-mapped interface with mappings of the specified size,
+     * so the handling of values in different mappings can be tested on small
+     * files.
+     *
+     * @param mapSize the size of each mapping in bytes, a multiple of 4
+     */
+    BigMappedMatrixFile(final Dataset dataset, File file, DatasetLayout layout, final RandomAccessFile raFile, final boolean writable, int mapSize) throws IOException {
         this.dataset = dataset;
         this.raFile = raFile;
         this.file = file;
@@ -71,7 +85,7 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
         dataType = dataset.getDataType();
         strides = new long[dataset.getNDim()];
         this.writable = writable;
-        mapSize = MAPPING_SIZE;
+        this.mapSize = mapSize;
         init();
     }
 
@@ -90,6 +104,7 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
             }
         }
         totalSize = matSize / BYTES;
+        List<MapInfo> newMappings = new ArrayList<>();
         for (long offset = 0; offset < matSize; offset += mapSize) {
             long size2 = Math.min(matSize - offset, mapSize);
             FileChannel.MapMode mapMode = FileChannel.MapMode.READ_ONLY;
@@ -99,8 +114,9 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
             ByteOrder byteOrder = dataset.getByteOrder();
             MapInfo mapInfo = new MapInfo(offset + layout.getFileHeaderSize(), size2, mapMode, byteOrder);
             mapInfo.mapIt(raFile);
-            mappings.add(mapInfo);
+            newMappings.add(mapInfo);
         }
+        mappings = newMappings.toArray(new MapInfo[0]);
     }
 
     public DatasetLayout getLayout() {
@@ -175,7 +191,7 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
     }
 
     private MappedByteBuffer getMapping(final int index) throws IOException {
-        MapInfo mapInfo = mappings.get(index);
+        MapInfo mapInfo = mappings[index];
         if (mapInfo.buffer == null) {
             mapInfo.mapIt(raFile);
         } else {
@@ -231,6 +247,90 @@ public class BigMappedMatrixFile implements DatasetStorageInterface, Closeable {
         }
     }
 
+    @Override
+    public void writeVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
+        vectorIO(first, last, point, dim, scale, vector, true);
+    }
+
+    @Override
+    public void readVector(int first, int last, int[] point, int dim, double scale, VecBase vector) throws IOException {
+        vectorIO(first, last, point, dim, scale, vector, false);
+    }
+
+    /**
+     * Read or write a vector. Points that are adjacent in the file (along a
+     * dimension with unit stride within a block) are transferred as runs, with
+     * a bulk copy from a single lookup of the mapping for each run.
+     */
+    private void vectorIO(int first, int last, int[] point, int dim, double scale, VecBase vector, boolean write) throws IOException {
+        int n = last - first + 1;
+        float[] values = new float[n];
+        if (write) {
+            for (int i = first, j = 0, k = 0; i <= last; i++, k++) {
+                if (vector.isComplex()) {
+                    if ((i % 2) != 0) {
+                        values[k] = (float) (vector.getImag(j) * scale);
+                        j++;
+                    } else {
+                        values[k] = (float) (vector.getReal(j) * scale);
+                    }
+                } else {
+                    values[k] = (float) (vector.getReal(j) * scale);
+                    j++;
+                }
+            }
+        }
+        boolean contiguous = (dataType == 0) && (layout.offsetPoints[dim] == 1);
+        int blockSize = layout.blockSize[dim];
+        for (int i = first, k = 0; i <= last; ) {
+            point[dim] = i;
+            long p = bytePosition(point);
+            int mapN = (int) (p / mapSize);
+            int offN = (int) (p % mapSize);
+            int run = 1;
+            if (contiguous) {
+                int inBlock = blockSize - (i % blockSize);
+                int inMapping = (mapSize - offN) / BYTES;
+                run = Math.min(last - i + 1, Math.min(inBlock, inMapping));
+            }
+            MappedByteBuffer mapping = getMapping(mapN);
+            if (run > 1) {
+                FloatBuffer floatBuffer = mapping.slice(offN, run * BYTES).order(mapping.order()).asFloatBuffer();
+                if (write) {
+                    floatBuffer.put(values, k, run);
+                } else {
+                    floatBuffer.get(values, k, run);
+                }
+            } else if (write) {
+                if (dataType == 0) {
+                    mapping.putFloat(offN, values[k]);
+                } else {
+                    mapping.putInt(offN, (int) values[k]);
+                }
+            } else {
+                values[k] = dataType == 0 ? mapping.getFloat(offN) : mapping.getInt(offN);
+            }
+            i += run;
+            k += run;
+        }
+        if (!write) {
+            double dReal = 0.0;
+            for (int i = first, j = 0, k = 0; i <= last; i++, k++) {
+                if (vector.isComplex()) {
+                    if ((i % 2) != 0) {
+                        vector.set(j, new Complex(dReal, values[k] / scale));
+                        j++;
+                    } else {
+                        dReal = values[k] / scale;
+                    }
+                } else {
+                    vector.set(j, values[k] / scale);
+                    j++;
+                }
+            }
+        }
+    }
+
     @Override
     public void close() throws IOException {
         if (raFile != null) {
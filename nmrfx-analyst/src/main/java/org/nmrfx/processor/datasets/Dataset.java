@@ -382,8 +382,12 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
         layout.setFileHeaderSize(fileHeaderSize);
         // Cannot close this here as it is used in places outside this try
         RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        if (CompressedSubMatrixFile.isCompressed(file)) {
+            // blocks are allocated as they are written, so discard any previous contents
+            raFile.setLength(0);
+        }
         createDataFile(raFile, true);
-        if (useCacheFile) {
+        if (useCacheFile && !CompressedSubMatrixFile.isCompressed(file)) {
             raFile.setLength(layout.getTotalSize());
         }
         writeHeader();
@@ -448,6 +452,7 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
             refPt[iDim] = getSizeReal(iDim) / 2.0;
             refPt_r[iDim] = getSizeReal(iDim) / 2.0;
             memoryMode = dataFile instanceof MemoryFile;
+            markModified();
         } catch (IOException ioe) {
             log.error(ioe.getMessage(), ioe);
             throw new DatasetException("Can't resize dataset " + ioe.getMessage());
@@ -475,7 +480,9 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
 
     public static DatasetStorageInterface createDataFile(Dataset dataset, RandomAccessFile raFile, File file, DatasetLayout newLayout, boolean writable) throws IOException {
         DatasetStorageInterface newDataFile;
-        if (useCacheFile) {
+        if (CompressedSubMatrixFile.isCompressed(file)) {
+            newDataFile = new CompressedSubMatrixFile(dataset, file, newLayout, raFile, writable);
+        } else if (useCacheFile) {
             newDataFile = new SubMatrixFile(dataset, file, newLayout, raFile, writable);
         } else {
             if (newLayout.getNDataBytes() > BIG_MAP_LIMIT) {
@@ -650,6 +657,7 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
     @Override
     public void close() {
         removeFile(fileName);
+        DatasetPyramid.invalidate(this);
         try {
             if (dataFile != null) {
                 if (dataFile.isWritable()) {
@@ -1212,6 +1220,46 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
         }
     }
 
+    /**
+     * Read the values of a run of consecutive points along one dimension, the
+     * same values readPoint(int[], int[]) returns for each point. The run is
+     * read from the data file as one vector, rather than a point at a time.
+     *
+     * @param pt      the first point of the run, with indices as used by
+     *                readPoint(int[], int[])
+     * @param dim     the dataset dimension of each index of pt, the run is along
+     *                dim[0]
+     * @param nPoints the number of points in the run
+     * @param values  the array to store the values in
+     * @param offset  the position in values to store the first value at
+     * @throws IOException if an I/O error occurs
+     */
+    public void readPoints(int[] pt, int[] dim, int nPoints, double[] values, int offset) throws IOException {
+        int last = pt[0] + nPoints - 1;
+        if ((vecMat != null) || complex[dim[0]] || (pt[0] < 0) || (last >= getSizeReal(dim[0]))) {
+            int[] point = pt.clone();
+            for (int i = 0; i < nPoints; i++) {
+                point[0] = pt[0] + i;
+                values[offset + i] = readPoint(point, dim);
+            }
+            return;
+        }
+        int[] rPt = new int[nDim];
+        for (int i = 1; i < nDim; i++) {
+            rPt[dim[i]] = complex[dim[i]] ? pt[i] * 2 : pt[i];
+            if (axisReversed[dim[i]]) {
+                rPt[dim[i]] = getSizeTotal(dim[i]) - 1 - rPt[dim[i]];
+            }
+        }
+        boolean reversed = axisReversed[dim[0]];
+        int first = reversed ? getSizeTotal(dim[0]) - 1 - last : pt[0];
+        Vec vec = new Vec(nPoints, false);
+        dataFile.readVector(first, first + nPoints - 1, rPt, dim[0], scale, vec);
+        for (int i = 0; i < nPoints; i++) {
+            values[offset + i] = vec.getReal(reversed ? nPoints - 1 - i : i);
+        }
+    }
+
     /**
      * Read an N dimensional matrix of values within the specified region of the
      * matrix.  The region is specified in complex or real (if dimensionis real)
@@ -1374,6 +1422,7 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
                 dataFile.setFloat((float) (mat[planeOffset][rowOffset] * scale), point);
             }
         }
+        markModified();
     }
 
     /**
@@ -1416,6 +1465,7 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
             }
             dataFile.setFloat((float) (matrix.getValue(index) * scale), point);
         }
+        markModified();
     }
 
     /**
@@ -2059,26 +2109,9 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
         for (int i = 1; i < nDim; i++) {
             point[dim[i]] = pt[i][0];
         }
-        for (int i = 0; i < nDim; i++) {
-            if (pt[i][0] == pt[i][1]) {
-                if ((pt[i][0] + 1) > getFileDimSize(dim[i])) {
-                    throw new ProcessingException("dataset size for DIM(" + (dim[i] + 1) + ") = "
-                            + getFileDimSize(dim[i]) + " too small, should be at least " + (pt[i][0] + 1));
-                }
-                if ((pt[i][0] + 1) > vsize[dim[i]]) {
-                    setVSize(dim[i], (pt[i][0] + 1));
-                }
-            } else {
-                if ((pt[i][1] + 1) > getFileDimSize(dim[i])) {
-                    throw new ProcessingException("dataset size for DIM(" + (dim[i] + 1) + ") = "
-                            + getFileDimSize(dim[i]) + " too small, should be at least " + (pt[i][1] + 1));
-                }
-                if ((pt[i][1] + 1) > vsize[dim[i]]) {
-                }
-                setVSize(dim[i], (pt[i][1] - pt[i][0] + 1));
-            }
-        }
+        updateVecSizes(pt, dim);
         dataFile.writeVector(pt[0][0], pt[0][1], point, dim[0], scale, vector);
+        markModified();
 
         setSf(dim[0], vector.centerFreq);
         setSw(dim[0], 1.0 / vector.dwellTime);
@@ -2101,6 +2134,32 @@ public class Dataset extends DatasetBase implements Comparable<Dataset> {
 
     }
 
+    /**
+     * Check that the vector location fits in the dataset and update the valid
+     * sizes. Synchronized as vectors may be written from multiple threads.
+     */
+    private synchronized void updateVecSizes(int[][] pt, int[] dim) {
+        for (int i = 0; i < nDim; i++) {
+            if (pt[i][0] == pt[i][1]) {
+                if ((pt[i][0] + 1) > getFileDimSize(dim[i])) {
+                    throw new ProcessingException("dataset size for DIM(" + (dim[i] + 1) + ") = "
+                            + getFileDimSize(dim[i]) + " too small, should be at least " + (pt[i][0] + 1));
+                }
+                if ((pt[i][0] + 1) > vsize[dim[i]]) {
+                    setVSize(dim[i], (pt[i][0] + 1));
+                }
+            } else {
+                if ((pt[i][1] + 1) > getFileDimSize(dim[i])) {
+                    throw new ProcessingException("dataset size for DIM(" + (dim[i] + 1) + ") = "
+                            + getFileDimSize(dim[i]) + " too small, should be at least " + (pt[i][1] + 1));
+                }
+                if ((pt[i][1] + 1) > vsize[dim[i]]) {
+                }
+                setVSize(dim[i], (pt[i][1] - pt[i][0] + 1));
+            }
+        }
+    }
+
     /**
      * Copy header from this dataset to another dataset
      *
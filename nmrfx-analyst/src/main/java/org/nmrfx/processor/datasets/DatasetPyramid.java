@@ -0,0 +1,541 @@
+package org.nmrfx.processor.datasets;
+
+import org.nmrfx.utils.OwnerOnlyFiles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * A multi-resolution pyramid of one plane of a dataset, used to contour large
+ * spectra at a resolution matching the display rather than reading every point
+ * of the plane. Each level halves the size of the previous one in both
+ * dimensions, keeping the value of largest magnitude in each 2x2 block so that
+ * positive and negative peaks are not lost when zoomed out.
+ * <p>
+ * Pyramids are kept in a bounded in-memory cache and can also be saved to a
+ * cache directory, so they don't have to be rebuilt when a dataset is opened
+ * again. A pyramid is rebuilt when the dataset values or scale change. The
+ * cache directory is only used if no other user can access it, and the least
+ * recently used files are deleted when the directory grows past its capacity.
+ */
+public class DatasetPyramid {
+
+    private static final Logger log = LoggerFactory.getLogger(DatasetPyramid.class);
+    private static final int MAGIC = 0x4e565059;
+    private static final int FORMAT_VERSION = 1;
+    private static final int STRIP_ROWS = 64;
+    private static final String SUFFIX = ".nvpyr";
+    /**
+     * Levels are not made smaller than this in either dimension.
+     */
+    public static final int MIN_LEVEL_SIZE = 32;
+    /**
+     * Planes with fewer points than this are always drawn at full resolution.
+     */
+    public static final long MIN_PLANE_POINTS = 512L * 512;
+    public static final long DEFAULT_CACHE_CAPACITY = 256L * 1024 * 1024;
+    public static final long DEFAULT_DISK_CAPACITY = 1024L * 1024 * 1024;
+
+    private static final Map<PlaneKey, DatasetPyramid> CACHE = new LinkedHashMap<>(16, 0.75f, true);
+    private static long cacheBytes = 0;
+    private static long cacheCapacity = DEFAULT_CACHE_CAPACITY;
+    private static long diskCapacity = DEFAULT_DISK_CAPACITY;
+    private static Path cacheDirectory = Path.of(System.getProperty("user.home"), ".nmrfx", "pyramids");
+
+    private final int nx;
+    private final int ny;
+    private final double scale;
+    private final long modificationCount;
+    /**
+     * Decimated values, levels[k - 1] being reduced by a factor of 2^k.
+     */
+    private final float[][][] levels;
+
+    record PlaneKey(Dataset dataset, int xDim, int yDim, List<Integer> planePoint) {
+    }
+
+    private DatasetPyramid(int nx, int ny, double scale, long modificationCount, float[][][] levels) {
+        this.nx = nx;
+        this.ny = ny;
+        this.scale = scale;
+        this.modificationCount = modificationCount;
+        this.levels = levels;
+    }
+
+    /**
+     * Set the maximum number of bytes used by pyramids held in memory.
+     *
+     * @param capacity the capacity in bytes
+     */
+    public static synchronized void setCacheCapacity(long capacity) {
+        cacheCapacity = capacity;
+        trimCache();
+    }
+
+    public static synchronized long getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    /**
+     * Set the maximum number of bytes used by pyramids saved in the cache
+     * directory.
+     *
+     * @param capacity the capacity in bytes
+     */
+    public static synchronized void setDiskCapacity(long capacity) {
+        diskCapacity = capacity;
+    }
+
+    public static synchronized long getDiskCapacity() {
+        return diskCapacity;
+    }
+
+    /**
+     * Set the directory pyramids are saved in. The directory is created, if
+     * needed, so only the current user can access it, and isn't used if it
+     * already exists and other users can access it. Use null to only keep
+     * pyramids in memory.
+     *
+     * @param directory the directory
+     */
+    public static synchronized void setCacheDirectory(Path directory) {
+        cacheDirectory = directory;
+    }
+
+    public static synchronized Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    /**
+     * Remove all pyramids of the dataset from the in-memory cache.
+     *
+     * @param dataset the dataset
+     */
+    public static synchronized void invalidate(Dataset dataset) {
+        Iterator<Map.Entry<PlaneKey, DatasetPyramid>> iter = CACHE.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<PlaneKey, DatasetPyramid> entry = iter.next();
+            if (entry.getKey().dataset() == dataset) {
+                cacheBytes -= entry.getValue().getBytes();
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Return whether a plane of the dataset is big enough to be drawn from a
+     * pyramid.
+     *
+     * @param dataset the dataset
+     * @param dim     the dataset dimensions, with the first two being the
+     *                dimensions of the plane
+     * @return true if a pyramid can be used
+     */
+    public static boolean isUseful(Dataset dataset, int[] dim) {
+        if ((dataset.getNDim() < 2) || (dataset.getVec() != null) || !dataset.hasDataFile()) {
+            return false;
+        }
+        int sizeX = dataset.getSizeReal(dim[0]);
+        int sizeY = dataset.getSizeReal(dim[1]);
+        return ((long) sizeX * sizeY >= MIN_PLANE_POINTS)
+                && (sizeX >= 2 * MIN_LEVEL_SIZE) && (sizeY >= 2 * MIN_LEVEL_SIZE);
+    }
+
+    /**
+     * Get the pyramid for a plane of the dataset, loading or building it if
+     * there isn't a current one in memory.
+     *
+     * @param dataset the dataset
+     * @param dim     the dataset dimensions, with the first two being the
+     *                dimensions of the plane
+     * @param apt     a region of the dataset. Only the points of the
+     *                dimensions after the first two are used, to select the
+     *                plane.
+     * @return the pyramid or null if the plane is too small to need one
+     * @throws IOException if an I/O error occurs
+     */
+    public static DatasetPyramid getPyramid(Dataset dataset, int[] dim, int[][] apt) throws IOException {
+        if (!isUseful(dataset, dim)) {
+            return null;
+        }
+        List<Integer> planePoint = new ArrayList<>();
+        for (int i = 2; i < dataset.getNDim(); i++) {
+            planePoint.add(apt[i][0]);
+        }
+        PlaneKey key = new PlaneKey(dataset, dim[0], dim[1], List.copyOf(planePoint));
+        synchronized (DatasetPyramid.class) {
+            DatasetPyramid pyramid = CACHE.get(key);
+            if ((pyramid != null) && pyramid.isCurrent(dataset)) {
+                return pyramid;
+            }
+        }
+        Path path = getCachePath(dataset, key);
+        DatasetPyramid pyramid = null;
+        if ((path != null) && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+            try {
+                pyramid = load(dataset, key, path);
+            } catch (IOException ioE) {
+                log.warn("Can't read pyramid {}", path, ioE);
+            }
+        }
+        if (pyramid == null) {
+            pyramid = build(dataset, dim, apt);
+            if ((path != null) && (pyramid.modificationCount == 0)) {
+                try {
+                    pyramid.save(dataset, key, path);
+                } catch (IOException ioE) {
+                    log.warn("Can't save pyramid {}", path, ioE);
+                }
+            }
+        }
+        synchronized (DatasetPyramid.class) {
+            DatasetPyramid old = CACHE.put(key, pyramid);
+            if (old != null) {
+                cacheBytes -= old.getBytes();
+            }
+            cacheBytes += pyramid.getBytes();
+            trimCache();
+        }
+        return pyramid;
+    }
+
+    private static void trimCache() {
+        Iterator<DatasetPyramid> iter = CACHE.values().iterator();
+        while ((cacheBytes > cacheCapacity) && iter.hasNext()) {
+            cacheBytes -= iter.next().getBytes();
+            iter.remove();
+        }
+    }
+
+    boolean isCurrent(Dataset dataset) {
+        return (modificationCount == dataset.getModificationCount()) && (scale == dataset.getScale());
+    }
+
+    /**
+     * Build a pyramid by reading the plane in strips of rows, decimating each
+     * strip into the first level and then decimating each level into the next.
+     */
+    static DatasetPyramid build(Dataset dataset, int[] dim, int[][] apt) throws IOException {
+        long count = dataset.getModificationCount();
+        double scale = dataset.getScale();
+        int nx = dataset.getSizeReal(dim[0]);
+        int ny = dataset.getSizeReal(dim[1]);
+        int nLevels = getLevelCount(nx, ny);
+        float[][][] levels = new float[nLevels][][];
+        levels[0] = new float[(ny + 1) / 2][(nx + 1) / 2];
+        int[][] stripPt = new int[dataset.getNDim()][2];
+        for (int i = 2; i < stripPt.length; i++) {
+            stripPt[i][0] = apt[i][0];
+            stripPt[i][1] = apt[i][0];
+        }
+        stripPt[0][0] = 0;
+        stripPt[0][1] = nx - 1;
+        float[][] strip = new float[STRIP_ROWS][nx];
+        for (int row = 0; row < ny; row += STRIP_ROWS) {
+            int nRows = Math.min(STRIP_ROWS, ny - row);
+            stripPt[1][0] = row;
+            stripPt[1][1] = row + nRows - 1;
+            dataset.readMatrix(stripPt, dim, strip);
+            decimate(strip, nRows, nx, levels[0], row / 2);
+        }
+        for (int k = 1; k < nLevels; k++) {
+            float[][] source = levels[k - 1];
+            int sizeX = source[0].length;
+            levels[k] = new float[(source.length + 1) / 2][(sizeX + 1) / 2];
+            decimate(source, source.length, sizeX, levels[k], 0);
+        }
+        return new DatasetPyramid(nx, ny, scale, count, levels);
+    }
+
+    /**
+     * Reduce rows of source by a factor of two in each dimension into target,
+     * starting at row targetRow, keeping the value of largest magnitude.
+     */
+    static void decimate(float[][] source, int nRows, int nCols, float[][] target, int targetRow) {
+        for (int i = 0; i < nRows; i += 2) {
+            float[] row0 = source[i];
+            float[] row1 = (i + 1) < nRows ? source[i + 1] : row0;
+            float[] targetValues = target[targetRow + i / 2];
+            for (int j = 0, jj = 0; j < nCols; j += 2, jj++) {
+                int j1 = (j + 1) < nCols ? j + 1 : j;
+                float value = maxAbs(maxAbs(row0[j], row0[j1]), maxAbs(row1[j], row1[j1]));
+                targetValues[jj] = value;
+            }
+        }
+    }
+
+    private static float maxAbs(float a, float b) {
+        return Math.abs(b) > Math.abs(a) ? b : a;
+    }
+
+    /**
+     * Get the number of reduced levels. Level 0 is the dataset itself and
+     * levels 1 to getLevelCount() are each half the size of the one before.
+     *
+     * @return the number of levels
+     */
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Get the number of reduced levels of a pyramid for a plane of the
+     * specified size.
+     *
+     * @param nx the number of points in the first dimension of the plane
+     * @param ny the number of points in the second dimension of the plane
+     * @return the number of levels
+     */
+    public static int getLevelCount(int nx, int ny) {
+        int nLevels = 0;
+        while (((nx >> (nLevels + 1)) >= MIN_LEVEL_SIZE) && ((ny >> (nLevels + 1)) >= MIN_LEVEL_SIZE)) {
+            nLevels++;
+        }
+        return nLevels;
+    }
+
+    /**
+     * Get the level to draw with given the number of dataset points per pixel
+     * on screen. The highest level that still has at least one point per pixel
+     * is used.
+     *
+     * @param pointsPerPixel the smaller of the number of points per pixel
+     *                       along the two plane dimensions
+     * @param nx             the number of points in the first dimension of the
+     *                       plane
+     * @param ny             the number of points in the second dimension of the
+     *                       plane
+     * @return the level
+     */
+    public static int getLevel(double pointsPerPixel, int nx, int ny) {
+        int nLevels = getLevelCount(nx, ny);
+        int level = 0;
+        while ((level < nLevels) && ((1 << (level + 1)) <= pointsPerPixel)) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Get the index in a level of a dataset point.
+     *
+     * @param level the level
+     * @param point the dataset point
+     * @return the index in the level
+     */
+    public static int toLevel(int level, int point) {
+        return point >> level;
+    }
+
+    /**
+     * Get the position (in dataset points) of the center of a point of a
+     * level.
+     *
+     * @param level the level
+     * @param index the index of the point in the level
+     * @return the position in dataset points
+     */
+    public static double toDataset(int level, int index) {
+        int factor = 1 << level;
+        return index * factor + (factor - 1) / 2.0;
+    }
+
+    /**
+     * Read the points of a level covering a region of the plane.
+     *
+     * @param level  the level, 1 or greater
+     * @param apt    the region in dataset points. Only the first two
+     *               dimensions are used.
+     * @param matrix a matrix in which to store the values. Must have at least
+     *               as many rows and columns as the region has in the level.
+     * @return the maximum of the absolute values of the read values
+     */
+    public float readMatrix(int level, int[][] apt, float[][] matrix) {
+        float[][] values = levels[level - 1];
+        int x0 = toLevel(level, apt[0][0]);
+        int x1 = toLevel(level, Math.min(apt[0][1], nx - 1));
+        int y0 = toLevel(level, apt[1][0]);
+        int y1 = toLevel(level, Math.min(apt[1][1], ny - 1));
+        float maxValue = 0.0f;
+        for (int y = y0; y <= y1; y++) {
+            float[] row = matrix[y - y0];
+            System.arraycopy(values[y], x0, row, 0, x1 - x0 + 1);
+            for (int x = 0; x <= x1 - x0; x++) {
+                maxValue = Math.max(maxValue, Math.abs(row[x]));
+            }
+        }
+        return maxValue;
+    }
+
+    long getBytes() {
+        long nBytes = 0;
+        for (float[][] level : levels) {
+            nBytes += (long) level.length * level[0].length * Float.BYTES;
+        }
+        return nBytes;
+    }
+
+    private static String getIdentity(Dataset dataset, PlaneKey key) {
+        return dataset.getCanonicalFile() + ":" + key.xDim() + ":" + key.yDim() + ":" + key.planePoint();
+    }
+
+    static Path getCachePath(Dataset dataset, PlaneKey key) {
+        Path directory = getCacheDirectory();
+        File file = dataset.getFile();
+        if ((directory == null) || (file == null) || !file.exists()) {
+            return null;
+        }
+        String name = file.getName() + "_" + Integer.toHexString(getIdentity(dataset, key).hashCode()) + SUFFIX;
+        return directory.resolve(name);
+    }
+
+    /**
+     * Load a saved pyramid. Returns null if the saved pyramid is for a
+     * different plane, the dataset has been changed since it was saved, the
+     * file could have been written by another user, or the sizes in the file
+     * don't match the plane.
+     */
+    static DatasetPyramid load(Dataset dataset, PlaneKey key, Path path) throws IOException {
+        File file = dataset.getFile();
+        long count = dataset.getModificationCount();
+        if (count != 0) {
+            return null;
+        }
+        if (!OwnerOnlyFiles.isOwnerOnly(path.getParent()) || !OwnerOnlyFiles.isOwnerOnly(path)) {
+            log.warn("Not loading pyramid {} that other users can access", path);
+            return null;
+        }
+        int nx = dataset.getSizeReal(key.xDim());
+        int ny = dataset.getSizeReal(key.yDim());
+        DatasetPyramid pyramid;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION)) {
+                return null;
+            }
+            if (!in.readUTF().equals(getIdentity(dataset, key))
+                    || (in.readLong() != file.length())
+                    || (in.readLong() != file.lastModified())
+                    || (in.readDouble() != dataset.getScale())) {
+                return null;
+            }
+            int nLevels = getLevelCount(nx, ny);
+            if ((in.readInt() != nx) || (in.readInt() != ny) || (in.readInt() != nLevels)) {
+                return null;
+            }
+            // sizes are checked before allocating, so a damaged file can't exhaust memory
+            float[][][] levels = new float[nLevels][][];
+            int rows = ny;
+            int cols = nx;
+            for (int k = 0; k < nLevels; k++) {
+                rows = (rows + 1) / 2;
+                cols = (cols + 1) / 2;
+                if ((in.readInt() != rows) || (in.readInt() != cols)) {
+                    return null;
+                }
+                levels[k] = new float[rows][cols];
+                for (float[] row : levels[k]) {
+                    for (int j = 0; j < cols; j++) {
+                        row[j] = in.readFloat();
+                    }
+                }
+            }
+            pyramid = new DatasetPyramid(nx, ny, dataset.getScale(), count, levels);
+        } catch (EOFException eofE) {
+            log.warn("Pyramid {} is truncated", path);
+            return null;
+        }
+        // keep recently used pyramids when the cache directory is pruned
+        Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        return pyramid;
+    }
+
+    /**
+     * Save the pyramid. It is written to a new file that only the current
+     * user can access, which is then moved over any existing file.
+     */
+    void save(Dataset dataset, PlaneKey key, Path path) throws IOException {
+        Path directory = path.getParent();
+        OwnerOnlyFiles.createDirectory(directory);
+        Path tmpPath = OwnerOnlyFiles.createTempFile(path);
+        try {
+            write(dataset, key, tmpPath);
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+        prune(directory, path);
+    }
+
+    private void write(Dataset dataset, PlaneKey key, Path tmpPath) throws IOException {
+        File file = dataset.getFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(getIdentity(dataset, key));
+            out.writeLong(file.length());
+            out.writeLong(file.lastModified());
+            out.writeDouble(scale);
+            out.writeInt(nx);
+            out.writeInt(ny);
+            out.writeInt(levels.length);
+            for (float[][] level : levels) {
+                out.writeInt(level.length);
+                out.writeInt(level[0].length);
+                for (float[] row : level) {
+                    for (float value : row) {
+                        out.writeFloat(value);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the least recently used pyramids in the directory until the
+     * total size is within the disk capacity. The just saved pyramid is
+     * always kept.
+     */
+    static void prune(Path directory, Path keep) {
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .filter(p -> Files.isRegularFile(p, LinkOption.NOFOLLOW_LINKS))
+                    .sorted(Comparator.comparingLong(DatasetPyramid::lastModified).reversed())
+                    .toList();
+        } catch (IOException ioE) {
+            log.warn("Can't list pyramids in {}", directory, ioE);
+            return;
+        }
+        long capacity = getDiskCapacity();
+        long total = 0;
+        for (Path p : paths) {
+            long size = p.toFile().length();
+            total += size;
+            if ((total > capacity) && !p.equals(keep)) {
+                try {
+                    Files.deleteIfExists(p);
+                    total -= size;
+                } catch (IOException ioE) {
+                    log.warn("Can't delete pyramid {}", p, ioE);
+                }
+            }
+        }
+    }
+
+    private static long lastModified(Path path) {
+        return path.toFile().lastModified();
+    }
+}
@@ -10,6 +10,7 @@ import java.util.stream.Collectors;
 
 public enum DatasetType {
     NMRFX(".nv"),
+    NMRFX_COMPRESSED(".nvz"),
     UCSF(".ucsf"),
     SPINit("data.dat");
 
@@ -56,7 +57,7 @@ public enum DatasetType {
     }
 
     /**
-     * Adds, if not already present, the correct file extension for .nv and .ucsf files
+     * Adds, if not already present, the correct file extension for .nv, .nvz and .ucsf files
      * or the filename (data.data) for SPINit files.
      *
      * @param file the file to check
@@ -18,6 +18,7 @@
 package org.nmrfx.processor.datasets;
 
 import org.apache.commons.collections4.map.LRUMap;
+import org.nmrfx.datasets.StorageStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,6 +85,7 @@ public class MapInfo {
         try {
             buffer = raFile.getChannel().map(mapMode, start, size);
             buffer.order(byteOrder);
+            StorageStats.getInstance().recordMapping(size);
             if (size > 4 * 1024 * 1024) {
                 if (mapMap == null) {
                     mapMap = Collections.synchronizedMap(new MyLRUMap(MAX_SIZE));
@@ -113,7 +115,9 @@ public class MapInfo {
         if (buffer == null) {
             return;
         }
+        long startTime = System.nanoTime();
         buffer.force();
+        StorageStats.getInstance().recordForce(System.nanoTime() - startTime);
     }
 
     public void clean() {
@@ -124,6 +128,7 @@ public class MapInfo {
             mapMap.remove(this);
         }
         closeDirectBuffer(buffer);
+        StorageStats.getInstance().recordUnmapping();
         buffer = null;
     }
 
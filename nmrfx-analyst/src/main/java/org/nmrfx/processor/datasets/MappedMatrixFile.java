@@ -21,6 +21,7 @@ import org.apache.commons.math3.complex.Complex;
 import org.nmrfx.datasets.DatasetHeaderIO;
 import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.datasets.StorageStats;
 import org.nmrfx.processor.math.Vec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -97,6 +98,7 @@ public class MappedMatrixFile implements DatasetStorageInterface, Closeable {
             }
             mappedBuffer = this.raFile.getChannel().map(mapMode, layout.getFileHeaderSize(), size2);
             mappedBuffer.order(dataset.getByteOrder());
+            StorageStats.getInstance().recordMapping(size2);
             floatBuffer = mappedBuffer.asFloatBuffer();
         } catch (IOException e) {
             this.raFile.close();
@@ -227,7 +229,9 @@ public class MappedMatrixFile implements DatasetStorageInterface, Closeable {
 
     @Override
     public void force() {
+        long start = System.nanoTime();
         mappedBuffer.force();
+        StorageStats.getInstance().recordForce(System.nanoTime() - start);
     }
 
     private void clean(MappedByteBuffer mapping) {
@@ -235,6 +239,7 @@ public class MappedMatrixFile implements DatasetStorageInterface, Closeable {
             return;
         }
         MapInfo.closeDirectBuffer(mapping);
+        StorageStats.getInstance().recordUnmapping();
     }
 
     public void writeVector(int first, int last, int[] point, int dim, double scale, Vec vector) throws IOException {
@@ -20,6 +20,7 @@ package org.nmrfx.processor.datasets;
 import org.nmrfx.datasets.DatasetHeaderIO;
 import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.DatasetStorageInterface;
+import org.nmrfx.datasets.StorageStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -84,6 +85,7 @@ public class MappedSubMatrixFile implements DatasetStorageInterface, Closeable {
             }
             mappedBuffer = this.raFile.getChannel().map(mapMode, layout.getFileHeaderSize(), size2);
             mappedBuffer.order(dataset.getByteOrder());
+            StorageStats.getInstance().recordMapping(size2);
             floatBuffer = mappedBuffer.asFloatBuffer();
         } catch (IOException e) {
             this.raFile.close();
@@ -221,7 +223,9 @@ public class MappedSubMatrixFile implements DatasetStorageInterface, Closeable {
 
     @Override
     public void force() {
+        long start = System.nanoTime();
         mappedBuffer.force();
+        StorageStats.getInstance().recordForce(System.nanoTime() - start);
     }
 
     private void clean(MappedByteBuffer mapping) {
@@ -229,5 +233,6 @@ public class MappedSubMatrixFile implements DatasetStorageInterface, Closeable {
             return;
         }
         MapInfo.closeDirectBuffer(mapping);
+        StorageStats.getInstance().recordUnmapping();
     }
 }
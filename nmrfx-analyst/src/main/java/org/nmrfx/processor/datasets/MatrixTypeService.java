@@ -20,7 +20,7 @@ package org.nmrfx.processor.datasets;
 import org.nmrfx.datasets.MatrixType;
 import org.nmrfx.processor.math.MatrixND;
 import org.nmrfx.processor.math.Vec;
-import org.nmrfx.processor.processing.Processor;
+import org.nmrfx.processor.processing.ProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,55 +30,112 @@ import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
+ * Reads items (vectors or matrices) for the processing threads and writes the
+ * processed items to the dataset. Reading and writing run on separate threads
+ * taken from a pool that persists between processing passes, so reading new
+ * items overlaps writing processed ones. Both directions are bounded: the
+ * reader waits while the queue of unprocessed items is full, and processing
+ * threads wait while the processed items not yet written exceed the memory
+ * limit.
+ *
  * @author brucejohnson
  */
 public class MatrixTypeService {
     private static final Logger log = LoggerFactory.getLogger(MatrixTypeService.class);
+    public static final long DEFAULT_MEMORY_LIMIT = 256L * 1024 * 1024;
+    private static final int POLL_MILLIS = 100;
+
+    private static final ExecutorService IO_POOL = Executors.newCachedThreadPool((Runnable r) -> {
+        Thread t = new Thread(r, "nmrfx-dataset-io");
+        t.setDaemon(true);
+        return t;
+    });
 
-    /* Each LinkedList<MatrixType> will hold one set of arraylists for a process. The
-     * outer List is synchronized but the inner List is not synchronized.
+    /**
+     * A list of processed items and the size (in kbytes) reserved for them in
+     * the write budget.
+     */
+    private record PendingWrite(List<MatrixType> items, int kBytes) {
+    }
+
+    /* Each List<MatrixType> will hold one set of items for a process. The
+     * queue is synchronized but the inner List is not synchronized.
      */
     private final LinkedBlockingQueue<List<MatrixType>> unprocessedItemQueue;
     /**
-     * Each LinkedList<MatrixType> will be written to a file.
+     * Each List<MatrixType> will be written to a file.
+     */
+    private final LinkedBlockingQueue<PendingWrite> processedItemQueue;
+    private final Semaphore writeBudget;
+    private final int writeBudgetKBytes;
+    /**
+     * Resizing the dataset changes its layout so it excludes concurrent reads
+     * and writes, which otherwise share the lock.
      */
-    private final LinkedBlockingQueue<List<MatrixType>> processedItemQueue;
+    private final ReentrantReadWriteLock layoutLock = new ReentrantReadWriteLock();
     AtomicInteger nWritten = new AtomicInteger(0);
     AtomicInteger nRead = new AtomicInteger(0);
-    AtomicInteger processedQueueLimit;
     AtomicBoolean errorWhileReadWrite = new AtomicBoolean(false);
+    AtomicBoolean cancelled = new AtomicBoolean(false);
     int itemsToWrite;
     int itemsToRead;
 
-    FutureTask<Boolean> futureTask;
+    Future<Boolean> readerTask;
+    List<Future<Boolean>> writerTasks = new ArrayList<>();
 
-    ExecutorService executor = Executors.newSingleThreadExecutor((Runnable r) -> {
-        Thread t = new Thread(r);
-        t.setDaemon(true);
-        return t;
-    });
+    MatrixTypeSource processor;
 
-    Processor processor;
+    public MatrixTypeService(MatrixTypeSource processor, int processedQueueLimit, int itemsToRead, int itemsToWrite) {
+        this(processor, processedQueueLimit, itemsToRead, itemsToWrite, 1, DEFAULT_MEMORY_LIMIT);
+    }
 
-    public MatrixTypeService(Processor processor, int processedQueueLimit, int itemsToRead, int itemsToWrite) {
+    /**
+     * Create the service and start its reader and writer threads.
+     *
+     * @param processor   the processor whose items are read and written
+     * @param queueLimit  maximum number of unprocessed item lists waiting for
+     *                    the processing threads
+     * @param itemsToRead number of items to read
+     * @param itemsToWrite number of items to write
+     * @param nWriters    number of threads writing to the dataset
+     * @param memoryLimit maximum number of bytes of processed items waiting
+     *                    to be written
+     */
+    public MatrixTypeService(MatrixTypeSource processor, int queueLimit, int itemsToRead, int itemsToWrite,
+                             int nWriters, long memoryLimit) {
         this.processor = processor;
         this.itemsToWrite = itemsToWrite;
         this.itemsToRead = itemsToRead;
-        this.processedQueueLimit = new AtomicInteger(processedQueueLimit);
-        unprocessedItemQueue = new LinkedBlockingQueue<>();
+        unprocessedItemQueue = new LinkedBlockingQueue<>(Math.max(1, queueLimit));
         processedItemQueue = new LinkedBlockingQueue<>();
-        futureTask = new FutureTask(() -> readWriteItems());
-        executor.execute(futureTask);
+        writeBudgetKBytes = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryLimit / 1024));
+        writeBudget = new Semaphore(writeBudgetKBytes);
+        readerTask = IO_POOL.submit(this::readItems);
+        for (int i = 0; i < Math.max(1, nWriters); i++) {
+            writerTasks.add(IO_POOL.submit(this::writeProcessedItems));
+        }
     }
 
+    /**
+     * Stop the reader and writer threads, waiting briefly for them to finish.
+     */
     public void shutdown() {
-        executor.shutdown();
-        try {
-            executor.awaitTermination(4, TimeUnit.SECONDS);
-        } catch (InterruptedException ex) {
-            log.warn(ex.getMessage(), ex);
+        cancelled.set(true);
+        List<Future<Boolean>> tasks = new ArrayList<>(writerTasks);
+        tasks.add(readerTask);
+        for (Future<Boolean> task : tasks) {
+            try {
+                task.get(4, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                log.warn(ex.getMessage(), ex);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException ex) {
+                log.warn(ex.getMessage(), ex);
+            }
         }
     }
 
@@ -87,49 +144,95 @@ public class MatrixTypeService {
     }
 
     public boolean finished() {
-        if ((nRead.get() >= itemsToRead) && !unprocessedItemQueue.isEmpty()) {
-            return false;
-        } else {
-            return (nRead.get() >= itemsToRead) && unprocessedItemQueue.isEmpty();
-        }
+        return (nRead.get() >= itemsToRead) && unprocessedItemQueue.isEmpty();
     }
 
+    /**
+     * Wait for the writer threads to write all processed items.
+     *
+     * @param timeOut maximum time to wait in milliseconds
+     * @return true if all items were written without error
+     */
     public boolean isDone(int timeOut) {
-        try {
-            return futureTask.get(timeOut, TimeUnit.MILLISECONDS);
-        } catch (InterruptedException ex) {
-            log.warn(ex.getMessage(), ex);
-            return false;
-        } catch (ExecutionException ex) {
-            log.warn(ex.getMessage(), ex);
-            return false;
-        } catch (TimeoutException ex) {
-            log.warn("time out {} {} {} {}", nWritten.get(), itemsToWrite, nRead.get(), itemsToRead);
-            log.warn(ex.getMessage(), ex);
-            return false;
+        long endTime = System.currentTimeMillis() + timeOut;
+        boolean ok = true;
+        for (Future<Boolean> task : writerTasks) {
+            try {
+                long wait = Math.max(0, endTime - System.currentTimeMillis());
+                ok &= task.get(wait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                log.warn(ex.getMessage(), ex);
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException ex) {
+                log.warn(ex.getMessage(), ex);
+                return false;
+            } catch (TimeoutException ex) {
+                log.warn("time out {} {} {} {}", nWritten.get(), itemsToWrite, nRead.get(), itemsToRead);
+                log.warn(ex.getMessage(), ex);
+                return false;
+            }
         }
+        return ok;
     }
 
-    /* Adds items to the unprocessed item queue.
+    /* Adds items to the unprocessed item queue, waiting while the queue is full.
      */
-    public boolean addNewItems() {
+    public boolean addNewItems() throws InterruptedException {
         if (!processor.getEndOfFile()) {
-            List<MatrixType> vectors = processor.getMatrixTypesFromFile();
-            unprocessedItemQueue.add(vectors);
-            if (vectors != null) {
-                int nVec = vectors.size();
-                if ((nVec == 1) && vectors.get(0) == null) {
-                    nVec = 0;
+            List<MatrixType> vectors;
+            layoutLock.readLock().lock();
+            try {
+                vectors = processor.getMatrixTypesFromFile();
+            } finally {
+                layoutLock.readLock().unlock();
+            }
+            while (!unprocessedItemQueue.offer(vectors, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get() || errorWhileReadWrite.get() || processor.getProcessorError()) {
+                    return false;
                 }
-                nRead.addAndGet(nVec);
             }
+            int nVec = vectors.size();
+            if ((nVec == 1) && vectors.get(0) == null) {
+                nVec = 0;
+            }
+            nRead.addAndGet(nVec);
             return true;
         }
         return false;
     }
 
+    /**
+     * Add processed items to the write queue. Waits while the items already
+     * queued use up the memory limit.
+     *
+     * @param vectors the items to write
+     */
     public void addItemsToWriteList(List<MatrixType> vectors) {
-        processedItemQueue.add(vectors);
+        int kBytes = Math.min(writeBudgetKBytes, estimateKBytes(vectors));
+        try {
+            while (!writeBudget.tryAcquire(kBytes, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (errorWhileReadWrite.get() || cancelled.get()) {
+                    throw new ProcessingException("Error writing dataset");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException(ex.getMessage());
+        }
+        processedItemQueue.add(new PendingWrite(vectors, kBytes));
+    }
+
+    private static int estimateKBytes(List<MatrixType> items) {
+        long nBytes = 0;
+        for (MatrixType item : items) {
+            if (item instanceof Vec vec) {
+                nBytes += (long) vec.getSize() * (vec.isComplex() ? 16 : 8);
+            } else if (item instanceof MatrixND matrix) {
+                nBytes += (long) matrix.getNElems() * Double.BYTES;
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, (nBytes + 1023) / 1024));
     }
 
     public List<MatrixType> getItemsFromUnprocessedList(int timeOut) {
@@ -153,8 +256,18 @@ public class MatrixTypeService {
             if (dataset == null) {
                 throw new DatasetException("Dataset is null.");
             }
-            checkDataset(dataset, vector);
-            dataset.writeMatrixType(vector);
+            layoutLock.writeLock().lock();
+            try {
+                checkDataset(dataset, vector);
+            } finally {
+                layoutLock.writeLock().unlock();
+            }
+            layoutLock.readLock().lock();
+            try {
+                dataset.writeMatrixType(vector);
+            } finally {
+                layoutLock.readLock().unlock();
+            }
             nWritten.incrementAndGet();
         }
         return true;
@@ -228,29 +341,43 @@ public class MatrixTypeService {
     }
 
     /**
-     * Writes all of the items from the processedItemQueue to file.
+     * Reads items from the file until all have been read or the service is
+     * stopped.
      */
-    public final boolean readWriteItems() throws InterruptedException {
-        List<MatrixType> temp = null;
-        while (true) {
-            try {
-                if (nRead.get() < itemsToRead) {
-                    if ((unprocessedItemQueue.size() < processedQueueLimit.get()) && (processedItemQueue.size() < processedQueueLimit.get())) {
-                        for (int i = 0; i < 4; i++) {
-                            if (!addNewItems()) {
-                                break;
-                            }
-                        }
-                    }
+    private boolean readItems() throws InterruptedException {
+        try {
+            while ((nRead.get() < itemsToRead) && !cancelled.get() && !errorWhileReadWrite.get()) {
+                if (!addNewItems()) {
+                    break;
                 }
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            log.error(ex.getMessage(), ex);
+            throw (ex);
+        } catch (Exception ex) {
+            log.error(ex.getMessage(), ex);
+            errorWhileReadWrite.set(true);
+            return false;
+        }
+    }
 
-                temp = processedItemQueue.poll(100, TimeUnit.MILLISECONDS);
-                if (temp != null) {
-                    writeItems(temp);
-                } else {
-                    if (nWritten.get() >= itemsToWrite) {
-                        return true;
+    /**
+     * Writes items from the processedItemQueue to file until all have been
+     * written, the processing threads are done, or the service is stopped.
+     */
+    private boolean writeProcessedItems() throws InterruptedException {
+        while (true) {
+            try {
+                PendingWrite pending = processedItemQueue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (pending != null) {
+                    try {
+                        writeItems(pending.items());
+                    } finally {
+                        writeBudget.release(pending.kBytes());
                     }
+                } else if ((nWritten.get() >= itemsToWrite) || processor.doneWriting() || cancelled.get()) {
+                    return true;
                 }
             } catch (InterruptedException ex) {
                 log.error(ex.getMessage(), ex);
@@ -0,0 +1,29 @@
+package org.nmrfx.processor.datasets;
+
+import org.nmrfx.datasets.MatrixType;
+
+import java.util.List;
+
+/**
+ * The part of the processor that a {@link MatrixTypeService} uses to read
+ * items from the input and to find the dataset the processed items are
+ * written to.
+ */
+public interface MatrixTypeSource {
+
+    boolean getEndOfFile();
+
+    List<MatrixType> getMatrixTypesFromFile();
+
+    boolean getProcessorError();
+
+    Dataset getDataset();
+
+    int[] getIndirectSizes();
+
+    /**
+     * @return true when the processing threads have finished, so no more
+     * items will be added to the write queue
+     */
+    boolean doneWriting();
+}
@@ -26,6 +26,7 @@ package org.nmrfx.processor.datasets.peaks;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import org.nmrfx.annotations.PythonAPI;
+import org.nmrfx.datasets.DatasetLayout;
 import org.nmrfx.datasets.Nuclei;
 import org.nmrfx.math.VecBase;
 import org.nmrfx.peaks.Peak;
@@ -38,8 +39,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.stream.IntStream;
 
 import static org.nmrfx.datasets.Nuclei.*;
 
@@ -54,8 +57,35 @@ public class PeakPicker {
     private final PeakPickParameters peakPickPar;
     private final int nDataDim;
     private static final String MSG_PEAK_LIST = "Peak List ";
+    /**
+     * Regions with at least this many points are scanned in parallel tiles.
+     */
+    private static final int MIN_TILED_POINTS = 65536;
+    /**
+     * Maximum number of points in the body of a tile.
+     */
+    private static final int MAX_TILE_POINTS = 1 << 20;
+    private static final int N_STAT_POINTS = 1024;
     Peak lastPeakPicked = null;
     int nPeaks;
+    private boolean tiled = true;
+
+    /**
+     * A point that passed the level and local maximum tests.
+     */
+    private record Candidate(int[] point, double value) {
+    }
+
+    /**
+     * The results of scanning one tile. Noise statistics are calculated for
+     * groups of N_STAT_POINTS consecutive points of the region. Groups that
+     * cross the start or end of the tile can't be finished in the tile so
+     * their values are kept to be combined with those of the neighboring
+     * tiles.
+     */
+    private record TileResult(List<Candidate> candidates, double minStDev, long firstGroup,
+                              double[] headValues, long lastGroup, double[] tailValues) {
+    }
 
     public PeakPicker(PeakPickParameters peakPickPar) {
         this.peakPickPar = peakPickPar;
@@ -64,10 +94,23 @@ public class PeakPicker {
         this.peakPickPar.fixLimits();
     }
 
+    /**
+     * Set whether large regions may be scanned in parallel tiles.
+     *
+     * @param tiled false to always scan the region point by point
+     */
+    void setTiled(boolean tiled) {
+        this.tiled = tiled;
+    }
+
     double readPoint(int[] pt, int[] dim) throws IOException {
         return dataset.readPoint(pt, dim);
     }
 
+    void readPoints(int[] pt, int[] dim, int nPoints, double[] values, int offset) throws IOException {
+        dataset.readPoints(pt, dim, nPoints, values, offset);
+    }
+
     double getSf(int i) {
         return dataset.getSf(i);
     }
@@ -85,7 +128,6 @@ public class PeakPicker {
         int[] checkPoint = new int[nDataDim];
         int[] deltaPoint = new int[nDataDim];
         int[] testPoint = new int[nDataDim];
-        int[] regionSize = new int[nDataDim];
         boolean foundPeak = true;
         boolean ok;
         int i;
@@ -101,23 +143,8 @@ public class PeakPicker {
             return true;
         }
 
-        for (i = 0; i < nDataDim; i++) {
-            if (regionSizeHz > 0.1) {
-                regionSize[i] = (int) (regionSizeHz / dataset.getSw(i) * dataset.getSizeReal(i));
-            } else {
-                regionSize[i] = 2;
-            }
-
-            if (regionSize[i] < 1) {
-                regionSize[i] = 1;
-            }
-
-            if (i >= nPeakDim) {
-                regionSize[i] = 0;
-            }
-
-            testPoint[i] = pt[i];
-        }
+        int[] regionSize = getRegionSize(regionSizeHz, nPeakDim);
+        System.arraycopy(pt, 0, testPoint, 0, nDataDim);
         do {
             ok = true;
             foundMax = false;
@@ -183,6 +210,26 @@ public class PeakPicker {
         return (foundPeak || fixedPick);
     }
 
+    private int[] getRegionSize(double regionSizeHz, int nPeakDim) {
+        int[] regionSize = new int[nDataDim];
+        for (int i = 0; i < nDataDim; i++) {
+            if (regionSizeHz > 0.1) {
+                regionSize[i] = (int) (regionSizeHz / dataset.getSw(i) * dataset.getSizeReal(i));
+            } else {
+                regionSize[i] = 2;
+            }
+
+            if (regionSize[i] < 1) {
+                regionSize[i] = 1;
+            }
+
+            if (i >= nPeakDim) {
+                regionSize[i] = 0;
+            }
+        }
+        return regionSize;
+    }
+
     public boolean measurePeak(double threshold, int[] pt, double[] cpt,
                                int[] dimOrder, int[] dataToPk, boolean fixedPick, Peak peak, int nPeakDim,
                                double sDevN, int sign, boolean measurePeak) throws IOException {
@@ -649,6 +696,14 @@ public class PeakPicker {
         int[] checkPoint = new int[nDataDim];
         Iterator<int[]> cIter;
         boolean filterMode = peakPickPar.filter && peakPickPar.filterList != null;
+        long nPoints = 1;
+        for (int size : counterSizes) {
+            nPoints *= size;
+        }
+        if (tiled && !filterMode && !findMax && !peakPickPar.fixedPick && (nDataDim > 1) && (nPoints >= MIN_TILED_POINTS)) {
+            noiseLevel = peakPickTiled(peakList, counterSizes, dimOrder, dataToPk, noiseLevel);
+            return finishPick(peakList, noiseLevel);
+        }
         int[] filtPkToData = null;
         if (filterMode) {
             filtPkToData = peakPickPar.filterList.getDimsForDataset(dataset, true);
@@ -678,18 +733,7 @@ public class PeakPicker {
             }
             boolean measurePeak = true;
             if (!peakPickPar.fixedPick) {
-                if ((checkValue >= 0.0) && (checkValue < peakPickPar.level)) {
-                    continue;
-                }
-                if ((checkValue < 0.0) && (checkValue > -peakPickPar.level)) {
-                    continue;
-                }
-
-                if ((checkValue < 0.0) && ((peakPickPar.posNeg & 2) == 0)) {
-                    continue;
-                }
-
-                if ((checkValue > 0.0) && ((peakPickPar.posNeg & 1) == 0)) {
+                if (!isPickable(checkValue)) {
                     continue;
                 }
             } else {
@@ -707,14 +751,7 @@ public class PeakPicker {
             }
             if (checkForPeak(checkValue, checkPoint, dimOrder, findMax, peakPickPar.fixedPick,
                     peakPickPar.regionWidth, peakPickPar.nPeakDim, sign)) {
-                boolean aboveNoise = true;
-                if (peakPickPar.useNoise && (peakPickPar.noiseLimit > 0.001)) {
-                    double noiseRatio = dataset.checkNoiseLevel(checkValue, checkPoint, dimOrder);
-                    if (noiseRatio < peakPickPar.noiseLimit) {
-                        aboveNoise = false;
-                    }
-                }
-                if (aboveNoise) {
+                if (isAboveNoise(checkValue, checkPoint, dimOrder)) {
                     boolean samePeak = false;
                     if (findMax || peakPickPar.fixedPick) {
                         samePeak = true;
@@ -726,20 +763,7 @@ public class PeakPicker {
                         }
                     }
                     if (!samePeak) {
-                        Peak peak = new Peak(peakList, peakPickPar.nPeakDim);
-                        if (measurePeak(peakPickPar.level, checkPoint, peakPickPar.cpt, dimOrder, dataToPk,
-                                peakPickPar.fixedPick, peak,
-                                peakPickPar.nPeakDim, peakPickPar.sDevN, sign, measurePeak)) {
-                            Peak pickedPeak = peakList.addPeak(peak);
-                            if (pickedPeak != null) {
-                                nPeaks++;
-                                lastPeakPicked = pickedPeak;
-                            } else {
-                                peakList.idLast--;
-                            }
-                        } else {
-                            peakList.idLast--;
-                        }
+                        measureAndAddPeak(peakList, checkPoint, dimOrder, dataToPk, sign, measurePeak);
                         if (findMax || peakPickPar.fixedPick) {
                             System.arraycopy(checkPoint, 0, lastPoint, 0, checkPoint.length);
                         }
@@ -749,6 +773,10 @@ public class PeakPicker {
             }
         }
 
+        return finishPick(peakList, noiseLevel);
+    }
+
+    private PeakList finishPick(PeakList peakList, Double noiseLevel) {
         if ((noiseLevel != null) && (noiseLevel > 0.0)) {
             peakList.setFOM(noiseLevel);
         }
@@ -757,6 +785,279 @@ public class PeakPicker {
         return peakList;
     }
 
+    private boolean isPickable(double value) {
+        if ((value >= 0.0) && (value < peakPickPar.level)) {
+            return false;
+        }
+        if ((value < 0.0) && (value > -peakPickPar.level)) {
+            return false;
+        }
+        if ((value < 0.0) && ((peakPickPar.posNeg & 2) == 0)) {
+            return false;
+        }
+        return (value <= 0.0) || ((peakPickPar.posNeg & 1) != 0);
+    }
+
+    private boolean isAboveNoise(double value, int[] point, int[] dimOrder) {
+        if (peakPickPar.useNoise && (peakPickPar.noiseLimit > 0.001)) {
+            double noiseRatio = dataset.checkNoiseLevel(value, point, dimOrder);
+            return noiseRatio >= peakPickPar.noiseLimit;
+        }
+        return true;
+    }
+
+    private void measureAndAddPeak(PeakList peakList, int[] point, int[] dimOrder, int[] dataToPk,
+                                   int sign, boolean measurePeak) throws IOException {
+        Peak peak = new Peak(peakList, peakPickPar.nPeakDim);
+        if (measurePeak(peakPickPar.level, point, peakPickPar.cpt, dimOrder, dataToPk,
+                peakPickPar.fixedPick, peak,
+                peakPickPar.nPeakDim, peakPickPar.sDevN, sign, measurePeak)) {
+            Peak pickedPeak = peakList.addPeak(peak);
+            if (pickedPeak != null) {
+                nPeaks++;
+                lastPeakPicked = pickedPeak;
+            } else {
+                peakList.idLast--;
+            }
+        } else {
+            peakList.idLast--;
+        }
+    }
+
+    /**
+     * Pick peaks by splitting the region into tiles along its slowest varying
+     * dimension and scanning the tiles in parallel. Each tile reads its points,
+     * and a halo of neighbors needed for the local maximum test, into memory
+     * once, as runs of points along the first dimension. Candidates from all
+     * tiles are then measured and added to the peak list in the same order as
+     * a point by point scan, so the peaks and their ids are the same as when
+     * picking on one thread.
+     */
+    private Double peakPickTiled(PeakList peakList, int[] counterSizes, int[] dimOrder, int[] dataToPk,
+                                 Double noiseLevel) throws IOException {
+        int[][] pt = peakPickPar.pt;
+        int[] regionSize = getRegionSize(peakPickPar.regionWidth, peakPickPar.nPeakDim);
+        int lastDim = nDataDim - 1;
+        while ((lastDim > 0) && (counterSizes[lastDim] == 1)) {
+            lastDim--;
+        }
+        final int tileDim = lastDim;
+        long planeSize = 1;
+        for (int i = 0; i < tileDim; i++) {
+            planeSize *= counterSizes[i];
+        }
+        int nTileDim = counterSizes[tileDim];
+        int nProcessors = Runtime.getRuntime().availableProcessors();
+        int thickness = (int) Math.max(1, Math.min(MAX_TILE_POINTS / planeSize,
+                Math.ceil((double) nTileDim / (4 * nProcessors))));
+        DatasetLayout layout = dataset.getLayout();
+        if (layout != null) {
+            int blockSize = layout.getBlockSize(dimOrder[tileDim]);
+            if ((blockSize > 0) && (blockSize <= thickness)) {
+                thickness = (thickness / blockSize) * blockSize;
+            }
+        }
+        final int tileThickness = thickness;
+        final long tilePlaneSize = planeSize;
+        int nTiles = (nTileDim + thickness - 1) / thickness;
+        List<TileResult> results;
+        try {
+            results = IntStream.range(0, nTiles).parallel().mapToObj(iTile -> {
+                int start = pt[tileDim][0] + iTile * tileThickness;
+                int end = Math.min(pt[tileDim][1], start + tileThickness - 1);
+                try {
+                    return scanTile(counterSizes, dimOrder, regionSize, tileDim, start, end, tilePlaneSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        Map<Long, SummaryStatistics> groupStats = new TreeMap<>();
+        for (TileResult result : results) {
+            if ((noiseLevel == null) || (result.minStDev() < noiseLevel)) {
+                noiseLevel = result.minStDev();
+            }
+            for (double value : result.headValues()) {
+                groupStats.computeIfAbsent(result.firstGroup(), k -> new SummaryStatistics()).addValue(value);
+            }
+            for (double value : result.tailValues()) {
+                groupStats.computeIfAbsent(result.lastGroup(), k -> new SummaryStatistics()).addValue(value);
+            }
+        }
+        for (SummaryStatistics stats : groupStats.values()) {
+            if (stats.getN() == N_STAT_POINTS) {
+                double stDev = stats.getStandardDeviation();
+                if ((noiseLevel == null) || (stDev < noiseLevel)) {
+                    noiseLevel = stDev;
+                }
+            }
+        }
+        if ((noiseLevel != null) && Double.isInfinite(noiseLevel)) {
+            noiseLevel = null;
+        }
+
+        for (TileResult result : results) {
+            for (Candidate candidate : result.candidates()) {
+                int sign = candidate.value() < 0.0 ? -1 : 1;
+                double checkValue = Math.abs(candidate.value());
+                if (isAboveNoise(checkValue, candidate.point(), dimOrder)) {
+                    measureAndAddPeak(peakList, candidate.point(), dimOrder, dataToPk, sign, true);
+                }
+            }
+        }
+        return noiseLevel;
+    }
+
+    /**
+     * Scan the points of the region from start to end (inclusive) along
+     * tileDim, returning the points that pass the level and local maximum
+     * tests in scan order, and the noise statistics of the tile.
+     */
+    private TileResult scanTile(int[] counterSizes, int[] dimOrder, int[] regionSize, int tileDim,
+                                int start, int end, long planeSize) throws IOException {
+        int[][] pt = peakPickPar.pt;
+        int[] boxStart = new int[nDataDim];
+        int[] boxSizes = new int[nDataDim];
+        int[] boxStrides = new int[nDataDim];
+        int boxPoints = 1;
+        for (int i = 0; i < nDataDim; i++) {
+            int first = (i == tileDim) ? start : pt[i][0];
+            int last = (i == tileDim) ? end : pt[i][1];
+            boxStart[i] = Math.max(0, first - regionSize[i]);
+            int boxEnd = Math.min(getSize(dimOrder[i]) - 1, last + regionSize[i]);
+            boxSizes[i] = Math.max(1, boxEnd - boxStart[i] + 1);
+            boxStrides[i] = boxPoints;
+            boxPoints *= boxSizes[i];
+        }
+        double[] box = new double[boxPoints];
+        int[] point = new int[nDataDim];
+        // the box is read a row at a time, each row along the first dimension
+        int[] rowCounts = boxSizes.clone();
+        rowCounts[0] = 1;
+        for (int[] counts : new DimCounter(rowCounts)) {
+            int index = 0;
+            for (int i = 0; i < nDataDim; i++) {
+                point[i] = boxStart[i] + counts[i];
+                index += counts[i] * boxStrides[i];
+            }
+            readPoints(point, dimOrder, boxSizes[0], box, index);
+        }
+
+        int[] tileSizes = counterSizes.clone();
+        tileSizes[tileDim] = end - start + 1;
+        long firstIndex = (start - pt[tileDim][0]) * planeSize;
+        long lastIndex = firstIndex + tileSizes[tileDim] * planeSize - 1;
+        long firstGroup = firstIndex / N_STAT_POINTS;
+        long lastGroup = lastIndex / N_STAT_POINTS;
+        int nHead = (firstIndex % N_STAT_POINTS == 0) ? 0
+                : (int) Math.min(N_STAT_POINTS - firstIndex % N_STAT_POINTS, lastIndex - firstIndex + 1);
+        int nTail = (int) ((lastIndex + 1) % N_STAT_POINTS);
+        if ((firstGroup == lastGroup) && (nHead > 0)) {
+            nTail = 0;
+        }
+        double[] headValues = new double[nHead];
+        double[] tailValues = new double[nTail];
+        long tailStart = lastIndex + 1 - nTail;
+
+        SummaryStatistics stats = new SummaryStatistics();
+        double minStDev = Double.POSITIVE_INFINITY;
+        List<Candidate> candidates = new ArrayList<>();
+        long linearIndex = firstIndex;
+        for (int[] counts : new DimCounter(tileSizes)) {
+            int index = 0;
+            for (int i = 0; i < nDataDim; i++) {
+                point[i] = pt[i][0] + counts[i];
+                if (i == tileDim) {
+                    point[i] += start - pt[i][0];
+                }
+                index += (point[i] - boxStart[i]) * boxStrides[i];
+            }
+            double value = box[index];
+            long offset = linearIndex - firstIndex;
+            if (offset < nHead) {
+                headValues[(int) offset] = value;
+            } else if (linearIndex >= tailStart) {
+                tailValues[(int) (linearIndex - tailStart)] = value;
+            } else {
+                stats.addValue(value);
+                if (stats.getN() == N_STAT_POINTS) {
+                    minStDev = Math.min(minStDev, stats.getStandardDeviation());
+                    stats.clear();
+                }
+            }
+            linearIndex++;
+            if (isPickable(value)) {
+                int sign = value < 0.0 ? -1 : 1;
+                if (isLocalMax(box, boxStart, boxSizes, boxStrides, point, dimOrder, regionSize,
+                        sign * value, sign)) {
+                    candidates.add(new Candidate(point.clone(), value));
+                }
+            }
+        }
+        return new TileResult(candidates, minStDev, firstGroup, headValues, lastGroup, tailValues);
+    }
+
+    /**
+     * The test done by checkForPeak when not searching for the maximum, using
+     * values already read into the box where possible.
+     */
+    private boolean isLocalMax(double[] box, int[] boxStart, int[] boxSizes, int[] boxStrides, int[] pt,
+                               int[] dimOrder, int[] regionSize, double centerValue, int sign) throws IOException {
+        int[] deltaPoint = new int[nDataDim];
+        int[] checkPoint = new int[nDataDim];
+        for (int i = 0; i < nDataDim; i++) {
+            deltaPoint[i] = -regionSize[i];
+        }
+        boolean ok = true;
+        while (true) {
+            boolean isCenterPoint = true;
+            for (int i = 0; i < nDataDim; i++) {
+                if (deltaPoint[i] != 0) {
+                    isCenterPoint = false;
+                    checkPoint[i] = pt[i] + deltaPoint[i];
+                    if (checkPoint[i] < 0) {
+                        ok = false;
+                    } else if (checkPoint[i] >= getSize(dimOrder[i])) {
+                        checkPoint[i] = checkPoint[i] - getSize(dimOrder[i]);
+                    }
+                } else {
+                    checkPoint[i] = pt[i];
+                }
+            }
+            if (ok && !isCenterPoint) {
+                int index = 0;
+                boolean inBox = true;
+                for (int i = 0; i < nDataDim; i++) {
+                    int offset = checkPoint[i] - boxStart[i];
+                    if ((offset < 0) || (offset >= boxSizes[i])) {
+                        inBox = false;
+                        break;
+                    }
+                    index += offset * boxStrides[i];
+                }
+                double testValue = sign * (inBox ? box[index] : readPoint(checkPoint, dimOrder));
+                if (testValue > centerValue) {
+                    return false;
+                }
+            }
+            int i;
+            for (i = 0; i < nDataDim; i++) {
+                deltaPoint[i]++;
+                if (deltaPoint[i] > regionSize[i]) {
+                    deltaPoint[i] = -regionSize[i];
+                } else {
+                    break;
+                }
+            }
+            if (i == nDataDim) {
+                return true;
+            }
+        }
+    }
+
     public boolean anyPeaksInRegion() {
         boolean foundAny = false;
         PeakList peakList = PeakList.get(peakPickPar.listName);
@@ -20,158 +20,97 @@ package org.nmrfx.processor.math;
 import org.apache.commons.math3.complex.Complex;
 
 public class Cfft {
-    private static double[] sineTable = null;
-    private static double[] cosTable = null;
 
-    static void fillTables(int n) {
-        sineTable = new double[n];
-        cosTable = new double[n];
-        sineTable[1] = -1.0;
-        cosTable[1] = 0.0;
-        sineTable[2] = 0.0;
-        cosTable[2] = 1.0;
-
-        for (int li = 3; li < n; li++) {
-            double theta = Math.PI / li;
-            sineTable[li] = Math.sin(theta);
-            cosTable[li] = Math.cos(theta);
-        }
+    private Cfft() {
     }
 
-    public static void cfft(Complex[] cvec, int size, int mode) {
-        int i;
-        int ip;
-        int j;
-        int k;
-        int li;
-        int n;
-        int m;
-        int length;
-
-        n = 1;
-
+    private static int powerOf2(int size) {
+        int n = 1;
         while (size > n) {
             n *= 2;
         }
+        return n;
+    }
 
-        if (mode == 1) {
-            j = n / 2;
-            k = n - 1;
-            m = (n / 2) + 1;
-
-            for (i = 0; i < (n / 4); i++) {
-
-                Complex hold = cvec[j];
-                cvec[j] = cvec[i];
-                cvec[i] = hold;
-                j--;
-
-                hold = cvec[m];
-                cvec[m] = cvec[k];
-                cvec[k] = hold;
-                k--;
-                m++;
-
-            }
-        }
-
-        /* Decimation in time (DIT) algorithm */
-        j = 0;
-
-        for (i = 0; i < (n - 1); i++) {
-            if (i < j) {
-                Complex hold = cvec[i];
-                cvec[i] = cvec[j];
-                cvec[j] = hold;
-            }
-
-            k = n / 2;
-
-            while (k <= j) {
-                j -= k;
-                k /= 2;
-            }
-
-            j += k;
-        }
-
-        /* Actual FFT */
-        if ((sineTable == null) || (sineTable.length < n)) {
-            fillTables(n);
+    private static void reverseHalves(double[] re, double[] im, int n) {
+        int j = n / 2;
+        int k = n - 1;
+        int m = (n / 2) + 1;
+
+        for (int i = 0; i < (n / 4); i++) {
+            swap(re, im, i, j);
+            j--;
+            swap(re, im, m, k);
+            k--;
+            m++;
         }
+    }
 
-        for (li = 1; li < n; li *= 2) {
-            length = 2 * li;
-            Complex u = Complex.ONE;
-
-            Complex w;
-
-            switch (li) {
-                case 1:
-                    w = new Complex(-1.0, 0.0);
-                    break;
-                case 2:
-                    w = new Complex(0.0, 1.0);
-                    break;
-                default:
-                    w = new Complex(cosTable[li], sineTable[li]);
-                    break;
-            }
-
-            for (j = 0; j < li; j++) {
-                for (i = j; i < n; i += length) {
-                    ip = i + li;
-
-                    /* step 1 */
-                    Complex t = cvec[ip].multiply(u);
-
-                    /* step 2 */
-                    cvec[ip] = cvec[i].subtract(t);
+    private static void swap(double[] re, double[] im, int i, int j) {
+        double hold = re[i];
+        re[i] = re[j];
+        re[j] = hold;
+        hold = im[i];
+        im[i] = im[j];
+        im[j] = hold;
+    }
 
-                    /* step 3 */
-                    cvec[i] = cvec[i].add(t);
-                }
+    public static void cfft(Complex[] cvec, int size, int mode) {
+        int n = powerOf2(size);
+        double[][] scratch = FFTEngine.toScratch(cvec, n);
+        cfft(scratch[0], scratch[1], size, mode);
+        FFTEngine.fromScratch(scratch[0], scratch[1], cvec, n);
+    }
 
-                Complex tmp = u.multiply(w);
-                u = new Complex(tmp.getReal(), tmp.getImaginary());
-            }
+    /**
+     * FFT of split real and imaginary arrays, in place. The arrays must have a
+     * length of at least the first power of 2 not smaller than size.
+     *
+     * @param re   real values
+     * @param im   imaginary values
+     * @param size number of valid values
+     * @param mode 0 to reorder output, 1 to reorder input (used by ift)
+     */
+    public static void cfft(double[] re, double[] im, int size, int mode) {
+        int n = powerOf2(size);
+        if (mode == 1) {
+            reverseHalves(re, im, n);
         }
-
+        FFTEngine.transform(re, im, n, 1.0);
         if (mode == 0) {
-            j = n / 2;
-            k = n - 1;
-            m = (n / 2) + 1;
-
-            for (i = 0; i < (n / 4); i++) {
-                Complex hold = cvec[j];
-                cvec[j] = cvec[i];
-                cvec[i] = hold;
-                j--;
-
-                hold = cvec[m];
-                cvec[m] = cvec[k];
-                cvec[k] = hold;
-                k--;
-                m++;
-            }
+            reverseHalves(re, im, n);
         }
     }
 
     /* ifft -- inverse FFT using the same interface as fft() */
     public static void ift(Complex[] cvec, int size) {
-        double mul = -1.0 / ((double) (size));
-        int i;
+        int n = powerOf2(size);
+        double[][] scratch = FFTEngine.toScratch(cvec, n);
+        ift(scratch[0], scratch[1], size);
+        FFTEngine.fromScratch(scratch[0], scratch[1], cvec, n);
+    }
+
+    /**
+     * Inverse of {@link #cfft(double[], double[], int, int)} on split real and
+     * imaginary arrays, in place.
+     *
+     * @param re   real values
+     * @param im   imaginary values
+     * @param size number of valid values
+     */
+    public static void ift(double[] re, double[] im, int size) {
+        double mul = 1.0 / size;
 
         /* we just use complex conjugates */
-        for (i = 0; i < size; i++) {
-            cvec[i] = cvec[i].conjugate();
+        for (int i = 0; i < size; i++) {
+            im[i] = -im[i];
         }
 
-        cfft(cvec, size, 1);
-
-        for (i = 0; i < size; i++) {
-            cvec[i] = new Complex((-cvec[i].getReal() * mul), cvec[i].getImaginary() * mul);
+        cfft(re, im, size, 1);
 
+        for (int i = 0; i < size; i++) {
+            re[i] *= mul;
+            im[i] *= -mul;
         }
     }
 }
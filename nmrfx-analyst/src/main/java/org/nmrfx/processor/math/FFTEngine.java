@@ -0,0 +1,668 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.math;
+
+import org.apache.commons.math3.complex.Complex;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fast Fourier Transform that works directly on split arrays of real and
+ * imaginary values. Twiddle factors and bit-reversal permutations are computed
+ * once per transform size and shared between threads, and scratch arrays used
+ * to convert from arrays of Complex values are kept per thread, so repeated
+ * transforms of the same size do not allocate.
+ * <p>
+ * Any size can be transformed without zero filling. Powers of 2 use an in-place
+ * radix-2 algorithm, sizes whose only prime factors are 2, 3 and 5 use a
+ * self-sorting mixed-radix (Stockham) algorithm and all other sizes use
+ * Bluestein's algorithm, which evaluates the transform as a convolution with a
+ * power of 2 length.
+ * <p>
+ * The sign convention and normalization match the Apache Commons Math
+ * FastFourierTransformer with DftNormalization.STANDARD: the forward transform
+ * uses exp(-2 pi i j k / n) and is not scaled, the inverse transform uses
+ * exp(2 pi i j k / n) and is scaled by 1/n.
+ */
+public final class FFTEngine {
+
+    private static final Map<Integer, Plan> PLANS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<double[][]> SCRATCH = ThreadLocal.withInitial(() -> new double[2][0]);
+    private static final ThreadLocal<double[][]> WORK = ThreadLocal.withInitial(() -> new double[4][0]);
+    private static final int[] RADICES = {4, 2, 3, 5};
+    private static final double SIN_60 = Math.sin(Math.PI / 3.0);
+    private static final double COS_72 = Math.cos(2.0 * Math.PI / 5.0);
+    private static final double COS_144 = Math.cos(4.0 * Math.PI / 5.0);
+    private static final double SIN_72 = Math.sin(2.0 * Math.PI / 5.0);
+    private static final double SIN_144 = Math.sin(4.0 * Math.PI / 5.0);
+
+    private FFTEngine() {
+    }
+
+    /**
+     * Precomputed tables for one transform size.
+     */
+    private static final class Plan {
+
+        final int n;
+        final boolean powerOf2;
+        final int[] bitReverse;
+        final int[] factors;
+        final double[] cosTable;
+        final double[] sinTable;
+        final Bluestein bluestein;
+
+        Plan(int n) {
+            this.n = n;
+            powerOf2 = (n & (n - 1)) == 0;
+            int[] smallFactors = powerOf2 ? null : factor(n);
+            if (!powerOf2 && (smallFactors == null)) {
+                factors = null;
+                bitReverse = null;
+                cosTable = null;
+                sinTable = null;
+                bluestein = new Bluestein(n);
+                return;
+            }
+            factors = smallFactors;
+            bluestein = null;
+            int tableSize = powerOf2 ? n / 2 : n;
+            cosTable = new double[tableSize];
+            sinTable = new double[tableSize];
+            for (int k = 0; k < tableSize; k++) {
+                double theta = 2.0 * Math.PI * k / n;
+                cosTable[k] = Math.cos(theta);
+                sinTable[k] = Math.sin(theta);
+            }
+            if (powerOf2) {
+                bitReverse = new int[n];
+                int bits = Integer.numberOfTrailingZeros(n);
+                for (int i = 0; i < n; i++) {
+                    bitReverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+                }
+            } else {
+                bitReverse = null;
+            }
+        }
+    }
+
+    /**
+     * Tables for Bluestein's algorithm: the chirp exp(-i pi k^2 / n) and the
+     * transformed convolution kernels for the forward and inverse directions.
+     */
+    private static final class Bluestein {
+
+        final int m;
+        final double[] chirpCos;
+        final double[] chirpSin;
+        final double[] kernelFwdRe;
+        final double[] kernelFwdIm;
+        final double[] kernelInvRe;
+        final double[] kernelInvIm;
+
+        Bluestein(int n) {
+            int size = 1;
+            while (size < 2 * n - 1) {
+                size *= 2;
+            }
+            m = size;
+            chirpCos = new double[n];
+            chirpSin = new double[n];
+            long twoN = 2L * n;
+            for (int k = 0; k < n; k++) {
+                long k2 = ((long) k * k) % twoN;
+                double theta = Math.PI * k2 / n;
+                chirpCos[k] = Math.cos(theta);
+                chirpSin[k] = Math.sin(theta);
+            }
+            kernelFwdRe = new double[m];
+            kernelFwdIm = new double[m];
+            kernelInvRe = new double[m];
+            kernelInvIm = new double[m];
+            fillKernel(n, -1.0, kernelFwdRe, kernelFwdIm);
+            fillKernel(n, 1.0, kernelInvRe, kernelInvIm);
+        }
+
+        private void fillKernel(int n, double sign, double[] re, double[] im) {
+            // kernel is conj(w_k) with w_k = exp(sign i pi k^2 / n), wrapped for circular convolution
+            for (int k = 0; k < n; k++) {
+                re[k] = chirpCos[k];
+                im[k] = -sign * chirpSin[k];
+                if (k > 0) {
+                    re[m - k] = re[k];
+                    im[m - k] = im[k];
+                }
+            }
+            transform(re, im, m, -1.0);
+        }
+    }
+
+    private static Plan getPlan(int n) {
+        // not computeIfAbsent, as building a Bluestein plan needs the plan for its convolution size
+        Plan plan = PLANS.get(n);
+        if (plan == null) {
+            plan = new Plan(n);
+            Plan current = PLANS.putIfAbsent(n, plan);
+            if (current != null) {
+                plan = current;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Factor the size into radices supported by the mixed-radix algorithm.
+     *
+     * @param n the size to factor
+     * @return the radices, or null if n has a prime factor larger than 5
+     */
+    private static int[] factor(int n) {
+        int[] work = new int[32];
+        int nFactors = 0;
+        int remaining = n;
+        for (int radix : RADICES) {
+            while ((remaining % radix) == 0) {
+                work[nFactors++] = radix;
+                remaining /= radix;
+            }
+        }
+        if (remaining != 1) {
+            return null;
+        }
+        int[] result = new int[nFactors];
+        System.arraycopy(work, 0, result, 0, nFactors);
+        return result;
+    }
+
+    private static double[][] getWork(int n) {
+        double[][] work = WORK.get();
+        if (work[0].length < n) {
+            for (int i = 0; i < work.length; i++) {
+                work[i] = new double[n];
+            }
+        }
+        return work;
+    }
+
+    /**
+     * Check whether a transform of the specified size is supported.
+     *
+     * @param n the number of complex points
+     * @return true if the size can be transformed
+     */
+    public static boolean isSupportedSize(int n) {
+        return n > 0;
+    }
+
+    /**
+     * Check whether a transform of the specified size can be done without
+     * falling back to Bluestein's algorithm.
+     *
+     * @param n the number of complex points
+     * @return true if all prime factors of n are 2, 3 or 5
+     */
+    public static boolean isFastSize(int n) {
+        return (n > 0) && (((n & (n - 1)) == 0) || (factor(n) != null));
+    }
+
+    /**
+     * Return the first size equal to or greater than the specified size whose
+     * prime factors are only 2, 3 and 5.
+     *
+     * @param n test size
+     * @return the fast transform size
+     */
+    public static int nextFastSize(int n) {
+        int size = Math.max(n, 1);
+        while (!isFastSize(size)) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void checkSize(double[] re, double[] im, int n) {
+        if (!isSupportedSize(n)) {
+            throw new IllegalArgumentException("Invalid FFT size " + n);
+        }
+        if ((re.length < n) || (im.length < n)) {
+            throw new IllegalArgumentException("FFT arrays shorter than size " + n);
+        }
+    }
+
+    /**
+     * Forward transform of the first n values of the real and imaginary
+     * arrays, in place.
+     *
+     * @param re real values
+     * @param im imaginary values
+     * @param n  number of complex points to transform
+     */
+    public static void fft(double[] re, double[] im, int n) {
+        checkSize(re, im, n);
+        transform(re, im, n, -1.0);
+    }
+
+    /**
+     * Inverse transform of the first n values of the real and imaginary
+     * arrays, in place. Result is scaled by 1/n.
+     *
+     * @param re real values
+     * @param im imaginary values
+     * @param n  number of complex points to transform
+     */
+    public static void ifft(double[] re, double[] im, int n) {
+        checkSize(re, im, n);
+        transform(re, im, n, 1.0);
+        double scale = 1.0 / n;
+        for (int i = 0; i < n; i++) {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    /**
+     * Unscaled transform with the specified sign of the exponent.
+     *
+     * @param re   real values
+     * @param im   imaginary values
+     * @param n    number of complex points to transform
+     * @param sign -1.0 for a forward and 1.0 for an inverse transform
+     */
+    static void transform(double[] re, double[] im, int n, double sign) {
+        if (n < 2) {
+            return;
+        }
+        Plan plan = getPlan(n);
+        if (plan.powerOf2) {
+            radix2(plan, re, im, sign);
+        } else if (plan.bluestein != null) {
+            bluestein(plan.bluestein, re, im, n, sign);
+        } else {
+            mixedRadix(plan, re, im, sign);
+        }
+    }
+
+    private static void radix2(Plan plan, double[] re, double[] im, double sign) {
+        int n = plan.n;
+        int[] bitReverse = plan.bitReverse;
+        for (int i = 0; i < n; i++) {
+            int j = bitReverse[i];
+            if (i < j) {
+                double tr = re[i];
+                re[i] = re[j];
+                re[j] = tr;
+                double ti = im[i];
+                im[i] = im[j];
+                im[j] = ti;
+            }
+        }
+        for (int i = 0; i < n; i += 2) {
+            double r0 = re[i];
+            double i0 = im[i];
+            double r1 = re[i + 1];
+            double i1 = im[i + 1];
+            re[i] = r0 + r1;
+            im[i] = i0 + i1;
+            re[i + 1] = r0 - r1;
+            im[i + 1] = i0 - i1;
+        }
+        double[] cosTable = plan.cosTable;
+        double[] sinTable = plan.sinTable;
+        for (int len = 4; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n / len;
+            for (int start = 0; start < n; start += len) {
+                for (int k = 0, t = 0; k < half; k++, t += step) {
+                    double wr = cosTable[t];
+                    double wi = sign * sinTable[t];
+                    int a = start + k;
+                    int b = a + half;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    /**
+     * Self-sorting decimation in frequency transform. Each pass splits the
+     * current sub-sequences by one radix, alternating between the data arrays
+     * and per-thread work arrays so no bit-reversal pass is needed.
+     */
+    private static void mixedRadix(Plan plan, double[] re, double[] im, double sign) {
+        int n = plan.n;
+        double[][] work = getWork(n);
+        double[] xr = re;
+        double[] xi = im;
+        double[] yr = work[0];
+        double[] yi = work[1];
+        double[] cosTable = plan.cosTable;
+        double[] sinTable = plan.sinTable;
+        int stride = 1;
+        int len = n;
+        for (int radix : plan.factors) {
+            int m = len / radix;
+            for (int p = 0; p < m; p++) {
+                int twiddleStep = p * stride;
+                for (int q = 0; q < stride; q++) {
+                    int in = q + stride * p;
+                    int inStep = stride * m;
+                    int out = q + stride * radix * p;
+                    switch (radix) {
+                        case 2:
+                            butterfly2(xr, xi, yr, yi, in, inStep, out, stride, twiddleStep, cosTable, sinTable, sign, n);
+                            break;
+                        case 3:
+                            butterfly3(xr, xi, yr, yi, in, inStep, out, stride, twiddleStep, cosTable, sinTable, sign, n);
+                            break;
+                        case 4:
+                            butterfly4(xr, xi, yr, yi, in, inStep, out, stride, twiddleStep, cosTable, sinTable, sign, n);
+                            break;
+                        default:
+                            butterfly5(xr, xi, yr, yi, in, inStep, out, stride, twiddleStep, cosTable, sinTable, sign, n);
+                            break;
+                    }
+                }
+            }
+            double[] swap = xr;
+            xr = yr;
+            yr = swap;
+            swap = xi;
+            xi = yi;
+            yi = swap;
+            stride *= radix;
+            len = m;
+        }
+        if (xr != re) {
+            System.arraycopy(xr, 0, re, 0, n);
+            System.arraycopy(xi, 0, im, 0, n);
+        }
+    }
+
+    private static void storeTwiddled(double[] yr, double[] yi, int index, double r, double i,
+                                      int twiddle, double[] cosTable, double[] sinTable, double sign) {
+        if (twiddle == 0) {
+            yr[index] = r;
+            yi[index] = i;
+        } else {
+            double wr = cosTable[twiddle];
+            double wi = sign * sinTable[twiddle];
+            yr[index] = r * wr - i * wi;
+            yi[index] = r * wi + i * wr;
+        }
+    }
+
+    private static void butterfly2(double[] xr, double[] xi, double[] yr, double[] yi, int in, int inStep,
+                                   int out, int stride, int twiddleStep, double[] cosTable, double[] sinTable,
+                                   double sign, int n) {
+        double r0 = xr[in];
+        double i0 = xi[in];
+        double r1 = xr[in + inStep];
+        double i1 = xi[in + inStep];
+        yr[out] = r0 + r1;
+        yi[out] = i0 + i1;
+        storeTwiddled(yr, yi, out + stride, r0 - r1, i0 - i1, twiddleStep, cosTable, sinTable, sign);
+    }
+
+    private static void butterfly3(double[] xr, double[] xi, double[] yr, double[] yi, int in, int inStep,
+                                   int out, int stride, int twiddleStep, double[] cosTable, double[] sinTable,
+                                   double sign, int n) {
+        double r0 = xr[in];
+        double i0 = xi[in];
+        double r1 = xr[in + inStep];
+        double i1 = xi[in + inStep];
+        double r2 = xr[in + 2 * inStep];
+        double i2 = xi[in + 2 * inStep];
+        double sr = r1 + r2;
+        double si = i1 + i2;
+        double tr = r0 - 0.5 * sr;
+        double ti = i0 - 0.5 * si;
+        double s = sign * SIN_60;
+        // i * s * (a1 - a2)
+        double ur = -s * (i1 - i2);
+        double ui = s * (r1 - r2);
+        yr[out] = r0 + sr;
+        yi[out] = i0 + si;
+        storeTwiddled(yr, yi, out + stride, tr + ur, ti + ui, twiddleStep, cosTable, sinTable, sign);
+        storeTwiddled(yr, yi, out + 2 * stride, tr - ur, ti - ui, (2 * twiddleStep) % n, cosTable, sinTable, sign);
+    }
+
+    private static void butterfly4(double[] xr, double[] xi, double[] yr, double[] yi, int in, int inStep,
+                                   int out, int stride, int twiddleStep, double[] cosTable, double[] sinTable,
+                                   double sign, int n) {
+        double r0 = xr[in];
+        double i0 = xi[in];
+        double r1 = xr[in + inStep];
+        double i1 = xi[in + inStep];
+        double r2 = xr[in + 2 * inStep];
+        double i2 = xi[in + 2 * inStep];
+        double r3 = xr[in + 3 * inStep];
+        double i3 = xi[in + 3 * inStep];
+        double ar = r0 + r2;
+        double ai = i0 + i2;
+        double br = r0 - r2;
+        double bi = i0 - i2;
+        double cr = r1 + r3;
+        double ci = i1 + i3;
+        // sign * i * (a1 - a3)
+        double dr = -sign * (i1 - i3);
+        double di = sign * (r1 - r3);
+        yr[out] = ar + cr;
+        yi[out] = ai + ci;
+        storeTwiddled(yr, yi, out + stride, br + dr, bi + di, twiddleStep, cosTable, sinTable, sign);
+        storeTwiddled(yr, yi, out + 2 * stride, ar - cr, ai - ci, (2 * twiddleStep) % n, cosTable, sinTable, sign);
+        storeTwiddled(yr, yi, out + 3 * stride, br - dr, bi - di, (3 * twiddleStep) % n, cosTable, sinTable, sign);
+    }
+
+    private static void butterfly5(double[] xr, double[] xi, double[] yr, double[] yi, int in, int inStep,
+                                   int out, int stride, int twiddleStep, double[] cosTable, double[] sinTable,
+                                   double sign, int n) {
+        double r0 = xr[in];
+        double i0 = xi[in];
+        double r1 = xr[in + inStep];
+        double i1 = xi[in + inStep];
+        double r2 = xr[in + 2 * inStep];
+        double i2 = xi[in + 2 * inStep];
+        double r3 = xr[in + 3 * inStep];
+        double i3 = xi[in + 3 * inStep];
+        double r4 = xr[in + 4 * inStep];
+        double i4 = xi[in + 4 * inStep];
+        double s14r = r1 + r4;
+        double s14i = i1 + i4;
+        double d14r = r1 - r4;
+        double d14i = i1 - i4;
+        double s23r = r2 + r3;
+        double s23i = i2 + i3;
+        double d23r = r2 - r3;
+        double d23i = i2 - i3;
+
+        double t1r = r0 + COS_72 * s14r + COS_144 * s23r;
+        double t1i = i0 + COS_72 * s14i + COS_144 * s23i;
+        double t2r = r0 + COS_144 * s14r + COS_72 * s23r;
+        double t2i = i0 + COS_144 * s14i + COS_72 * s23i;
+        // i * sign * (s1 * d14 + s2 * d23) and i * sign * (s2 * d14 - s1 * d23)
+        double u1r = -sign * (SIN_72 * d14i + SIN_144 * d23i);
+        double u1i = sign * (SIN_72 * d14r + SIN_144 * d23r);
+        double u2r = -sign * (SIN_144 * d14i - SIN_72 * d23i);
+        double u2i = sign * (SIN_144 * d14r - SIN_72 * d23r);
+
+        yr[out] = r0 + s14r + s23r;
+        yi[out] = i0 + s14i + s23i;
+        storeTwiddled(yr, yi, out + stride, t1r + u1r, t1i + u1i, twiddleStep, cosTable, sinTable, sign);
+        storeTwiddled(yr, yi, out + 2 * stride, t2r + u2r, t2i + u2i, (2 * twiddleStep) % n, cosTable, sinTable, sign);
+        storeTwiddled(yr, yi, out + 3 * stride, t2r - u2r, t2i - u2i, (3 * twiddleStep) % n, cosTable, sinTable, sign);
+        storeTwiddled(yr, yi, out + 4 * stride, t1r - u1r, t1i - u1i, (4 * twiddleStep) % n, cosTable, sinTable, sign);
+    }
+
+    /**
+     * Transform of arbitrary size as a circular convolution with a chirp,
+     * evaluated with power of 2 transforms.
+     */
+    private static void bluestein(Bluestein tables, double[] re, double[] im, int n, double sign) {
+        int m = tables.m;
+        double[][] work = getWork(m);
+        double[] ar = work[2];
+        double[] ai = work[3];
+        double[] chirpCos = tables.chirpCos;
+        double[] chirpSin = tables.chirpSin;
+        for (int k = 0; k < n; k++) {
+            double wr = chirpCos[k];
+            double wi = sign * chirpSin[k];
+            ar[k] = re[k] * wr - im[k] * wi;
+            ai[k] = re[k] * wi + im[k] * wr;
+        }
+        Arrays.fill(ar, n, m, 0.0);
+        Arrays.fill(ai, n, m, 0.0);
+        transform(ar, ai, m, -1.0);
+        double[] kr = sign < 0.0 ? tables.kernelFwdRe : tables.kernelInvRe;
+        double[] ki = sign < 0.0 ? tables.kernelFwdIm : tables.kernelInvIm;
+        for (int k = 0; k < m; k++) {
+            double r = ar[k] * kr[k] - ai[k] * ki[k];
+            double i = ar[k] * ki[k] + ai[k] * kr[k];
+            ar[k] = r;
+            ai[k] = i;
+        }
+        transform(ar, ai, m, 1.0);
+        double scale = 1.0 / m;
+        for (int k = 0; k < n; k++) {
+            double wr = chirpCos[k];
+            double wi = sign * chirpSin[k];
+            double r = ar[k] * scale;
+            double i = ai[k] * scale;
+            re[k] = r * wr - i * wi;
+            im[k] = r * wi + i * wr;
+        }
+    }
+
+    /**
+     * Rotate the first n values of the arrays so the first value moves to the
+     * middle (index n / 2). Used to move zero frequency to the center of the
+     * spectrum after a forward transform. For even n this swaps the first and
+     * second halves.
+     *
+     * @param re real values
+     * @param im imaginary values
+     * @param n  number of values
+     */
+    public static void swapHalves(double[] re, double[] im, int n) {
+        int mid = n / 2;
+        if ((n % 2) == 0) {
+            for (int i = 0; i < mid; i++) {
+                double tmp = re[i];
+                re[i] = re[i + mid];
+                re[i + mid] = tmp;
+                tmp = im[i];
+                im[i] = im[i + mid];
+                im[i + mid] = tmp;
+            }
+        } else {
+            rotateRight(re, n, mid);
+            rotateRight(im, n, mid);
+        }
+    }
+
+    /**
+     * Undo {@link #swapHalves(double[], double[], int)}, moving the middle
+     * value (index n / 2) to the front. Used before an inverse transform of a
+     * centered spectrum.
+     *
+     * @param re real values
+     * @param im imaginary values
+     * @param n  number of values
+     */
+    public static void unswapHalves(double[] re, double[] im, int n) {
+        if ((n % 2) == 0) {
+            swapHalves(re, im, n);
+        } else {
+            int shift = n - n / 2;
+            rotateRight(re, n, shift);
+            rotateRight(im, n, shift);
+        }
+    }
+
+    private static void rotateRight(double[] values, int n, int shift) {
+        reverse(values, 0, n - 1);
+        reverse(values, 0, shift - 1);
+        reverse(values, shift, n - 1);
+    }
+
+    private static void reverse(double[] values, int first, int last) {
+        while (first < last) {
+            double tmp = values[first];
+            values[first] = values[last];
+            values[last] = tmp;
+            first++;
+            last--;
+        }
+    }
+
+    /**
+     * Get per-thread scratch arrays for real and imaginary values with at
+     * least the specified length. The arrays are reused by later calls on the
+     * same thread, so callers must not hold on to them.
+     *
+     * @param n minimum length
+     * @return array whose first row holds real and second row imaginary values
+     */
+    public static double[][] getScratch(int n) {
+        double[][] scratch = SCRATCH.get();
+        if (scratch[0].length < n) {
+            scratch[0] = new double[n];
+            scratch[1] = new double[n];
+        }
+        return scratch;
+    }
+
+    /**
+     * Copy Complex values into the per-thread scratch arrays.
+     *
+     * @param cvec the source values
+     * @param n    number of values to copy
+     * @return scratch array with real and imaginary rows
+     */
+    static double[][] toScratch(Complex[] cvec, int n) {
+        double[][] scratch = getScratch(n);
+        double[] re = scratch[0];
+        double[] im = scratch[1];
+        for (int i = 0; i < n; i++) {
+            re[i] = cvec[i].getReal();
+            im[i] = cvec[i].getImaginary();
+        }
+        return scratch;
+    }
+
+    /**
+     * Copy values from split arrays back into an array of Complex.
+     *
+     * @param re   real values
+     * @param im   imaginary values
+     * @param cvec the target array
+     * @param n    number of values to copy
+     */
+    static void fromScratch(double[] re, double[] im, Complex[] cvec, int n) {
+        for (int i = 0; i < n; i++) {
+            cvec[i] = new Complex(re[i], im[i]);
+        }
+    }
+}
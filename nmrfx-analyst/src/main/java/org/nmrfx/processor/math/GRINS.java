@@ -112,8 +112,10 @@ public class GRINS {
                 matrix.doPhaseTD(phase, negateImag, negatePairs);
             }
             // could just copy the actually sample values to vector
-            MatrixND matrixCopy = new MatrixND(matrix);
-            double[] addBuffer = new double[matrix.getNElems()];
+            MatrixWorkspace workspace = MatrixWorkspace.get();
+            double[] origValues = workspace.getBuffer(MatrixWorkspace.Slot.ORIG, matrix.getNElems());
+            matrix.copyDataTo(origValues);
+            double[] addBuffer = workspace.getZeroedBuffer(MatrixWorkspace.Slot.ADD, matrix.getNElems());
             int nPeaks = 0;
             int iteration;
 
@@ -178,7 +180,7 @@ public class GRINS {
             matrix.doHIFT(1.0);
             MatrixND.MatrixDiff deltaToOrig;
             if (calcStats) {
-                deltaToOrig = matrix.calcDifference(matrixCopy, srcTargetMap);
+                deltaToOrig = matrix.calcDifference(origValues, srcTargetMap);
             } else {
                 deltaToOrig = new MatrixND.MatrixDiff(0.0, 1.0);
             }
@@ -187,7 +189,7 @@ public class GRINS {
                 fileWriter.write(outLine);
             }
             if (!residual && !synthetic) {
-                matrix.copyValuesFrom(matrixCopy, srcTargetMap);
+                matrix.copyValuesFrom(origValues, srcTargetMap);
             }
 
         } catch (IOException ioE) {
@@ -18,9 +18,6 @@
 package org.nmrfx.processor.math;
 
 import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import org.nmrfx.datasets.MatrixType;
 import org.nmrfx.processor.processing.ProcessingException;
 
@@ -303,11 +300,11 @@ public class Matrix implements MatrixType {
     }
 
     private void apache_fftd(double[][] dataRI) {
-        FastFourierTransformer.transformInPlace(dataRI, DftNormalization.STANDARD, TransformType.FORWARD);
+        FFTEngine.fft(dataRI[0], dataRI[1], dataRI[0].length);
     }
 
     private void apache_iftd(double[][] dataRI) {
-        FastFourierTransformer.transformInPlace(dataRI, DftNormalization.STANDARD, TransformType.INVERSE);
+        FFTEngine.ifft(dataRI[0], dataRI[1], dataRI[0].length);
     }
 
     private void ftRow(int row, double[][] dataRI) {
@@ -18,9 +18,6 @@
 package org.nmrfx.processor.math;
 
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.MultidimensionalCounter;
 import org.nmrfx.datasets.MatrixType;
@@ -39,9 +36,17 @@ import java.nio.IntBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class MatrixND implements MatrixType {
 
+    /**
+     * Minimum number of vectors along an axis before the FFTs of the axis are
+     * split between threads.
+     */
+    private static final int MIN_PARALLEL_VECTORS = 64;
+
     private double[] data;
     private int[] sizes;
     int[] vSizes;
@@ -62,6 +67,12 @@ public class MatrixND implements MatrixType {
 
     public SampleSchedule schedule = null;
 
+    private boolean parallel = false;
+
+    @FunctionalInterface
+    private interface VectorTask {
+        void apply(double[][] riVec, int offset);
+    }
 
     public MatrixND(int... sizes) {
         this.sizes = sizes.clone();
@@ -96,6 +107,31 @@ public class MatrixND implements MatrixType {
         System.arraycopy(source.data, 0, data, 0, data.length);
     }
 
+    /**
+     * Create a matrix with the shape of the source matrix that stores its
+     * values in the specified array, which is typically a reused work buffer.
+     * The values are not copied from the source.
+     *
+     * @param source a matrix with the shape to use
+     * @param values the array for the values, with one element for each
+     *               element of the matrix
+     */
+    public MatrixND(MatrixND source, double[] values) {
+        if (values.length != source.nElems) {
+            throw new ProcessingException("Buffer size " + values.length + " doesn't match matrix size " + source.nElems);
+        }
+        sizes = source.sizes.clone();
+        strides = source.strides.clone();
+        nDim = sizes.length;
+        nElems = source.nElems;
+        data = values;
+        vSizes = sizes.clone();
+        phases0 = new double[nDim];
+        phases1 = new double[nDim];
+        negateImags = new boolean[nDim];
+        negatePairss = new boolean[nDim];
+    }
+
     public MatrixND(double[][] data2D) {
         this(data2D.length, data2D[0].length);
         int n = data2D.length;
@@ -258,6 +294,22 @@ public class MatrixND implements MatrixType {
         return nDim;
     }
 
+    /**
+     * Set whether the FFTs along each axis are split between the threads of
+     * the common fork-join pool. This is worthwhile when fewer matrices are
+     * being processed than there are processing threads, so that the
+     * reconstruction of one matrix can use otherwise idle cores.
+     *
+     * @param parallel true to process the vectors of each axis in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
     public double getPh0(int i) {
         return phases0[i];
     }
@@ -310,20 +362,6 @@ public class MatrixND implements MatrixType {
         }
     }
 
-    private void getVectorR(int axis, double[][] riVec, int... index) {
-        int offset = 0;
-        for (int k = 0, i = 0; i < nDim; i++) {
-            if (i != axis) {
-                offset += index[k++] * strides[i];
-            }
-        }
-        int n = riVec[0].length;
-        for (int i = 0; i < n; i++) {
-            riVec[0][i] = data[offset];
-            offset += strides[axis];
-        }
-    }
-
     public final void getVectorZF(int axis, double[][] riVec, int... index) {
         int offset = 0;
         for (int k = 0, i = 0; i < nDim; i++) {
@@ -399,11 +437,11 @@ public class MatrixND implements MatrixType {
     }
 
     private void fft(double[][] riVec) {
-        FastFourierTransformer.transformInPlace(riVec, DftNormalization.STANDARD, TransformType.FORWARD);
+        FFTEngine.fft(riVec[0], riVec[1], riVec[0].length);
     }
 
     private void ifft(double[][] riVec) {
-        FastFourierTransformer.transformInPlace(riVec, DftNormalization.STANDARD, TransformType.INVERSE);
+        FFTEngine.ifft(riVec[0], riVec[1], riVec[0].length);
     }
 
     private void fftShuffle(double[][] riVec) {
@@ -537,16 +575,98 @@ public class MatrixND implements MatrixType {
     }
 
     public void doFTtoReal(int axis) {
-        int[] subSizes = getSubSizes(axis);
-        double[][] riVec = new double[2][sizes[axis]];
-        MultidimensionalCounter mdCounter = new MultidimensionalCounter(subSizes);
-        MultidimensionalCounter.Iterator iterator = mdCounter.iterator();
-        while (iterator.hasNext()) {
-            iterator.next();
-            int[] counts = iterator.getCounts();
-            getVectorZF(axis, riVec, counts);
+        forEachVector(axis, (riVec, offset) -> {
+            getVectorZFAt(axis, riVec, offset);
             fft(riVec);
-            putVectorReal(axis, riVec, counts);
+            putVectorRealAt(axis, riVec, offset);
+        });
+    }
+
+    /**
+     * Get the offset of the first element of a vector along an axis.
+     *
+     * @param axis the axis of the vector
+     * @param iVec the index of the vector among all vectors along the axis
+     * @return the offset
+     */
+    private int vectorOffset(int axis, int iVec) {
+        int offset = 0;
+        for (int i = 0; i < nDim; i++) {
+            if (i != axis) {
+                offset += (iVec % sizes[i]) * strides[i];
+                iVec /= sizes[i];
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Apply a task to every vector along an axis. The vectors are independent
+     * so when the matrix is in parallel mode they are divided into chunks that
+     * are processed by the common fork-join pool, each thread using its own
+     * work arrays.
+     */
+    private void forEachVector(int axis, VectorTask task) {
+        int vecSize = sizes[axis];
+        int nVectors = nElems / vecSize;
+        int nThreads = ForkJoinPool.getCommonPoolParallelism();
+        if (parallel && (nThreads > 1) && (nVectors >= MIN_PARALLEL_VECTORS)) {
+            int nChunks = Math.min(nVectors, nThreads * 4);
+            IntStream.range(0, nChunks).parallel().forEach(iChunk -> {
+                double[][] riVec = MatrixWorkspace.get().getRIVec(vecSize);
+                int start = (int) ((long) nVectors * iChunk / nChunks);
+                int end = (int) ((long) nVectors * (iChunk + 1) / nChunks);
+                for (int iVec = start; iVec < end; iVec++) {
+                    task.apply(riVec, vectorOffset(axis, iVec));
+                }
+            });
+        } else {
+            double[][] riVec = MatrixWorkspace.get().getRIVec(vecSize);
+            for (int iVec = 0; iVec < nVectors; iVec++) {
+                task.apply(riVec, vectorOffset(axis, iVec));
+            }
+        }
+    }
+
+    private void getVectorZFAt(int axis, double[][] riVec, int offset) {
+        int n = sizes[axis] / 2;
+        int stride = strides[axis];
+        for (int i = 0; i < n; i++) {
+            riVec[0][i] = data[offset];
+            offset += stride;
+            riVec[1][i] = data[offset];
+            offset += stride;
+        }
+        Arrays.fill(riVec[0], n, riVec[0].length, 0.0);
+        Arrays.fill(riVec[1], n, riVec[1].length, 0.0);
+    }
+
+    private void getVectorRAt(int axis, double[][] riVec, int offset) {
+        int n = riVec[0].length;
+        int stride = strides[axis];
+        for (int i = 0; i < n; i++) {
+            riVec[0][i] = data[offset];
+            offset += stride;
+        }
+    }
+
+    private void putVectorRealAt(int axis, double[][] riVec, int offset) {
+        int n = riVec[0].length;
+        int stride = strides[axis];
+        for (int i = 0; i < n; i++) {
+            data[offset] = riVec[0][i];
+            offset += stride;
+        }
+    }
+
+    private void putVectorRIAt(int axis, double[][] riVec, int offset) {
+        int n = sizes[axis] / 2;
+        int stride = strides[axis];
+        for (int i = 0; i < n; i++) {
+            data[offset] = riVec[0][i];
+            offset += stride;
+            data[offset] = riVec[1][i];
+            offset += stride;
         }
     }
 
@@ -727,17 +847,11 @@ public class MatrixND implements MatrixType {
     }
 
     public void doHIFT(int axis, double fpMul) {
-        int[] subSizes = getSubSizes(axis);
-        double[][] riVec = new double[2][sizes[axis]];
-        MultidimensionalCounter mdCounter = new MultidimensionalCounter(subSizes);
-        MultidimensionalCounter.Iterator iterator = mdCounter.iterator();
-        while (iterator.hasNext()) {
-            iterator.next();
-            int[] counts = iterator.getCounts();
-            getVectorR(axis, riVec, counts);
+        forEachVector(axis, (riVec, offset) -> {
+            getVectorRAt(axis, riVec, offset);
             VecUtil.hift(riVec, riVec[0].length, fpMul);
-            putVectorRI(axis, riVec, counts);
-        }
+            putVectorRIAt(axis, riVec, offset);
+        });
     }
 
     static int getZfSize(double vecSize, int factor) {
@@ -885,17 +999,25 @@ public class MatrixND implements MatrixType {
     }
 
     public void copyValuesFrom(MatrixND source, int[] srcTargetMap) {
+        copyValuesFrom(source.data, srcTargetMap);
+    }
+
+    public void copyValuesFrom(double[] source, int[] srcTargetMap) {
         for (int i : srcTargetMap) {
-            data[i] = source.data[i];
+            data[i] = source[i];
         }
     }
 
     public record MatrixDiff(double mabs, double max) {};
     public MatrixDiff calcDifference(MatrixND source, int[] srcTargetMap) {
+        return calcDifference(source.data, srcTargetMap);
+    }
+
+    public MatrixDiff calcDifference(double[] source, int[] srcTargetMap) {
         double sum = 0.0;
         double max = 0.0;
         for (int i : srcTargetMap) {
-            double v1 = source.data[i];
+            double v1 = source[i];
             double v2 = data[i];
             max = Math.max(max, Math.abs(v1));
             sum += FastMath.abs(v1 - v2);
@@ -0,0 +1,120 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.math;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Work buffers for the iterative NUS reconstructions (IST, NESTA and GRINS),
+ * kept per thread so that a processing thread reconstructing one matrix after
+ * another reuses the same arrays instead of allocating new ones for every
+ * matrix and every FFT pass. The processor releases the workspace of its
+ * threads at the end of each processing pass. Threads it doesn't own, like
+ * those of the common pool used for parallel FFTs, keep only the arrays for
+ * the most recent vector sizes.
+ */
+public final class MatrixWorkspace {
+
+    /**
+     * The work buffers a reconstruction can use at the same time.
+     */
+    public enum Slot {
+        ADD,
+        ORIG,
+        GRAD,
+        Y,
+        Z,
+        W,
+        X_PLUG
+    }
+
+    // enough for the vector sizes of each dimension of one matrix
+    private static final int MAX_RI_SIZES = 4;
+    private static final ThreadLocal<MatrixWorkspace> WORKSPACE = ThreadLocal.withInitial(MatrixWorkspace::new);
+
+    private final double[][] buffers = new double[Slot.values().length][];
+    private final Map<Integer, double[][]> riVecs = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, double[][]> eldest) {
+            return size() > MAX_RI_SIZES;
+        }
+    };
+
+    private MatrixWorkspace() {
+    }
+
+    /**
+     * Get the workspace of the current thread.
+     *
+     * @return the workspace
+     */
+    public static MatrixWorkspace get() {
+        return WORKSPACE.get();
+    }
+
+    /**
+     * Get a buffer of the specified size. The contents are left from the last
+     * use of the slot if it had the same size.
+     *
+     * @param slot the buffer to get
+     * @param size the size needed
+     * @return the buffer
+     */
+    public double[] getBuffer(Slot slot, int size) {
+        double[] buffer = buffers[slot.ordinal()];
+        if ((buffer == null) || (buffer.length != size)) {
+            buffer = new double[size];
+            buffers[slot.ordinal()] = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Get a buffer of the specified size with all values set to zero.
+     *
+     * @param slot the buffer to get
+     * @param size the size needed
+     * @return the buffer
+     */
+    public double[] getZeroedBuffer(Slot slot, int size) {
+        double[] buffer = getBuffer(slot, size);
+        Arrays.fill(buffer, 0.0);
+        return buffer;
+    }
+
+    /**
+     * Get a pair of real and imaginary arrays of exactly the specified size,
+     * as used for the FFT of one vector of a matrix.
+     *
+     * @param size the size of the arrays
+     * @return the real and imaginary arrays
+     */
+    double[][] getRIVec(int size) {
+        return riVecs.computeIfAbsent(size, n -> new double[2][n]);
+    }
+
+    /**
+     * Release the buffers of the current thread, so they can be garbage
+     * collected while the thread is idle.
+     */
+    public static void release() {
+        WORKSPACE.remove();
+    }
+}
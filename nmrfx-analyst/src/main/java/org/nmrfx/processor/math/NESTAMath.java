@@ -79,7 +79,10 @@ public class NESTAMath {
         if (zeroAtStart) {
             matrix.zeroValues(zeroList);
         }
-        MatrixND gradMatrix = new MatrixND(matrix);
+        int n = matrix.getNElems();
+        MatrixWorkspace workspace = MatrixWorkspace.get();
+        MatrixND gradMatrix = new MatrixND(matrix, workspace.getBuffer(MatrixWorkspace.Slot.GRAD, n));
+        gradMatrix.setParallel(matrix.isParallel());
 
         gradMatrix.copyFrom(matrix);
         gradMatrix.doFTtoReal();
@@ -90,11 +93,10 @@ public class NESTAMath {
             return;
         }
 
-        int n = matrix.getNElems();
-        double[] zValues = new double[n];  // zk of page 5
-        double[] yValues = new double[n];  // yk of page 5
-        double[] wValues = new double[n];  // cumulative gradient
-        double[] xPlug = new double[n];    // matrix values at beginning of inner loop
+        double[] zValues = workspace.getBuffer(MatrixWorkspace.Slot.Z, n);  // zk of page 5
+        double[] yValues = workspace.getBuffer(MatrixWorkspace.Slot.Y, n);  // yk of page 5
+        double[] wValues = workspace.getBuffer(MatrixWorkspace.Slot.W, n);  // cumulative gradient
+        double[] xPlug = workspace.getBuffer(MatrixWorkspace.Slot.X_PLUG, n);    // matrix values at beginning of inner loop
 
         double muStart = maxAbs * 0.9;  // based on page 11 of NESTA paper
         // fixme  good value for muFinal?/ should this be an argument?
@@ -34,9 +34,6 @@ import org.apache.commons.math3.random.SynchronizedRandomGenerator;
 import org.apache.commons.math3.random.UncorrelatedRandomVectorGenerator;
 import org.apache.commons.math3.random.Well19937c;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import org.apache.commons.math3.util.FastMath;
 import org.apache.commons.math3.util.ResizableDoubleArray;
 import org.nmrfx.annotations.PluginAPI;
@@ -643,8 +640,14 @@ public class Vec extends VecBase {
      * @return The original array with now containing the FFT
      */
     public static Complex[] apache_rfft(final double[] ftvec) {
-        FastFourierTransformer ffTrans = new FastFourierTransformer(DftNormalization.STANDARD);
-        return ffTrans.transform(ftvec, TransformType.FORWARD);
+        final int ftSize = ftvec.length;
+        double[][] scratch = FFTEngine.getScratch(ftSize);
+        System.arraycopy(ftvec, 0, scratch[0], 0, ftSize);
+        Arrays.fill(scratch[1], 0, ftSize, 0.0);
+        FFTEngine.fft(scratch[0], scratch[1], ftSize);
+        Complex[] ftResult = new Complex[ftSize];
+        FFTEngine.fromScratch(scratch[0], scratch[1], ftResult, ftSize);
+        return ftResult;
     }
 
     /**
@@ -656,7 +659,6 @@ public class Vec extends VecBase {
      */
     public Vec apache_fft(final boolean negate) {
         if (isComplex()) {
-            checkPowerOf2();
             Complex[] ftvec = new Complex[size];
             if (negate) {
                 for (int i = 0; i < size; i++) {
@@ -680,12 +682,11 @@ public class Vec extends VecBase {
      * @return The original array with now containing the FFT
      */
     public static Complex[] apache_fft(final Complex[] ftvec) {
-        FastFourierTransformer ffTrans = new FastFourierTransformer(DftNormalization.STANDARD);
-        Complex[] ftResult = ffTrans.transform(ftvec, TransformType.FORWARD);
         final int ftSize = ftvec.length;
-        final int mid = ftSize / 2;
-        System.arraycopy(ftResult, 0, ftvec, mid, ftSize / 2);
-        System.arraycopy(ftResult, mid, ftvec, 0, ftSize / 2);
+        double[][] scratch = FFTEngine.toScratch(ftvec, ftSize);
+        FFTEngine.fft(scratch[0], scratch[1], ftSize);
+        FFTEngine.swapHalves(scratch[0], scratch[1], ftSize);
+        FFTEngine.fromScratch(scratch[0], scratch[1], ftvec, ftSize);
         return ftvec;
     }
 
@@ -696,7 +697,6 @@ public class Vec extends VecBase {
      */
     public Vec apache_ift() {
         if (isComplex()) {
-            checkPowerOf2();
             Complex[] ftvec = new Complex[size];
             System.arraycopy(cvec, 0, ftvec, 0, size);
 
@@ -716,13 +716,10 @@ public class Vec extends VecBase {
      */
     public static Complex[] apache_ift(final Complex[] ftIn) {
         final int ftSize = ftIn.length;
-        Complex[] ftvec = new Complex[ftSize];
-        int mid = ftSize / 2;
-        System.arraycopy(ftIn, 0, ftvec, mid, ftSize / 2);
-        System.arraycopy(ftIn, mid, ftvec, 0, ftSize / 2);
-        FastFourierTransformer ffTrans = new FastFourierTransformer(DftNormalization.STANDARD);
-        Complex[] ftResult = ffTrans.transform(ftvec, TransformType.INVERSE);
-        System.arraycopy(ftResult, 0, ftIn, 0, ftSize);
+        double[][] scratch = FFTEngine.toScratch(ftIn, ftSize);
+        FFTEngine.unswapHalves(scratch[0], scratch[1], ftSize);
+        FFTEngine.ifft(scratch[0], scratch[1], ftSize);
+        FFTEngine.fromScratch(scratch[0], scratch[1], ftIn, ftSize);
         return ftIn;
     }
 
@@ -1067,23 +1064,19 @@ public class Vec extends VecBase {
      */
     public void fft(boolean negatePairs, boolean negateImaginary, boolean fixGroupDelay) {
         if (isComplex()) {
-            if (!useApache()) {
-                makeApache();
+            if (useApache()) {
+                makeNotApache();
             }
             if (negatePairs) {
                 negatePairs();
             }
-            checkPowerOf2();
-            Complex[] ftvector = new Complex[getSize()];
             if (negateImaginary) {
-                for (int i = 0; i < getSize(); i++) {
-                    ftvector[i] = new Complex(cvec[i].getReal(), -cvec[i].getImaginary());
+                for (int i = 0; i < size; i++) {
+                    ivec[i] = -ivec[i];
                 }
-            } else {
-                System.arraycopy(cvec, 0, ftvector, 0, getSize());
             }
-            Complex[] ftResult = apache_fft(ftvector);
-            System.arraycopy(ftResult, 0, cvec, 0, getSize());
+            FFTEngine.fft(rvec, ivec, size);
+            FFTEngine.swapHalves(rvec, ivec, size);
             setFreqDomain(true);
             if (fixGroupDelay) {
                 fixGroupDelay();
@@ -1107,20 +1100,16 @@ public class Vec extends VecBase {
      */
     public void ifft(boolean negatePairs, boolean negateImaginary) {
         if (isComplex()) {
-            if (!useApache()) {
-                makeApache();
+            if (useApache()) {
+                makeNotApache();
             }
-            checkPowerOf2();
-            Complex[] ftvector = new Complex[getSize()];
-            System.arraycopy(cvec, 0, ftvector, 0, getSize());
-            Complex[] ftResult = apache_ift(ftvector);
+            FFTEngine.unswapHalves(rvec, ivec, size);
+            FFTEngine.ifft(rvec, ivec, size);
 
             if (negateImaginary) {
-                for (int i = 0; i < getSize(); i++) {
-                    cvec[i] = new Complex(ftResult[i].getReal(), -ftResult[i].getImaginary());
+                for (int i = 0; i < size; i++) {
+                    ivec[i] = -ivec[i];
                 }
-            } else {
-                System.arraycopy(ftResult, 0, cvec, 0, getSize());
             }
 
             setFreqDomain(false);
@@ -1137,10 +1126,10 @@ public class Vec extends VecBase {
      */
     public void ft() {
         if (isComplex) {
-            if (!useApache) {
-                makeApache();
+            if (useApache) {
+                makeNotApache();
             }
-            Cfft.cfft(cvec, size, 0);
+            Cfft.cfft(rvec, ivec, size, 0);
             freqDomain = true;
         }
     }
@@ -1167,28 +1156,29 @@ public class Vec extends VecBase {
     public void rft(boolean inverse, boolean negatePairs, boolean negateOdd) {
         if (!isComplex) {
             checkPowerOf2();
-            double[] ftvec = new double[size];
             if (negatePairs) {
                 negatePairs();
             }
             if (negateOdd) {
                 negateImaginary();
             }
-            System.arraycopy(rvec, 0, ftvec, 0, size);
-
-            Complex[] ftResult = apache_rfft(ftvec);
+            int ftSize = size;
+            double[][] scratch = FFTEngine.getScratch(ftSize);
+            double[] ftReal = scratch[0];
+            double[] ftImag = scratch[1];
+            System.arraycopy(rvec, 0, ftReal, 0, ftSize);
+            Arrays.fill(ftImag, 0, ftSize, 0.0);
+            FFTEngine.fft(ftReal, ftImag, ftSize);
 
             makeComplex();
 
-            int newSize = ftResult.length / 2;
+            int newSize = ftSize / 2;
             resize(newSize, true);
             if (useApache) {
-                System.arraycopy(ftResult, 0, cvec, 0, newSize);
+                FFTEngine.fromScratch(ftReal, ftImag, cvec, newSize);
             } else {
-                for (int i = 0; i < size; ++i) {
-                    rvec[i] = ftResult[i].getReal();
-                    ivec[i] = ftResult[i].getImaginary();
-                }
+                System.arraycopy(ftReal, 0, rvec, 0, newSize);
+                System.arraycopy(ftImag, 0, ivec, 0, newSize);
             }
             freqDomain = true;
         }
@@ -1375,11 +1365,11 @@ public class Vec extends VecBase {
      */
     public void ift() {
         if (isComplex) {
-            if (!useApache) {
-                makeApache();
+            if (useApache) {
+                makeNotApache();
             }
 
-            Cfft.ift(cvec, size);
+            Cfft.ift(rvec, ivec, size);
             freqDomain = false;
         }
     }
@@ -2402,6 +2392,9 @@ public class Vec extends VecBase {
         double xval;
         int nRegions;
 
+        if (isComplex) {
+            makeApache();
+        }
         if (cvec == null) {
             throw new VecException("tdpoly: no data in vector");
         }
@@ -2948,7 +2941,7 @@ public class Vec extends VecBase {
      */
     public Vec cwtd(int winSize) {
         if (isComplex()) {
-            // fixme check for apache mode
+            makeApache();
             cwtd(cvec, size, winSize);
         } else {
             cwtd(rvec, size, winSize);
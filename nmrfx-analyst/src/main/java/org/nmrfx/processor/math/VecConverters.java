@@ -17,7 +17,6 @@
  */
 package org.nmrfx.processor.math;
 
-import org.apache.commons.math3.complex.Complex;
 import org.nmrfx.processor.translate.Base64;
 
 import java.nio.ByteBuffer;
@@ -90,7 +89,7 @@ public class VecConverters {
                     real = false;
                 } else {
                     double dImaginary = (intVal0) + (intVal1) + (intVal2) + intVal3;
-                    vec.cvec[j] = new Complex(dReal, dImaginary);
+                    vec.set(j, dReal, dImaginary);
                     j++;
                     real = true;
                 }
@@ -139,7 +138,7 @@ public class VecConverters {
                     real = false;
                 } else {
                     double dImaginary = (intVal0) + (intVal1);
-                    vec.cvec[j] = new Complex(dReal, dImaginary);
+                    vec.set(j, dReal, dImaginary);
                     j++;
                     real = true;
                 }
@@ -168,7 +167,7 @@ public class VecConverters {
             for (int i = 0; i < vec.getSize(); i++) {
                 double dReal = doubleBuffer.get(i * 2);
                 double dImag = doubleBuffer.get(i * 2 + 1);
-                vec.cvec[i] = new Complex(dReal, dImag);
+                vec.set(i, dReal, dImag);
             }
         } else {
             for (int i = 0; i < vec.getSize(); i++) {
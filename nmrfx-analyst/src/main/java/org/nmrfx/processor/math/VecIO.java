@@ -17,8 +17,6 @@
  */
 package org.nmrfx.processor.math;
 
-import org.apache.commons.math3.complex.Complex;
-
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
@@ -89,7 +87,7 @@ public class VecIO {
             for (int i = 0; i < n; i++) {
                 double real = rList.get(i);
                 double imag = iList.get(i);
-                vec.cvec[i] = new Complex(real, imag);
+                vec.set(i, real, imag);
             }
         }
     }
@@ -25,9 +25,6 @@ import org.apache.commons.math3.exception.MathIllegalArgumentException;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
 import org.nmrfx.annotations.PluginAPI;
 import org.nmrfx.math.VecException;
 import org.nmrfx.processor.operations.Asmooth;
@@ -279,7 +276,7 @@ public class VecUtil {
             x[0][i] = 0.0;
             x[1][i] = 0.0;
         }
-        FastFourierTransformer.transformInPlace(x, DftNormalization.STANDARD, TransformType.INVERSE);
+        FFTEngine.ifft(x[0], x[1], x[0].length);
         x[0][0] = x[0][0] * fpMul;
         x[1][0] = x[1][0] * fpMul;
         int outSize = newSize / 2;
@@ -332,25 +329,25 @@ public class VecUtil {
         int origSize = n;
         int factor = 0;
         int newSize = (int) Math.round(Math.pow(2, Math.ceil((Math.log(n) / Math.log(2)) + factor)));
-        Complex[] xc = new Complex[newSize];
+        double[][] scratch = FFTEngine.getScratch(newSize);
+        double[] re = scratch[0];
+        double[] im = scratch[1];
         for (int i = 0; i < n; i++) {
-            xc[i] = new Complex(x[0][i] * 2.0, 0.0);
-        }
-        for (int i = n; i < newSize; i++) {
-            xc[i] = new Complex(0.0, 0.0);
+            re[i] = x[0][i] * 2.0;
         }
+        Arrays.fill(re, n, newSize, 0.0);
+        Arrays.fill(im, 0, newSize, 0.0);
 
-        xc = apache_ift(xc);
-        xc[0] = new Complex(xc[0].getReal() / 2, xc[0].getImaginary());
+        FFTEngine.unswapHalves(re, im, newSize);
+        FFTEngine.ifft(re, im, newSize);
+        re[0] /= 2;
         int outSize = newSize / 2;
-        for (int i = outSize; i < newSize; i++) {
-            xc[i] = new Complex(0.0, 0.0);
-        }
-        xc = Vec.apache_fft(xc);
-        for (int i = 0; i < origSize; i++) {
-            x[0][i] = xc[i].getReal();
-            x[1][i] = xc[i].getImaginary();
-        }
+        Arrays.fill(re, outSize, newSize, 0.0);
+        Arrays.fill(im, outSize, newSize, 0.0);
+        FFTEngine.fft(re, im, newSize);
+        FFTEngine.swapHalves(re, im, newSize);
+        System.arraycopy(re, 0, x[0], 0, origSize);
+        System.arraycopy(im, 0, x[1], 0, origSize);
     }
 
     /**
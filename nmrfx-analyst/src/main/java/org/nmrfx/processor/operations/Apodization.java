@@ -21,12 +21,17 @@ import org.nmrfx.datasets.MatrixType;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.processing.ProcessingException;
 
+import java.util.Arrays;
+
 /**
  * @author johnsonb
  */
 public abstract class Apodization extends MatrixOperation {
 
     protected double[] apodVec;
+    private int windowSize = -1;
+    private int windowStart = -1;
+    private double windowDwellTime = Double.NaN;
 
     protected void initApod(int vStart) {
         for (int i = 0; i < vStart; i++) {
@@ -34,74 +39,95 @@ public abstract class Apodization extends MatrixOperation {
         }
     }
 
+    /**
+     * Check whether the window has to be calculated for a vector with the
+     * specified size and start. The window only depends on these (and the
+     * dwell time) so it is calculated once and reused for all the vectors
+     * of a dimension instead of for each vector.
+     *
+     * @param size   the size the window is calculated for
+     * @param vStart the start of the data in the vector
+     * @return true if the window has to be (re)calculated
+     */
+    protected boolean windowChanged(int size, int vStart) {
+        return windowChanged(size, vStart, 0.0);
+    }
+
+    /**
+     * Check whether the window has to be calculated for a vector with the
+     * specified size, start and dwell time.
+     *
+     * @param size      the size the window is calculated for
+     * @param vStart    the start of the data in the vector
+     * @param dwellTime the dwell time of the vector
+     * @return true if the window has to be (re)calculated
+     */
+    protected boolean windowChanged(int size, int vStart, double dwellTime) {
+        if ((apodVec != null) && (size == windowSize) && (vStart == windowStart)
+                && (Double.compare(dwellTime, windowDwellTime) == 0)) {
+            return false;
+        }
+        windowSize = size;
+        windowStart = vStart;
+        windowDwellTime = dwellTime;
+        return true;
+    }
+
     public Operation evalMatrix(MatrixType matrix) throws ProcessingException {
         return this;
     }
 
     protected void applyApod(Vec vector) {
-        int size2;
-
-        if (apodVec.length < vector.getSize()) {
-            size2 = apodVec.length;
-        } else {
-            size2 = vector.getSize();
-        }
+        int size = vector.getSize();
+        int size2 = Math.min(apodVec.length, size);
         vector.setAnnotation(apodVec);
 
+        double[] rvec;
         if (vector.isComplex()) {
+            // work on the real and imaginary arrays, which the FT uses too,
+            // rather than creating a new Complex for each point
+            vector.makeNotApache();
+            rvec = vector.rvec;
+            double[] ivec = vector.ivec;
             for (int i = 0; i < size2; i++) {
-                vector.set(i, vector.getReal(i) * apodVec[i], vector.getImag(i) * apodVec[i]);
-            }
-
-            for (int i = size2; i < vector.getSize(); i++) {
-                vector.set(i, 0, 0);
+                ivec[i] *= apodVec[i];
             }
+            Arrays.fill(ivec, size2, size, 0.0);
         } else {
-            for (int i = 0; i < size2; i++) {
-                vector.rvec[i] *= apodVec[i];
-            }
-
-            for (int i = size2; i < vector.getSize(); i++) {
-                vector.rvec[i] = 0.0;
-            }
+            rvec = vector.rvec;
         }
-
+        for (int i = 0; i < size2; i++) {
+            rvec[i] *= apodVec[i];
+        }
+        Arrays.fill(rvec, size2, size, 0.0);
     }
 
     // fixme should we check for apodVec value being zero
     protected void invertApod(Vec vector) {
-        int size2;
-
-        if (apodVec.length < vector.getSize()) {
-            size2 = apodVec.length;
-        } else {
-            size2 = vector.getSize();
+        int size = vector.getSize();
+        int size2 = Math.min(apodVec.length, size);
+        for (int i = 0; i < size2; i++) {
+            if (apodVec[i] < 1.0e-8) {
+                throw new ProcessingException("apodVec value < 1.0e-8");
+            }
         }
 
+        double[] rvec;
         if (vector.isComplex()) {
+            vector.makeNotApache();
+            rvec = vector.rvec;
+            double[] ivec = vector.ivec;
             for (int i = 0; i < size2; i++) {
-                if (apodVec[i] < 1.0e-8) {
-                    throw new ProcessingException("apodVec value < 1.0e-8");
-                }
-                vector.set(i, vector.getReal(i) / apodVec[i], vector.getImag(i) / apodVec[i]);
-            }
-
-            for (int i = size2; i < vector.getSize(); i++) {
-                vector.set(i, 0, 0);
+                ivec[i] /= apodVec[i];
             }
+            Arrays.fill(ivec, size2, size, 0.0);
         } else {
-            for (int i = 0; i < size2; i++) {
-                if (apodVec[i] < 1.0e-8) {
-                    throw new ProcessingException("apodVec value < 1.0e-8");
-                }
-                vector.rvec[i] /= apodVec[i];
-            }
-
-            for (int i = size2; i < vector.getSize(); i++) {
-                vector.rvec[i] = 0.0;
-            }
+            rvec = vector.rvec;
         }
-
+        for (int i = 0; i < size2; i++) {
+            rvec[i] /= apodVec[i];
+        }
+        Arrays.fill(rvec, size2, size, 0.0);
     }
 
     protected void resize(int size) {
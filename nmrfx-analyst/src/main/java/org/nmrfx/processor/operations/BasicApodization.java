@@ -68,13 +68,12 @@ public class BasicApodization extends Apodization implements Invertible {
     }
 
     public void apodize(Vec vector) {
-        vector.makeApache();
         int size = Math.min(this.apodSize, vector.getSize());
         if (size == 0) {
             size = vector.getSize();
         }
 
-        if (apodVec == null || vector.getSize() != apodVec.length) {
+        if (windowChanged(vector.getSize(), vector.getStart(), vector.dwellTime)) {
             resize(size);
             int vStart = vector.getStart();
             initApod(vStart);
@@ -72,7 +72,7 @@ public class Blackman extends Apodization implements Invertible {
         if (apodSize2 == 0) {
             apodSize2 = dataSize;
         }
-        if (apodVec == null || apodSize2 != apodVec.length) {
+        if (windowChanged(dataSize, vStart)) {
             resize(apodSize2);
             initApod(vStart);
             double start = offset * Math.PI;
@@ -89,7 +89,6 @@ public class Blackman extends Apodization implements Invertible {
     }
 
     public void apply(Vec vector) {
-        vector.makeApache();
         setupApod(vector.getTDSize(), vector.getStart());
         if (invertOp) {
             invertApod(vector);
@@ -49,7 +49,7 @@ public class Expd extends Apodization implements Invertible {
      * @throws ProcessingException
      */
     private void expd(Vec vector) throws ProcessingException {
-        if (apodVec == null || apodVec.length != vector.getSize()) {
+        if (windowChanged(vector.getSize(), vector.getStart(), vector.dwellTime)) {
             resize(vector.getSize());
 
             double decay = Math.PI * lb;
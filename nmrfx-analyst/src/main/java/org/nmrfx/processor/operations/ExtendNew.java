@@ -111,6 +111,7 @@ public class ExtendNew extends Operation {
             throw new OperationException("svdPredLP: m < n");
         }
 
+        vector.makeApache();
         boolean insertion = true;
         if (startPred > start) {
             insertion = false;
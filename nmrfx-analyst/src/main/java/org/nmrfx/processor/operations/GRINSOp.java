@@ -31,8 +31,6 @@ import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 
-import static org.nmrfx.processor.operations.IstMatrix.genSrcTargetMap;
-
 /**
  * @author Bruce Johnson
  */
@@ -231,8 +229,9 @@ public class GRINSOp extends MatrixOperation {
             int[] zeroList;
             int[] srcTargetMap;
             if (schedule != null) {
-                zeroList = IstMatrix.genZeroList(schedule, matrixND);
-                srcTargetMap = genSrcTargetMap(schedule, matrixND);
+                IstMatrix.ScheduleMaps maps = IstMatrix.getScheduleMaps(schedule, matrixND);
+                zeroList = maps.zeroList();
+                srcTargetMap = maps.srcTargetMap();
             } else {
                 int[][] zeroTarget = matrixND.findZeros();
                 zeroList = zeroTarget[0];
@@ -305,8 +304,9 @@ public class GRINSOp extends MatrixOperation {
             int[] zeroList;
             int[] srcTargetMap;
             if (schedule != null) {
-                zeroList = IstMatrix.genZeroList(schedule, matrixND);
-                srcTargetMap = genSrcTargetMap(schedule, matrixND);
+                IstMatrix.ScheduleMaps maps = IstMatrix.getScheduleMaps(schedule, matrixND);
+                zeroList = maps.zeroList();
+                srcTargetMap = maps.srcTargetMap();
             } else {
                 int[][] zeroTarget = matrixND.findZeros();
                 zeroList = zeroTarget[0];
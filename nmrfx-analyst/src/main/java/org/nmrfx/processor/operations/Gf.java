@@ -36,7 +36,6 @@ public class Gf extends Apodization implements Invertible {
     private final double gf;
     private final double gfs;
     private final double fPoint;
-    private double apodDwellTime;
 
     public Gf(double gf, double gfs, double fPoint) {
         this(gf, gfs, fPoint, false);
@@ -53,7 +52,7 @@ public class Gf extends Apodization implements Invertible {
     public Operation eval(Vec vector) throws ProcessingException {
         double dwellTime = vector.dwellTime;
         int size = vector.getSize();
-        if (apodVec == null || apodVec.length != vector.getSize() || apodDwellTime != dwellTime) {
+        if (windowChanged(size, vector.getStart(), dwellTime)) {
             resize(vector.getSize());
 
             int vStart = vector.getStart();
@@ -39,7 +39,6 @@ public class Gm extends Apodization implements Invertible {
     private final double g3;
     private final double g2;
     private final double fPoint;
-    private double apodDwellTime;
 
     public Gm(double g1, double g2, double g3, double fPoint, boolean inverse) {
         this.g1 = g1;
@@ -53,10 +52,9 @@ public class Gm extends Apodization implements Invertible {
     public Operation eval(Vec vector) throws ProcessingException {
         double dwellTime = vector.dwellTime;
         int size = vector.getSize();
-        if (apodVec == null || apodVec.length != vector.getSize() || apodDwellTime != dwellTime) {
+        if (windowChanged(size, vector.getStart(), dwellTime)) {
             resize(vector.getSize());
 
-            apodDwellTime = dwellTime;
             double e = Math.PI * g1 * dwellTime;
             double ga = 0.6 * Math.PI * g2 * dwellTime;
             double gb = ga * g3 * (size - 1);
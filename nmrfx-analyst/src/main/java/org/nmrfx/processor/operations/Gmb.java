@@ -38,7 +38,6 @@ public class Gmb extends Apodization implements Invertible {
     private final double gb;
     private final double lb;
     private final double fPoint;
-    private double apodDwellTime;
 
     public Gmb(double gb, double lb, double fPoint) {
         this(gb, lb, fPoint, false);
@@ -49,7 +48,6 @@ public class Gmb extends Apodization implements Invertible {
         this.lb = lb;
         this.fPoint = fPoint;
         this.invertOp = inverse;
-        apodDwellTime = Double.NEGATIVE_INFINITY;
     }
 
     @Override
@@ -57,11 +55,10 @@ public class Gmb extends Apodization implements Invertible {
         int size = vector.getSize();
         double dwellTime = vector.dwellTime;
 
-        if (apodVec == null || apodVec.length != size || dwellTime != apodDwellTime) {
+        if (windowChanged(size, vector.getStart(), dwellTime)) {
             resize(size);
             int vStart = vector.getStart();
             initApod(vStart);
-            apodDwellTime = vector.dwellTime;
             double aq = size * dwellTime;
             double a = Math.PI * lb;
             double b = 0.0;
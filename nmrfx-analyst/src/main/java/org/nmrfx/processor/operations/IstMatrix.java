@@ -22,6 +22,7 @@ import org.nmrfx.annotations.PythonAPI;
 import org.nmrfx.datasets.MatrixType;
 import org.nmrfx.processor.math.Matrix;
 import org.nmrfx.processor.math.MatrixND;
+import org.nmrfx.processor.math.MatrixWorkspace;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.processing.ProcessingException;
 import org.nmrfx.processor.processing.SampleSchedule;
@@ -29,8 +30,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author bfetler
@@ -40,6 +44,29 @@ public class IstMatrix extends MatrixOperation {
 
     private static final Logger log = LoggerFactory.getLogger(IstMatrix.class);
 
+    private static final int MAX_CACHED_MAPS = 16;
+
+    /**
+     * The positions in a matrix of the values that were not sampled, and so
+     * are reconstructed, and of the values that were sampled.
+     *
+     * @param zeroList     offsets of the values that weren't sampled
+     * @param srcTargetMap offsets of the values that were sampled
+     */
+    public record ScheduleMaps(int[] zeroList, int[] srcTargetMap) {
+    }
+
+    // samples is compared by identity, so a schedule that is reloaded gets new maps
+    private record ScheduleKey(int[][] samples, boolean phaseMode, List<Integer> sizes) {
+    }
+
+    private static final Map<ScheduleKey, ScheduleMaps> scheduleMapsCache = new LinkedHashMap<>(MAX_CACHED_MAPS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ScheduleKey, ScheduleMaps> eldest) {
+            return size() > MAX_CACHED_MAPS;
+        }
+    };
+
     /**
      * Cutoff threshold as a fraction of maximum height : e.g. 0.98.
      *
@@ -274,6 +301,30 @@ public class IstMatrix extends MatrixOperation {
         copyValues(orig.getMatrix(), input.getMatrix());  // copy orig non-zero values
     }
 
+    /**
+     * Get the zero list and source target map for a schedule and matrix
+     * shape. All the matrices of a dataset have the same shape, so the maps
+     * are generated once and shared by every matrix (and processing thread)
+     * rather than regenerated for each matrix. The returned arrays must not be
+     * modified.
+     *
+     * @param sampleSchedule the sample schedule
+     * @param matrix         a matrix with the shape to use
+     * @return the maps
+     */
+    public static ScheduleMaps getScheduleMaps(SampleSchedule sampleSchedule, MatrixND matrix) {
+        List<Integer> sizes = Arrays.stream(matrix.getSizes()).boxed().toList();
+        ScheduleKey key = new ScheduleKey(sampleSchedule.getSamples(), sampleSchedule.isPhaseMode(), sizes);
+        synchronized (scheduleMapsCache) {
+            ScheduleMaps maps = scheduleMapsCache.get(key);
+            if (maps == null) {
+                maps = new ScheduleMaps(genZeroList(sampleSchedule, matrix), genSrcTargetMap(sampleSchedule, matrix));
+                scheduleMapsCache.put(key, maps);
+            }
+            return maps;
+        }
+    }
+
     public static int[] genSrcTargetMap(SampleSchedule sampleSchedule, MatrixND matrix) {
         int[][] samples = sampleSchedule.getSamples();
         boolean phaseMode = sampleSchedule.isPhaseMode();
@@ -456,8 +507,9 @@ public class IstMatrix extends MatrixOperation {
         int[] zeroList;
         int[] srcTargetMap;
         if (sampleSchedule != null) {
-            zeroList = IstMatrix.genZeroList(sampleSchedule, matrix);
-            srcTargetMap = genSrcTargetMap(sampleSchedule, matrix);
+            ScheduleMaps maps = getScheduleMaps(sampleSchedule, matrix);
+            zeroList = maps.zeroList();
+            srcTargetMap = maps.srcTargetMap();
         } else {
             int[][] zeroTarget = matrix.findZeros();
             zeroList = zeroTarget[0];
@@ -478,8 +530,10 @@ public class IstMatrix extends MatrixOperation {
         }
         matrix.zeroValues(zeroList);
         // could just copy the actually sample values to vector
-        MatrixND matrixCopy = new MatrixND(matrix);
-        double[] addBuffer = new double[matrix.getNElems()];
+        MatrixWorkspace workspace = MatrixWorkspace.get();
+        double[] origValues = workspace.getBuffer(MatrixWorkspace.Slot.ORIG, matrix.getNElems());
+        matrix.copyDataTo(origValues);
+        double[] addBuffer = workspace.getZeroedBuffer(MatrixWorkspace.Slot.ADD, matrix.getNElems());
         double preValue = 0.0;
         double postValue = 0.0;
         for (int iteration = 0; iteration < loops; iteration++) {
@@ -500,10 +554,10 @@ public class IstMatrix extends MatrixOperation {
         }
         matrix.doHIFT(fpMul);
         if (calcStats) {
-            var deltaToOrig = matrix.calcDifference(matrixCopy, srcTargetMap);
+            var deltaToOrig = matrix.calcDifference(origValues, srcTargetMap);
             log.info("{} {} {} {}", loops, preValue, postValue, deltaToOrig.mabs());
         }
-        matrix.copyValuesFrom(matrixCopy, srcTargetMap);
+        matrix.copyValuesFrom(origValues, srcTargetMap);
     }
 
     private void getSampleHash() {
@@ -80,7 +80,7 @@ public class Kaiser extends Apodization implements Invertible {
         if (apodSize2 == 0) {
             apodSize2 = dataSize;
         }
-        if (apodVec == null || apodSize2 != apodVec.length) {
+        if (windowChanged(dataSize, vStart)) {
             resize(apodSize2);
             initApod(vStart);
             for (int i = vStart; i < apodSize2; i++) {
@@ -96,7 +96,6 @@ public class Kaiser extends Apodization implements Invertible {
     }
 
     public void apply(Vec vector) {
-        vector.makeApache();
         setupApod(vector.getSize(), vector.getStart());
         if (invertOp) {
             invertApod(vector);
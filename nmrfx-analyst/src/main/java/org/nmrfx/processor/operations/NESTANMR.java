@@ -174,7 +174,7 @@ public class NESTANMR extends MatrixOperation {
             }
             int[] zeroList;
             if (schedule != null) {
-                zeroList = IstMatrix.genZeroList(schedule, matrixND);
+                zeroList = IstMatrix.getScheduleMaps(schedule, matrixND).zeroList();
             } else {
                 int[][] zeroTarget = matrixND.findZeros();
                 zeroList = zeroTarget[0];
@@ -253,7 +253,7 @@ public class NESTANMR extends MatrixOperation {
             int[] zeroList;
             int[] srcTargetMap;
             if (schedule != null) {
-                zeroList = IstMatrix.genZeroList(schedule, matrixND);
+                zeroList = IstMatrix.getScheduleMaps(schedule, matrixND).zeroList();
             } else {
                 int[][] zeroTarget = matrixND.findZeros();
                 zeroList = zeroTarget[0];
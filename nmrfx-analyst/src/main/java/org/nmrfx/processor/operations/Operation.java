@@ -61,6 +61,21 @@ public abstract class Operation implements Cloneable {//extends ForkJoinTask<Arr
         return this;
     }
 
+    /**
+     * Check whether the Operation works on each vector independently, so that a batch of vectors can be processed
+     * by applying it (and the vector-wise Operations around it) to one vector at a time. This is the case unless the
+     * Operation overrides eval(List).
+     *
+     * @return true if the Operation only implements eval(Vec)
+     */
+    public boolean isVectorWise() {
+        try {
+            return getClass().getMethod("eval", List.class).getDeclaringClass() == Operation.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
     /**
      * @return Name of the derived class.
      */
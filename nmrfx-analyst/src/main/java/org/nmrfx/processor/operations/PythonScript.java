@@ -26,6 +26,7 @@ import org.nmrfx.annotations.PythonAPI;
 import org.nmrfx.datasets.MatrixType;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.processing.ProcessingException;
+import org.nmrfx.utils.PythonCodeCache;
 import org.python.core.PyJavaType;
 import org.python.core.PyObject;
 import org.python.util.PythonInterpreter;
@@ -58,7 +59,7 @@ public class PythonScript extends MatrixOperation {
      * different vector.
      */
     private final boolean encapsulate;
-    private PythonInterpreter interpreter;
+    private ScriptInterpreter interpreter;
 
     public PythonScript(String script) {
         this(script, "", "", true);
@@ -75,12 +76,12 @@ public class PythonScript extends MatrixOperation {
         this.initialScript = initialScript;
         this.execFileName = execFileName;
         if (!this.encapsulate) {
-            interpreter = new PythonInterpreter();
+            interpreter = new ScriptInterpreter();
             if (execFileName.length() != 0) {
                 interpreter.execfile(formatStringForPythonInterpreter(execFileName));
             }
             if (initialScript.length() != 0) {
-                interpreter.exec(formatStringForPythonInterpreter(initialScript));
+                interpreter.execCached(formatStringForPythonInterpreter(initialScript));
             }
         }
     }
@@ -92,19 +93,19 @@ public class PythonScript extends MatrixOperation {
          * which are being evaluated by the PythonScript Operation.
          */
         if (encapsulate) {
-            interpreter = new PythonInterpreter();
+            interpreter = new ScriptInterpreter();
             if (execFileName.length() != 0) {
                 interpreter.execfile(formatStringForPythonInterpreter(execFileName));
             }
             if (initialScript.length() != 0) {
-                interpreter.exec(formatStringForPythonInterpreter(initialScript));
+                interpreter.execCached(formatStringForPythonInterpreter(initialScript));
             }
         }
         PyObject pyObject = PyJavaType.wrapJavaObject(vector);
         try {
             interpreter.set("vec", pyObject);
             interpreter.set("vecmat", pyObject);
-            interpreter.exec(formatStringForPythonInterpreter(script));
+            interpreter.execCached(formatStringForPythonInterpreter(script));
         } catch (Exception e) {
             throw new ProcessingException(e.getLocalizedMessage());
         }
@@ -118,14 +119,14 @@ public class PythonScript extends MatrixOperation {
          * which are being evaluated by the PythonScript Operation.
          */
         if (encapsulate) {
-            interpreter = new PythonInterpreter();
-            interpreter.exec(formatStringForPythonInterpreter(initialScript));
+            interpreter = new ScriptInterpreter();
+            interpreter.execCached(formatStringForPythonInterpreter(initialScript));
         }
         PyObject pyObject = PyJavaType.wrapJavaObject(matrix);
         try {
             interpreter.set("matrix", pyObject);
             interpreter.set("vecmat", pyObject);
-            interpreter.exec(formatStringForPythonInterpreter(script));
+            interpreter.execCached(formatStringForPythonInterpreter(script));
         } catch (Exception e) {
             throw new ProcessingException(e.getLocalizedMessage());
         }
@@ -138,4 +139,14 @@ public class PythonScript extends MatrixOperation {
         return new PythonScript(script, initialScript, execFileName, encapsulate);
     }
 
+    /**
+     * Runs the operation's scripts from the code cache, using the compiler
+     * flags of the interpreter, as its exec method would.
+     */
+    private static class ScriptInterpreter extends PythonInterpreter {
+        void execCached(String script) {
+            PythonCodeCache.exec(this, cflags, script);
+        }
+    }
+
 }
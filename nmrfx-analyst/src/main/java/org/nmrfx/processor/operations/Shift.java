@@ -23,7 +23,6 @@
  */
 package org.nmrfx.processor.operations;
 
-import org.apache.commons.math3.complex.Complex;
 import org.nmrfx.annotations.PythonAPI;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.processing.ProcessingException;
@@ -46,40 +45,11 @@ public class Shift extends Operation {
     public Operation eval(Vec vector) throws ProcessingException {
         int size = vector.getSize();
 
-        if ((shiftValue != 0) && (((int) Math.abs(shiftValue)) < size)) {
-            if (vector.isComplex()) {
-                Complex[] cvec = vector.cvec;
-                if (shiftValue > 0) {
-                    System.arraycopy(cvec, 0, cvec, shiftValue, size - shiftValue);
-                    for (int i = 0; i < shiftValue; i++) {
-                        cvec[i] = new Complex(0.0, 0.0);
-                    }
-                } else {
-                    int shiftValue = -this.shiftValue;
-                    System.arraycopy(cvec, shiftValue, cvec, 0, size - shiftValue);
-                    for (int i = 0; i < shiftValue; i++) {
-                        cvec[size - shiftValue + i] = new Complex(0.0, 0.0);
-                    }
-                }
-            } else {
-                double[] vec = vector.rvec;
-                if (shiftValue > 0) {
-                    System.arraycopy(vec, 0, vec, shiftValue, size - shiftValue);
-                    for (int i = 0; i < shiftValue; i++) {
-                        vec[i] = 0.0;
-                    }
-                } else {
-                    int shiftValue = -this.shiftValue;
-                    System.arraycopy(vec, shiftValue, vec, 0, size - shiftValue);
-                    for (int i = 0; i < shiftValue; i++) {
-                        vec[size - shiftValue + i] = 0.0;
-                    }
-                }
-            }
+        if ((shiftValue != 0) && (Math.abs(shiftValue) < size)) {
+            vector.shift(shiftValue);
             if (adjustRef) {
                 vector.adjustRef(-shiftValue, size);
             }
-
         }
 
         return this;
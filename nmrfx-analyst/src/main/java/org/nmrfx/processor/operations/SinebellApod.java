@@ -63,7 +63,7 @@ public class SinebellApod extends Apodization implements Invertible {
             localApodSize = size;
         }
 
-        if (apodVec == null || size != apodVec.length) {
+        if (windowChanged(size, vStart)) {
             resize(localApodSize);
             initApod(vStart);
 
@@ -86,7 +86,6 @@ public class SinebellApod extends Apodization implements Invertible {
         }
     }
     public void sb(Vec vector) {
-        vector.makeApache();
         setupApod(vector.getSize(), vector.getStart());
         if (invertOp) {
             invertApod(vector);
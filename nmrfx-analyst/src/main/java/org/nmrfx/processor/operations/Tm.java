@@ -37,7 +37,6 @@ public class Tm extends Apodization implements Invertible {
 
     private final int pt1;
     private Integer pt2;
-    private double apodDwellTime;
 
     public Tm(int pt1, Integer pt2) {
         this(pt1, pt2, false);
@@ -57,7 +56,6 @@ public class Tm extends Apodization implements Invertible {
         }
         this.invertOp = inverse;
 
-        apodDwellTime = Double.NEGATIVE_INFINITY;
     }
 
     @Override
@@ -69,7 +67,7 @@ public class Tm extends Apodization implements Invertible {
             pt2 = vector.getSize() - 1;
         }
 
-        if (apodVec == null || apodVec.length != size || dwellTime != apodDwellTime) {
+        if (windowChanged(size, vector.getStart(), dwellTime)) {
             resize(size);
             int vStart = vector.getStart();
             initApod(vStart);
@@ -44,7 +44,7 @@ public class Trap extends Apodization implements Invertible {
     public Operation eval(Vec vector) throws ProcessingException {
         int size = vector.getSize();
 
-        if (apodVec == null || apodVec.length != size) {
+        if (windowChanged(size, 0)) {
             resize(size);
             initApod(0);
 
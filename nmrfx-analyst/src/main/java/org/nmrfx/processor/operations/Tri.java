@@ -48,7 +48,7 @@ public class Tri extends Apodization implements Invertible {
     public Operation eval(Vec vector) throws ProcessingException {
         int size = vector.getSize();
 
-        if (apodVec == null || apodVec.length != size) {
+        if (windowChanged(size, vector.getStart())) {
             resize(size);
             int vStart = vector.getStart();
             initApod(vStart);
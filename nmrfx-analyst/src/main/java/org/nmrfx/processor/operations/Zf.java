@@ -50,7 +50,8 @@ public class Zf extends Operation implements Invertible {
      * of 2. If newSize is provided it will increase the vector to have a total
      * of 'newSize' number of points, all new points being zero in both cases.
      * If pad is provided and greater than 0 size will be increased by this
-     * amount from old size.
+     * amount from old size. Sizes set with newSize or pad do not need to be
+     * a power of 2 as Ft can transform vectors of any size.
      *
      * @param newSize
      * @throws OperationException
@@ -0,0 +1,520 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.processing;
+
+import org.nmrfx.annotations.PythonAPI;
+import org.nmrfx.utils.OwnerOnlyFiles;
+import org.nmrfx.utils.PythonCodeCache;
+import org.python.core.PyCode;
+import org.python.core.PyException;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A headless server that runs processing scripts in a JVM that stays up, so
+ * the JVM, Jython and pyproc start up once instead of for every dataset.
+ * Scripts are submitted over a local socket, queued, and run one after the
+ * other by a single runner thread. Each script gets the whole Processor and
+ * its pool of processing threads (set with procOpts in the script), which is
+ * how the thread budget is shared between jobs: the Processor is a single
+ * instance, so two scripts can't use it at the same time.
+ * <p>
+ * Any local user can connect to the socket, so the server writes a random
+ * token to a file only its user can read, and a client must send the token
+ * before any other command. The file is "port.token" in the token directory,
+ * ~/.nmrfx/server by default, and is deleted when the server stops.
+ * <p>
+ * The protocol is line based. A client sends a command and reads the reply:
+ * <ul>
+ * <li>AUTH token : must be sent first, replies OK, or ERROR and the
+ * connection is closed</li>
+ * <li>SUBMIT script : queue the script, replies QUEUED id</li>
+ * <li>RUN script : queue the script and reply with its result when done</li>
+ * <li>WAIT id : reply with the result of a job when it is done</li>
+ * <li>STATUS : one line for each job, then END</li>
+ * <li>SHUTDOWN : stop accepting jobs, finish the queued ones and exit</li>
+ * </ul>
+ * A result is "DONE id queueMs runMs" or "FAILED id queueMs runMs message"
+ * with the time the job waited in the queue and the time it took to run.
+ * Paths used in scripts should be absolute, as the server doesn't change
+ * its working directory for each job.
+ */
+@PythonAPI("dispatchnvfx")
+public class ProcessingServer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessingServer.class);
+    private static final int MAX_JOBS_KEPT = 1000;
+    private static final int TOKEN_BYTES = 32;
+
+    /**
+     * Runs the script of a job.
+     */
+    public interface ScriptRunner {
+        void run(Path script) throws Exception;
+    }
+
+    public enum JobState {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    public static class Job {
+        private final int id;
+        private final Path script;
+        private final long submitted;
+        private long started;
+        private long finished;
+        private JobState state = JobState.QUEUED;
+        private String message = "";
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Job(int id, Path script) {
+            this.id = id;
+            this.script = script;
+            this.submitted = System.currentTimeMillis();
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public Path getScript() {
+            return script;
+        }
+
+        public synchronized JobState getState() {
+            return state;
+        }
+
+        public synchronized long getQueueMillis() {
+            return (started == 0 ? System.currentTimeMillis() : started) - submitted;
+        }
+
+        public synchronized long getRunMillis() {
+            if (started == 0) {
+                return 0;
+            }
+            return (finished == 0 ? System.currentTimeMillis() : finished) - started;
+        }
+
+        synchronized void start() {
+            started = System.currentTimeMillis();
+            state = JobState.RUNNING;
+        }
+
+        void finish(JobState state, String message) {
+            synchronized (this) {
+                finished = System.currentTimeMillis();
+                this.state = state;
+                this.message = message == null ? "" : message.replace('\n', ' ');
+            }
+            done.countDown();
+        }
+
+        public void await() throws InterruptedException {
+            done.await();
+        }
+
+        public synchronized String getResult() {
+            String result = state + " " + id + " " + getQueueMillis() + " " + getRunMillis();
+            if (state == JobState.FAILED) {
+                result += " " + message;
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return getResult() + " " + script;
+        }
+    }
+
+    private static final Job STOP = new Job(-1, null);
+
+    private final ServerSocket serverSocket;
+    private final ScriptRunner scriptRunner;
+    private final byte[] token;
+    private final Path tokenFile;
+    private final LinkedBlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+    private final Map<Integer, Job> jobs = new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Job> eldest) {
+            return size() > MAX_JOBS_KEPT && eldest.getValue().done.getCount() == 0;
+        }
+    };
+    private final AtomicInteger jobCounter = new AtomicInteger(0);
+    private final ExecutorService clientPool = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ProcessingServerClient");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean accepting = true;
+
+    /**
+     * Create a server that runs the scripts with Jython and pyproc.
+     *
+     * @param port the local port to listen on, 0 to pick a free one
+     * @throws IOException if the port can't be opened
+     */
+    public ProcessingServer(int port) throws IOException {
+        this(port, null);
+    }
+
+    /**
+     * Create a server that runs the scripts with the specified runner.
+     *
+     * @param port         the local port to listen on, 0 to pick a free one
+     * @param scriptRunner the runner, or null to use Jython and pyproc
+     * @throws IOException if the port can't be opened
+     */
+    public ProcessingServer(int port, ScriptRunner scriptRunner) throws IOException {
+        this(port, scriptRunner, getDefaultTokenDir());
+    }
+
+    /**
+     * Create a server that runs the scripts with the specified runner and
+     * writes its token in the specified directory.
+     *
+     * @param port         the local port to listen on, 0 to pick a free one
+     * @param scriptRunner the runner, or null to use Jython and pyproc
+     * @param tokenDir     the directory to write the token file in. It is
+     *                     created if needed and must not be accessible by
+     *                     other users.
+     * @throws IOException if the port can't be opened or the token file
+     *                     can't be written
+     */
+    public ProcessingServer(int port, ScriptRunner scriptRunner, Path tokenDir) throws IOException {
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.scriptRunner = scriptRunner;
+        this.token = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(token);
+        this.tokenFile = tokenDir.resolve(getPort() + ".token");
+        try {
+            OwnerOnlyFiles.createDirectory(tokenDir);
+            OwnerOnlyFiles.write(tokenFile, HexFormat.of().formatHex(token).getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            serverSocket.close();
+            throw e;
+        }
+    }
+
+    public static Path getDefaultTokenDir() {
+        return Path.of(System.getProperty("user.home"), ".nmrfx", "server");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Get the file a client reads the token from.
+     *
+     * @return the token file
+     */
+    public Path getTokenFile() {
+        return tokenFile;
+    }
+
+    /**
+     * Start accepting connections and running jobs.
+     */
+    public void start() {
+        Thread runner = new Thread(this::runJobs, "ProcessingServerRunner");
+        runner.start();
+        Thread acceptor = new Thread(this::acceptConnections, "ProcessingServerAcceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Processing server listening on port {}", getPort());
+    }
+
+    /**
+     * Wait until the server has been shut down and the queued jobs have run.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitShutdown() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Queue a script to be run.
+     *
+     * @param script the script file
+     * @return the job
+     */
+    public Job submit(Path script) {
+        if (!accepting) {
+            throw new IllegalStateException("Server is shutting down");
+        }
+        Job job = new Job(jobCounter.incrementAndGet(), script);
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+        }
+        queue.add(job);
+        return job;
+    }
+
+    public Job getJob(int id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    public List<Job> getJobs() {
+        synchronized (jobs) {
+            return new ArrayList<>(jobs.values());
+        }
+    }
+
+    /**
+     * Stop accepting jobs. Jobs already queued are still run.
+     */
+    public void shutdown() {
+        if (accepting) {
+            accepting = false;
+            queue.add(STOP);
+            try {
+                serverSocket.close();
+                Files.deleteIfExists(tokenFile);
+            } catch (IOException e) {
+                log.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        shutdown();
+        clientPool.shutdownNow();
+    }
+
+    private void runJobs() {
+        ScriptRunner runner = scriptRunner == null ? new PyprocRunner() : scriptRunner;
+        try {
+            while (true) {
+                Job job = queue.take();
+                if (job == STOP) {
+                    break;
+                }
+                job.start();
+                try {
+                    runner.run(job.getScript());
+                    job.finish(JobState.DONE, "");
+                } catch (PyException pyE) {
+                    log.warn("Job {} failed {}", job.getId(), pyE.toString());
+                    job.finish(JobState.FAILED, pyE.toString());
+                } catch (Exception e) {
+                    log.warn("Job {} failed {}", job.getId(), e.getMessage(), e);
+                    job.finish(JobState.FAILED, e.getMessage());
+                }
+                log.info("{}", job);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (Job job : queue) {
+                if (job != STOP) {
+                    job.finish(JobState.FAILED, "Server stopped");
+                }
+            }
+            stopped.countDown();
+        }
+    }
+
+    private void acceptConnections() {
+        while (accepting) {
+            try {
+                Socket socket = serverSocket.accept();
+                clientPool.execute(() -> handleClient(socket));
+            } catch (SocketException e) {
+                // the server socket was closed by shutdown
+                break;
+            } catch (IOException e) {
+                log.warn(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void handleClient(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (!isAuthorized(line)) {
+                writer.println("ERROR Not authorized");
+                return;
+            }
+            writer.println("OK");
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    writer.println(execCommand(line));
+                }
+            }
+        } catch (IOException e) {
+            log.warn(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Check the first line a client sends, which must be AUTH and the token.
+     *
+     * @param line the line, null if the client closed the connection
+     * @return true if the token is right
+     */
+    boolean isAuthorized(String line) {
+        if (line == null) {
+            return false;
+        }
+        String[] fields = line.trim().split("\\s+", 2);
+        if ((fields.length != 2) || !fields[0].equalsIgnoreCase("AUTH")) {
+            return false;
+        }
+        byte[] clientToken;
+        try {
+            clientToken = HexFormat.of().parseHex(fields[1].trim());
+        } catch (IllegalArgumentException iaE) {
+            return false;
+        }
+        return MessageDigest.isEqual(token, clientToken);
+    }
+
+    /**
+     * Execute one command of the protocol.
+     *
+     * @param line the command
+     * @return the reply
+     * @throws InterruptedException if interrupted while waiting for a job
+     */
+    String execCommand(String line) throws InterruptedException {
+        String[] fields = line.split("\\s+", 2);
+        String command = fields[0].toUpperCase();
+        String arg = fields.length > 1 ? fields[1].trim() : "";
+        switch (command) {
+            case "SUBMIT", "RUN" -> {
+                Path script = Path.of(arg).toAbsolutePath();
+                if (arg.isEmpty() || !Files.isReadable(script)) {
+                    return "ERROR Can't read script " + arg;
+                }
+                if (!accepting) {
+                    return "ERROR Server is shutting down";
+                }
+                Job job = submit(script);
+                if (command.equals("RUN")) {
+                    job.await();
+                    return job.getResult();
+                }
+                return "QUEUED " + job.getId();
+            }
+            case "WAIT" -> {
+                Job job;
+                try {
+                    job = getJob(Integer.parseInt(arg));
+                } catch (NumberFormatException nfE) {
+                    job = null;
+                }
+                if (job == null) {
+                    return "ERROR No job " + arg;
+                }
+                job.await();
+                return job.getResult();
+            }
+            case "STATUS" -> {
+                StringBuilder sBuilder = new StringBuilder();
+                for (Job job : getJobs()) {
+                    sBuilder.append(job).append('\n');
+                }
+                sBuilder.append("END");
+                return sBuilder.toString();
+            }
+            case "SHUTDOWN" -> {
+                shutdown();
+                return "OK";
+            }
+            default -> {
+                return "ERROR Unknown command " + command;
+            }
+        }
+    }
+
+    /**
+     * Runs scripts with pyproc already loaded. Each script runs in a fresh
+     * __main__ namespace after pyproc's state has been reset with
+     * useProcessor(), and scripts that are submitted again are not compiled
+     * again.
+     */
+    static class PyprocRunner implements ScriptRunner {
+        private final PythonInterpreter interpreter;
+
+        PyprocRunner() {
+            interpreter = new PythonInterpreter();
+            interpreter.exec("import pyproc");
+        }
+
+        @Override
+        public void run(Path script) throws IOException {
+            Processor processor = Processor.getProcessor();
+            boolean ok = false;
+            PyCode code = PythonCodeCache.getCode(Files.readString(script));
+            // not closed after the job, as closing runs the shared exit functions
+            PythonInterpreter jobInterpreter = new PythonInterpreter();
+            try {
+                interpreter.exec("pyproc.useProcessor()");
+                jobInterpreter.set("__name__", "__main__");
+                jobInterpreter.set("__file__", script.toString());
+                jobInterpreter.exec(code);
+                ok = true;
+            } finally {
+                // leave the processor ready for the next job, even if this one failed
+                processor.closeDataset(ok);
+                processor.clearProcessorError();
+            }
+        }
+    }
+}
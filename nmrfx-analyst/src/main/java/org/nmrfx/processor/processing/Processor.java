@@ -24,6 +24,7 @@ import org.nmrfx.datasets.MatrixType;
 import org.nmrfx.math.VecBase;
 import org.nmrfx.processor.datasets.Dataset;
 import org.nmrfx.processor.datasets.DatasetException;
+import org.nmrfx.processor.datasets.MatrixTypeSource;
 import org.nmrfx.processor.datasets.MatrixTypeService;
 import org.nmrfx.processor.datasets.ScanRegion;
 import org.nmrfx.processor.datasets.vendor.NMRData;
@@ -33,6 +34,7 @@ import org.nmrfx.processor.datasets.vendor.rs2d.RS2DData;
 import org.nmrfx.processor.events.DatasetSavedEvent;
 import org.nmrfx.processor.math.Matrix;
 import org.nmrfx.processor.math.MatrixND;
+import org.nmrfx.processor.math.MatrixWorkspace;
 import org.nmrfx.processor.math.Vec;
 import org.nmrfx.processor.operations.Invertible;
 import org.nmrfx.processor.operations.Operation;
@@ -51,8 +53,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -65,7 +69,7 @@ import java.util.concurrent.atomic.AtomicReference;
  * @author johnsonb
  */
 @PythonAPI({"nmrpar", "pyproc"})
-public class Processor {
+public class Processor implements MatrixTypeSource {
     private static final Logger log = LoggerFactory.getLogger(Processor.class);
     private static long memoryModeLimit = 536870912L;
     private static boolean testCorruptionMode = false;
@@ -153,7 +157,30 @@ public class Processor {
      * List of processes for thread pool.
      */
     private static ArrayList<Runnable> processes = null;
-    private ExecutorService pool;
+    /**
+     * Thread pool for processes. It is created when first needed and kept
+     * between runs so threads are not started and stopped for each dimension.
+     */
+    private ThreadPoolExecutor pool;
+    /**
+     * The number of threads writing processed data to the dataset.
+     */
+    private int writerThreads = 1;
+    /**
+     * The maximum number of bytes of processed data waiting to be written.
+     */
+    private long queueMemoryLimit = MatrixTypeService.DEFAULT_MEMORY_LIMIT;
+    /**
+     * If true the FID file is still being acquired and reading waits for the
+     * FIDs to be written.
+     */
+    private boolean streamMode = false;
+    /**
+     * The time (in milliseconds) without new FIDs after which acquisition is
+     * assumed to have stopped.
+     */
+    private long streamTimeout = 600_000;
+    private static final long STREAM_POLL_INTERVAL = 500;
     /**
      * List of processes, one for each dimension. Used with runProcesses().
      */
@@ -667,6 +694,7 @@ public class Processor {
         return itemsToWrite;
     }
 
+    @Override
     public int[] getIndirectSizes() {
         if (tmult == null) {
             if (itemsToWrite > 1) {
@@ -1134,6 +1162,8 @@ public class Processor {
             try {
                 matrix = new MatrixND(writePt, dim, matrixSizes);
                 matrix.setVSizes(vSizes);
+                // with fewer matrices left than processes, let each matrix use several threads
+                matrix.setParallel((getTotalMatrices() - matrixCount) < numProcessors);
                 dataset.readMatrixND(pt, dim, matrix);
             } catch (IOException ex) {
                 log.warn(ex.getMessage(), ex);
@@ -1186,6 +1216,7 @@ public class Processor {
         }
     }
 
+    @Override
     public List<MatrixType> getMatrixTypesFromFile() {
         List<MatrixType> mats = new ArrayList<>();
         if (matrixMode.get()) {
@@ -1257,6 +1288,9 @@ public class Processor {
 
                 if (vecIndex != null) {
                     iStep++;
+                    if (streamMode) {
+                        waitForVectors(vecIndex);
+                    }
                     for (int j = 0; j < vectorsPerGroup; j++) {
                         try {
                             for (NMRData nmrData : nmrDataSets) {
@@ -1284,6 +1318,60 @@ public class Processor {
         return vectors;
     }
 
+    /**
+     * Wait, while the data is being acquired, until the FIDs of a group have
+     * been written to the data files. Vector groups are read in order, so the
+     * rows of the direct dimension are processed and written to the dataset
+     * as they arrive, and the indirect dimensions are processed once all of
+     * them have been read.
+     *
+     * @param vecIndex the group of vectors to be read
+     * @throws ProcessingException if no new FIDs arrive within the stream
+     *                             timeout
+     */
+    private void waitForVectors(VecIndex vecIndex) {
+        int lastVec = 0;
+        for (int inVec : vecIndex.inVecs) {
+            lastVec = Math.max(lastVec, inVec);
+        }
+        int lastAvailable = -1;
+        long lastArrival = System.currentTimeMillis();
+        while (true) {
+            int nAvailable = Integer.MAX_VALUE;
+            for (NMRData nmrData : nmrDataSets) {
+                nAvailable = Math.min(nAvailable, nmrData.getNVectorsAvailable());
+            }
+            if (nAvailable > lastVec) {
+                return;
+            }
+            if (getProcessorError()) {
+                setProcessorAvailableStatus(true);
+                throw new ProcessingException("Processing stopped while waiting for FIDs");
+            }
+            long now = System.currentTimeMillis();
+            if (nAvailable != lastAvailable) {
+                lastAvailable = nAvailable;
+                lastArrival = now;
+                if (progressUpdater != null) {
+                    int nVectors = nmrDataSets.get(0).getNVectors();
+                    progressUpdater.updateStatus("Waiting for FID " + (lastVec + 1) + " of " + nVectors);
+                    progressUpdater.updateProgress((double) nAvailable / nVectors);
+                }
+            } else if ((now - lastArrival) > streamTimeout) {
+                setProcessorAvailableStatus(true);
+                throw new ProcessingException("No new FIDs for " + (streamTimeout / 1000) + " s, "
+                        + nAvailable + " FIDs available, need " + (lastVec + 1));
+            }
+            try {
+                Thread.sleep(STREAM_POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                setProcessorAvailableStatus(true);
+                throw new ProcessingException("Interrupted while waiting for FIDs");
+            }
+        }
+    }
+
     /**
      * Get the next group of input Vecs to be read, and set where they should be
      * written to. input Vecs may be used with Combine operation.
@@ -1604,6 +1692,7 @@ public class Processor {
         return elapsedTime;
     }
 
+    @Override
     public boolean doneWriting() {
         return doneWriting.get();
     }
@@ -1636,7 +1725,9 @@ public class Processor {
                 if (datasetWriter != null) {
                     datasetWriter.shutdown();
                 }
-                datasetWriter = new MatrixTypeService(this, queueLimit, itemsToRead, itemsToWrite);
+                int nWriters = p.isMatrix() ? 1 : writerThreads;
+                datasetWriter = new MatrixTypeService(this, queueLimit, itemsToRead, itemsToWrite,
+                        nWriters, queueMemoryLimit);
             }
 
             for (Runnable process : processes) {
@@ -1674,7 +1765,6 @@ public class Processor {
                 dataset.writeHeader();
             }
             printVecReadCount();
-            pool.shutdown();
             if (useIOController && !p.isDataset()) {
                 log.info("shutdown now");
                 datasetWriter.shutdown();
@@ -1715,20 +1805,49 @@ public class Processor {
                     } catch (ProcessingException e) {
                         setProcessorAvailableStatus(true);
                         log.warn(e.getMessage(), e);
-                        if (!pool.isShutdown()) {
-                            pool.shutdown();
-                        }
+                        setProcessorError();
+                    } finally {
+                        // the next pass may be a different size, or not come at all
+                        MatrixWorkspace.release();
                     }
                 }
             });
         }
-        pool = Executors.newFixedThreadPool(useProcessors);
+        ensurePoolSize(useProcessors);
+    }
+
+    private synchronized void ensurePoolSize(int nThreads) {
+        int poolSize = Math.max(nThreads, numProcessors);
+        if (pool == null) {
+            AtomicInteger threadCount = new AtomicInteger(0);
+            pool = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), (Runnable r) -> {
+                Thread t = new Thread(r, "nmrfx-process-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            pool.allowCoreThreadTimeOut(true);
+        } else if (pool.getMaximumPoolSize() < poolSize) {
+            pool.setMaximumPoolSize(poolSize);
+            pool.setCorePoolSize(poolSize);
+        }
     }
 
     public ArrayList<Runnable> getProcesses() {
         return processes;
     }
 
+    /**
+     * Get the processes, one per dimension, matrix or dataset step, set up by
+     * the last script run.
+     *
+     * @return the processes
+     */
+    public List<ProcessOps> getDimProcesses() {
+        return Collections.unmodifiableList(dimProcesses);
+    }
+
+    @Override
     public boolean getEndOfFile() {
         return endOfFile.get();
     }
@@ -1754,6 +1873,7 @@ public class Processor {
         return fileName;
     }
 
+    @Override
     public Dataset getDataset() {
         return dataset;
     }
@@ -1801,6 +1921,64 @@ public class Processor {
         return numProcessors;
     }
 
+    /**
+     * Set the number of threads writing processed vectors to the dataset.
+     * Matrix processing always uses one writer.
+     *
+     * @param n the number of writer threads
+     */
+    public void setWriterThreads(int n) {
+        writerThreads = Math.max(1, n);
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    /**
+     * Set the maximum number of bytes of processed data that can be waiting
+     * to be written. Processing threads wait when the limit is reached.
+     *
+     * @param limit the limit in bytes
+     */
+    public void setQueueMemoryLimit(long limit) {
+        queueMemoryLimit = Math.max(1024, limit);
+    }
+
+    public long getQueueMemoryLimit() {
+        return queueMemoryLimit;
+    }
+
+    /**
+     * Set whether the FID file is still being acquired. In stream mode the
+     * direct dimension is processed as the FIDs are written, waiting for each
+     * group of FIDs to appear, so a long experiment can be processed (and the
+     * first rows of the dataset inspected) while it is running.
+     *
+     * @param state true if the data is still being acquired
+     */
+    public void setStreamMode(boolean state) {
+        streamMode = state;
+    }
+
+    public boolean getStreamMode() {
+        return streamMode;
+    }
+
+    /**
+     * Set how long to wait for new FIDs, in stream mode, before assuming the
+     * acquisition has stopped and ending processing with an error.
+     *
+     * @param millis the time in milliseconds
+     */
+    public void setStreamTimeout(long millis) {
+        streamTimeout = Math.max(STREAM_POLL_INTERVAL, millis);
+    }
+
+    public long getStreamTimeout() {
+        return streamTimeout;
+    }
+
     public void setVectorsPerProcess(int n) {
         vectorsPerProcess = n;
     }
@@ -1840,6 +2018,7 @@ public class Processor {
         return processorError.getAndSet(true);
     }
 
+    @Override
     public boolean getProcessorError() {
         return processorError.get();
     }
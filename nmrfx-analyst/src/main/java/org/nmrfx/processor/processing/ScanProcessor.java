@@ -0,0 +1,424 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.processor.processing;
+
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+import org.nmrfx.processor.datasets.vendor.NMRData;
+import org.nmrfx.processor.datasets.vendor.NMRDataUtil;
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.operations.Operation;
+import org.nmrfx.processor.operations.WriteVector;
+import org.nmrfx.processor.processing.processes.ProcessOps;
+import org.nmrfx.utilities.ProgressUpdater;
+import org.nmrfx.utils.FormatUtils;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Processes a series of FIDs (a titration, relaxation or screening series)
+ * with one processing script and writes each processed spectrum into its own
+ * row of a pseudo-ND dataset, which has one more dimension than the spectra.
+ * The output dataset is created once, at its full size, and every row is
+ * written into it directly, so there are no per-row dataset files that have
+ * to be merged afterwards.
+ * <p>
+ * The first FID is processed with the script, which sets up the Processor and
+ * gives the sizes and parameters of the output dataset. If the rows are 1D
+ * spectra processed only with operations that work on each vector
+ * independently, the remaining FIDs are then read and processed concurrently,
+ * each thread using its own copy of the operations. The rows are only read
+ * this way if the script doesn't set acquisition parameters that are taken
+ * from each FID or that change how it is read. Otherwise (the
+ * Processor is a single instance, so only one script can run at a time) the
+ * script is run for each FID in turn, into a dataset kept in memory that is
+ * copied into its row.
+ */
+public class ScanProcessor {
+    private static final Logger log = LoggerFactory.getLogger(ScanProcessor.class);
+    private static final Pattern CALL_PATTERN = Pattern.compile("^\\s*(\\w+)\\s*\\((.*)\\)\\s*$", Pattern.MULTILINE);
+    // the parameters readFID copies from the first FID, which is only right if they don't come from each FID
+    private static final Set<String> COPIED_PARS = Set.of("sw", "sf", "ref");
+    // parameters that don't change how the first vector is read when set to zero
+    private static final Set<String> ZERO_PARS = Set.of("acqarray", "acqsize", "tdsize", "skip");
+    private static final Set<String> FILE_PARS = Set.of("tdcomplex", "zerofreq", "acqmode", "flags", "markrows");
+
+    private final String initScript;
+    private final String processScript;
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+    private ProgressUpdater progressUpdater = null;
+    private final AtomicInteger rowsDone = new AtomicInteger(0);
+    private int nRows = 0;
+    private boolean concurrent = true;
+    private boolean processedConcurrently = false;
+
+    /**
+     * Create a processor for a series of FIDs.
+     *
+     * @param initScript    the script run once, before any FID is processed
+     * @param processScript the script run for each FID after it is opened and
+     *                      the dataset is created
+     */
+    public ScanProcessor(String initScript, String processScript) {
+        this.initScript = initScript;
+        this.processScript = processScript;
+    }
+
+    /**
+     * Set the number of threads used to process the rows concurrently.
+     *
+     * @param n the number of threads
+     */
+    public void setThreads(int n) {
+        nThreads = Math.max(1, n);
+    }
+
+    public int getThreads() {
+        return nThreads;
+    }
+
+    /**
+     * Set whether rows may be processed concurrently, without running the
+     * script for each FID, when the script allows it.
+     *
+     * @param concurrent false to always run the script for each FID
+     */
+    void setConcurrent(boolean concurrent) {
+        this.concurrent = concurrent;
+    }
+
+    /**
+     * @return true if the last series was processed without running the
+     * script for each FID
+     */
+    boolean processedConcurrently() {
+        return processedConcurrently;
+    }
+
+    public void setProgressUpdater(ProgressUpdater progressUpdater) {
+        this.progressUpdater = progressUpdater;
+    }
+
+    /**
+     * Process the FIDs into the rows of a new pseudo-ND dataset. The row
+     * index is the last dimension of the dataset.
+     *
+     * @param fidFilePaths the FID files, in row order
+     * @param outFile      the file of the dataset to create
+     * @throws IOException      if an I/O error occurs
+     * @throws DatasetException if the dataset can't be created
+     */
+    public void process(List<String> fidFilePaths, File outFile) throws IOException, DatasetException {
+        if (fidFilePaths.isEmpty()) {
+            throw new IllegalArgumentException("No FIDs to process");
+        }
+        nRows = fidFilePaths.size();
+        rowsDone.set(0);
+        processedConcurrently = false;
+        Processor processor = Processor.getProcessor();
+        Dataset outputDataset = null;
+        boolean ok = false;
+        try (PythonInterpreter interpreter = new PythonInterpreter()) {
+            interpreter.exec(initScript);
+            Dataset rowDataset = processRow(interpreter, processor, fidFilePaths.get(0), outFile, 0);
+            int rowDim;
+            try {
+                rowDim = rowDataset.getNDim();
+                outputDataset = createOutput(rowDataset, outFile);
+                copyRow(rowDataset, outputDataset, 0);
+            } finally {
+                rowDataset.close();
+            }
+            rowDone(fidFilePaths.get(0));
+
+            List<Operation> operations = concurrent && !setsFileParameters(processScript)
+                    ? getVectorOperations(processor, rowDim) : null;
+            if ((operations != null) && (nRows > 1)) {
+                processRowsConcurrently(processor, operations, fidFilePaths, outputDataset);
+                processedConcurrently = true;
+            } else {
+                for (int iRow = 1; iRow < nRows; iRow++) {
+                    String fidFilePath = fidFilePaths.get(iRow);
+                    rowDataset = processRow(interpreter, processor, fidFilePath, outFile, iRow);
+                    try {
+                        copyRow(rowDataset, outputDataset, iRow);
+                    } finally {
+                        rowDataset.close();
+                    }
+                    rowDone(fidFilePath);
+                }
+            }
+            outputDataset.writeHeader();
+            outputDataset.writeParFile();
+            ok = true;
+        } finally {
+            processor.keepDatasetOpen(false);
+            if (outputDataset != null) {
+                outputDataset.close();
+                if (!ok && !outFile.delete()) {
+                    log.warn("Can't delete {}", outFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * Run the processing script for one FID, into a dataset in memory.
+     */
+    private Dataset processRow(PythonInterpreter interpreter, Processor processor, String fidFilePath,
+                               File outFile, int iRow) {
+        String rowName = outFile.getName();
+        if (rowName.contains(".")) {
+            rowName = rowName.substring(0, rowName.lastIndexOf('.'));
+        }
+        String rowFilePath = new File(outFile.getParentFile(), rowName + "_row" + (iRow + 1) + ".nv").getPath();
+        // keep the in memory dataset open after processing so it can be released instead of saved
+        processor.keepDatasetOpen(true);
+        String lineSep = System.lineSeparator();
+        String rowScript = "useProcessor()" + lineSep
+                + "FID('" + fidFilePath.replace("\\", "/") + "')" + lineSep
+                + "inMemory()" + lineSep
+                + "CREATE('" + rowFilePath.replace("\\", "/") + "')" + lineSep;
+        interpreter.exec(FormatUtils.formatStringForPythonInterpreter(rowScript));
+        interpreter.exec(processScript);
+        Dataset dataset = processor.releaseDataset(null);
+        if (processor.getProcessorError() || (dataset == null)) {
+            if (dataset != null) {
+                dataset.close();
+            }
+            throw new ProcessingException("Processing " + fidFilePath + " failed");
+        }
+        return dataset;
+    }
+
+    private Dataset createOutput(Dataset rowDataset, File outFile) throws DatasetException {
+        int rowDim = rowDataset.getNDim();
+        int[] dimSizes = new int[rowDim + 1];
+        for (int i = 0; i < rowDim; i++) {
+            dimSizes[i] = rowDataset.getSizeTotal(i);
+        }
+        dimSizes[rowDim] = nRows;
+        Dataset outputDataset = Dataset.createDataset(outFile.toString(), outFile.getName(), outFile.getName(),
+                dimSizes, false, true);
+        for (int i = 0; i < rowDim; i++) {
+            rowDataset.copyHeader(outputDataset, i);
+        }
+        for (int i = 0; i < outputDataset.getNDim(); i++) {
+            outputDataset.setComplex(i, false);
+            outputDataset.syncPars(i);
+        }
+        outputDataset.setNFreqDims(rowDim);
+        return outputDataset;
+    }
+
+    /**
+     * Copy all the vectors of a processed spectrum into a row of the output
+     * dataset.
+     */
+    private static void copyRow(Dataset rowDataset, Dataset outputDataset, int iRow) throws IOException {
+        int rowDim = rowDataset.getNDim();
+        int nVectors = 1;
+        for (int i = 1; i < rowDim; i++) {
+            nVectors *= rowDataset.getSizeTotal(i);
+        }
+        Vec vec = new Vec(rowDataset.getSizeTotal(0));
+        int[] indices = new int[rowDim];
+        indices[rowDim - 1] = iRow;
+        for (int iVec = 0; iVec < nVectors; iVec++) {
+            int index = iVec;
+            for (int i = 1; i < rowDim; i++) {
+                int size = rowDataset.getSizeTotal(i);
+                indices[i - 1] = index % size;
+                index /= size;
+            }
+            rowDataset.readVector(vec, indices, 0);
+            outputDataset.writeVector(vec, indices, 0);
+        }
+    }
+
+    /**
+     * Get the operations to apply to each FID if the rows can be processed
+     * without running the script: the rows are 1D and processed by a single
+     * process whose operations each work on one vector at a time.
+     *
+     * @return the operations, without the operation that writes to the
+     * Processor's dataset, or null if the script has to be run for each row
+     */
+    static List<Operation> getVectorOperations(Processor processor, int rowDim) {
+        if (rowDim != 1) {
+            return null;
+        }
+        List<ProcessOps> dimProcesses = processor.getDimProcesses();
+        if (dimProcesses.size() != 1) {
+            return null;
+        }
+        ProcessOps process = dimProcesses.get(0);
+        if (process.isMatrix() || process.isDataset() || process.isUndo() || (process.getDim() != 0)) {
+            return null;
+        }
+        List<Operation> operations = new ArrayList<>();
+        for (Operation op : process.getOperations()) {
+            if (op instanceof WriteVector) {
+                continue;
+            }
+            if (!op.isVectorWise()) {
+                return null;
+            }
+            operations.add(op);
+        }
+        return operations;
+    }
+
+    /**
+     * Check whether a script sets acquisition parameters that the rows can't
+     * be read with if only the first FID is processed with the script: values
+     * like sw('') or ref('h2o') that are taken from each FID, and settings
+     * that change how an FID is read, other than the fixdsp setting that is
+     * copied to each FID.
+     *
+     * @param script the processing script
+     * @return true if the script has to be run for each FID
+     */
+    static boolean setsFileParameters(String script) {
+        Matcher matcher = CALL_PATTERN.matcher(script);
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String[] args = matcher.group(2).split(",");
+            if (FILE_PARS.contains(name)) {
+                return true;
+            }
+            for (String arg : args) {
+                arg = arg.trim();
+                if (COPIED_PARS.contains(name) && !arg.isEmpty() && !isNumber(arg)) {
+                    return true;
+                }
+                if (ZERO_PARS.contains(name) && !arg.isEmpty() && !arg.equals("0")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumber(String arg) {
+        try {
+            Double.parseDouble(arg);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private void processRowsConcurrently(Processor processor, List<Operation> operations,
+                                         List<String> fidFilePaths, Dataset outputDataset) throws IOException {
+        NMRData templateData = processor.getNMRData();
+        int vectorSize = processor.getVectorSize();
+        int rowSize = outputDataset.getSizeTotal(0);
+        AtomicInteger nextRow = new AtomicInteger(1);
+        int nWorkers = Math.min(nThreads, nRows - 1);
+        ExecutorService executor = Executors.newFixedThreadPool(nWorkers);
+        try {
+            List<Future<Object>> futures = new ArrayList<>();
+            for (int i = 0; i < nWorkers; i++) {
+                futures.add(executor.submit(() -> {
+                    // operations keep state (like cached apodization windows) so each thread needs its own
+                    List<Operation> threadOperations = new ArrayList<>();
+                    for (Operation op : operations) {
+                        threadOperations.add(op.clone());
+                    }
+                    int iRow;
+                    while ((iRow = nextRow.getAndIncrement()) < nRows) {
+                        String fidFilePath = fidFilePaths.get(iRow);
+                        Vec vec = readFID(templateData, fidFilePath, vectorSize);
+                        for (Operation op : threadOperations) {
+                            op.eval(vec);
+                        }
+                        vec.makeReal();
+                        if (vec.getSize() != rowSize) {
+                            throw new ProcessingException("Processed " + fidFilePath + " has size "
+                                    + vec.getSize() + " not " + rowSize);
+                        }
+                        outputDataset.writeVector(vec, new int[]{iRow}, 0);
+                        rowDone(fidFilePath);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ProcessingException("Interrupted while processing rows");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException ioE) {
+                throw ioE;
+            } else if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new ProcessingException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the FID of a row with the settings the script made for the first
+     * row, so the vector is read the same way.
+     */
+    private static Vec readFID(NMRData templateData, String fidFilePath, int vectorSize) throws IOException {
+        NMRData nmrData = NMRDataUtil.getFID(new File(fidFilePath));
+        try {
+            if (templateData != null) {
+                nmrData.setFixDSP(templateData.getFixDSP());
+                nmrData.setComplex(0, templateData.isComplex(0));
+                nmrData.setSW(0, templateData.getSW(0));
+                nmrData.setSF(0, templateData.getSF(0));
+                nmrData.setRef(0, templateData.getRef(0));
+            }
+            Vec vec = new Vec(vectorSize, nmrData.isComplex(0));
+            nmrData.readVector(0, vec);
+            return vec;
+        } finally {
+            nmrData.close();
+        }
+    }
+
+    private void rowDone(String fidFilePath) {
+        int done = rowsDone.incrementAndGet();
+        if (progressUpdater != null) {
+            progressUpdater.updateStatus("Processed " + done + " of " + nRows + " " + new File(fidFilePath).getName());
+            progressUpdater.updateProgress((double) done / nRows);
+        }
+    }
+}
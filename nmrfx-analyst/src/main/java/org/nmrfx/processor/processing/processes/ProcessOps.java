@@ -267,6 +267,7 @@ public class ProcessOps implements Callable<Object> {
                 operations.add(new WriteVector(true));
             }
         }
+        List<Stage> stages = compileStages(operations);
         while (true) {
             if (processor.getProcessorError()) {
                 return this;
@@ -286,12 +287,12 @@ public class ProcessOps implements Callable<Object> {
                 break;
             }
 
-            for (Operation op : operations) {
+            for (Stage stage : stages) {
                 if (processor.getProcessorError()) {
                     return this;
                 }
                 try {
-                    op.eval(vectors);
+                    stage.eval(vectors);
                 } catch (Exception e) {
                     if (!processor.setProcessorError()) {
                         processor.setProcessorErrorMessage(e.getMessage());
@@ -314,6 +315,58 @@ public class ProcessOps implements Callable<Object> {
         return vectors;
     }
 
+    /**
+     * A group of consecutive operations that are evaluated together. The
+     * operations of a vector-wise stage are all applied to one vector before
+     * moving on to the next, so each vector stays in the cache while it goes
+     * through the apodization, zero filling, FT, phasing etc., rather than
+     * each operation making its own pass over all the vectors of the batch.
+     */
+    record Stage(List<Operation> operations, boolean vectorWise) {
+        void eval(List<Vec> vectors) {
+            if (vectorWise) {
+                for (Vec vector : vectors) {
+                    for (Operation op : operations) {
+                        op.eval(vector);
+                    }
+                }
+            } else {
+                for (Operation op : operations) {
+                    op.eval(vectors);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compile the operations into the stages they are evaluated in. Runs of
+     * operations that work on each vector independently are fused into one
+     * stage, while operations that work on the batch of vectors as a whole
+     * (like Combine or CoAdd) get a stage of their own.
+     *
+     * @param ops the operations in the order they are to be applied
+     * @return the stages
+     */
+    static List<Stage> compileStages(List<Operation> ops) {
+        List<Stage> stages = new ArrayList<>();
+        List<Operation> fused = new ArrayList<>();
+        for (Operation op : ops) {
+            if (op.isVectorWise()) {
+                fused.add(op);
+            } else {
+                if (!fused.isEmpty()) {
+                    stages.add(new Stage(List.copyOf(fused), true));
+                    fused.clear();
+                }
+                stages.add(new Stage(List.of(op), false));
+            }
+        }
+        if (!fused.isEmpty()) {
+            stages.add(new Stage(List.copyOf(fused), true));
+        }
+        return stages;
+    }
+
     /**
      * Execute all of the matrix operations in the pool.
      */
@@ -17,6 +17,14 @@ def autoProcess(args):
     if args.execScript:
         autoscript.execScript(script)
 
+def runServer(args):
+    from org.nmrfx.processor.processing import ProcessingServer
+    server = ProcessingServer(args.port)
+    print("Processing server listening on port " + str(server.getPort()))
+    print("Clients must first send AUTH and the token in " + str(server.getTokenFile()))
+    server.start()
+    server.awaitShutdown()
+
 sys.argv.pop(0)
 
 if len(sys.argv) > 0 and sys.argv[0].endswith(".py"):
@@ -49,5 +57,9 @@ else:
 
     parser_auto.set_defaults(func=autoProcess)
 
+    parser_server = subparsers.add_parser('server',help="Run processing scripts submitted on a local port, without restarting for each one")
+    parser_server.add_argument("-p",dest='port',type=int,default=8021,help="Port to listen on (0 picks a free port)")
+    parser_server.set_defaults(func=runServer)
+
     args = parser.parse_args(sys.argv)
     args.func(args)
@@ -661,6 +661,7 @@ class DataInfo:
     resizeable = True    # size may change or not
     inMemory = False
     extra     = 0
+    mantissaBits = 23
 
     def printInfo(self):
         print "     size", self.size
@@ -771,7 +772,7 @@ def makeFIDInfo(fidObj=None, tdSize=None, **keywords):
 
     return fidInfo
 
-def CREATE(nvFileName, dSize=None, extra=0):
+def CREATE(nvFileName, dSize=None, extra=0, mantissaBits=23):
     ''' Create a new NMRViewJ format dataset.  If file already exists it will be erased first.<br>
     Parameters
     ---------
@@ -779,6 +780,8 @@ def CREATE(nvFileName, dSize=None, extra=0):
         Name of the dataset file to create.
     dSize : array
         The size of the dimensions.  If not specified the size automatically determined from processing script.
+    mantissaBits : int
+        The number of mantissa bits (0 to 23) kept for values stored in a compressed (.nvz) dataset.  Fewer than 23 bits give smaller, but lossy, files.
     '''
     global fidInfo
     global dataInfo
@@ -790,6 +793,7 @@ def CREATE(nvFileName, dSize=None, extra=0):
     except:
         pass
     dataInfo.filename = nvFileName
+    dataInfo.mantissaBits = mantissaBits
     if (dSize == None):
         dSize = fidInfo.size
         dataInfo.size = list(dSize)
@@ -853,6 +857,7 @@ def createDataset(nvFileName=None):
             processor.createNV(formatStringForJava(nvFileName), useSize, fidInfo.mapToDatasetList)
 
         dataset = processor.getDataset()
+        dataset.setCompressionMantissaBits(dataInfo.mantissaBits)
         psspecial.datasetMods(dataset, fidInfo)
 
     dataInfo.resizeable = False  # dataInfo.size is fixed, createNV has been run
@@ -3627,6 +3632,7 @@ def ZF(factor=1, size=-1, pad=-1, disabled=False, process=None, vector=None):
     '''Zero Fill.
 factor is the 'factor' power of 2 that the vector size is increased to, so if the vector has 513 elements and factor = 1, it will increase to 1024, the next power of 2, but if factor = 2, it will increase to 2048, which is two powers of two greater.
 A size can be specified instead of a factor which will be the exact number of points the vector will have, and the increased elements will all be zero.
+The size does not need to be a power of 2, FT will transform vectors of any size without further zero filling.
     Parameters
     ---------
     factor : int
@@ -3744,7 +3750,7 @@ def status(process=None):
     process = process or getCurrentProcess()
     return process.getStatus()
 
-def procOpts(nprocess=None,nvectors=None):
+def procOpts(nprocess=None,nvectors=None,nwriters=None,queuemb=None,stream=None,streamwait=None):
     ''' Set and get various options in the Processor
     Parameters
     ---------
@@ -3752,12 +3758,30 @@ def procOpts(nprocess=None,nvectors=None):
         The number of processes to run simultaneously.  Defaults to number of cpu cores (x2 with hyper-threaded)
     nvectors : int
         The number of vectors each process should grab at one time.
+    nwriters : int
+        The number of threads writing processed vectors to the dataset.
+    queuemb : int
+        The maximum size (in megabytes) of processed data waiting to be written.  Processes wait when it is reached.
+    stream : bool
+        True if the FID file is still being acquired.  FIDs are processed as they are written to the file.
+    streamwait : float
+        The time (in seconds) to wait for new FIDs, in stream mode, before assuming acquisition has stopped.
     '''
     if (nprocess != None):
         processor.setNumProcessors(nprocess)
     if (nvectors != None):
         processor.setVectorsPerProcess(nvectors)
-    return {'nprocess':processor.getNumProcessors(),'nvectors':processor.getVectorsPerProcess()}
+    if (nwriters != None):
+        processor.setWriterThreads(nwriters)
+    if (queuemb != None):
+        processor.setQueueMemoryLimit(queuemb * 1024 * 1024)
+    if (stream != None):
+        processor.setStreamMode(stream)
+    if (streamwait != None):
+        processor.setStreamTimeout(int(streamwait * 1000))
+    return {'nprocess':processor.getNumProcessors(),'nvectors':processor.getVectorsPerProcess(),
+        'nwriters':processor.getWriterThreads(),'queuemb':processor.getQueueMemoryLimit() // (1024 * 1024),
+        'stream':processor.getStreamMode(),'streamwait':processor.getStreamTimeout() / 1000.0}
 
 def writeVec(vector,fileName):
     f = open(fileName,'w')
@@ -0,0 +1,159 @@
+package org.nmrfx.processor.datasets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.datasets.DatasetLayout;
+import org.nmrfx.processor.math.Vec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BigMappedMatrixFileTest {
+
+    private static final int[] SIZES = {40, 24};
+    private static final int[] BLOCK_SIZES = {16, 8};
+    private static final int HEADER_SIZE = 64;
+    // not a multiple of the block size, so mapping boundaries fall inside rows of blocks
+    private static final int MAP_SIZE = 1000;
+    private static final double SCALE = 2.0;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private final List<BigMappedMatrixFile> files = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (BigMappedMatrixFile file : files) {
+            file.close();
+        }
+    }
+
+    private static DatasetLayout getLayout() {
+        DatasetLayout layout = new DatasetLayout(SIZES);
+        for (int i = 0; i < SIZES.length; i++) {
+            layout.setBlockSize(i, BLOCK_SIZES[i]);
+        }
+        layout.setFileHeaderSize(HEADER_SIZE);
+        layout.dimDataset();
+        return layout;
+    }
+
+    private BigMappedMatrixFile open(File file, int mapSize) throws IOException, DatasetException {
+        DatasetLayout layout = getLayout();
+        RandomAccessFile raFile = new RandomAccessFile(file, "rw");
+        raFile.setLength(layout.getTotalSize());
+        Dataset dataset = new Dataset(file.getName(), null, SIZES, false);
+        BigMappedMatrixFile mappedFile = new BigMappedMatrixFile(dataset, file, layout, raFile, true, mapSize);
+        files.add(mappedFile);
+        return mappedFile;
+    }
+
+    private static double value(int i, int j) {
+        return i * 100.0 + j + 0.25;
+    }
+
+    private static void checkValues(BigMappedMatrixFile mappedFile) throws IOException {
+        for (int j = 0; j < SIZES[1]; j++) {
+            for (int i = 0; i < SIZES[0]; i++) {
+                Assert.assertEquals(value(i, j) * SCALE, mappedFile.getFloat(i, j), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testRunsAcrossMappings() throws IOException, DatasetException {
+        File file = tmpFolder.newFile("rows.nv");
+        BigMappedMatrixFile mappedFile = open(file, MAP_SIZE);
+        Vec vec = new Vec(SIZES[0], false);
+        int[] point = new int[2];
+        for (int j = 0; j < SIZES[1]; j++) {
+            for (int i = 0; i < SIZES[0]; i++) {
+                vec.set(i, value(i, j));
+            }
+            point[1] = j;
+            mappedFile.writeVector(0, SIZES[0] - 1, point, 0, SCALE, vec);
+        }
+        checkValues(mappedFile);
+
+        Vec readVec = new Vec(SIZES[0], false);
+        for (int j = 0; j < SIZES[1]; j++) {
+            point[1] = j;
+            mappedFile.readVector(0, SIZES[0] - 1, point, 0, SCALE, readVec);
+            for (int i = 0; i < SIZES[0]; i++) {
+                Assert.assertEquals(value(i, j), readVec.getReal(i), 0.0);
+            }
+        }
+        mappedFile.force();
+
+        // the values are at the same place in the file when it is mapped in one piece
+        BigMappedMatrixFile singleMapping = open(file, 1 << 30);
+        checkValues(singleMapping);
+    }
+
+    @Test
+    public void testStrided() throws IOException, DatasetException {
+        File file = tmpFolder.newFile("columns.nv");
+        BigMappedMatrixFile mappedFile = open(file, MAP_SIZE);
+        Vec vec = new Vec(SIZES[1], false);
+        int[] point = new int[2];
+        for (int i = 0; i < SIZES[0]; i++) {
+            for (int j = 0; j < SIZES[1]; j++) {
+                vec.set(j, value(i, j));
+            }
+            point[0] = i;
+            mappedFile.writeVector(0, SIZES[1] - 1, point, 1, SCALE, vec);
+        }
+        checkValues(mappedFile);
+
+        Vec readVec = new Vec(SIZES[1], false);
+        for (int i = 0; i < SIZES[0]; i++) {
+            point[0] = i;
+            mappedFile.readVector(0, SIZES[1] - 1, point, 1, SCALE, readVec);
+            for (int j = 0; j < SIZES[1]; j++) {
+                Assert.assertEquals(value(i, j), readVec.getReal(j), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testComplex() throws IOException, DatasetException {
+        File file = tmpFolder.newFile("complex.nv");
+        BigMappedMatrixFile mappedFile = open(file, MAP_SIZE);
+        int[] point = new int[2];
+        // a part of each row that starts and ends inside blocks
+        int first = 6;
+        int last = 29;
+        int nComplex = (last - first + 1) / 2;
+        Vec vec = new Vec(nComplex, true);
+        for (int j = 0; j < SIZES[1]; j++) {
+            for (int k = 0; k < nComplex; k++) {
+                vec.set(k, value(first + 2 * k, j), value(first + 2 * k + 1, j));
+            }
+            point[1] = j;
+            mappedFile.writeVector(first, last, point, 0, SCALE, vec);
+        }
+        for (int j = 0; j < SIZES[1]; j++) {
+            for (int i = 0; i < SIZES[0]; i++) {
+                double expected = (i < first) || (i > last) ? 0.0 : value(i, j) * SCALE;
+                Assert.assertEquals(expected, mappedFile.getFloat(i, j), 0.0f);
+            }
+        }
+
+        Vec readVec = new Vec(nComplex, true);
+        for (int j = 0; j < SIZES[1]; j++) {
+            point[1] = j;
+            mappedFile.readVector(first, last, point, 0, SCALE, readVec);
+            for (int k = 0; k < nComplex; k++) {
+                Assert.assertEquals(value(first + 2 * k, j), readVec.getReal(k), 0.0);
+                Assert.assertEquals(value(first + 2 * k + 1, j), readVec.getImag(k), 0.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package org.nmrfx.processor.datasets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.utils.OwnerOnlyFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class DatasetPyramidTest {
+
+    private static final int SIZE = 512;
+    private static final int[] DIM = {0, 1};
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Path savedCacheDirectory;
+    private Dataset dataset;
+
+    @Before
+    public void setUp() {
+        savedCacheDirectory = DatasetPyramid.getCacheDirectory();
+    }
+
+    @After
+    public void tearDown() {
+        if (dataset != null) {
+            dataset.close();
+        }
+        DatasetPyramid.setCacheDirectory(savedCacheDirectory);
+        DatasetPyramid.setDiskCapacity(DatasetPyramid.DEFAULT_DISK_CAPACITY);
+    }
+
+    /**
+     * Write a dataset big enough to be drawn from a pyramid and open it
+     * again, so it hasn't been modified since it was opened.
+     */
+    private Dataset openDataset() throws DatasetException, IOException {
+        File file = new File(tmpFolder.getRoot(), "pyramid.nv");
+        Dataset newDataset = Dataset.createDataset(file.toString(), file.getName(), file.getName(),
+                new int[]{SIZE, SIZE}, false, true);
+        newDataset.setComplex(0, false);
+        newDataset.setComplex(1, false);
+        newDataset.writeHeader();
+        int[] point = new int[2];
+        for (int j = 0; j < SIZE; j++) {
+            for (int i = 0; i < SIZE; i++) {
+                point[0] = i;
+                point[1] = j;
+                newDataset.writePoint(point, ((i * 7 + j * 13) % 101) - 50.0);
+            }
+        }
+        newDataset.close();
+        return new Dataset(file.toString(), file.getName(), false, false, false);
+    }
+
+    private static int[][] getRegion() {
+        return new int[][]{{0, SIZE - 1}, {0, SIZE - 1}};
+    }
+
+    private static DatasetPyramid.PlaneKey getKey(Dataset dataset) {
+        return new DatasetPyramid.PlaneKey(dataset, DIM[0], DIM[1], List.of());
+    }
+
+    private static void assertSameLevels(DatasetPyramid expected, DatasetPyramid actual) {
+        Assert.assertEquals(expected.getLevelCount(), actual.getLevelCount());
+        for (int level = 1; level <= expected.getLevelCount(); level++) {
+            int n = SIZE >> level;
+            float[][] expectedValues = new float[n][n];
+            float[][] actualValues = new float[n][n];
+            expected.readMatrix(level, getRegion(), expectedValues);
+            actual.readMatrix(level, getRegion(), actualValues);
+            for (int i = 0; i < n; i++) {
+                Assert.assertArrayEquals(expectedValues[i], actualValues[i], 0.0f);
+            }
+        }
+    }
+
+    /**
+     * The offset in a saved pyramid of the level count, which follows the
+     * header and the plane size.
+     */
+    private static int getLevelCountOffset(Path path) throws IOException {
+        try (RandomAccessFile raFile = new RandomAccessFile(path.toFile(), "r")) {
+            raFile.seek(8);
+            int identityLength = raFile.readUnsignedShort();
+            return 8 + 2 + identityLength + 3 * 8 + 2 * 4;
+        }
+    }
+
+    private static void writeInt(Path path, long offset, int value) throws IOException {
+        try (RandomAccessFile raFile = new RandomAccessFile(path.toFile(), "rw")) {
+            raFile.seek(offset);
+            raFile.writeInt(value);
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws DatasetException, IOException {
+        Path cacheDirectory = tmpFolder.getRoot().toPath().resolve("pyramids");
+        DatasetPyramid.setCacheDirectory(cacheDirectory);
+        dataset = openDataset();
+        DatasetPyramid built = DatasetPyramid.getPyramid(dataset, DIM, getRegion());
+        Assert.assertNotNull(built);
+        Assert.assertEquals(DatasetPyramid.getLevelCount(SIZE, SIZE), built.getLevelCount());
+
+        Path path = DatasetPyramid.getCachePath(dataset, getKey(dataset));
+        Assert.assertTrue(Files.isRegularFile(path));
+        Assert.assertTrue(OwnerOnlyFiles.isOwnerOnly(cacheDirectory));
+        Assert.assertTrue(OwnerOnlyFiles.isOwnerOnly(path));
+        try (Stream<Path> files = Files.list(cacheDirectory)) {
+            Assert.assertEquals(1, files.count());
+        }
+
+        DatasetPyramid loaded = DatasetPyramid.load(dataset, getKey(dataset), path);
+        Assert.assertNotNull(loaded);
+        Assert.assertTrue(loaded.isCurrent(dataset));
+        assertSameLevels(built, loaded);
+        dataset.markModified();
+        Assert.assertFalse(loaded.isCurrent(dataset));
+    }
+
+    @Test
+    public void testCorruptHeader() throws DatasetException, IOException {
+        DatasetPyramid.setCacheDirectory(tmpFolder.getRoot().toPath().resolve("pyramids"));
+        dataset = openDataset();
+        DatasetPyramid built = DatasetPyramid.getPyramid(dataset, DIM, getRegion());
+        DatasetPyramid.PlaneKey key = getKey(dataset);
+        Path path = DatasetPyramid.getCachePath(dataset, key);
+        byte[] saved = Files.readAllBytes(path);
+        int offset = getLevelCountOffset(path);
+
+        writeInt(path, offset, Integer.MAX_VALUE);
+        Assert.assertNull(DatasetPyramid.load(dataset, key, path));
+
+        Files.write(path, saved);
+        // the rows of the first level
+        writeInt(path, offset + 4, -1);
+        Assert.assertNull(DatasetPyramid.load(dataset, key, path));
+
+        Files.write(path, saved);
+        writeInt(path, offset - 8, SIZE * 4);
+        Assert.assertNull(DatasetPyramid.load(dataset, key, path));
+
+        Files.write(path, Arrays.copyOf(saved, saved.length / 2));
+        Assert.assertNull(DatasetPyramid.load(dataset, key, path));
+
+        // a damaged file is replaced by a rebuilt pyramid
+        DatasetPyramid.invalidate(dataset);
+        DatasetPyramid rebuilt = DatasetPyramid.getPyramid(dataset, DIM, getRegion());
+        assertSameLevels(built, rebuilt);
+        Assert.assertArrayEquals(saved, Files.readAllBytes(path));
+    }
+
+    @Test
+    public void testPrune() throws DatasetException, IOException {
+        Path cacheDirectory = tmpFolder.getRoot().toPath().resolve("pyramids");
+        DatasetPyramid.setCacheDirectory(cacheDirectory);
+        OwnerOnlyFiles.createDirectory(cacheDirectory);
+        Path oldPath = cacheDirectory.resolve("old.nv_1.nvpyr");
+        Files.write(oldPath, new byte[1024]);
+        Files.setLastModifiedTime(oldPath, FileTime.fromMillis(System.currentTimeMillis() - 3_600_000L));
+        Path other = cacheDirectory.resolve("notes.txt");
+        Files.write(other, new byte[1024]);
+        DatasetPyramid.setDiskCapacity(1024);
+
+        dataset = openDataset();
+        DatasetPyramid.getPyramid(dataset, DIM, getRegion());
+        Assert.assertTrue(Files.exists(DatasetPyramid.getCachePath(dataset, getKey(dataset))));
+        Assert.assertFalse(Files.exists(oldPath));
+        Assert.assertTrue(Files.exists(other));
+    }
+
+    @Test
+    public void testDecimateKeepsLargestMagnitude() {
+        float[][] source = {
+                {1.0f, 2.0f, 0.5f},
+                {-3.0f, 0.0f, 4.0f},
+                {0.1f, 0.2f, -0.3f}
+        };
+        float[][] target = new float[2][2];
+        DatasetPyramid.decimate(source, 3, 3, target, 0);
+        Assert.assertArrayEquals(new float[]{-3.0f, 4.0f}, target[0], 0.0f);
+        Assert.assertArrayEquals(new float[]{0.2f, -0.3f}, target[1], 0.0f);
+    }
+
+    @Test
+    public void testGetLevel() {
+        Assert.assertEquals(5, DatasetPyramid.getLevelCount(2048, 1024));
+        Assert.assertEquals(0, DatasetPyramid.getLevel(1.9, 2048, 1024));
+        Assert.assertEquals(1, DatasetPyramid.getLevel(2.0, 2048, 1024));
+        Assert.assertEquals(3, DatasetPyramid.getLevel(9.0, 2048, 1024));
+        Assert.assertEquals(5, DatasetPyramid.getLevel(1000.0, 2048, 1024));
+    }
+
+    @Test
+    public void testLevelPositions() {
+        Assert.assertEquals(3, DatasetPyramid.toLevel(2, 13));
+        Assert.assertEquals(13.5, DatasetPyramid.toDataset(2, 3), 1.0e-12);
+        Assert.assertEquals(7.0, DatasetPyramid.toDataset(0, 7), 1.0e-12);
+    }
+}
@@ -0,0 +1,208 @@
+package org.nmrfx.processor.datasets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.nmrfx.datasets.MatrixType;
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.processing.ProcessingException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MatrixTypeServiceTest {
+
+    private static final int SIZE = 64;
+    private static final int N_ROWS = 200;
+    private static final int N_THREADS = 3;
+
+    private Dataset dataset;
+    private ExecutorService processingPool;
+
+    /**
+     * Supplies the rows of the dataset, one vector at a time, in the way the
+     * processor reads vectors from a FID.
+     */
+    static class RowSource implements MatrixTypeSource {
+        final Dataset dataset;
+        final double pass;
+        final AtomicInteger nextRow = new AtomicInteger();
+        final AtomicBoolean doneWriting = new AtomicBoolean(false);
+
+        RowSource(Dataset dataset, double pass) {
+            this.dataset = dataset;
+            this.pass = pass;
+        }
+
+        @Override
+        public boolean getEndOfFile() {
+            return nextRow.get() >= N_ROWS;
+        }
+
+        @Override
+        public List<MatrixType> getMatrixTypesFromFile() {
+            int row = nextRow.getAndIncrement();
+            Vec vec = new Vec(SIZE, new int[][]{{0, SIZE - 1}, {row, row}}, new int[]{0, 1}, false);
+            for (int i = 0; i < SIZE; i++) {
+                vec.set(i, value(i, row, pass));
+            }
+            List<MatrixType> items = new ArrayList<>();
+            items.add(vec);
+            return items;
+        }
+
+        @Override
+        public boolean getProcessorError() {
+            return false;
+        }
+
+        @Override
+        public Dataset getDataset() {
+            return dataset;
+        }
+
+        @Override
+        public int[] getIndirectSizes() {
+            return new int[]{N_ROWS};
+        }
+
+        @Override
+        public boolean doneWriting() {
+            return doneWriting.get();
+        }
+    }
+
+    @Before
+    public void setUp() throws DatasetException {
+        dataset = new Dataset("service", null, new int[]{SIZE, N_ROWS}, false);
+        dataset.setComplex(0, false);
+        dataset.setComplex(1, false);
+        processingPool = Executors.newFixedThreadPool(N_THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        processingPool.shutdownNow();
+        dataset.close();
+    }
+
+    private static double value(int i, int row, double pass) {
+        return pass * 1000.0 + row + i / 100.0;
+    }
+
+    /**
+     * Take items from the service, scale them, and queue them for writing, as
+     * the processing threads do, until all items are read or there's an
+     * error.
+     */
+    private List<Future<Integer>> startProcessing(MatrixTypeService service) {
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < N_THREADS; t++) {
+            futures.add(processingPool.submit(() -> {
+                int nProcessed = 0;
+                while (!service.finished()) {
+                    if (service.hasError()) {
+                        throw new ProcessingException("Error processing");
+                    }
+                    List<MatrixType> items = service.getItemsFromUnprocessedList(100);
+                    if (items != null) {
+                        for (MatrixType item : items) {
+                            ((Vec) item).scale(2.0);
+                        }
+                        service.addItemsToWriteList(items);
+                        nProcessed += items.size();
+                    }
+                }
+                return nProcessed;
+            }));
+        }
+        return futures;
+    }
+
+    private static int waitForProcessing(List<Future<Integer>> futures) throws InterruptedException, ExecutionException, TimeoutException {
+        int nProcessed = 0;
+        for (Future<Integer> future : futures) {
+            nProcessed += future.get(10, TimeUnit.SECONDS);
+        }
+        return nProcessed;
+    }
+
+    private void runPass(double pass) throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        RowSource source = new RowSource(dataset, pass);
+        MatrixTypeService service = new MatrixTypeService(source, 4, N_ROWS, N_ROWS, 2, SIZE * 8 * 16);
+        try {
+            List<Future<Integer>> futures = startProcessing(service);
+            Assert.assertEquals(N_ROWS, waitForProcessing(futures));
+            source.doneWriting.set(true);
+            Assert.assertTrue(service.isDone(10000));
+            Assert.assertFalse(service.hasError());
+            Assert.assertEquals(N_ROWS, service.nRead.get());
+            Assert.assertEquals(N_ROWS, service.nWritten.get());
+        } finally {
+            service.shutdown();
+        }
+        Assert.assertTrue(service.readerTask.isDone());
+        int[] point = new int[2];
+        for (int row = 0; row < N_ROWS; row++) {
+            point[1] = row;
+            for (int i = 0; i < SIZE; i++) {
+                point[0] = i;
+                Assert.assertEquals(2.0 * value(i, row, pass), dataset.readPoint(point), 1.0e-3);
+            }
+        }
+    }
+
+    @Test
+    public void testPassesInARow() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        // the reader and writer threads of one pass are reused by the next
+        runPass(1.0);
+        runPass(2.0);
+        runPass(3.0);
+    }
+
+    @Test
+    public void testWriterFails() throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        RowSource source = new RowSource(dataset, 1.0) {
+            @Override
+            public Dataset getDataset() {
+                return nextRow.get() > 10 ? null : dataset;
+            }
+        };
+        // room for only a few rows, so processing threads wait for the writers
+        MatrixTypeService service = new MatrixTypeService(source, 4, N_ROWS, N_ROWS, 2, SIZE * 8 * 2);
+        long start = System.currentTimeMillis();
+        List<Future<Integer>> futures = startProcessing(service);
+        for (Future<Integer> future : futures) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                Assert.fail("processing didn't see the write error");
+            } catch (ExecutionException ex) {
+                Assert.assertTrue(ex.getCause() instanceof ProcessingException);
+            }
+        }
+        source.doneWriting.set(true);
+        Assert.assertTrue(service.hasError());
+        Assert.assertFalse(service.isDone(10000));
+        // the reader stops too, without waiting for the service to be shut down
+        Assert.assertTrue(service.readerTask.get(10, TimeUnit.SECONDS));
+        service.shutdown();
+        for (Future<Boolean> writerTask : service.writerTasks) {
+            Assert.assertTrue(writerTask.isDone());
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 10000);
+        Assert.assertTrue(service.nWritten.get() < N_ROWS);
+
+        // the next pass isn't affected by the failed one
+        runPass(2.0);
+    }
+}
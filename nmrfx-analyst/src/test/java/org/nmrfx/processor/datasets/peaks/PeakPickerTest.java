@@ -0,0 +1,127 @@
+package org.nmrfx.processor.datasets.peaks;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.peaks.Peak;
+import org.nmrfx.peaks.PeakList;
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.datasets.DatasetException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+public class PeakPickerTest {
+
+    private static final int SIZE0 = 320;
+    private static final int SIZE1 = 256;
+    // peaks in the interior, on the edges and corners, and near likely tile boundaries
+    private static final int[][] PEAKS = {
+            {100, 100}, {0, 50}, {SIZE0 - 1, 80}, {60, 0}, {200, SIZE1 - 1}, {0, 0}, {SIZE0 - 1, SIZE1 - 1},
+            {150, 7}, {151, 8}, {30, 15}, {31, 16}, {250, 31}, {251, 32}, {90, 63}, {91, 64}, {170, 127},
+            {171, 128}, {5, 200}
+    };
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Dataset dataset;
+
+    @After
+    public void tearDown() {
+        PeakList.remove("tiled");
+        PeakList.remove("sequential");
+        if (dataset != null) {
+            dataset.close();
+        }
+    }
+
+    private Dataset createDataset() throws DatasetException, IOException {
+        File file = new File(tmpFolder.getRoot(), "pick.nv");
+        Dataset newDataset = Dataset.createDataset(file.toString(), file.getName(), file.getName(),
+                new int[]{SIZE0, SIZE1}, false, true);
+        for (int i = 0; i < 2; i++) {
+            newDataset.setComplex(i, false);
+            newDataset.setFreqDomain(i, true);
+            newDataset.setSf(i, 600.0);
+            newDataset.setSw(i, 6000.0);
+            newDataset.setRefPt(i, newDataset.getSizeReal(i) / 2.0);
+            newDataset.setRefValue(i, 5.0);
+        }
+        Random random = new Random(17L);
+        int[] point = new int[2];
+        for (int j = 0; j < SIZE1; j++) {
+            for (int i = 0; i < SIZE0; i++) {
+                double value = random.nextGaussian();
+                for (int[] peak : PEAKS) {
+                    double di = (i - peak[0]) / 1.5;
+                    double dj = (j - peak[1]) / 1.5;
+                    value += 100.0 * Math.exp(-(di * di + dj * dj));
+                }
+                point[0] = i;
+                point[1] = j;
+                newDataset.writePoint(point, value);
+            }
+        }
+        return newDataset;
+    }
+
+    private PeakList pick(String listName, boolean tiled) throws IOException {
+        dataset.setNoiseLevel(null);
+        PeakPickParameters peakPickPar = new PeakPickParameters(dataset, listName).level(20.0).mode("new");
+        peakPickPar.pos(true).neg(false);
+        peakPickPar.calcRange();
+        PeakPicker picker = new PeakPicker(peakPickPar);
+        picker.setTiled(tiled);
+        return picker.peakPick();
+    }
+
+    @Test
+    public void testTiledEqualsSequential() throws DatasetException, IOException {
+        dataset = createDataset();
+        PeakList sequential = pick("sequential", false);
+        Double sequentialNoise = dataset.getNoiseLevel();
+        PeakList tiled = pick("tiled", true);
+        Double tiledNoise = dataset.getNoiseLevel();
+
+        Assert.assertNotNull(sequentialNoise);
+        Assert.assertTrue(sequentialNoise > 0.5);
+        Assert.assertEquals(sequentialNoise, tiledNoise, 1.0e-9 * sequentialNoise);
+
+        List<Peak> sequentialPeaks = sequential.peaks();
+        List<Peak> tiledPeaks = tiled.peaks();
+        Assert.assertTrue(sequentialPeaks.size() > PEAKS.length / 2);
+        Assert.assertEquals(sequentialPeaks.size(), tiledPeaks.size());
+        for (int i = 0; i < sequentialPeaks.size(); i++) {
+            Peak sequentialPeak = sequentialPeaks.get(i);
+            Peak tiledPeak = tiledPeaks.get(i);
+            Assert.assertEquals(sequentialPeak.getIdNum(), tiledPeak.getIdNum());
+            Assert.assertEquals(sequentialPeak.getIntensity(), tiledPeak.getIntensity(), 0.0f);
+            for (int iDim = 0; iDim < 2; iDim++) {
+                Assert.assertEquals(sequentialPeak.getPeakDim(iDim).getChemShiftValue(),
+                        tiledPeak.getPeakDim(iDim).getChemShiftValue(), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testReadPoints() throws DatasetException, IOException {
+        dataset = createDataset();
+        dataset.setAxisReversed(0, true);
+        int[] dim = {0, 1};
+        int nPoints = 37;
+        double[] values = new double[nPoints + 3];
+        for (int[] start : new int[][]{{0, 0}, {100, 17}, {SIZE0 - nPoints, SIZE1 - 1}}) {
+            dataset.readPoints(start, dim, nPoints, values, 3);
+            int[] point = start.clone();
+            for (int i = 0; i < nPoints; i++) {
+                point[0] = start[0] + i;
+                Assert.assertEquals(dataset.readPoint(point, dim), values[i + 3], 0.0);
+            }
+        }
+    }
+}
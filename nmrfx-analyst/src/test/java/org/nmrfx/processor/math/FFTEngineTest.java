@@ -0,0 +1,102 @@
+package org.nmrfx.processor.math;
+
+import org.apache.commons.math3.transform.DftNormalization;
+import org.apache.commons.math3.transform.FastFourierTransformer;
+import org.apache.commons.math3.transform.TransformType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class FFTEngineTest {
+
+    double[][] getRandomRI(int n) {
+        Random random = new Random(n);
+        double[][] riVec = new double[2][n];
+        for (int i = 0; i < n; i++) {
+            riVec[0][i] = random.nextGaussian();
+            riVec[1][i] = random.nextGaussian();
+        }
+        return riVec;
+    }
+
+    void compare(double[][] expected, double[][] actual, int n) {
+        double tol = 1.0e-9;
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(expected[0][i], actual[0][i], tol);
+            Assert.assertEquals(expected[1][i], actual[1][i], tol);
+        }
+    }
+
+    @Test
+    public void testForward() {
+        for (int n : new int[]{1, 2, 4, 16, 512}) {
+            double[][] riVec = getRandomRI(n);
+            double[][] apacheVec = {riVec[0].clone(), riVec[1].clone()};
+            FastFourierTransformer.transformInPlace(apacheVec, DftNormalization.STANDARD, TransformType.FORWARD);
+            FFTEngine.fft(riVec[0], riVec[1], n);
+            compare(apacheVec, riVec, n);
+        }
+    }
+
+    @Test
+    public void testInverse() {
+        for (int n : new int[]{1, 2, 8, 256}) {
+            double[][] riVec = getRandomRI(n);
+            double[][] apacheVec = {riVec[0].clone(), riVec[1].clone()};
+            FastFourierTransformer.transformInPlace(apacheVec, DftNormalization.STANDARD, TransformType.INVERSE);
+            FFTEngine.ifft(riVec[0], riVec[1], n);
+            compare(apacheVec, riVec, n);
+        }
+    }
+
+    @Test
+    public void testMixedRadix() {
+        // 2/3/5 sizes use the mixed-radix path, 7 and 97 use Bluestein
+        for (int n : new int[]{3, 5, 12, 60, 1536, 7, 97}) {
+            double[][] riVec = getRandomRI(n);
+            double[][] expected = new double[2][n];
+            for (int k = 0; k < n; k++) {
+                for (int j = 0; j < n; j++) {
+                    double theta = -2.0 * Math.PI * ((long) j * k % n) / n;
+                    double cos = Math.cos(theta);
+                    double sin = Math.sin(theta);
+                    expected[0][k] += riVec[0][j] * cos - riVec[1][j] * sin;
+                    expected[1][k] += riVec[0][j] * sin + riVec[1][j] * cos;
+                }
+            }
+            double[][] keep = {riVec[0].clone(), riVec[1].clone()};
+            FFTEngine.fft(riVec[0], riVec[1], n);
+            compare(expected, riVec, n);
+            FFTEngine.ifft(riVec[0], riVec[1], n);
+            compare(keep, riVec, n);
+        }
+    }
+
+    @Test
+    public void testSwapHalves() {
+        double[] re = {0.0, 1.0, 2.0, 3.0, 4.0};
+        double[] im = re.clone();
+        FFTEngine.swapHalves(re, im, 5);
+        Assert.assertArrayEquals(new double[]{3.0, 4.0, 0.0, 1.0, 2.0}, re, 0.0);
+        FFTEngine.unswapHalves(re, im, 5);
+        Assert.assertArrayEquals(new double[]{0.0, 1.0, 2.0, 3.0, 4.0}, re, 0.0);
+    }
+
+    @Test
+    public void testVecRoundTrip() {
+        int n = 96;
+        double[][] riVec = getRandomRI(n);
+        Vec vec = new Vec(n, true);
+        for (int i = 0; i < n; i++) {
+            vec.set(i, riVec[0][i], riVec[1][i]);
+        }
+        vec.fft();
+        Assert.assertEquals(n, vec.getSize());
+        vec.ifft();
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(riVec[0][i], vec.getReal(i), 1.0e-12);
+            Assert.assertEquals(riVec[1][i], vec.getImag(i), 1.0e-12);
+        }
+    }
+}
@@ -120,4 +120,48 @@ public class MatrixNDTest {
         }
     }
 
+    @Test
+    public void testParallelFT() {
+        int[] sizes = {16, 32, 64};
+        MatrixND serial = new MatrixND(sizes);
+        for (int i = 0; i < serial.getNElems(); i++) {
+            serial.setValueAtIndex(i, Math.sin(i * 0.37) + Math.cos(i * 0.11));
+        }
+        MatrixND parallel = new MatrixND(serial);
+        parallel.setParallel(true);
+        serial.doFTtoReal();
+        parallel.doFTtoReal();
+        serial.doHIFT(0.5);
+        parallel.doHIFT(0.5);
+        for (int i = 0; i < serial.getNElems(); i++) {
+            Assert.assertEquals(serial.getValueAtIndex(i), parallel.getValueAtIndex(i), 0.0);
+        }
+    }
+
+    @Test
+    public void testWorkspaceMatrix() {
+        MatrixND md = new MatrixND(testNonSquare2D);
+        double[] buffer = MatrixWorkspace.get().getBuffer(MatrixWorkspace.Slot.GRAD, md.getNElems());
+        MatrixND copy = new MatrixND(md, buffer);
+        copy.copyFrom(md);
+        Assert.assertEquals(8.0, copy.getValue(2, 1), 1.0e-10);
+        Assert.assertEquals(8.0, buffer[7], 1.0e-10);
+        Assert.assertSame(buffer, MatrixWorkspace.get().getBuffer(MatrixWorkspace.Slot.GRAD, md.getNElems()));
+    }
+
+    @Test
+    public void testWorkspaceRelease() {
+        MatrixWorkspace workspace = MatrixWorkspace.get();
+        double[][] riVec = workspace.getRIVec(16);
+        Assert.assertSame(riVec, workspace.getRIVec(16));
+        for (int size = 32; size <= 256; size *= 2) {
+            workspace.getRIVec(size);
+        }
+        Assert.assertNotSame(riVec, workspace.getRIVec(16));
+
+        double[] buffer = workspace.getBuffer(MatrixWorkspace.Slot.Z, 10);
+        MatrixWorkspace.release();
+        Assert.assertNotSame(workspace, MatrixWorkspace.get());
+        Assert.assertNotSame(buffer, MatrixWorkspace.get().getBuffer(MatrixWorkspace.Slot.Z, 10));
+    }
 }
@@ -0,0 +1,69 @@
+package org.nmrfx.processor.operations;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.processing.ProcessingException;
+
+public class ShiftTest {
+
+    private static Vec getFID(int n) {
+        Vec vec = new Vec(n, true);
+        vec.dwellTime = 1.0e-3;
+        for (int i = 0; i < n; i++) {
+            double decay = Math.exp(-i * 0.05);
+            vec.set(i, decay * Math.cos(i * 0.7), decay * Math.sin(i * 0.7));
+        }
+        return vec;
+    }
+
+    private static double[][] getValues(Vec vec) {
+        int n = vec.getSize();
+        double[][] values = new double[2][n];
+        for (int i = 0; i < n; i++) {
+            values[0][i] = vec.getReal(i);
+            values[1][i] = vec.getImag(i);
+        }
+        return values;
+    }
+
+    private static void checkShifted(double[][] before, Vec vec, int shift) {
+        int n = vec.getSize();
+        for (int i = 0; i < n; i++) {
+            int j = i - shift;
+            boolean inside = (j >= 0) && (j < n);
+            Assert.assertEquals(inside ? before[0][j] : 0.0, vec.getReal(i), 1.0e-12);
+            Assert.assertEquals(inside ? before[1][j] : 0.0, vec.getImag(i), 1.0e-12);
+        }
+    }
+
+    @Test
+    public void testShiftAfterFT() throws ProcessingException {
+        for (int shift : new int[]{5, -7}) {
+            Vec vec = getFID(64);
+            new Ft(false, false).eval(vec);
+            Assert.assertFalse(vec.useApache());
+            double[][] before = getValues(vec);
+            new Shift(shift, false).eval(vec);
+            checkShifted(before, vec, shift);
+        }
+    }
+
+    @Test
+    public void testShiftAfterApodization() throws ProcessingException {
+        Vec vec = getFID(64);
+        new Expd(2.0, 1.0, false).eval(vec);
+        double[][] before = getValues(vec);
+        new Shift(3, false).eval(vec);
+        checkShifted(before, vec, 3);
+    }
+
+    @Test
+    public void testShiftApache() throws ProcessingException {
+        Vec vec = getFID(32);
+        vec.makeApache();
+        double[][] before = getValues(vec);
+        new Shift(-4, false).eval(vec);
+        checkShifted(before, vec, -4);
+    }
+}
@@ -0,0 +1,88 @@
+package org.nmrfx.processor.processing;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.utils.OwnerOnlyFiles;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ProcessingServerTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testJobs() throws IOException, InterruptedException {
+        Path good = tmpFolder.newFile("good.py").toPath();
+        Path bad = tmpFolder.newFile("bad.py").toPath();
+        List<Path> ran = new CopyOnWriteArrayList<>();
+        ProcessingServer.ScriptRunner runner = script -> {
+            ran.add(script);
+            if (script.equals(bad)) {
+                throw new IllegalStateException("bad script");
+            }
+        };
+        Path tokenDir = tmpFolder.getRoot().toPath().resolve("server");
+        try (ProcessingServer server = new ProcessingServer(0, runner, tokenDir)) {
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                 BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                 PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+                writer.println("AUTH " + Files.readString(server.getTokenFile()));
+                Assert.assertEquals("OK", reader.readLine());
+                writer.println("SUBMIT " + good);
+                Assert.assertEquals("QUEUED 1", reader.readLine());
+                writer.println("RUN " + bad);
+                String result = reader.readLine();
+                Assert.assertTrue(result, result.startsWith("FAILED 2 "));
+                Assert.assertTrue(result, result.endsWith("bad script"));
+                writer.println("WAIT 1");
+                Assert.assertTrue(reader.readLine().startsWith("DONE 1 "));
+                writer.println("SUBMIT " + tmpFolder.getRoot().toPath().resolve("missing.py"));
+                Assert.assertTrue(reader.readLine().startsWith("ERROR"));
+                writer.println("SHUTDOWN");
+                Assert.assertEquals("OK", reader.readLine());
+            }
+            server.awaitShutdown();
+            Assert.assertEquals(List.of(good, bad), ran);
+            Assert.assertEquals(ProcessingServer.JobState.DONE, server.getJob(1).getState());
+            Assert.assertFalse(Files.exists(server.getTokenFile()));
+        }
+    }
+
+    @Test
+    public void testNotAuthorized() throws IOException {
+        Path script = tmpFolder.newFile("script.py").toPath();
+        List<Path> ran = new CopyOnWriteArrayList<>();
+        Path tokenDir = tmpFolder.getRoot().toPath().resolve("server");
+        try (ProcessingServer server = new ProcessingServer(0, ran::add, tokenDir)) {
+            server.start();
+            Assert.assertTrue(OwnerOnlyFiles.isOwnerOnly(server.getTokenFile()));
+            for (String first : new String[]{"SUBMIT " + script, "AUTH 0123456789abcdef", "SHUTDOWN"}) {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+                     BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                     PrintWriter writer = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+                    writer.println(first);
+                    writer.println("SHUTDOWN");
+                    Assert.assertEquals("ERROR Not authorized", reader.readLine());
+                    Assert.assertNull(reader.readLine());
+                }
+            }
+            Assert.assertTrue(server.getJobs().isEmpty());
+            Assert.assertTrue(Files.exists(server.getTokenFile()));
+        }
+        Assert.assertTrue(ran.isEmpty());
+    }
+}
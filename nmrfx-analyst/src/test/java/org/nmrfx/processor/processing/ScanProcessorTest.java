@@ -0,0 +1,157 @@
+package org.nmrfx.processor.processing;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.processor.datasets.Dataset;
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.operations.CoAdd;
+import org.nmrfx.processor.operations.Expd;
+import org.nmrfx.processor.operations.Ft;
+import org.nmrfx.processor.operations.Operation;
+import org.nmrfx.processor.operations.WriteVector;
+import org.nmrfx.processor.processing.processes.ProcessOps;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ScanProcessorTest {
+    private static final String FID_SUBMODULE_LOCATION = "nmrfx-test-data/testfids/";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @After
+    public void resetProcessor() {
+        Processor.getProcessor().reset();
+    }
+
+    private static ProcessOps setupProcess(Operation... ops) {
+        Processor processor = Processor.getProcessor();
+        processor.reset();
+        processor.addDimProcess(0);
+        ProcessOps process = processor.getCurrentProcess();
+        for (Operation op : ops) {
+            process.add(op);
+        }
+        return process;
+    }
+
+    @Test
+    public void testVectorOperations() {
+        setupProcess(new Expd(2.0, 0.5, false), new Ft(false, false), new WriteVector());
+        List<Operation> ops = ScanProcessor.getVectorOperations(Processor.getProcessor(), 1);
+        Assert.assertNotNull(ops);
+        Assert.assertEquals(2, ops.size());
+        Assert.assertTrue(ops.get(0) instanceof Expd);
+        Assert.assertTrue(ops.get(1) instanceof Ft);
+    }
+
+    @Test
+    public void testBatchOperationNeedsScript() {
+        setupProcess(new CoAdd(new double[]{1.0, 1.0}), new Ft(false, false));
+        Assert.assertNull(ScanProcessor.getVectorOperations(Processor.getProcessor(), 1));
+    }
+
+    @Test
+    public void testMultiDimRowsNeedScript() {
+        setupProcess(new Expd(2.0, 0.5, false), new Ft(false, false));
+        Assert.assertNull(ScanProcessor.getVectorOperations(Processor.getProcessor(), 2));
+        Processor.getProcessor().addDimProcess(1);
+        Assert.assertNull(ScanProcessor.getVectorOperations(Processor.getProcessor(), 1));
+    }
+
+    @Test
+    public void testFileParameters() {
+        String script = """
+                acqOrder()
+                acqarray(0)
+                fixdsp(True)
+                skip(0)
+                label('1H')
+                acqsize(0)
+                tdsize(0)
+                sf(600.13)
+                sw(7211.5)
+                ref(4.77)
+                DIM(1)
+                EXPD(lb=0.5)
+                FT()
+                run()
+                """;
+        Assert.assertFalse(ScanProcessor.setsFileParameters(script));
+        Assert.assertTrue(ScanProcessor.setsFileParameters(script.replace("sw(7211.5)", "sw('')")));
+        Assert.assertTrue(ScanProcessor.setsFileParameters(script.replace("sf(600.13)", "sf('SFO1')")));
+        Assert.assertTrue(ScanProcessor.setsFileParameters(script.replace("ref(4.77)", "ref('h2o')")));
+        Assert.assertTrue(ScanProcessor.setsFileParameters(script.replace("tdsize(0)", "tdsize(1024)")));
+        Assert.assertTrue(ScanProcessor.setsFileParameters(script.replace("skip(0)", "skip(1)")));
+        Assert.assertTrue(ScanProcessor.setsFileParameters(script + "\nzerofreq(4.7)\n"));
+        Assert.assertTrue(ScanProcessor.setsFileParameters("tdcomplex(False)\n" + script));
+    }
+
+    private static List<float[]> processSeries(List<String> fidFilePaths, File outFile, boolean concurrent)
+            throws Exception {
+        String initScript = """
+                from pyproc import *
+                useProcessor()
+                """;
+        String processScript = """
+                DIM(1)
+                EXPD(lb=0.5)
+                ZF()
+                FT()
+                PHASE(ph0=50.0,ph1=0.0)
+                run()
+                """;
+        ScanProcessor scanProcessor = new ScanProcessor(initScript, processScript);
+        scanProcessor.setThreads(2);
+        scanProcessor.setConcurrent(concurrent);
+        scanProcessor.process(fidFilePaths, outFile);
+        Assert.assertEquals(concurrent, scanProcessor.processedConcurrently());
+
+        List<float[]> rows = new ArrayList<>();
+        Dataset dataset = new Dataset(outFile.toString(), outFile.getName(), false, false, false);
+        try {
+            Assert.assertEquals(fidFilePaths.size(), dataset.getSizeTotal(1));
+            for (int iRow = 0; iRow < fidFilePaths.size(); iRow++) {
+                Vec vec = new Vec(dataset.getSizeTotal(0));
+                dataset.readVector(vec, new int[]{iRow}, 0);
+                float[] row = new float[vec.getSize()];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (float) vec.getReal(i);
+                }
+                rows.add(row);
+            }
+        } finally {
+            dataset.close();
+        }
+        return rows;
+    }
+
+    @Test
+    public void testConcurrentRowsMatchScript() throws Exception {
+        Path fidFile = Path.of(System.getProperty("user.dir")).toAbsolutePath().getParent()
+                .resolve(FID_SUBMODULE_LOCATION).resolve("jcamp/TESTFID.DX");
+        // the test FIDs are in a separate repository that may not be checked out
+        Assume.assumeTrue("File doesn't exist: " + fidFile, Files.exists(fidFile));
+        List<String> fidFilePaths = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Path copy = tmpFolder.newFolder("scan" + i).toPath().resolve("TESTFID.DX");
+            Files.copy(fidFile, copy);
+            fidFilePaths.add(copy.toString());
+        }
+        List<float[]> scriptRows = processSeries(fidFilePaths, tmpFolder.getRoot().toPath().resolve("script.nv").toFile(), false);
+        List<float[]> concurrentRows = processSeries(fidFilePaths, tmpFolder.getRoot().toPath().resolve("concurrent.nv").toFile(), true);
+        Assert.assertEquals(scriptRows.size(), concurrentRows.size());
+        for (int iRow = 0; iRow < scriptRows.size(); iRow++) {
+            Assert.assertArrayEquals(scriptRows.get(iRow), concurrentRows.get(iRow), 0.0f);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.nmrfx.processor.processing;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.nmrfx.processor.datasets.DatasetCompare;
+import org.python.util.PythonInterpreter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+public class StreamProcessTest {
+    private static final String FID_SUBMODULE_LOCATION = "nmrfx-test-data/testfids/";
+    private static final String FID_DIR = "agilent/15Nhsqc.fid";
+    private static final String SCRIPT = "src/test/resources/process_scripts/ubiq_hsqc.py";
+    private static final String OUT_FILE = "tst_ubiq_hsqc.nv";
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Path fidHome;
+    private Path tmpHome;
+    private Path fidFile;
+    private byte[] fidBytes;
+
+    @Before
+    public void setup() throws IOException {
+        Path sourceDir = Path.of("").toAbsolutePath().getParent().resolve(FID_SUBMODULE_LOCATION).resolve(FID_DIR);
+        Assume.assumeTrue("Missing test FID " + sourceDir, Files.isDirectory(sourceDir));
+        fidHome = tmpFolder.newFolder("fids").toPath();
+        tmpHome = tmpFolder.newFolder("out").toPath();
+        Path fidDir = fidHome.resolve(FID_DIR);
+        Files.createDirectories(fidDir);
+        try (Stream<Path> files = Files.list(sourceDir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.copy(file, fidDir.resolve(file.getFileName()));
+            }
+        }
+        fidFile = fidDir.resolve("fid");
+        fidBytes = Files.readAllBytes(fidFile);
+    }
+
+    @After
+    public void resetProcessor() {
+        Processor processor = Processor.getProcessor();
+        processor.setStreamMode(false);
+        processor.setStreamTimeout(600_000);
+        processor.reset();
+    }
+
+    private static String toPythonPath(Path path) {
+        return path.toString().replace("\\", "/") + "/";
+    }
+
+    private void runScript(boolean stream, double streamWait) {
+        try (PythonInterpreter interp = new PythonInterpreter()) {
+            interp.exec("from pyproc import *");
+            interp.exec("setTestLocations('" + toPythonPath(fidHome) + "','" + toPythonPath(tmpHome) + "')");
+            interp.exec("useProcessor()");
+            interp.exec("procOpts(stream=" + (stream ? "True" : "False") + ",streamwait=" + streamWait + ")");
+            interp.execfile(SCRIPT);
+        }
+    }
+
+    private void truncateFid(int nBytes) throws IOException {
+        Files.write(fidFile, Arrays.copyOf(fidBytes, nBytes));
+    }
+
+    @Test
+    public void testGrowingFile() throws IOException, InterruptedException {
+        // the acquisition is under way, with part of a FID at the end of the file
+        int start = fidBytes.length / 4 + 7;
+        truncateFid(start);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread processThread = new Thread(() -> {
+            try {
+                runScript(true, 30.0);
+            } catch (Throwable t) {
+                error.set(t);
+            }
+        });
+        processThread.start();
+        Thread.sleep(2000);
+        Assert.assertNull(error.get());
+        Assert.assertTrue("processing should wait for the rest of the FIDs", processThread.isAlive());
+
+        int nChunks = 8;
+        int chunkSize = (fidBytes.length - start + nChunks - 1) / nChunks;
+        try (RandomAccessFile raFile = new RandomAccessFile(fidFile.toFile(), "rw")) {
+            for (int pos = start; pos < fidBytes.length; pos += chunkSize) {
+                raFile.seek(pos);
+                raFile.write(fidBytes, pos, Math.min(chunkSize, fidBytes.length - pos));
+                Thread.sleep(300);
+            }
+        }
+        processThread.join(60_000);
+        Assert.assertFalse(processThread.isAlive());
+        Assert.assertNull(error.get());
+
+        // the same data processed from the complete file
+        File streamFile = tmpHome.resolve("stream.nv").toFile();
+        Files.move(tmpHome.resolve(OUT_FILE), streamFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        runScript(false, 30.0);
+        long[] result = DatasetCompare.compareDetailed(tmpHome.resolve(OUT_FILE).toFile(), streamFile);
+        Assert.assertArrayEquals(new long[]{-1, -1, -1}, result);
+    }
+
+    @Test
+    public void testAcquisitionStops() throws IOException {
+        truncateFid(fidBytes.length / 2);
+        boolean failed = false;
+        try {
+            runScript(true, 1.0);
+        } catch (Exception e) {
+            failed = true;
+        }
+        Assert.assertTrue(failed);
+        Assert.assertTrue(Processor.getProcessor().isProcessorAvailable());
+    }
+}
@@ -0,0 +1,69 @@
+package org.nmrfx.processor.processing.processes;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.processor.math.Vec;
+import org.nmrfx.processor.operations.CoAdd;
+import org.nmrfx.processor.operations.Expd;
+import org.nmrfx.processor.operations.Ft;
+import org.nmrfx.processor.operations.Operation;
+import org.nmrfx.processor.operations.Zf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProcessOpsTest {
+
+    private static Vec getVec(int size, boolean apache) {
+        Vec vec = new Vec(size, true);
+        for (int i = 0; i < size; i++) {
+            vec.set(i, Math.cos(i * 0.2) * Math.exp(-i / 50.0), Math.sin(i * 0.2) * Math.exp(-i / 50.0));
+        }
+        if (!apache) {
+            vec.makeNotApache();
+        }
+        return vec;
+    }
+
+    @Test
+    public void testCompileStages() {
+        List<Operation> ops = new ArrayList<>();
+        ops.add(new Expd(2.0, 0.5, false));
+        ops.add(new Zf(1, null, null));
+        ops.add(new CoAdd(new double[]{1.0, 1.0}));
+        ops.add(new Ft(false, false));
+        List<ProcessOps.Stage> stages = ProcessOps.compileStages(ops);
+        Assert.assertEquals(3, stages.size());
+        Assert.assertTrue(stages.get(0).vectorWise());
+        Assert.assertEquals(2, stages.get(0).operations().size());
+        Assert.assertFalse(stages.get(1).vectorWise());
+        Assert.assertTrue(stages.get(2).vectorWise());
+    }
+
+    @Test
+    public void testFusedStageMatchesSequential() {
+        int nVectors = 4;
+        List<Vec> fused = new ArrayList<>();
+        List<Vec> sequential = new ArrayList<>();
+        for (int i = 0; i < nVectors; i++) {
+            fused.add(getVec(128, true));
+            sequential.add(getVec(128, false));
+        }
+        List<Operation> ops = List.of(new Expd(2.0, 0.5, false), new Zf(1, null, null), new Ft(false, false));
+        for (Operation op : ops) {
+            op.clone().eval(sequential);
+        }
+        for (ProcessOps.Stage stage : ProcessOps.compileStages(ops)) {
+            stage.eval(fused);
+        }
+        for (int i = 0; i < nVectors; i++) {
+            Vec a = fused.get(i);
+            Vec b = sequential.get(i);
+            Assert.assertEquals(b.getSize(), a.getSize());
+            for (int j = 0; j < a.getSize(); j++) {
+                Assert.assertEquals(b.getReal(j), a.getReal(j), 1.0e-12);
+                Assert.assertEquals(b.getImag(j), a.getImag(j), 1.0e-12);
+            }
+        }
+    }
+}
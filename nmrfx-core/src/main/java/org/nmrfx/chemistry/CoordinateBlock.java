@@ -0,0 +1,237 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.chemistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The coordinates of a set of atoms in several structures, copied into one
+ * primitive array per structure. The x, y and z of atom i are at 3 * i, 3 * i
+ * + 1 and 3 * i + 2 of a structure's array, so operations over a whole
+ * ensemble (superposition, RMSD) can run over contiguous memory instead of
+ * going through the SpatialSet and Point3 of each atom in each structure.
+ * <p>
+ * The block is a snapshot. Changes to the SpatialSets aren't seen until the
+ * structure is reloaded, and changes to the block aren't seen by the
+ * SpatialSets until the structure is stored. Atoms without coordinates in a
+ * structure have NaN coordinates in it.
+ */
+public class CoordinateBlock {
+
+    private final List<SpatialSet> spatialSets;
+    private final int[] structures;
+    private final double[][] coords;
+
+    /**
+     * Create a block with the coordinates of a list of SpatialSets.
+     *
+     * @param spatialSets the spatial sets, some of which may be null
+     * @param structures  the structures to copy the coordinates of
+     */
+    public CoordinateBlock(List<SpatialSet> spatialSets, int[] structures) {
+        this.spatialSets = new ArrayList<>(spatialSets);
+        this.structures = structures.clone();
+        coords = new double[structures.length][spatialSets.size() * 3];
+        for (int k = 0; k < structures.length; k++) {
+            load(k);
+        }
+    }
+
+    /**
+     * Create a block with the coordinates of a list of atoms.
+     *
+     * @param atoms      the atoms
+     * @param structures the structures to copy the coordinates of
+     * @return the block, with the atoms identified by their index in the list
+     */
+    public static CoordinateBlock of(List<Atom> atoms, int[] structures) {
+        List<SpatialSet> spatialSets = new ArrayList<>(atoms.size());
+        for (Atom atom : atoms) {
+            spatialSets.add(atom.getSpatialSet());
+        }
+        return new CoordinateBlock(spatialSets, structures);
+    }
+
+    /**
+     * Copy the coordinates of one structure from the SpatialSets into the
+     * block, replacing any changes made to the block.
+     *
+     * @param k the index of the structure in the block
+     */
+    public void load(int k) {
+        double[] values = coords[k];
+        int iStruct = structures[k];
+        for (int i = 0, n = spatialSets.size(); i < n; i++) {
+            SpatialSet spatialSet = spatialSets.get(i);
+            Point3 pt = spatialSet == null ? null : spatialSet.getPoint(iStruct);
+            if (pt == null) {
+                Arrays.fill(values, i * 3, i * 3 + 3, Double.NaN);
+            } else {
+                values[i * 3] = pt.getX();
+                values[i * 3 + 1] = pt.getY();
+                values[i * 3 + 2] = pt.getZ();
+            }
+        }
+    }
+
+    /**
+     * Copy the coordinates of one structure from the block back to the
+     * SpatialSets. Atoms without coordinates in the block are left unchanged.
+     *
+     * @param k the index of the structure in the block
+     */
+    public void store(int k) {
+        double[] values = coords[k];
+        int iStruct = structures[k];
+        for (int i = 0, n = spatialSets.size(); i < n; i++) {
+            SpatialSet spatialSet = spatialSets.get(i);
+            if ((spatialSet != null) && isValid(k, i)) {
+                spatialSet.setPoint(iStruct, new Point3(values[i * 3], values[i * 3 + 1], values[i * 3 + 2]));
+            }
+        }
+    }
+
+    public int getAtomCount() {
+        return spatialSets.size();
+    }
+
+    public int getStructureCount() {
+        return structures.length;
+    }
+
+    public SpatialSet getSpatialSet(int i) {
+        return spatialSets.get(i);
+    }
+
+    /**
+     * Get the structure number of a structure in the block.
+     *
+     * @param k the index of the structure in the block
+     * @return the structure number
+     */
+    public int getStructure(int k) {
+        return structures[k];
+    }
+
+    public int[] getStructures() {
+        return structures.clone();
+    }
+
+    /**
+     * Get the index in the block of a structure.
+     *
+     * @param iStruct the structure number
+     * @return the index, or -1 if the structure isn't in the block
+     */
+    public int getStructureIndex(int iStruct) {
+        for (int k = 0; k < structures.length; k++) {
+            if (structures[k] == iStruct) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the coordinate array of a structure. The array is the one used by
+     * the block, not a copy, so changes to it change the block.
+     *
+     * @param k the index of the structure in the block
+     * @return the x, y, z coordinates of each atom in turn
+     */
+    public double[] getCoordinates(int k) {
+        return coords[k];
+    }
+
+    public boolean isValid(int k, int i) {
+        return !Double.isNaN(coords[k][i * 3]);
+    }
+
+    public double getX(int k, int i) {
+        return coords[k][i * 3];
+    }
+
+    public double getY(int k, int i) {
+        return coords[k][i * 3 + 1];
+    }
+
+    public double getZ(int k, int i) {
+        return coords[k][i * 3 + 2];
+    }
+
+    /**
+     * Get the position of an atom in a structure.
+     *
+     * @param k the index of the structure in the block
+     * @param i the index of the atom
+     * @return the position or null if the atom has no coordinates
+     */
+    public Point3 getPoint(int k, int i) {
+        if (!isValid(k, i)) {
+            return null;
+        }
+        return new Point3(coords[k][i * 3], coords[k][i * 3 + 1], coords[k][i * 3 + 2]);
+    }
+
+    public void setPoint(int k, int i, double x, double y, double z) {
+        coords[k][i * 3] = x;
+        coords[k][i * 3 + 1] = y;
+        coords[k][i * 3 + 2] = z;
+    }
+
+    /**
+     * Calculate the root mean square deviation of an atom's positions from
+     * its mean position over the structures in the block.
+     *
+     * @param i the index of the atom
+     * @return the RMS deviation, or 0.0 if the atom has no coordinates
+     */
+    public double getAtomRMS(int i) {
+        double sumX = 0.0;
+        double sumY = 0.0;
+        double sumZ = 0.0;
+        int nPoints = 0;
+        for (int k = 0; k < structures.length; k++) {
+            if (isValid(k, i)) {
+                sumX += coords[k][i * 3];
+                sumY += coords[k][i * 3 + 1];
+                sumZ += coords[k][i * 3 + 2];
+                nPoints++;
+            }
+        }
+        if (nPoints == 0) {
+            return 0.0;
+        }
+        double scale = 1.0 / nPoints;
+        double meanX = sumX * scale;
+        double meanY = sumY * scale;
+        double meanZ = sumZ * scale;
+        double sumSq = 0.0;
+        for (int k = 0; k < structures.length; k++) {
+            if (isValid(k, i)) {
+                double dX = meanX - coords[k][i * 3];
+                double dY = meanY - coords[k][i * 3 + 1];
+                double dZ = meanZ - coords[k][i * 3 + 2];
+                sumSq += dX * dX + dY * dY + dZ * dZ;
+            }
+        }
+        return Math.sqrt(sumSq / nPoints);
+    }
+}
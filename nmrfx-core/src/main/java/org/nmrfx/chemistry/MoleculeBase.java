@@ -1028,6 +1028,21 @@ public class MoleculeBase implements Serializable, ITree {
         return atoms;
     }
 
+    /**
+     * Copy the coordinates of the active structures into a CoordinateBlock,
+     * with the atoms in the order of the atom array.
+     *
+     * @return the coordinate block
+     */
+    public CoordinateBlock getCoordinateBlock() {
+        return getCoordinateBlock(getActiveStructures());
+    }
+
+    public CoordinateBlock getCoordinateBlock(int[] structureNums) {
+        updateAtomArray();
+        return CoordinateBlock.of(atoms, structureNums);
+    }
+
     public SpatialSetIterator getSpatialSetIterator() {
         return new SpatialSetIterator(this);
 
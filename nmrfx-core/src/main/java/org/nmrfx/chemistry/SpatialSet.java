@@ -32,7 +32,7 @@ import java.util.Vector;
  */
 public class SpatialSet {
 
-    class Coords {
+    static class Coords {
 
         Point3 pt;
         float occupancy = 1.0f;
@@ -272,14 +272,15 @@ public class SpatialSet {
     }
 
     public void setPoint(int index, Point3 ptNew) {
-        setPointValidity(index, true);
+        for (int i = coordsList.size(); i <= index; i++) {
+            coordsList.add(null);
+        }
         Coords coord = coordsList.get(index);
         if (coord == null) {
-            coord = new Coords(ptNew);
+            coordsList.set(index, new Coords(ptNew));
         } else {
             coord.setPoint(ptNew);
         }
-        coordsList.set(index, coord);
         atom.changed();
     }
 
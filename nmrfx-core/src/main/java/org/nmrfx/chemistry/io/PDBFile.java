@@ -223,7 +223,6 @@ public class PDBFile {
 
                     Atom atom = new Atom(atomParse);
                     atom.setEnergyProp();
-                    atom.setPointValidity(structureNumber, true);
                     pt = new Point3(atomParse.x, atomParse.y, atomParse.z);
                     atom.setPoint(structureNumber, pt);
                     atom.setOccupancy((float) atomParse.occupancy);
@@ -585,7 +584,6 @@ public class PDBFile {
                             continue;
                         }
                     }
-                    atom.setPointValidity(structureNumber, true);
                     pt = new Point3(atomParse.x, atomParse.y, atomParse.z);
                     atom.setPoint(structureNumber, pt);
                     atom.setOccupancy((float) atomParse.occupancy);
@@ -0,0 +1,381 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.datasets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A dataset file whose blocks are stored compressed. The file starts with the
+ * standard NMRView header, followed by an index with the position, length and
+ * allocated space of each block, followed by the compressed blocks. Blocks are
+ * read and written through the shared StorageCache, so each block is
+ * decompressed once when it is loaded and compressed once when it is written
+ * back. A rewritten block is stored in place if it fits in its space and is
+ * otherwise moved to free space left by blocks that moved before, or appended
+ * to the file. Blocks that are all zero take no space.
+ * <p>
+ * The index entry of a block is written as soon as the block is, so the file
+ * stays readable if the program stops without closing it. A moved block is
+ * written to its new place before its entry is changed, and its old space is
+ * only reused after that, so only a block that was being rewritten in place
+ * at that moment can be damaged. The index header records whether the file
+ * was closed, or forced, after its last write, and a warning is logged when a
+ * file that wasn't is opened.
+ *
+ * @see FloatBlockCodec
+ */
+public class CompressedSubMatrixFile extends SubMatrixFile {
+    private static final Logger log = LoggerFactory.getLogger(CompressedSubMatrixFile.class);
+
+    public static final String EXTENSION = ".nvz";
+    private static final int MAGIC = 0x4E565A31;
+    private static final int INDEX_HEADER_SIZE = 16;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int STATE_CLOSED = 0;
+    private static final int STATE_OPEN = 1;
+
+    private final DatasetBase dataset;
+    private final int mantissaBits;
+    private final long indexStart;
+    private final long dataStart;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockCapacities;
+    // free space between blocks, by position
+    private final TreeMap<Long, Integer> freeSpace = new TreeMap<>();
+    private long fileEnd;
+    private boolean open = false;
+
+    public CompressedSubMatrixFile(final DatasetBase dataset, File file, final DatasetLayout layout, final RandomAccessFile raFile, final boolean writable) throws IOException {
+        super(dataset, file, layout, raFile, writable);
+        this.dataset = dataset;
+        int nBlocks = layout.totalBlocks;
+        indexStart = layout.getFileHeaderSize();
+        dataStart = indexStart + INDEX_HEADER_SIZE + (long) nBlocks * INDEX_ENTRY_SIZE;
+        blockOffsets = new long[nBlocks];
+        blockLengths = new int[nBlocks];
+        blockCapacities = new int[nBlocks];
+        fileEnd = dataStart;
+        int storedBits = readIndex(file);
+        if (storedBits >= 0) {
+            mantissaBits = storedBits;
+            // a copy of the dataset, made when it is resized, keeps the precision
+            dataset.setCompressionMantissaBits(storedBits);
+        } else {
+            mantissaBits = dataset.getCompressionMantissaBits();
+            if (writable) {
+                // a new file gets its index now, so blocks written later can be found
+                writeIndex();
+            }
+        }
+    }
+
+    /**
+     * Check whether a file is stored in the compressed format.
+     *
+     * @param file the file to check
+     * @return true if the file has the compressed dataset extension
+     */
+    public static boolean isCompressed(File file) {
+        return file != null && file.getName().endsWith(EXTENSION);
+    }
+
+    /**
+     * Get the number of mantissa bits kept for the values in this file. It is
+     * set from the dataset's compression mantissa bits when the file is
+     * created, and stored in the file's index.
+     *
+     * @return the number of mantissa bits
+     * @see DatasetBase#setCompressionMantissaBits(int)
+     */
+    public int getMantissaBits() {
+        return mantissaBits;
+    }
+
+    /**
+     * Get the number of bytes the compressed blocks occupy in the file.
+     *
+     * @return the number of bytes
+     */
+    public synchronized long getCompressedSize() {
+        long size = 0;
+        for (int length : blockLengths) {
+            size += length;
+        }
+        return size;
+    }
+
+    /**
+     * Get the position of the end of the space allocated to blocks.
+     *
+     * @return the position in bytes
+     */
+    public synchronized long getAllocatedEnd() {
+        return fileEnd;
+    }
+
+    /**
+     * Read the block index from the file.
+     *
+     * @return the number of mantissa bits stored in the file, or -1 if the
+     * file doesn't have an index yet
+     * @throws IOException if the file has data but no valid index
+     */
+    private int readIndex(File file) throws IOException {
+        if (fc.size() < dataStart) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+        fc.read(header, indexStart);
+        if ((header.getInt(0) != MAGIC) || (header.getInt(8) != blockOffsets.length)) {
+            if (fc.size() > dataStart) {
+                throw new IOException("Compressed dataset " + file + " has no valid block index");
+            }
+            return -1;
+        }
+        ByteBuffer entries = ByteBuffer.allocate(blockOffsets.length * INDEX_ENTRY_SIZE);
+        while (entries.hasRemaining()) {
+            if (fc.read(entries, indexStart + INDEX_HEADER_SIZE + entries.position()) < 0) {
+                throw new IOException("Compressed dataset index is truncated");
+            }
+        }
+        for (int i = 0; i < blockOffsets.length; i++) {
+            blockOffsets[i] = entries.getLong(i * INDEX_ENTRY_SIZE);
+            blockLengths[i] = entries.getInt(i * INDEX_ENTRY_SIZE + 8);
+            blockCapacities[i] = entries.getInt(i * INDEX_ENTRY_SIZE + 12);
+            fileEnd = Math.max(fileEnd, blockOffsets[i] + blockCapacities[i]);
+        }
+        findFreeSpace();
+        if (header.getInt(12) != STATE_CLOSED) {
+            log.warn("Compressed dataset {} wasn't closed after it was last written, blocks being written then may be damaged", file);
+        }
+        return header.getInt(4);
+    }
+
+    /**
+     * Find the gaps between the spaces allocated to blocks.
+     */
+    private void findFreeSpace() {
+        freeSpace.clear();
+        Integer[] order = new Integer[blockOffsets.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> blockOffsets[i]));
+        long position = dataStart;
+        for (int i : order) {
+            if (blockCapacities[i] == 0) {
+                continue;
+            }
+            if (blockOffsets[i] > position) {
+                freeSpace.put(position, (int) (blockOffsets[i] - position));
+            }
+            position = Math.max(position, blockOffsets[i] + blockCapacities[i]);
+        }
+    }
+
+    /**
+     * Allocate space for a block, from free space if there is a gap big
+     * enough or else at the end of the file. Must be called while
+     * synchronized on this file.
+     */
+    private long allocate(int capacity) {
+        for (Map.Entry<Long, Integer> entry : freeSpace.entrySet()) {
+            if (entry.getValue() >= capacity) {
+                long position = entry.getKey();
+                freeSpace.remove(position);
+                if (entry.getValue() > capacity) {
+                    freeSpace.put(position + capacity, entry.getValue() - capacity);
+                }
+                return position;
+            }
+        }
+        long position = fileEnd;
+        fileEnd += capacity;
+        return position;
+    }
+
+    /**
+     * Return the space of a block to the free space, merging it with
+     * neighbouring gaps. Must be called while synchronized on this file.
+     */
+    private void release(long position, int capacity) {
+        Map.Entry<Long, Integer> before = freeSpace.floorEntry(position);
+        if ((before != null) && (before.getKey() + before.getValue() == position)) {
+            freeSpace.remove(before.getKey());
+            position = before.getKey();
+            capacity += before.getValue();
+        }
+        Integer after = freeSpace.remove(position + capacity);
+        if (after != null) {
+            capacity += after;
+        }
+        if (position + capacity == fileEnd) {
+            fileEnd = position;
+        } else {
+            freeSpace.put(position, capacity);
+        }
+    }
+
+    private synchronized void writeIndex() throws IOException {
+        if (!writable) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_HEADER_SIZE + blockOffsets.length * INDEX_ENTRY_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(mantissaBits);
+        buffer.putInt(blockOffsets.length);
+        buffer.putInt(open ? STATE_OPEN : STATE_CLOSED);
+        for (int i = 0; i < blockOffsets.length; i++) {
+            buffer.putLong(blockOffsets[i]);
+            buffer.putInt(blockLengths[i]);
+            buffer.putInt(blockCapacities[i]);
+        }
+        buffer.flip();
+        write(buffer, indexStart);
+    }
+
+    private void writeIndexEntry(int iBlock) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        buffer.putLong(blockOffsets[iBlock]);
+        buffer.putInt(blockLengths[iBlock]);
+        buffer.putInt(blockCapacities[iBlock]);
+        buffer.flip();
+        write(buffer, indexStart + INDEX_HEADER_SIZE + (long) iBlock * INDEX_ENTRY_SIZE);
+    }
+
+    private void writeState(boolean open) throws IOException {
+        this.open = open;
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        buffer.putInt(open ? STATE_OPEN : STATE_CLOSED);
+        buffer.flip();
+        write(buffer, indexStart + 12);
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            fc.write(buffer, position + buffer.position());
+        }
+    }
+
+    @Override
+    ByteBuffer readBlock(long iBlock) throws IOException {
+        int i = (int) iBlock;
+        long offset;
+        int length;
+        synchronized (this) {
+            offset = blockOffsets[i];
+            length = blockLengths[i];
+        }
+        byte[] data = new byte[length];
+        long start = System.nanoTime();
+        ByteBuffer source = ByteBuffer.wrap(data);
+        while (source.hasRemaining()) {
+            if (fc.read(source, offset + source.position()) < 0) {
+                throw new IOException("Compressed block " + iBlock + " is truncated");
+            }
+        }
+        ByteBuffer buffer = FloatBlockCodec.decode(data, length, (int) layout.blockPoints, dataset.getByteOrder());
+        StorageStats.getInstance().recordBlockRead(length, System.nanoTime() - start);
+        return buffer;
+    }
+
+    @Override
+    void writeBlock(int iBlock, ByteBuffer buffer) throws IOException {
+        long start = System.nanoTime();
+        byte[] data = FloatBlockCodec.encode(buffer, (int) layout.blockPoints, mantissaBits);
+        long offset;
+        int capacity;
+        boolean moved;
+        synchronized (this) {
+            if (!open) {
+                writeState(true);
+            }
+            moved = data.length > blockCapacities[iBlock];
+            if (moved) {
+                // leave some room so a block that grows slightly can stay in place
+                capacity = data.length + data.length / 8;
+                offset = allocate(capacity);
+            } else {
+                capacity = blockCapacities[iBlock];
+                offset = blockOffsets[iBlock];
+            }
+        }
+        write(ByteBuffer.wrap(data), offset);
+        synchronized (this) {
+            long oldOffset = blockOffsets[iBlock];
+            int oldCapacity = blockCapacities[iBlock];
+            blockOffsets[iBlock] = offset;
+            blockLengths[iBlock] = data.length;
+            blockCapacities[iBlock] = capacity;
+            writeIndexEntry(iBlock);
+            // the old space is only reused once the index no longer points to it
+            if (moved && (oldCapacity > 0)) {
+                release(oldOffset, oldCapacity);
+            }
+        }
+        StorageStats.getInstance().recordBlockWrite(data.length, System.nanoTime() - start);
+    }
+
+    @Override
+    public void zero() {
+        try {
+            getCache().flush(this);
+            synchronized (this) {
+                for (int i = 0; i < blockOffsets.length; i++) {
+                    blockOffsets[i] = 0;
+                    blockLengths[i] = 0;
+                    blockCapacities[i] = 0;
+                }
+                freeSpace.clear();
+                fileEnd = dataStart;
+                if (writable && (fc.size() > dataStart)) {
+                    fc.truncate(dataStart);
+                }
+                writeIndex();
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+
+    @Override
+    public void force() {
+        super.force();
+        try {
+            synchronized (this) {
+                if (open && writable) {
+                    fc.force(false);
+                    writeState(false);
+                }
+            }
+        } catch (IOException ex) {
+            log.error(ex.getMessage(), ex);
+        }
+    }
+}
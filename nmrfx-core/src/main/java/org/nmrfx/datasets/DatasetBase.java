@@ -12,6 +12,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 @PluginAPI("ring")
@@ -87,6 +88,8 @@ public class DatasetBase {
     private String negColor = "red";
     private boolean littleEndian = false;
     private File fidFile = null;
+    private final AtomicLong modificationCount = new AtomicLong();
+    private int compressionMantissaBits = FloatBlockCodec.FULL_MANTISSA_BITS;
 
     public DatasetBase() {
 
@@ -444,6 +447,46 @@ public class DatasetBase {
             }
             dataFile.setFloat((float) (value * scale), pt);
         }
+        markModified();
+    }
+
+    /**
+     * Get a count that is incremented whenever the values in this dataset are
+     * changed. Data derived from the dataset, such as display pyramids, can
+     * store the count to tell if they are out of date.
+     *
+     * @return the modification count
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * Record that values in this dataset have been changed.
+     */
+    public void markModified() {
+        modificationCount.incrementAndGet();
+    }
+
+    /**
+     * Set the number of mantissa bits kept for values when this dataset is
+     * stored in a new compressed (.nvz) file. The default, 23, stores the
+     * values exactly; fewer bits give a relative error of at most
+     * 2^-(bits+1) and smaller files, which can be useful for display copies
+     * of large datasets. The number is stored in the file, so it doesn't
+     * change a file that already exists.
+     *
+     * @param bits the number of mantissa bits, from 0 to 23
+     */
+    public void setCompressionMantissaBits(int bits) {
+        if ((bits < 0) || (bits > FloatBlockCodec.FULL_MANTISSA_BITS)) {
+            throw new IllegalArgumentException("Mantissa bits must be between 0 and " + FloatBlockCodec.FULL_MANTISSA_BITS);
+        }
+        compressionMantissaBits = bits;
+    }
+
+    public int getCompressionMantissaBits() {
+        return compressionMantissaBits;
     }
 
     /**
@@ -1674,6 +1717,7 @@ public class DatasetBase {
      */
     public void setScale(double scale) {
         this.scale = scale;
+        markModified();
     }
 
     /**
@@ -180,6 +180,8 @@ public class DatasetRegion implements Comparator, Comparable {
         int extLen = 0;
         if (fileName.endsWith(".nv")) {
             extLen = 3;
+        } else if (fileName.endsWith(".nvz")) {
+            extLen = 4;
         } else if (fileName.endsWith(".ucsf")) {
             extLen = 5;
         }
@@ -0,0 +1,155 @@
+/*
+ * NMRFx Processor : A Program for Processing NMR Data
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.datasets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compress and decompress a block of float values. The bits of each value
+ * are XOR'ed with those of the previous value, so that the sign, exponent and
+ * high mantissa bits that neighbouring points share become zero, and the
+ * result is split into byte planes (all the high bytes, then the next bytes
+ * ...) before being deflated. Optionally the mantissa can be rounded to fewer
+ * bits first, giving a bounded relative error of 2^-(mantissaBits+1) and a
+ * much better compression ratio.
+ */
+final class FloatBlockCodec {
+
+    static final int FULL_MANTISSA_BITS = 23;
+
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    private FloatBlockCodec() {
+    }
+
+    /**
+     * Compress the float values of a buffer.
+     *
+     * @param buffer       the buffer with the values, in the buffer's byte order
+     * @param nValues      the number of values
+     * @param mantissaBits the number of mantissa bits to keep (23 is lossless)
+     * @return the compressed bytes or an empty array if all the values are
+     * zero
+     */
+    static byte[] encode(ByteBuffer buffer, int nValues, int mantissaBits) {
+        int drop = FULL_MANTISSA_BITS - Math.max(0, Math.min(mantissaBits, FULL_MANTISSA_BITS));
+        byte[] planes = new byte[nValues * Float.BYTES];
+        int prev = 0;
+        boolean allZero = true;
+        for (int i = 0; i < nValues; i++) {
+            int bits = buffer.getInt(i * Float.BYTES);
+            if (drop > 0) {
+                bits = roundMantissa(bits, drop);
+            }
+            if (bits != 0) {
+                allZero = false;
+            }
+            int x = bits ^ prev;
+            prev = bits;
+            planes[i] = (byte) (x >>> 24);
+            planes[nValues + i] = (byte) (x >>> 16);
+            planes[2 * nValues + i] = (byte) (x >>> 8);
+            planes[3 * nValues + i] = (byte) x;
+        }
+        if (allZero) {
+            return new byte[0];
+        }
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(planes);
+        deflater.finish();
+        byte[] output = new byte[planes.length / 2 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    /**
+     * Decompress float values into a new buffer.
+     *
+     * @param data      the compressed bytes
+     * @param length    the number of compressed bytes, 0 for a block of zeros
+     * @param nValues   the number of values
+     * @param byteOrder the byte order of the returned buffer
+     * @return the buffer of values
+     * @throws IOException if the data can't be decompressed
+     */
+    static ByteBuffer decode(byte[] data, int length, int nValues, ByteOrder byteOrder) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(nValues * Float.BYTES);
+        buffer.order(byteOrder);
+        if (length == 0) {
+            return buffer;
+        }
+        byte[] planes = new byte[nValues * Float.BYTES];
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(data, 0, length);
+        try {
+            int n = 0;
+            while (n < planes.length) {
+                int nInflated = inflater.inflate(planes, n, planes.length - n);
+                if ((nInflated == 0) && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                n += nInflated;
+            }
+            if (n != planes.length) {
+                throw new IOException("Compressed block has " + n + " bytes, expected " + planes.length);
+            }
+        } catch (DataFormatException dfE) {
+            throw new IOException("Can't decompress block " + dfE.getMessage());
+        }
+        int prev = 0;
+        for (int i = 0; i < nValues; i++) {
+            int x = ((planes[i] & 0xFF) << 24) | ((planes[nValues + i] & 0xFF) << 16)
+                    | ((planes[2 * nValues + i] & 0xFF) << 8) | (planes[3 * nValues + i] & 0xFF);
+            prev ^= x;
+            buffer.putInt(i * Float.BYTES, prev);
+        }
+        return buffer;
+    }
+
+    /**
+     * Round the float with the specified bits to the nearest value with the
+     * low drop bits of the mantissa zero. Infinite and NaN values are kept,
+     * and values that would round to infinity are truncated instead.
+     */
+    static int roundMantissa(int bits, int drop) {
+        int mask = -1 << drop;
+        if ((bits & 0x7F800000) == 0x7F800000) {
+            return bits;
+        }
+        int rounded = (bits + (1 << (drop - 1))) & mask;
+        if ((rounded & 0x7F800000) == 0x7F800000) {
+            return bits & mask;
+        }
+        return rounded;
+    }
+}
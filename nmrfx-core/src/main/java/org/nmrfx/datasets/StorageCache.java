@@ -5,27 +5,37 @@
  */
 package org.nmrfx.datasets;
 
-import org.apache.commons.collections4.map.LRUMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * A cache of data blocks read from SubMatrixFile datasets. The cache is split
+ * into a number of stripes, each with its own lock and its own least recently
+ * used ordering, so threads working on blocks in different stripes do not
+ * block each other. Each stripe gets an equal share of the total capacity (in
+ * bytes). When a stripe is over its share the least recently used blocks are
+ * evicted, and blocks that have been written to are written back to their
+ * file first.
+ *
  * @author brucejohnson
  */
 public class StorageCache {
     private static final Logger log = LoggerFactory.getLogger(StorageCache.class);
+    public static final long DEFAULT_CAPACITY = 256L * 1024 * 1024;
+    public static final int DEFAULT_STRIPES = 64;
 
-    Map<DatasetKey, ByteBuffer> buffers;
-    ByteBuffer activeBuffer = null;
-    DatasetKey activeKey = null;
+    private final Stripe[] stripes;
+    private volatile long stripeCapacity;
+    private final ThreadLocal<Block> activeBlock = new ThreadLocal<>();
+    private final StorageStats stats = StorageStats.getInstance();
 
     public static class DatasetKey {
 
@@ -75,119 +85,259 @@ public class StorageCache {
         }
     }
 
-    static class TrackingLRUMap<K, V> extends LRUMap<DatasetKey, ByteBuffer> {
+    /**
+     * A cached block. Only accessed while holding the lock of its stripe.
+     */
+    static class Block {
 
-        TrackingLRUMap(int maxSize) {
-            super(maxSize);
+        final DatasetKey key;
+        final ByteBuffer buffer;
+        boolean dirty = false;
+        boolean evicted = false;
+
+        Block(DatasetKey key, ByteBuffer buffer) {
+            this.key = key;
+            this.buffer = buffer;
         }
+    }
 
-        protected boolean removeLRU(LinkEntry<DatasetKey, ByteBuffer> entry) {
-            //releaseResources(entry.getValue());  // release resources held by entry
-            DatasetKey key = entry.getKey();
+    static class Stripe {
 
-            if (key.file.writable) {
-                try {
-                    key.file.writeBlock(key.blockNum, entry.getValue());
-                } catch (IOException ex) {
-                    log.error(ex.getMessage(), ex);
-                }
-            }
-            return true;  // actually delete entry
-        }
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<DatasetKey, Block> blocks = new LinkedHashMap<>(64, 0.75f, true);
+        long bytes = 0;
     }
 
     public StorageCache() {
-        TrackingLRUMap lruMap = new TrackingLRUMap(1024);
+        this(DEFAULT_CAPACITY, DEFAULT_STRIPES);
+    }
 
-        buffers = new ConcurrentHashMap<DatasetKey, ByteBuffer>(lruMap);
+    /**
+     * Create a cache.
+     *
+     * @param capacity maximum number of bytes of block data held in memory
+     * @param nStripes number of independently locked partitions
+     */
+    public StorageCache(long capacity, int nStripes) {
+        if (nStripes < 1) {
+            throw new IllegalArgumentException("Number of stripes must be > 0");
+        }
+        stripes = new Stripe[nStripes];
+        for (int i = 0; i < nStripes; i++) {
+            stripes[i] = new Stripe();
+        }
+        setCapacity(capacity);
+    }
 
+    /**
+     * Set the maximum number of bytes of block data held in memory. Blocks are
+     * evicted (and written back if needed) the next time their stripe is
+     * accessed.
+     *
+     * @param capacity the capacity in bytes
+     */
+    public final void setCapacity(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity must be >= 0");
+        }
+        stripeCapacity = capacity / stripes.length;
+    }
+
+    public long getCapacity() {
+        return stripeCapacity * stripes.length;
+    }
+
+    Stripe getStripe(DatasetKey key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return stripes[Math.floorMod(hash, stripes.length)];
     }
 
     public ByteBuffer getBuffer(DatasetKey key) throws IOException {
-        return buffers.get(key);
+        Stripe stripe = getStripe(key);
+        stripe.lock.lock();
+        try {
+            Block block = stripe.blocks.get(key);
+            return block == null ? null : block.buffer;
+        } finally {
+            stripe.lock.unlock();
+        }
     }
 
+    /**
+     * Write back any modified blocks of the file and remove all of the file's
+     * blocks from the cache.
+     *
+     * @param file the file to flush
+     * @throws IOException if an I/O error occurs
+     */
     public void flush(SubMatrixFile file) throws IOException {
-        activeBuffer = null;
-        activeKey = null;
-        Iterator<Entry<DatasetKey, ByteBuffer>> iter = buffers.entrySet().iterator();
-        while (iter.hasNext()) {
-            Entry<DatasetKey, ByteBuffer> entry = iter.next();
-            if (entry.getKey().file == file) {
-                if (file.writable) {
-                    file.writeBlock(entry.getKey().blockNum, entry.getValue());
+        IOException firstException = null;
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                Iterator<Map.Entry<DatasetKey, Block>> iter = stripe.blocks.entrySet().iterator();
+                while (iter.hasNext()) {
+                    Block block = iter.next().getValue();
+                    if (block.key.file == file) {
+                        try {
+                            writeBack(block);
+                        } catch (IOException ex) {
+                            if (firstException == null) {
+                                firstException = ex;
+                            }
+                        }
+                        block.evicted = true;
+                        stripe.bytes -= block.buffer.capacity();
+                        iter.remove();
+                    }
                 }
-                iter.remove();
+            } finally {
+                stripe.lock.unlock();
             }
         }
+        if (firstException != null) {
+            throw firstException;
+        }
     }
 
-    public synchronized void io(DatasetKey[] vecKeys, int[] offsets, double[] vec, int mode) throws IOException {
-        DatasetKey lastKey = null;
-        ByteBuffer buffer = null;
-        for (int i = 0; i < vec.length; i++) {
-            if ((i == 0) || (vecKeys[i] != vecKeys[i - 1])) {
-                buffer = getABuffer(vecKeys[i]);
-            }
-            if (mode == 1) {
-                vec[i] = buffer.getFloat(offsets[i] * Float.BYTES);
-            } else {
-                buffer.putFloat(offsets[i] * Float.BYTES, (float) vec[i]);
-            }
+    private void writeBack(Block block) throws IOException {
+        if (block.dirty && block.key.file.writable) {
+            block.key.file.writeBlock(block.key.blockNum, block.buffer);
+            block.dirty = false;
+            stats.recordDirtyWriteback();
         }
     }
 
-    ByteBuffer getABuffer(DatasetKey key) throws IOException {
-        ByteBuffer buffer;
-        if (key == activeKey) {
-            buffer = activeBuffer;
+    /**
+     * Get the block for the key, reading it from its file if not cached. Must
+     * be called with the lock of the key's stripe held.
+     */
+    private Block getBlock(DatasetKey key, Stripe stripe) throws IOException {
+        Block block = activeBlock.get();
+        if ((block != null) && (block.key == key) && !block.evicted) {
+            // other threads may have used the stripe since, so the block
+            // still has to be made the most recently used
+            stripe.blocks.get(key);
+            stats.recordHit();
+            return block;
+        }
+        block = stripe.blocks.get(key);
+        if (block != null) {
+            stats.recordHit();
         } else {
-            buffer = buffers.get(key);
+            stats.recordMiss();
+            ByteBuffer buffer = key.file.readBlock(key.blockNum);
+            block = new Block(key, buffer);
+            stripe.blocks.put(key, block);
+            stripe.bytes += buffer.capacity();
+            evict(stripe, block);
         }
-        if (buffer == null) {
-            buffer = key.file.readBlock(key.blockNum);
-            buffers.put(key, buffer);
+        activeBlock.set(block);
+        return block;
+    }
+
+    /**
+     * Evict least recently used blocks until the stripe is within its share of
+     * the capacity. The block just added is never evicted.
+     */
+    private void evict(Stripe stripe, Block keep) {
+        if (stripe.bytes <= stripeCapacity) {
+            return;
         }
-        activeBuffer = buffer;
-        activeKey = key;
-        return buffer;
+        int nEvicted = 0;
+        Iterator<Block> iter = stripe.blocks.values().iterator();
+        while ((stripe.bytes > stripeCapacity) && iter.hasNext()) {
+            Block block = iter.next();
+            if (block == keep) {
+                continue;
+            }
+            try {
+                writeBack(block);
+            } catch (IOException ex) {
+                log.error(ex.getMessage(), ex);
+                continue;
+            }
+            block.evicted = true;
+            stripe.bytes -= block.buffer.capacity();
+            iter.remove();
+            stats.recordEviction();
+            nEvicted++;
+        }
+        log.debug("evicted {} blocks", nEvicted);
     }
 
-    public synchronized float io(DatasetKey key, int offset, float v, int mode) throws IOException {
-        float value = 0.0f;
-        switch (mode) {
-            case 0: {
-                ByteBuffer buffer;
-                if (key == activeKey) {
-                    buffer = activeBuffer;
-                } else {
-                    buffer = buffers.get(key);
-                }
-                if (buffer == null) {
-                    buffer = key.file.readBlock(key.blockNum);
-                    buffers.put(key, buffer);
-                }
-                activeBuffer = buffer;
-                activeKey = key;
-                value = buffer.getFloat(offset * Float.BYTES);
+    /**
+     * Read (mode 1) or write (any other mode) a set of values whose locations
+     * are given by block keys and offsets within the blocks. Consecutive values
+     * in the same block are processed while holding that block's stripe lock
+     * once.
+     *
+     * @param vecKeys the block of each value
+     * @param offsets the offset (in floats) of each value within its block
+     * @param vec     the values to write, or the array to read values into
+     * @param mode    1 to read, otherwise write
+     * @throws IOException if an I/O error occurs
+     */
+    public void io(DatasetKey[] vecKeys, int[] offsets, double[] vec, int mode) throws IOException {
+        int i = 0;
+        while (i < vec.length) {
+            DatasetKey key = vecKeys[i];
+            int end = i + 1;
+            while ((end < vec.length) && (vecKeys[end] == key)) {
+                end++;
             }
-            break;
-            case 1: {
-                ByteBuffer buffer;
-                if (key == activeKey) {
-                    buffer = activeBuffer;
+            Stripe stripe = getStripe(key);
+            stripe.lock.lock();
+            try {
+                Block block = getBlock(key, stripe);
+                ByteBuffer buffer = block.buffer;
+                if (mode == 1) {
+                    for (int j = i; j < end; j++) {
+                        vec[j] = buffer.getFloat(offsets[j] * Float.BYTES);
+                    }
                 } else {
-                    buffer = buffers.get(key);
+                    for (int j = i; j < end; j++) {
+                        buffer.putFloat(offsets[j] * Float.BYTES, (float) vec[j]);
+                    }
+                    block.dirty = true;
                 }
-                if (buffer == null) {
-                    buffer = key.file.readBlock(key.blockNum);
-                    buffers.put(key, buffer);
-                }
-                activeBuffer = buffer;
-                activeKey = key;
-                buffer.putFloat(offset * Float.BYTES, v);
+            } finally {
+                stripe.lock.unlock();
+            }
+            i = end;
+        }
+    }
+
+    /**
+     * Read (mode 0) or write (mode 1) a single value.
+     *
+     * @param key    the block containing the value
+     * @param offset the offset (in floats) of the value within the block
+     * @param v      the value to write
+     * @param mode   0 to read, 1 to write
+     * @return the value read, or 0.0 if writing
+     * @throws IOException if an I/O error occurs
+     */
+    public float io(DatasetKey key, int offset, float v, int mode) throws IOException {
+        float value = 0.0f;
+        Stripe stripe = getStripe(key);
+        stripe.lock.lock();
+        try {
+            Block block = getBlock(key, stripe);
+            switch (mode) {
+                case 0:
+                    value = block.buffer.getFloat(offset * Float.BYTES);
+                    break;
+                case 1:
+                    block.buffer.putFloat(offset * Float.BYTES, v);
+                    block.dirty = true;
+                    break;
+                default:
+                    break;
             }
-            break;
+        } finally {
+            stripe.lock.unlock();
         }
         return value;
     }
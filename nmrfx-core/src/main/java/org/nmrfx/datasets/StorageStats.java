@@ -0,0 +1,154 @@
+package org.nmrfx.datasets;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for dataset storage I/O, shared by the block cache used by
+ * SubMatrixFile and the memory mapped storage classes. Counters are updated
+ * with LongAdder so worker threads recording I/O do not contend with each
+ * other.
+ */
+public class StorageStats {
+
+    private static final StorageStats INSTANCE = new StorageStats();
+
+    private final LongAdder blocksRead = new LongAdder();
+    private final LongAdder blocksWritten = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder dirtyWritebacks = new LongAdder();
+    private final LongAdder mappings = new LongAdder();
+    private final LongAdder mappedBytes = new LongAdder();
+    private final LongAdder unmappings = new LongAdder();
+    private final LongAdder forceNanos = new LongAdder();
+
+    public static StorageStats getInstance() {
+        return INSTANCE;
+    }
+
+    public void recordBlockRead(long nBytes, long nanos) {
+        blocksRead.increment();
+        bytesRead.add(nBytes);
+        readNanos.add(nanos);
+    }
+
+    public void recordBlockWrite(long nBytes, long nanos) {
+        blocksWritten.increment();
+        bytesWritten.add(nBytes);
+        writeNanos.add(nanos);
+    }
+
+    public void recordHit() {
+        cacheHits.increment();
+    }
+
+    public void recordMiss() {
+        cacheMisses.increment();
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    /**
+     * Record that a modified block was written back to its file, when it was
+     * evicted or its file was flushed.
+     */
+    public void recordDirtyWriteback() {
+        dirtyWritebacks.increment();
+    }
+
+    public void recordMapping(long nBytes) {
+        mappings.increment();
+        mappedBytes.add(nBytes);
+    }
+
+    public void recordUnmapping() {
+        unmappings.increment();
+    }
+
+    public void recordForce(long nanos) {
+        forceNanos.add(nanos);
+    }
+
+    public long getBlocksRead() {
+        return blocksRead.sum();
+    }
+
+    public long getBlocksWritten() {
+        return blocksWritten.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getReadNanos() {
+        return readNanos.sum();
+    }
+
+    public long getWriteNanos() {
+        return writeNanos.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getDirtyWritebacks() {
+        return dirtyWritebacks.sum();
+    }
+
+    public long getMappings() {
+        return mappings.sum();
+    }
+
+    public long getMappedBytes() {
+        return mappedBytes.sum();
+    }
+
+    public long getUnmappings() {
+        return unmappings.sum();
+    }
+
+    public long getForceNanos() {
+        return forceNanos.sum();
+    }
+
+    /**
+     * Set all counters to zero.
+     */
+    public void reset() {
+        blocksRead.reset();
+        blocksWritten.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        readNanos.reset();
+        writeNanos.reset();
+        cacheHits.reset();
+        cacheMisses.reset();
+        evictions.reset();
+        dirtyWritebacks.reset();
+        mappings.reset();
+        mappedBytes.reset();
+        unmappings.reset();
+        forceNanos.reset();
+    }
+}
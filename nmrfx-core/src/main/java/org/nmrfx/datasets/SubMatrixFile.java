@@ -67,6 +67,15 @@ public class SubMatrixFile implements DatasetStorageInterface, Closeable {
         init();
     }
 
+    /**
+     * Get the block cache shared by all SubMatrixFile instances.
+     *
+     * @return the cache
+     */
+    public static StorageCache getCache() {
+        return cache;
+    }
+
     public DatasetLayout getLayout() {
         return layout;
     }
@@ -173,22 +182,30 @@ public class SubMatrixFile implements DatasetStorageInterface, Closeable {
         return totalSize;
     }
 
-    synchronized ByteBuffer readBlock(long iBlock) throws IOException {
+    ByteBuffer readBlock(long iBlock) throws IOException {
         long blockPos = iBlock * (layout.blockPoints * BYTES + layout.blockHeaderSize) + layout.fileHeaderSize;
         ByteBuffer buffer = ByteBuffer.allocate((int) (layout.blockPoints * BYTES));
         buffer.order(dataset.getByteOrder());
 
+        long start = System.nanoTime();
         int nc = fc.read(buffer, blockPos);
+        StorageStats.getInstance().recordBlockRead(Math.max(nc, 0), System.nanoTime() - start);
         if (nc != layout.blockPoints * BYTES) {
             log.warn("read failed {}", nc);
         }
         return buffer;
     }
 
-    synchronized void writeBlock(int iBlock, ByteBuffer buffer) throws IOException {
-        long blockPos = iBlock * (layout.blockPoints * BYTES + layout.blockHeaderSize) + layout.fileHeaderSize;
-        buffer.position(0);
-        int nw = fc.write(buffer, blockPos);
+    void writeBlock(int iBlock, ByteBuffer buffer) throws IOException {
+        long blockPos = iBlock * ((long) layout.blockPoints * BYTES + layout.blockHeaderSize) + layout.fileHeaderSize;
+        // duplicate so concurrent writers of different blocks never share a buffer position
+        ByteBuffer source = buffer.duplicate();
+        source.position(0);
+        long start = System.nanoTime();
+        while (source.hasRemaining()) {
+            fc.write(source, blockPos + source.position());
+        }
+        StorageStats.getInstance().recordBlockWrite(source.position(), System.nanoTime() - start);
     }
 
     @Override
@@ -207,7 +224,7 @@ public class SubMatrixFile implements DatasetStorageInterface, Closeable {
         cache.io(key, offset, d, 1);
     }
 
-    public synchronized void blockVectorIO(int first, int last, int[] point, int dim, double scale, VecBase vector, int mode) throws IOException {
+    public void blockVectorIO(int first, int last, int[] point, int dim, double scale, VecBase vector, int mode) throws IOException {
         int n = last - first + 1;
         double[] vec = new double[n];
         int[] offsets = new int[n];
@@ -258,7 +275,7 @@ public class SubMatrixFile implements DatasetStorageInterface, Closeable {
         }
     }
 
-    public synchronized void vectorIO(int first, int last, int[] point, int dim, double scale, VecBase vector, int mode) throws IOException {
+    public void vectorIO(int first, int last, int[] point, int dim, double scale, VecBase vector, int mode) throws IOException {
         if (mode == 0) {
             int j = 0;
             for (int i = first; i <= last; i++) {
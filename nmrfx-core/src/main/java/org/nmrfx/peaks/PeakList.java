@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -65,6 +66,13 @@ public class PeakList {
 
     Map<Peak.AssignmentLevel, Integer> assignmentMap = new HashMap<>();
     Updater updater = null;
+    /**
+     * Lists with fewer peaks than this are searched without a spatial index.
+     */
+    private static final int MIN_SPATIAL_INDEX_SIZE = 64;
+    private final AtomicLong spatialIndexVersion = new AtomicLong(0);
+    private volatile long spatialIndexRequest = -1;
+    private volatile PeakSpatialIndex spatialIndex = null;
 
     /**
      * @param name
@@ -663,6 +671,7 @@ public class PeakList {
 
     public void peakListUpdated(Object object) {
         changed = true;
+        spatialIndexVersion.incrementAndGet();
         assignmentStatusValid.set(false);
         if (updater != null) {
             updater.update(object);
@@ -674,6 +683,36 @@ public class PeakList {
      */
     public void clearIndex() {
         indexMap.clear();
+        spatialIndexVersion.incrementAndGet();
+    }
+
+    /**
+     * Get the spatial index of the peak shifts, building it if the list has
+     * changed since it was last built. When peaks are being moved the list
+     * often changes between every search, so unless force is true the index
+     * is only built on the second search with no change in between.
+     *
+     * @param force build the index even if this is the first search since
+     *              the last change
+     * @return the index or null if the list should be searched without one
+     */
+    PeakSpatialIndex getSpatialIndex(boolean force) {
+        int nPeaks = size();
+        if ((nPeaks == 0) || (!force && (nPeaks < MIN_SPATIAL_INDEX_SIZE))) {
+            return null;
+        }
+        long version = spatialIndexVersion.get();
+        PeakSpatialIndex index = spatialIndex;
+        if ((index != null) && index.isCurrent(version, nPeaks)) {
+            return index;
+        }
+        if (!force && (spatialIndexRequest != version)) {
+            spatialIndexRequest = version;
+            return null;
+        }
+        index = new PeakSpatialIndex(peaks, nDim, version);
+        spatialIndex = index;
+        return index;
     }
 
     /**
@@ -1552,8 +1591,16 @@ public class PeakList {
         }
 
         int nPeaks = size();
+        PeakSpatialIndex index = getSpatialIndex(false);
+        BitSet candidates = index == null ? null : index.getCandidates(limits, dim, foldLimits, nSearchDim);
 
         for (i = 0; i < nPeaks; i++) {
+            if (candidates != null) {
+                i = candidates.nextSetBit(i);
+                if ((i < 0) || (i >= nPeaks)) {
+                    break;
+                }
+            }
             peak = peaks.get(i);
             boolean ok = true;
 
@@ -1597,6 +1644,41 @@ public class PeakList {
         return (sPeaks);
     }
 
+    /**
+     * Find the peak closest to the specified chemical shifts. The distance to
+     * each peak is the square root of the sum over the specified dimensions of
+     * the squared shift difference divided by the squared tolerance of the
+     * dimension.
+     *
+     * @param ppms An array of chemical shifts
+     * @param dim  An array of which peak list dim corresponds to each shift.
+     *             Dimensions set to -1 are ignored.
+     * @param tols An array of tolerances used to scale the shift differences
+     * @return the closest peak, or empty if the list has no peaks
+     * @throws IllegalArgumentException thrown if the array lengths differ
+     */
+    public Optional<Peak> findNearestPeak(double[] ppms, int[] dim, double[] tols)
+            throws IllegalArgumentException {
+        if ((ppms.length != dim.length) || (ppms.length != tols.length)) {
+            throw new IllegalArgumentException("Number of shifts, dimensions and tolerances must be equal");
+        }
+        PeakSpatialIndex index = getSpatialIndex(true);
+        if (index == null) {
+            return Optional.empty();
+        }
+        double[] position = new double[nDim];
+        double[] weights = new double[nDim];
+        for (int i = 0; i < ppms.length; i++) {
+            if ((dim[i] < 0) || (dim[i] >= nDim)) {
+                continue;
+            }
+            position[dim[i]] = ppms[i];
+            weights[dim[i]] = tols[i] > 0.0 ? 1.0 / (tols[i] * tols[i]) : 1.0;
+        }
+        int iPeak = index.nearest(position, weights);
+        return iPeak < 0 ? Optional.empty() : Optional.of(peaks.get(iPeak));
+    }
+
     /**
      * @return
      */
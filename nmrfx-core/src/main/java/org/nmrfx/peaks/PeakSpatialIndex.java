@@ -0,0 +1,240 @@
+package org.nmrfx.peaks;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * A k-d tree over the chemical shifts of the peaks in a peak list. It is used
+ * to find the peaks that may be in a region, or the peak nearest to a
+ * position, without testing every peak in the list. The tree is a snapshot of
+ * the list when it was built and is replaced by the peak list when peaks are
+ * added, removed or moved.
+ */
+final class PeakSpatialIndex {
+
+    private final int nDim;
+    private final long version;
+    private final int nPeaks;
+    /**
+     * Shifts of each peak, indexed by [dim][peak index in list]
+     */
+    private final double[][] shifts;
+    /**
+     * Indices of peaks with valid shifts, arranged as an implicit balanced
+     * tree. The median of each range is the node and the dimension it splits
+     * cycles with the depth.
+     */
+    private final int[] tree;
+    /**
+     * Indices of peaks with a shift that is not a number. These are always
+     * returned as candidates so callers can apply their own test.
+     */
+    private final int[] unindexed;
+
+    private static class Nearest {
+
+        double distance = Double.MAX_VALUE;
+        int index = -1;
+    }
+
+    PeakSpatialIndex(List<Peak> peaks, int nDim, long version) {
+        this.nDim = nDim;
+        this.version = version;
+        nPeaks = peaks.size();
+        shifts = new double[nDim][nPeaks];
+        int[] valid = new int[nPeaks];
+        int[] invalid = new int[nPeaks];
+        int nValid = 0;
+        int nInvalid = 0;
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peaks.get(i);
+            boolean ok = true;
+            for (int iDim = 0; iDim < nDim; iDim++) {
+                double shift = peak.peakDims[iDim].getChemShiftValue();
+                shifts[iDim][i] = shift;
+                if (Double.isNaN(shift)) {
+                    ok = false;
+                }
+            }
+            if (ok) {
+                valid[nValid++] = i;
+            } else {
+                invalid[nInvalid++] = i;
+            }
+        }
+        tree = Arrays.copyOf(valid, nValid);
+        unindexed = Arrays.copyOf(invalid, nInvalid);
+        build(0, tree.length, 0);
+    }
+
+    boolean isCurrent(long currentVersion, int currentSize) {
+        return (version == currentVersion) && (nPeaks == currentSize);
+    }
+
+    private void build(int lo, int hi, int depth) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi, mid, depth % nDim);
+        build(lo, mid, depth + 1);
+        build(mid + 1, hi, depth + 1);
+    }
+
+    /**
+     * Partially sort tree[lo, hi) so the element at k has the value it would
+     * have in a sorted range, with no larger values before it and no smaller
+     * ones after it. Uses a three way partition so repeated shifts don't make
+     * it quadratic.
+     */
+    private void select(int lo, int hi, int k, int iDim) {
+        double[] values = shifts[iDim];
+        hi--;
+        while (hi > lo) {
+            double pivot = values[tree[(lo + hi) >>> 1]];
+            int lt = lo;
+            int gt = hi;
+            int i = lo;
+            while (i <= gt) {
+                double value = values[tree[i]];
+                if (value < pivot) {
+                    swap(lt++, i++);
+                } else if (value > pivot) {
+                    swap(i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < lt) {
+                hi = lt - 1;
+            } else if (k > gt) {
+                lo = gt + 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int hold = tree[i];
+        tree[i] = tree[j];
+        tree[j] = hold;
+    }
+
+    /**
+     * Get the peaks that may be within limits, using the same conventions as
+     * PeakList.locatePeaks. Dimensions with fold limits are not used to
+     * restrict the search as the folded shift is compared. The result is a
+     * superset of the matching peaks so callers must still test each one.
+     *
+     * @param limits     the limits, with limits[i][0] greater than
+     *                   limits[i][1]
+     * @param dim        the peak list dimension of each limit
+     * @param foldLimits optional fold limits
+     * @param nSearchDim number of limits to use
+     * @return the indices in the peak list of candidate peaks
+     */
+    BitSet getCandidates(double[][] limits, int[] dim, double[][] foldLimits, int nSearchDim) {
+        double[] lower = new double[nDim];
+        double[] upper = new double[nDim];
+        Arrays.fill(lower, Double.NEGATIVE_INFINITY);
+        Arrays.fill(upper, Double.POSITIVE_INFINITY);
+        for (int j = 0; j < nSearchDim; j++) {
+            if ((dim.length <= j) || (dim[j] == -1)) {
+                continue;
+            }
+            if ((foldLimits != null) && (foldLimits[j] != null)) {
+                continue;
+            }
+            lower[dim[j]] = Math.max(lower[dim[j]], limits[j][1]);
+            upper[dim[j]] = Math.min(upper[dim[j]], limits[j][0]);
+        }
+        BitSet candidates = new BitSet(nPeaks);
+        search(0, tree.length, 0, lower, upper, candidates);
+        for (int i : unindexed) {
+            candidates.set(i);
+        }
+        return candidates;
+    }
+
+    private void search(int lo, int hi, int depth, double[] lower, double[] upper, BitSet candidates) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int iPeak = tree[mid];
+        if (contains(iPeak, lower, upper)) {
+            candidates.set(iPeak);
+        }
+        int iDim = depth % nDim;
+        double value = shifts[iDim][iPeak];
+        if (lower[iDim] <= value) {
+            search(lo, mid, depth + 1, lower, upper, candidates);
+        }
+        if (upper[iDim] > value) {
+            search(mid + 1, hi, depth + 1, lower, upper, candidates);
+        }
+    }
+
+    private boolean contains(int iPeak, double[] lower, double[] upper) {
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            double value = shifts[iDim][iPeak];
+            if ((value < lower[iDim]) || (value >= upper[iDim])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the peak nearest to a position. The distance is the sum over
+     * dimensions of the weighted squared shift differences. Dimensions with a
+     * weight of zero are ignored. Peaks with shifts that are not a number are
+     * never returned.
+     *
+     * @param position the position, indexed by peak list dimension
+     * @param weights  the weight of each peak list dimension
+     * @return the index in the peak list of the nearest peak, or -1 if there
+     * are no peaks
+     */
+    int nearest(double[] position, double[] weights) {
+        Nearest nearest = new Nearest();
+        nearest(0, tree.length, 0, position, weights, nearest);
+        return nearest.index;
+    }
+
+    private void nearest(int lo, int hi, int depth, double[] position, double[] weights, Nearest nearest) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        int iPeak = tree[mid];
+        double distance = 0.0;
+        for (int iDim = 0; iDim < nDim; iDim++) {
+            if (weights[iDim] != 0.0) {
+                double delta = shifts[iDim][iPeak] - position[iDim];
+                distance += delta * delta * weights[iDim];
+            }
+        }
+        if ((distance < nearest.distance) || ((distance == nearest.distance) && (iPeak < nearest.index))) {
+            nearest.distance = distance;
+            nearest.index = iPeak;
+        }
+        int iDim = depth % nDim;
+        double delta = position[iDim] - shifts[iDim][iPeak];
+        boolean leftFirst = delta < 0.0;
+        if (leftFirst) {
+            nearest(lo, mid, depth + 1, position, weights, nearest);
+        } else {
+            nearest(mid + 1, hi, depth + 1, position, weights, nearest);
+        }
+        if ((weights[iDim] == 0.0) || (delta * delta * weights[iDim] <= nearest.distance)) {
+            if (leftFirst) {
+                nearest(mid + 1, hi, depth + 1, position, weights, nearest);
+            } else {
+                nearest(lo, mid, depth + 1, position, weights, nearest);
+            }
+        }
+    }
+}
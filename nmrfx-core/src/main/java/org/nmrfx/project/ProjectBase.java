@@ -603,7 +603,7 @@ public class ProjectBase {
             String fileName = fileNameAsPath.toString();
             Path pathInProject;
 
-            if (fileName.endsWith(".nv") || fileName.endsWith(".ucsf")) {
+            if (fileName.endsWith(".nv") || fileName.endsWith(".nvz") || fileName.endsWith(".ucsf")) {
                 pathInProject = datasetDir.resolve(fileNameAsPath);
                 if (!Files.exists(pathInProject)) {
                     try {
@@ -0,0 +1,59 @@
+package org.nmrfx.chemistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class CoordinateBlockTest {
+
+    private static List<Atom> getAtoms() {
+        Atom atom1 = Atom.genAtomWithElement("C1", 6);
+        Atom atom2 = Atom.genAtomWithElement("C2", 6);
+        atom1.setPoint(0, new Point3(1.0, 2.0, 3.0));
+        atom1.setPoint(1, new Point3(2.0, 2.0, 3.0));
+        atom1.setPoint(2, new Point3(3.0, 2.0, 3.0));
+        atom2.setPoint(0, new Point3(-1.0, 0.5, 0.0));
+        atom2.setPoint(2, new Point3(-1.0, 0.5, 4.0));
+        return List.of(atom1, atom2);
+    }
+
+    @Test
+    public void testCoordinates() {
+        List<Atom> atoms = getAtoms();
+        CoordinateBlock block = CoordinateBlock.of(atoms, new int[]{2, 0, 1});
+        Assert.assertEquals(2, block.getAtomCount());
+        Assert.assertEquals(3, block.getStructureCount());
+        Assert.assertEquals(1, block.getStructureIndex(0));
+        Assert.assertEquals(-1, block.getStructureIndex(3));
+        Assert.assertArrayEquals(new double[]{3.0, 2.0, 3.0, -1.0, 0.5, 4.0}, block.getCoordinates(0), 1.0e-12);
+        Assert.assertTrue(block.isValid(1, 1));
+        Assert.assertFalse(block.isValid(2, 1));
+        Assert.assertNull(block.getPoint(2, 1));
+        Assert.assertEquals(0.5, block.getY(1, 1), 1.0e-12);
+    }
+
+    @Test
+    public void testAtomRMS() {
+        List<Atom> atoms = getAtoms();
+        CoordinateBlock block = CoordinateBlock.of(atoms, new int[]{0, 1, 2});
+        Assert.assertEquals(Math.sqrt(2.0 / 3.0), block.getAtomRMS(0), 1.0e-12);
+        Assert.assertEquals(2.0, block.getAtomRMS(1), 1.0e-12);
+    }
+
+    @Test
+    public void testStoreAndLoad() {
+        List<Atom> atoms = getAtoms();
+        CoordinateBlock block = CoordinateBlock.of(atoms, new int[]{0, 1});
+        block.setPoint(1, 0, 5.0, 6.0, 7.0);
+        Assert.assertEquals(2.0, atoms.get(0).getPoint(1).getX(), 1.0e-12);
+        block.store(1);
+        Assert.assertEquals(6.0, atoms.get(0).getPoint(1).getY(), 1.0e-12);
+        Assert.assertNull(atoms.get(1).getPoint(1));
+
+        atoms.get(1).setPoint(1, new Point3(8.0, 9.0, 10.0));
+        Assert.assertFalse(block.isValid(1, 1));
+        block.load(1);
+        Assert.assertEquals(10.0, block.getZ(1, 1), 1.0e-12);
+    }
+}
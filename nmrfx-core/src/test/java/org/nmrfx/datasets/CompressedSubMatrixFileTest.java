@@ -0,0 +1,200 @@
+package org.nmrfx.datasets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CompressedSubMatrixFileTest {
+
+    private static final int BLOCK_POINTS = 256;
+    private static final int N_BLOCKS = 8;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private final List<RandomAccessFile> raFiles = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (RandomAccessFile raFile : raFiles) {
+            raFile.close();
+        }
+    }
+
+    private static DatasetLayout getLayout() {
+        DatasetLayout layout = new DatasetLayout(1);
+        layout.setFileHeaderSize(64);
+        layout.sizes[0] = BLOCK_POINTS * N_BLOCKS;
+        layout.blockSize[0] = BLOCK_POINTS;
+        layout.nBlocks[0] = N_BLOCKS;
+        layout.offsetBlocks[0] = 1;
+        layout.offsetPoints[0] = 1;
+        layout.blockPoints = BLOCK_POINTS;
+        layout.totalBlocks = N_BLOCKS;
+        return layout;
+    }
+
+    private CompressedSubMatrixFile open(File file, boolean writable) throws IOException {
+        return open(file, writable, new DatasetBase());
+    }
+
+    private CompressedSubMatrixFile open(File file, boolean writable, DatasetBase dataset) throws IOException {
+        RandomAccessFile raFile = new RandomAccessFile(file, writable ? "rw" : "r");
+        raFiles.add(raFile);
+        return new CompressedSubMatrixFile(dataset, file, getLayout(), raFile, writable);
+    }
+
+    private static float signal(int i) {
+        return (float) (1.0e5 * Math.exp(-i / 300.0) * Math.cos(i * 0.21));
+    }
+
+    private static void setBlock(CompressedSubMatrixFile file, int block, float[] values) throws IOException {
+        for (int j = 0; j < BLOCK_POINTS; j++) {
+            file.setFloat(values[j], block * BLOCK_POINTS + j);
+        }
+    }
+
+    private static void checkBlock(CompressedSubMatrixFile file, int block, float[] values) throws IOException {
+        for (int j = 0; j < BLOCK_POINTS; j++) {
+            Assert.assertEquals(values[j], file.getFloat(block * BLOCK_POINTS + j), 0.0f);
+        }
+    }
+
+    private static float[] spike(float value) {
+        float[] values = new float[BLOCK_POINTS];
+        values[BLOCK_POINTS / 2] = value;
+        return values;
+    }
+
+    private static float[] noise(long seed) {
+        Random random = new Random(seed);
+        float[] values = new float[BLOCK_POINTS];
+        for (int j = 0; j < BLOCK_POINTS; j++) {
+            values[j] = random.nextFloat() * 2.0f - 1.0f;
+        }
+        return values;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = tmpFolder.newFile("test" + CompressedSubMatrixFile.EXTENSION);
+        CompressedSubMatrixFile writeFile = open(file, true);
+        int n = BLOCK_POINTS * (N_BLOCKS - 1);
+        for (int i = 0; i < n; i++) {
+            writeFile.setFloat(signal(i), i);
+        }
+        writeFile.close();
+        Assert.assertTrue(writeFile.getCompressedSize() < (long) n * Float.BYTES);
+
+        CompressedSubMatrixFile readFile = open(file, false);
+        for (int i = 0; i < n; i++) {
+            Assert.assertEquals(signal(i), readFile.getFloat(i), 0.0f);
+        }
+        // the last block was never written and reads as zeros
+        checkBlock(readFile, N_BLOCKS - 1, new float[BLOCK_POINTS]);
+        Assert.assertEquals(writeFile.getCompressedSize(), readFile.getCompressedSize());
+    }
+
+    @Test
+    public void testMantissaBits() throws IOException {
+        int bits = 10;
+        DatasetBase lossyDataset = new DatasetBase();
+        lossyDataset.setCompressionMantissaBits(bits);
+        File lossyFile = tmpFolder.newFile("lossy" + CompressedSubMatrixFile.EXTENSION);
+        CompressedSubMatrixFile lossyWrite = open(lossyFile, true, lossyDataset);
+        // the setting of one dataset doesn't change files of other datasets
+        File exactFile = tmpFolder.newFile("exact" + CompressedSubMatrixFile.EXTENSION);
+        CompressedSubMatrixFile exactWrite = open(exactFile, true);
+        Assert.assertEquals(bits, lossyWrite.getMantissaBits());
+        Assert.assertEquals(FloatBlockCodec.FULL_MANTISSA_BITS, exactWrite.getMantissaBits());
+        float[] values = noise(3L);
+        setBlock(lossyWrite, 1, values);
+        setBlock(exactWrite, 1, values);
+        lossyWrite.close();
+        exactWrite.close();
+        Assert.assertTrue(lossyWrite.getCompressedSize() < exactWrite.getCompressedSize());
+
+        // the number of bits is read from the file, not taken from the dataset
+        DatasetBase readDataset = new DatasetBase();
+        CompressedSubMatrixFile readFile = open(lossyFile, false, readDataset);
+        Assert.assertEquals(bits, readFile.getMantissaBits());
+        Assert.assertEquals(bits, readDataset.getCompressionMantissaBits());
+        double tolerance = Math.scalb(1.0, -(bits + 1));
+        for (int j = 0; j < BLOCK_POINTS; j++) {
+            float value = readFile.getFloat(BLOCK_POINTS + j);
+            Assert.assertEquals(values[j], value, Math.abs(values[j]) * tolerance);
+        }
+        checkBlock(open(exactFile, false), 1, values);
+    }
+
+    @Test
+    public void testNotClosed() throws IOException {
+        File file = tmpFolder.newFile("open" + CompressedSubMatrixFile.EXTENSION);
+        CompressedSubMatrixFile writeFile = open(file, true);
+        setBlock(writeFile, 2, noise(1L));
+        setBlock(writeFile, 5, spike(3.0f));
+        // blocks written back from the cache, but the file is never forced or closed
+        SubMatrixFile.getCache().flush(writeFile);
+
+        CompressedSubMatrixFile readFile = open(file, false);
+        checkBlock(readFile, 2, noise(1L));
+        checkBlock(readFile, 5, spike(3.0f));
+        checkBlock(readFile, 0, new float[BLOCK_POINTS]);
+    }
+
+    @Test
+    public void testRelocation() throws IOException {
+        File file = tmpFolder.newFile("moved" + CompressedSubMatrixFile.EXTENSION);
+        CompressedSubMatrixFile writeFile = open(file, true);
+        setBlock(writeFile, 0, spike(1.0f));
+        setBlock(writeFile, 1, spike(2.0f));
+        writeFile.force();
+        long end = writeFile.getAllocatedEnd();
+
+        // block 0 no longer fits in its space, so it is moved to the end
+        setBlock(writeFile, 0, noise(7L));
+        writeFile.force();
+        long movedEnd = writeFile.getAllocatedEnd();
+        Assert.assertTrue(movedEnd > end);
+
+        // a new block of the same size fits in the space block 0 left
+        setBlock(writeFile, 3, spike(1.0f));
+        writeFile.force();
+        Assert.assertEquals(movedEnd, writeFile.getAllocatedEnd());
+
+        // a block that shrinks stays in place
+        setBlock(writeFile, 0, spike(4.0f));
+        writeFile.force();
+        Assert.assertEquals(movedEnd, writeFile.getAllocatedEnd());
+
+        // moving block 1 leaves a gap that is found again when the file is reopened
+        setBlock(writeFile, 1, noise(9L));
+        writeFile.close();
+        long end2 = writeFile.getAllocatedEnd();
+        Assert.assertTrue(end2 > movedEnd);
+
+        CompressedSubMatrixFile reopened = open(file, true);
+        Assert.assertEquals(end2, reopened.getAllocatedEnd());
+        checkBlock(reopened, 0, spike(4.0f));
+        checkBlock(reopened, 1, noise(9L));
+        checkBlock(reopened, 3, spike(1.0f));
+        setBlock(reopened, 4, spike(2.0f));
+        reopened.close();
+        Assert.assertEquals(end2, reopened.getAllocatedEnd());
+
+        CompressedSubMatrixFile readFile = open(file, false);
+        checkBlock(readFile, 0, spike(4.0f));
+        checkBlock(readFile, 1, noise(9L));
+        checkBlock(readFile, 3, spike(1.0f));
+        checkBlock(readFile, 4, spike(2.0f));
+    }
+}
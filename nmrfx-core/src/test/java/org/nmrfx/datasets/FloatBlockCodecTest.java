@@ -0,0 +1,62 @@
+package org.nmrfx.datasets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public class FloatBlockCodecTest {
+
+    private static ByteBuffer getBlock(int n, ByteOrder byteOrder) {
+        ByteBuffer buffer = ByteBuffer.allocate(n * Float.BYTES);
+        buffer.order(byteOrder);
+        for (int i = 0; i < n; i++) {
+            float value = (float) (1.0e6 * Math.exp(-i / 200.0) * Math.cos(i * 0.3));
+            buffer.putFloat(i * Float.BYTES, value);
+        }
+        return buffer;
+    }
+
+    @Test
+    public void testLossless() throws IOException {
+        int n = 4096;
+        for (ByteOrder byteOrder : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buffer = getBlock(n, byteOrder);
+            byte[] data = FloatBlockCodec.encode(buffer, n, FloatBlockCodec.FULL_MANTISSA_BITS);
+            Assert.assertTrue(data.length < n * Float.BYTES);
+            ByteBuffer result = FloatBlockCodec.decode(data, data.length, n, byteOrder);
+            for (int i = 0; i < n; i++) {
+                Assert.assertEquals(buffer.getFloat(i * Float.BYTES), result.getFloat(i * Float.BYTES), 0.0f);
+            }
+        }
+    }
+
+    @Test
+    public void testLossy() throws IOException {
+        int n = 4096;
+        int mantissaBits = 10;
+        ByteBuffer buffer = getBlock(n, ByteOrder.BIG_ENDIAN);
+        byte[] lossless = FloatBlockCodec.encode(buffer, n, FloatBlockCodec.FULL_MANTISSA_BITS);
+        byte[] data = FloatBlockCodec.encode(buffer, n, mantissaBits);
+        Assert.assertTrue(data.length < lossless.length);
+        ByteBuffer result = FloatBlockCodec.decode(data, data.length, n, ByteOrder.BIG_ENDIAN);
+        double maxError = Math.pow(2.0, -(mantissaBits + 1));
+        for (int i = 0; i < n; i++) {
+            float value = buffer.getFloat(i * Float.BYTES);
+            Assert.assertEquals(value, result.getFloat(i * Float.BYTES), Math.abs(value) * maxError);
+        }
+    }
+
+    @Test
+    public void testZeroBlock() throws IOException {
+        int n = 256;
+        ByteBuffer buffer = ByteBuffer.allocate(n * Float.BYTES);
+        byte[] data = FloatBlockCodec.encode(buffer, n, FloatBlockCodec.FULL_MANTISSA_BITS);
+        Assert.assertEquals(0, data.length);
+        ByteBuffer result = FloatBlockCodec.decode(data, 0, n, ByteOrder.BIG_ENDIAN);
+        Assert.assertEquals(n * Float.BYTES, result.capacity());
+        Assert.assertEquals(0.0f, result.getFloat(100 * Float.BYTES), 0.0f);
+    }
+}
@@ -0,0 +1,236 @@
+package org.nmrfx.datasets;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StorageCacheTest {
+
+    private static final int BLOCK_POINTS = 16;
+    private static final int N_BLOCKS = 6;
+    private static final long BLOCK_BYTES = BLOCK_POINTS * Float.BYTES;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private RandomAccessFile raFile;
+    private CountingFile file;
+
+    /**
+     * A file of blocks that counts the blocks read from and written to it.
+     */
+    static class CountingFile extends SubMatrixFile {
+        final AtomicInteger reads = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+
+        CountingFile(File file, DatasetLayout layout, RandomAccessFile raFile) throws IOException {
+            super(new DatasetBase(), file, layout, raFile, true);
+        }
+
+        @Override
+        ByteBuffer readBlock(long iBlock) throws IOException {
+            reads.incrementAndGet();
+            return super.readBlock(iBlock);
+        }
+
+        @Override
+        void writeBlock(int iBlock, ByteBuffer buffer) throws IOException {
+            writes.incrementAndGet();
+            super.writeBlock(iBlock, buffer);
+        }
+    }
+
+    private static float initialValue(int block, int offset) {
+        return block * 1000.0f + offset;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        File dataFile = tmpFolder.newFile("blocks.nv");
+        raFile = new RandomAccessFile(dataFile, "rw");
+        for (int block = 0; block < N_BLOCKS; block++) {
+            for (int offset = 0; offset < BLOCK_POINTS; offset++) {
+                raFile.writeFloat(initialValue(block, offset));
+            }
+        }
+        DatasetLayout layout = new DatasetLayout(1);
+        layout.sizes[0] = BLOCK_POINTS * N_BLOCKS;
+        layout.blockSize[0] = BLOCK_POINTS;
+        layout.nBlocks[0] = N_BLOCKS;
+        layout.offsetBlocks[0] = 1;
+        layout.offsetPoints[0] = 1;
+        layout.blockPoints = BLOCK_POINTS;
+        layout.totalBlocks = N_BLOCKS;
+        file = new CountingFile(dataFile, layout, raFile);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        raFile.close();
+    }
+
+    private float fileValue(int block, int offset) throws IOException {
+        raFile.seek((block * BLOCK_POINTS + offset) * (long) Float.BYTES);
+        return raFile.readFloat();
+    }
+
+    private float read(StorageCache cache, int block, int offset) throws IOException {
+        return cache.io(file.keys[block], offset, 0.0f, 0);
+    }
+
+    private void write(StorageCache cache, int block, int offset, float value) throws IOException {
+        cache.io(file.keys[block], offset, value, 1);
+    }
+
+    @Test
+    public void testHitAndMiss() throws IOException {
+        StorageCache cache = new StorageCache(N_BLOCKS * BLOCK_BYTES, 1);
+        Assert.assertEquals(initialValue(2, 3), read(cache, 2, 3), 0.0f);
+        Assert.assertEquals(initialValue(2, 7), read(cache, 2, 7), 0.0f);
+        Assert.assertEquals(1, file.reads.get());
+        Assert.assertEquals(initialValue(4, 0), read(cache, 4, 0), 0.0f);
+        Assert.assertEquals(initialValue(2, 1), read(cache, 2, 1), 0.0f);
+        Assert.assertEquals(2, file.reads.get());
+
+        double[] values = new double[3];
+        StorageCache.DatasetKey[] keys = {file.keys[4], file.keys[4], file.keys[2]};
+        cache.io(keys, new int[]{1, 2, 5}, values, 1);
+        Assert.assertArrayEquals(new double[]{initialValue(4, 1), initialValue(4, 2), initialValue(2, 5)}, values, 0.0);
+        Assert.assertEquals(2, file.reads.get());
+        Assert.assertNull(cache.getBuffer(file.keys[0]));
+        Assert.assertNotNull(cache.getBuffer(file.keys[2]));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        StorageCache cache = new StorageCache(2 * BLOCK_BYTES, 1);
+        read(cache, 0, 0);
+        read(cache, 1, 0);
+        read(cache, 0, 0);
+        read(cache, 2, 0);
+        Assert.assertEquals(3, file.reads.get());
+        // block 1 was the least recently used
+        Assert.assertNull(cache.getBuffer(file.keys[1]));
+        read(cache, 0, 0);
+        Assert.assertEquals(3, file.reads.get());
+        read(cache, 1, 0);
+        Assert.assertEquals(4, file.reads.get());
+        Assert.assertEquals(0, file.writes.get());
+    }
+
+    @Test
+    public void testActiveBlockKeepsLRUOrder() throws IOException, InterruptedException, ExecutionException {
+        StorageCache cache = new StorageCache(2 * BLOCK_BYTES, 1);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            other.submit(() -> read(cache, 0, 0)).get();
+            read(cache, 1, 0);
+            // the same block again on the other thread is its active block
+            other.submit(() -> read(cache, 0, 1)).get();
+            read(cache, 2, 0);
+            Assert.assertNotNull(cache.getBuffer(file.keys[0]));
+            Assert.assertNull(cache.getBuffer(file.keys[1]));
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    public void testDirtyWriteBack() throws IOException {
+        StorageCache cache = new StorageCache(2 * BLOCK_BYTES, 1);
+        write(cache, 0, 5, -1.5f);
+        Assert.assertEquals(initialValue(0, 5), fileValue(0, 5), 0.0f);
+        read(cache, 1, 0);
+        read(cache, 2, 0);
+        Assert.assertEquals(1, file.writes.get());
+        Assert.assertEquals(-1.5f, fileValue(0, 5), 0.0f);
+        Assert.assertEquals(-1.5f, read(cache, 0, 5), 0.0f);
+
+        write(cache, 2, 3, 7.25f);
+        cache.flush(file);
+        Assert.assertEquals(2, file.writes.get());
+        Assert.assertEquals(7.25f, fileValue(2, 3), 0.0f);
+        Assert.assertNull(cache.getBuffer(file.keys[2]));
+        // clean blocks aren't written again
+        cache.flush(file);
+        Assert.assertEquals(2, file.writes.get());
+    }
+
+    @Test
+    public void testStats() throws IOException {
+        StorageStats stats = StorageStats.getInstance();
+        long hits = stats.getCacheHits();
+        long misses = stats.getCacheMisses();
+        long evictions = stats.getEvictions();
+        long writebacks = stats.getDirtyWritebacks();
+        StorageCache cache = new StorageCache(2 * BLOCK_BYTES, 1);
+        read(cache, 0, 0);
+        read(cache, 0, 1);
+        write(cache, 1, 0, 2.5f);
+        // block 0 is clean, so it's evicted without being written
+        read(cache, 2, 0);
+        write(cache, 2, 1, 3.5f);
+        cache.flush(file);
+        read(cache, 1, 0);
+
+        Assert.assertEquals(2, stats.getCacheHits() - hits);
+        Assert.assertEquals(4, stats.getCacheMisses() - misses);
+        Assert.assertEquals(1, stats.getEvictions() - evictions);
+        // the blocks written back by the flush
+        Assert.assertEquals(2, stats.getDirtyWritebacks() - writebacks);
+        Assert.assertEquals(2, file.writes.get());
+    }
+
+    @Test
+    public void testConcurrentReadersAndWriters() throws InterruptedException, ExecutionException, IOException {
+        StorageCache cache = new StorageCache(3 * BLOCK_BYTES, 2);
+        int nThreads = 8;
+        int nRounds = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                int offset = t;
+                futures.add(pool.submit(() -> {
+                    for (int round = 1; round <= nRounds; round++) {
+                        write(cache, 0, offset, round);
+                        Assert.assertEquals(round, read(cache, 0, offset), 0.0f);
+                        // other blocks push block 0 out of the cache now and then
+                        int other = 1 + (offset + round) % (N_BLOCKS - 1);
+                        Assert.assertEquals(initialValue(other, offset), read(cache, other, offset), 0.0f);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        Assert.assertTrue(file.reads.get() > 1);
+        for (int t = 0; t < nThreads; t++) {
+            Assert.assertEquals(nRounds, read(cache, 0, t), 0.0f);
+        }
+        cache.flush(file);
+        for (int t = 0; t < nThreads; t++) {
+            Assert.assertEquals(nRounds, fileValue(0, t), 0.0f);
+        }
+        Assert.assertEquals(initialValue(0, nThreads), fileValue(0, nThreads), 0.0f);
+    }
+}
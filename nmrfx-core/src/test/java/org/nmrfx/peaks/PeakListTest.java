@@ -11,7 +11,10 @@ import org.nmrfx.project.ProjectBase;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
+import java.util.Random;
 
 public class PeakListTest {
     PeakList getPeakList(String fileName) throws IOException {
@@ -35,4 +38,90 @@ public class PeakListTest {
             Assert.assertEquals(entry.getKey().description, 1, entry.getValue().longValue());
         }
     }
-}
\ No newline at end of file
+
+    PeakList getRandomPeakList(int nPeaks) {
+        ProjectBase.getActive().clearAllPeakLists();
+        PeakList peakList = new PeakList("random", 2);
+        Random random = new Random(7);
+        for (int i = 0; i < nPeaks; i++) {
+            Peak peak = peakList.getNewPeak();
+            peak.getPeakDim(0).setChemShiftValue((float) (6.0 + 4.0 * random.nextDouble()));
+            peak.getPeakDim(1).setChemShiftValue((float) (100.0 + 35.0 * random.nextDouble()));
+        }
+        return peakList;
+    }
+
+    List<Peak> scanPeaks(PeakList peakList, double[][] limits) {
+        List<Peak> found = new ArrayList<>();
+        for (Peak peak : peakList.peaks()) {
+            boolean ok = true;
+            for (int i = 0; i < limits.length; i++) {
+                double ctr = peak.getPeakDim(i).getChemShiftValue();
+                if ((ctr >= limits[i][0]) || (ctr < limits[i][1])) {
+                    ok = false;
+                }
+            }
+            if (ok) {
+                found.add(peak);
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void locatePeaksIndexed() {
+        PeakList peakList = getRandomPeakList(2000);
+        int[] dims = {0, 1};
+        Random random = new Random(11);
+        for (int iQuery = 0; iQuery < 20; iQuery++) {
+            double x = 6.0 + 4.0 * random.nextDouble();
+            double y = 100.0 + 35.0 * random.nextDouble();
+            double[][] limits = {{x + 0.2, x - 0.2}, {y + 2.0, y - 2.0}};
+            List<Peak> expected = scanPeaks(peakList, limits);
+            // repeat so the second search uses the spatial index
+            for (int iRep = 0; iRep < 2; iRep++) {
+                List<Peak> found = peakList.locatePeaks(limits, dims);
+                Assert.assertEquals(expected.size(), found.size());
+                Assert.assertTrue(found.containsAll(expected));
+            }
+        }
+        Assert.assertNotNull(peakList.getSpatialIndex(false));
+
+        Peak peak = peakList.getPeak(10);
+        double[][] limits = {{0.6, 0.4}, {50.5, 49.5}};
+        Assert.assertTrue(peakList.locatePeaks(limits, dims).isEmpty());
+        peak.getPeakDim(0).setChemShiftValue(0.5f);
+        peak.getPeakDim(1).setChemShiftValue(50.0f);
+        peakList.locatePeaks(limits, dims);
+        List<Peak> found = peakList.locatePeaks(limits, dims);
+        Assert.assertEquals(1, found.size());
+        Assert.assertSame(peak, found.get(0));
+    }
+
+    @Test
+    public void findNearestPeak() {
+        PeakList peakList = getRandomPeakList(500);
+        int[] dims = {0, 1};
+        double[] tols = {0.05, 0.5};
+        Random random = new Random(13);
+        for (int iQuery = 0; iQuery < 20; iQuery++) {
+            double[] ppms = {6.0 + 4.0 * random.nextDouble(), 100.0 + 35.0 * random.nextDouble()};
+            Peak best = null;
+            double bestDistance = Double.MAX_VALUE;
+            for (Peak peak : peakList.peaks()) {
+                double distance = 0.0;
+                for (int i = 0; i < 2; i++) {
+                    double delta = (peak.getPeakDim(i).getChemShiftValue() - ppms[i]) / tols[i];
+                    distance += delta * delta;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = peak;
+                }
+            }
+            Optional<Peak> nearest = peakList.findNearestPeak(ppms, dims, tols);
+            Assert.assertTrue(nearest.isPresent());
+            Assert.assertSame(best, nearest.get());
+        }
+    }
+}
@@ -21,6 +21,8 @@ import org.nmrfx.jmx.mbeans.Analyst;
 import org.nmrfx.jmx.mbeans.AnalystMBean;
 import org.nmrfx.jmx.mbeans.Console;
 import org.nmrfx.jmx.mbeans.ConsoleMBean;
+import org.nmrfx.jmx.mbeans.Storage;
+import org.nmrfx.jmx.mbeans.StorageMBean;
 import org.nmrfx.plugin.api.EntryPoint;
 import org.nmrfx.plugin.api.NMRFxPlugin;
 import org.slf4j.Logger;
@@ -59,7 +61,8 @@ public class JmxConnectorPlugin implements NMRFxPlugin {
             int port = findFreePort();
             JMXServiceURL url = startJmxServer(port, Map.of(
                     new ObjectName(AnalystMBean.NAME), new Analyst(),
-                    new ObjectName(ConsoleMBean.NAME), new Console()));
+                    new ObjectName(ConsoleMBean.NAME), new Console(),
+                    new ObjectName(StorageMBean.NAME), new Storage()));
             writeToFile(url);
             System.out.println("Running JMX on port " + port);
         } catch (JMException | IOException e) {
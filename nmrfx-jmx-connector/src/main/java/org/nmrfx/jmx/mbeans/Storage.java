@@ -0,0 +1,122 @@
+/*
+ * NMRFx: A Program for Processing NMR Data
+ * Copyright (C) 2004-2022 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.jmx.mbeans;
+
+import org.nmrfx.datasets.StorageStats;
+import org.nmrfx.datasets.SubMatrixFile;
+
+/**
+ * Dataset storage I/O counters and block cache settings.
+ */
+public class Storage implements StorageMBean {
+    private static final double NANOS_PER_MILLI = 1.0e6;
+
+    private final StorageStats stats = StorageStats.getInstance();
+
+    @Override
+    public long getBlocksRead() {
+        return stats.getBlocksRead();
+    }
+
+    @Override
+    public long getBlocksWritten() {
+        return stats.getBlocksWritten();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return stats.getBytesRead();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return stats.getBytesWritten();
+    }
+
+    @Override
+    public double getReadBlockMillis() {
+        return stats.getReadNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public double getWriteBlockMillis() {
+        return stats.getWriteNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getCacheHits() {
+        return stats.getCacheHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return stats.getCacheMisses();
+    }
+
+    @Override
+    public double getCacheHitRatio() {
+        long hits = stats.getCacheHits();
+        long total = hits + stats.getCacheMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public long getEvictions() {
+        return stats.getEvictions();
+    }
+
+    @Override
+    public long getDirtyWritebacks() {
+        return stats.getDirtyWritebacks();
+    }
+
+    @Override
+    public long getMappings() {
+        return stats.getMappings();
+    }
+
+    @Override
+    public long getMappedBytes() {
+        return stats.getMappedBytes();
+    }
+
+    @Override
+    public long getUnmappings() {
+        return stats.getUnmappings();
+    }
+
+    @Override
+    public double getForceMillis() {
+        return stats.getForceNanos() / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public long getCacheCapacity() {
+        return SubMatrixFile.getCache().getCapacity();
+    }
+
+    @Override
+    public void setCacheCapacity(long capacity) {
+        SubMatrixFile.getCache().setCapacity(capacity);
+    }
+
+    @Override
+    public void reset() {
+        stats.reset();
+    }
+}
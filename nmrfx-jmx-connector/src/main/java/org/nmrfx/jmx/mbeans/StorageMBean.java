@@ -0,0 +1,84 @@
+/*
+ * NMRFx: A Program for Processing NMR Data
+ * Copyright (C) 2004-2022 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.jmx.mbeans;
+
+/**
+ * Dataset storage I/O counters and block cache settings.
+ */
+public interface StorageMBean {
+    String NAME = "org.nmrfx:type=Storage";
+
+    long getBlocksRead();
+
+    long getBlocksWritten();
+
+    long getBytesRead();
+
+    long getBytesWritten();
+
+    /**
+     * @return total time spent reading blocks from SubMatrixFile datasets, in milliseconds
+     */
+    double getReadBlockMillis();
+
+    /**
+     * @return total time spent writing blocks to SubMatrixFile datasets, in milliseconds
+     */
+    double getWriteBlockMillis();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    /**
+     * @return fraction of block cache lookups that found the block in memory
+     */
+    double getCacheHitRatio();
+
+    long getEvictions();
+
+    long getDirtyWritebacks();
+
+    /**
+     * @return number of memory mappings created by the mapped dataset storage classes
+     */
+    long getMappings();
+
+    long getMappedBytes();
+
+    long getUnmappings();
+
+    /**
+     * @return total time spent forcing memory mapped data to disk, in milliseconds
+     */
+    double getForceMillis();
+
+    long getCacheCapacity();
+
+    /**
+     * Set the maximum number of bytes of block data held by the SubMatrixFile cache.
+     *
+     * @param capacity the capacity in bytes
+     */
+    void setCacheCapacity(long capacity);
+
+    /**
+     * Set all counters to zero.
+     */
+    void reset();
+}
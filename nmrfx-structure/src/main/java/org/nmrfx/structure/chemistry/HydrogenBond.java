@@ -38,6 +38,16 @@ public class HydrogenBond {
         this.acceptor = acceptor;
     }
 
+    /**
+     * Get the largest hydrogen to acceptor distance of any kind of hydrogen
+     * bond, so searches for acceptors can be limited to this distance.
+     *
+     * @return the distance
+     */
+    public static double getMaxTolerance() {
+        return Math.max(toleranceHN, Math.max(toleranceHA, toleranceRNA));
+    }
+
     public boolean validate(int structureNum) {
         return validate(hydrogen, acceptor, structureNum);
     }
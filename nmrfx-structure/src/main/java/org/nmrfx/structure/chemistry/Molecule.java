@@ -1958,15 +1958,16 @@ public class Molecule extends MoleculeBase {
     }
 
     public void calcRMSD() {
-        updateAtomArray();
-        for (Atom atom : atoms) {
+        CoordinateBlock block = getCoordinateBlock();
+        for (int i = 0, n = atoms.size(); i < n; i++) {
+            Atom atom = atoms.get(i);
             if (atom.entity == null) {
                 log.warn("Null entity {}", atom.getFullName());
             } else {
                 SpatialSet spatialSet = atom.getSpatialSet();
 
                 if (spatialSet != null) {
-                    spatialSet.setBFactor((float) atom.rmsAtom(spatialSet));
+                    spatialSet.setBFactor((float) block.getAtomRMS(i));
                 }
             }
         }
@@ -1982,10 +1983,25 @@ public class Molecule extends MoleculeBase {
                                                  final MolFilter acceptorFilter) throws InvalidMoleculeException {
         List<SpatialSet> hydrogens = matchAtoms(hydrogenFilter);
         List<SpatialSet> acceptors = matchAtoms(acceptorFilter);
+        double limit = HydrogenBond.getMaxTolerance();
+        NeighborIndex[] acceptorIndexes = new NeighborIndex[structures.length];
+        for (int k = 0; k < structures.length; k++) {
+            acceptorIndexes[k] = NeighborIndex.ofSpatialSets(acceptors, structures[k], limit);
+        }
         ArrayList<HydrogenBond> hBonds = new ArrayList<HydrogenBond>();
         for (int i = 0, n = hydrogens.size(); i < n; i++) {
             SpatialSet hydrogen = (SpatialSet) hydrogens.get(i);
-            for (int j = 0, m = acceptors.size(); j < m; j++) {
+            // only acceptors close enough in some structure can pass validation
+            TreeSet<Integer> candidates = new TreeSet<>();
+            for (int k = 0; k < structures.length; k++) {
+                Point3 hydrogenPt = hydrogen.getPoint(structures[k]);
+                if (hydrogenPt != null) {
+                    for (int j : acceptorIndexes[k].getNeighbors(hydrogenPt, limit)) {
+                        candidates.add(j);
+                    }
+                }
+            }
+            for (int j : candidates) {
                 SpatialSet acceptor = (SpatialSet) acceptors.get(j);
                 HydrogenBond hBondBest = null;
                 double bestShift = 0.0;
@@ -2007,13 +2023,19 @@ public class Molecule extends MoleculeBase {
                                                      int structureNum) throws InvalidMoleculeException {
         List<SpatialSet> hydrogens = matchAtoms(hydrogenFilter);
         List<SpatialSet> acceptors = matchAtoms(acceptorFilter);
+        double limit = HydrogenBond.getMaxTolerance();
+        NeighborIndex acceptorIndex = NeighborIndex.ofSpatialSets(acceptors, structureNum, limit);
         Map<String, HydrogenBond> hBondMap = new HashMap<>();
         Map<String, HydrogenBond> acceptorMap = new HashMap<>();
         for (int i = 0, n = hydrogens.size(); i < n; i++) {
             SpatialSet hydrogen = (SpatialSet) hydrogens.get(i);
             HydrogenBond hBondBest = null;
             double bestShift = -1.0e6;
-            for (int j = 0, m = acceptors.size(); j < m; j++) {
+            Point3 hydrogenPt = hydrogen.getPoint(structureNum);
+            if (hydrogenPt == null) {
+                continue;
+            }
+            for (int j : acceptorIndex.getNeighbors(hydrogenPt, limit)) {
                 SpatialSet acceptor = (SpatialSet) acceptors.get(j);
                 boolean valid = HydrogenBond.validate(hydrogen, acceptor, structureNum);
                 if (valid) {
@@ -2095,7 +2117,10 @@ public class Molecule extends MoleculeBase {
         if (useMap) {
             lcmbMap = new HashMap<>();
         }
-        for (Atom atom1 : atoms) {
+        NeighborIndex neighborIndex = NeighborIndex.of(atoms,
+                atom -> atom.getAtomicNumber() != 1 ? atom.getPoint(iStruct) : null, 15.0);
+        for (int i = 0; i < atoms.size(); i++) {
+            Atom atom1 = atoms.get(i);
             SpatialSet sp1 = atom1.spatialSet;
             sp1.setOrder(0.0f);
             Polymer polymer = null;
@@ -2118,19 +2143,10 @@ public class Molecule extends MoleculeBase {
                 }
             }
             if (atom1.getAtomicNumber() != 1) {
-                Point3 pt1 = atom1.getPoint(iStruct);
                 double fSum = 0.0;
-                for (Atom atom2 : atoms) {
-                    if ((atom1 != atom2) && (atom2.getAtomicNumber() != 1)) {
-                        SpatialSet sp2 = atom2.spatialSet;
-                        Point3 pt2 = atom2.getPoint(iStruct);
-                        if ((pt1 != null) && (pt2 != null)) {
-                            double r = Atom.calcDistance(pt1, pt2);
-                            if (r < 15.0) {
-                                fSum += a * Math.exp(-r / r0);
-                            }
-                        }
-                    }
+                for (int j : neighborIndex.getNeighbors(i, 15.0)) {
+                    double r = Atom.calcDistance(atom1.getPoint(iStruct), atoms.get(j).getPoint(iStruct));
+                    fSum += a * Math.exp(-r / r0);
                 }
                 double bFactor = 1.0e4 / fSum * endMultiplier;
                 if (lcmbMap != null) {
@@ -2151,21 +2167,16 @@ public class Molecule extends MoleculeBase {
         if (useMap) {
             lcmbMap = new HashMap<>();
         }
-        for (Atom atom1 : atoms) {
+        NeighborIndex neighborIndex = NeighborIndex.of(atoms, iStruct, 15.0);
+        for (int i = 0; i < atoms.size(); i++) {
+            Atom atom1 = atoms.get(i);
             SpatialSet sp1 = atom1.spatialSet;
             sp1.setOrder(0.0f);
             Point3 pt1 = atom1.getPoint(iStruct);
             double fSum = 0.0;
-            for (Atom atom2 : atoms) {
-                if (atom1 != atom2) {
-                    Point3 pt2 = atom2.getPoint(iStruct);
-                    if ((pt1 != null) && (pt2 != null)) {
-                        double r = Atom.calcDistance(pt1, pt2);
-                        if (r < 15.0) {
-                            fSum += a * Math.exp(-r / r0);
-                        }
-                    }
-                }
+            for (int j : neighborIndex.getNeighbors(i, 15.0)) {
+                double r = Atom.calcDistance(pt1, atoms.get(j).getPoint(iStruct));
+                fSum += a * Math.exp(-r / r0);
             }
             double contactSum = fSum;
             if (lcmbMap != null) {
@@ -2182,13 +2193,37 @@ public class Molecule extends MoleculeBase {
     }
 
     public double[] calcDistanceInputMatrixRow(final int iStruct, double distLim, Atom targetAtom, double intraScale) {
+        return calcDistanceInputMatrixRow(getNeighborIndex(iStruct, distLim), iStruct, distLim, targetAtom, intraScale);
+    }
+
+    /**
+     * Get an index for finding the atoms of the molecule near a position in
+     * a structure. Analyses that look at the neighbors of many atoms in the
+     * same structure should get the index once and pass it to each call.
+     *
+     * @param iStruct  the structure to get the coordinates from
+     * @param cellSize the size of the cells of the index, about the distance
+     *                 that will be searched for
+     * @return the index, with atoms identified by their position in the atom
+     * list of the molecule
+     */
+    public NeighborIndex getNeighborIndex(int iStruct, double cellSize) {
+        return NeighborIndex.of(atoms, iStruct, cellSize);
+    }
+
+    public double[] calcDistanceInputMatrixRow(NeighborIndex neighborIndex, final int iStruct, double distLim,
+                                               Atom targetAtom, double intraScale) {
         List origAtomSources = RNAAttributes.getAtomSources();
         int numAtomSources = origAtomSources.size();
         int sepIntra = 0;
         double[] distValues = new double[numAtomSources * (1 + sepIntra)];
 
         Point3 targetPt = targetAtom.getPoint(iStruct);
-        for (Atom sourceAtom : atoms) {
+        if (targetPt == null) {
+            return distValues;
+        }
+        for (int iSource : neighborIndex.getNeighbors(targetPt, distLim)) {
+            Atom sourceAtom = atoms.get(iSource);
             String resName = sourceAtom.getEntity().getName();
             String atomName = sourceAtom.getName();
             String key = resName + atomName;
@@ -2568,6 +2603,14 @@ public class Molecule extends MoleculeBase {
         int result;
         int nBonds = 0;
         ArrayList<AtomPairDistance> pairs = new ArrayList<AtomPairDistance>();
+        // methyl groups are 0.7 A further than their centers
+        double searchLimit = tolerance + 1.4;
+        NeighborIndex[] neighborIndexes = new NeighborIndex[structures.length];
+        for (int k = 0; k < structures.length; k++) {
+            int iStruct = structures[k];
+            neighborIndexes[k] = NeighborIndex.of(globalSelected, spatialSet -> spatialSet.atom.isMethyl()
+                    ? spatialSet.atom.getMethylCenter(iStruct) : spatialSet.atom.getPoint(iStruct), searchLimit);
+        }
         for (int i = 0; i < globalSelected.size(); i++) {
             atom1 = globalSelected.get(i).atom;
             if (atom1.getSelected() != 1) {
@@ -2593,7 +2636,7 @@ public class Molecule extends MoleculeBase {
                     continue;
                 }
             }
-            for (int j = i + 1; j < globalSelected.size(); j++) {
+            for (int j : getLaterNeighbors(neighborIndexes, i, searchLimit)) {
                 double extra = 0.0;
                 if (atom1.isMethyl()) {
                     extra += 0.7;
@@ -2663,6 +2706,27 @@ public class Molecule extends MoleculeBase {
         return pairs;
     }
 
+    /**
+     * Get the points that come after a point in the list and are within a
+     * limit of it in any of the structures.
+     *
+     * @param neighborIndexes an index for each structure
+     * @param index           the index of the point
+     * @param limit           the distance limit
+     * @return the indices of the neighbors, in ascending order
+     */
+    private static int[] getLaterNeighbors(NeighborIndex[] neighborIndexes, int index, double limit) {
+        TreeSet<Integer> neighbors = new TreeSet<>();
+        for (NeighborIndex neighborIndex : neighborIndexes) {
+            for (int j : neighborIndex.getNeighbors(index, limit)) {
+                if (j > index) {
+                    neighbors.add(j);
+                }
+            }
+        }
+        return neighbors.stream().mapToInt(Integer::intValue).toArray();
+    }
+
     public static void getCouplings(final Entity entity, final ArrayList<JCoupling> jCouplings,
                                     final ArrayList<JCoupling> tocsyLinks, final ArrayList<JCoupling> hmbcLinks,
                                     int nShells, int minShells, int tocsyShells, int hmbcShells) {
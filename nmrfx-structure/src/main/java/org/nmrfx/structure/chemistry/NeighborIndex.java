@@ -0,0 +1,320 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.structure.chemistry;
+
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.SpatialSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * A cell list for finding the points within a distance of a position. The
+ * points are sorted into a uniform grid of cubic cells, so a search only has
+ * to look at the cells around the position rather than at every point, which
+ * makes analyses that look at the neighbors of every atom O(N) instead of
+ * O(N^2). The grid is built the same way as the one EnergyCoords.setCells
+ * uses for the refinement pair list.
+ * <p>
+ * Points are identified by their index in the list the index was built from.
+ * Null points (atoms without coordinates in the structure) are left out.
+ * Searches return indices in ascending order, so callers can keep the order
+ * (and the floating point sums) of a loop over the whole list.
+ */
+public class NeighborIndex {
+
+    /**
+     * Receives a point found by a search and its distance from the position
+     * searched.
+     */
+    @FunctionalInterface
+    public interface NeighborConsumer {
+        void accept(int index, double distance);
+    }
+
+    private static final int MAX_CELLS_PER_POINT = 8;
+
+    private final int nPoints;
+    private final double[] coords;
+    private final boolean[] valid;
+    private final double[] origin = new double[3];
+    private final int[] nCells = new int[3];
+    private final double cellSize;
+    private final int[] cellStarts;
+    private final int[] cellIndices;
+
+    /**
+     * Create an index of a list of points.
+     *
+     * @param points   the points, some of which may be null
+     * @param cellSize the edge length of the grid cells. Searches are fastest
+     *                 if this is about the distance searched for.
+     */
+    public NeighborIndex(List<? extends Vector3D> points, double cellSize) {
+        if (!(cellSize > 0.0)) {
+            throw new IllegalArgumentException("Cell size must be positive " + cellSize);
+        }
+        nPoints = points.size();
+        coords = new double[nPoints * 3];
+        double[] max = new double[3];
+        Arrays.fill(origin, Double.MAX_VALUE);
+        Arrays.fill(max, -Double.MAX_VALUE);
+        int nValid = 0;
+        valid = new boolean[nPoints];
+        for (int i = 0; i < nPoints; i++) {
+            Vector3D pt = points.get(i);
+            if (pt != null) {
+                valid[i] = true;
+                nValid++;
+                coords[i * 3] = pt.getX();
+                coords[i * 3 + 1] = pt.getY();
+                coords[i * 3 + 2] = pt.getZ();
+                for (int j = 0; j < 3; j++) {
+                    origin[j] = Math.min(origin[j], coords[i * 3 + j]);
+                    max[j] = Math.max(max[j], coords[i * 3 + j]);
+                }
+            }
+        }
+        if (nValid == 0) {
+            Arrays.fill(origin, 0.0);
+            Arrays.fill(max, 0.0);
+        }
+        // an extended molecule with a small cell size could need far more cells than points
+        double size = cellSize;
+        long maxCells = (long) MAX_CELLS_PER_POINT * nValid + 64;
+        while (countCells(max, size) > maxCells) {
+            size *= 1.5;
+        }
+        this.cellSize = size;
+        for (int j = 0; j < 3; j++) {
+            nCells[j] = 1 + (int) Math.floor((max[j] - origin[j]) / size);
+        }
+        int nCellsTotal = nCells[0] * nCells[1] * nCells[2];
+        int[] pointCells = new int[nPoints];
+        int[] cellCounts = new int[nCellsTotal];
+        for (int i = 0; i < nPoints; i++) {
+            if (valid[i]) {
+                int cell = getCell(cellCoord(i, 0), cellCoord(i, 1), cellCoord(i, 2));
+                pointCells[i] = cell;
+                cellCounts[cell]++;
+            } else {
+                pointCells[i] = -1;
+            }
+        }
+        cellStarts = new int[nCellsTotal + 1];
+        for (int i = 0; i < nCellsTotal; i++) {
+            cellStarts[i + 1] = cellStarts[i] + cellCounts[i];
+        }
+        cellIndices = new int[nValid];
+        int[] nAdded = new int[nCellsTotal];
+        for (int i = 0; i < nPoints; i++) {
+            int cell = pointCells[i];
+            if (cell >= 0) {
+                cellIndices[cellStarts[cell] + nAdded[cell]] = i;
+                nAdded[cell]++;
+            }
+        }
+    }
+
+    /**
+     * Create an index of the atom coordinates of one structure.
+     *
+     * @param atoms    the atoms
+     * @param iStruct  the structure to get the coordinates from
+     * @param cellSize the edge length of the grid cells
+     * @return the index, with the atoms identified by their index in the list
+     */
+    public static NeighborIndex of(List<Atom> atoms, int iStruct, double cellSize) {
+        return of(atoms, atom -> atom.getPoint(iStruct), cellSize);
+    }
+
+    /**
+     * Create an index of points derived from a list of items, like the
+     * coordinates of a list of SpatialSets or the centers of methyl groups.
+     *
+     * @param items         the items
+     * @param pointFunction returns the point of an item, or null if the item
+     *                      shouldn't be in the index
+     * @param cellSize      the edge length of the grid cells
+     * @param <T>           the type of the items
+     * @return the index, with the items identified by their index in the list
+     */
+    public static <T> NeighborIndex of(List<T> items, Function<T, ? extends Vector3D> pointFunction, double cellSize) {
+        List<Vector3D> points = new ArrayList<>(items.size());
+        for (T item : items) {
+            points.add(pointFunction.apply(item));
+        }
+        return new NeighborIndex(points, cellSize);
+    }
+
+    /**
+     * Create an index of the coordinates of a list of SpatialSets in one
+     * structure.
+     *
+     * @param spatialSets the spatial sets
+     * @param iStruct     the structure to get the coordinates from
+     * @param cellSize    the edge length of the grid cells
+     * @return the index
+     */
+    public static NeighborIndex ofSpatialSets(List<SpatialSet> spatialSets, int iStruct, double cellSize) {
+        return of(spatialSets, spatialSet -> spatialSet.getPoint(iStruct), cellSize);
+    }
+
+    private long countCells(double[] max, double size) {
+        long n = 1;
+        for (int j = 0; j < 3; j++) {
+            n *= 1 + (long) Math.floor((max[j] - origin[j]) / size);
+        }
+        return n;
+    }
+
+    private int cellCoord(int i, int j) {
+        return cellCoord(coords[i * 3 + j], j);
+    }
+
+    private int cellCoord(double value, int j) {
+        return (int) Math.floor((value - origin[j]) / cellSize);
+    }
+
+    private int getCell(int ix, int iy, int iz) {
+        return ix + nCells[0] * (iy + nCells[1] * iz);
+    }
+
+    /**
+     * Get the number of points the index was built from, including null ones.
+     *
+     * @return the number of points
+     */
+    public int size() {
+        return nPoints;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Call the consumer for each point closer than a limit to a position. The
+     * points are found in no particular order.
+     *
+     * @param pt       the position
+     * @param limit    the distance limit
+     * @param consumer receives the index and distance of each point
+     */
+    public void forEachNeighbor(Vector3D pt, double limit, NeighborConsumer consumer) {
+        double x = pt.getX();
+        double y = pt.getY();
+        double z = pt.getZ();
+        double limit2 = limit * limit;
+        int[] lo = new int[3];
+        int[] hi = new int[3];
+        double[] values = {x, y, z};
+        for (int j = 0; j < 3; j++) {
+            lo[j] = Math.max(0, cellCoord(values[j] - limit, j));
+            hi[j] = Math.min(nCells[j] - 1, cellCoord(values[j] + limit, j));
+            if (lo[j] > hi[j]) {
+                return;
+            }
+        }
+        for (int iz = lo[2]; iz <= hi[2]; iz++) {
+            for (int iy = lo[1]; iy <= hi[1]; iy++) {
+                for (int ix = lo[0]; ix <= hi[0]; ix++) {
+                    int cell = getCell(ix, iy, iz);
+                    for (int k = cellStarts[cell], end = cellStarts[cell + 1]; k < end; k++) {
+                        int i = cellIndices[k];
+                        double dx = coords[i * 3] - x;
+                        double dy = coords[i * 3 + 1] - y;
+                        double dz = coords[i * 3 + 2] - z;
+                        double disSq = dx * dx + dy * dy + dz * dz;
+                        if (disSq < limit2) {
+                            consumer.accept(i, Math.sqrt(disSq));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the indices of the points closer than a limit to a position.
+     *
+     * @param pt    the position
+     * @param limit the distance limit
+     * @return the indices, in ascending order
+     */
+    public int[] getNeighbors(Vector3D pt, double limit) {
+        IntList found = new IntList();
+        forEachNeighbor(pt, limit, (i, distance) -> found.add(i));
+        return found.toSortedArray();
+    }
+
+    /**
+     * Get the indices of the points closer than a limit to the point with the
+     * specified index, not including the point itself.
+     *
+     * @param index the index of the point
+     * @param limit the distance limit
+     * @return the indices, in ascending order, or an empty array if the point
+     * is null
+     */
+    public int[] getNeighbors(int index, double limit) {
+        if (!contains(index)) {
+            return new int[0];
+        }
+        Vector3D pt = new Vector3D(coords[index * 3], coords[index * 3 + 1], coords[index * 3 + 2]);
+        IntList found = new IntList();
+        forEachNeighbor(pt, limit, (i, distance) -> {
+            if (i != index) {
+                found.add(i);
+            }
+        });
+        return found.toSortedArray();
+    }
+
+    /**
+     * Check whether the point with the specified index is in the index (it
+     * wasn't null).
+     *
+     * @param index the index of the point
+     * @return true if the point is in the index
+     */
+    public boolean contains(int index) {
+        return valid[index];
+    }
+
+    private static class IntList {
+        int[] values = new int[16];
+        int n = 0;
+
+        void add(int value) {
+            if (n == values.length) {
+                values = Arrays.copyOf(values, n * 2);
+            }
+            values[n++] = value;
+        }
+
+        int[] toSortedArray() {
+            int[] result = Arrays.copyOf(values, n);
+            Arrays.sort(result);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.structure.chemistry;
+
+import org.nmrfx.chemistry.CoordinateBlock;
+
+import java.util.stream.IntStream;
+
+/**
+ * Calculates the RMSD between structures after optimal superposition, without
+ * calculating the rotation. The RMSD comes from the largest eigenvalue of
+ * the 4x4 quaternion key matrix, which is found by Newton iteration on its
+ * characteristic polynomial (the QCP method of Theobald, Acta Cryst. A61,
+ * 478-480, 2005). This is much cheaper than the iterative rotation fit in
+ * SuperMol.cal_super, so the RMSD between every pair of structures in a
+ * large ensemble, as needed for clustering, can be calculated quickly.
+ * <p>
+ * Coordinates are the arrays of a CoordinateBlock: x, y and z of each atom in
+ * turn, with NaN for atoms that have no coordinates. Only atoms present in
+ * both structures are superimposed.
+ */
+public class RMSDMatrix {
+
+    private static final double EIGEN_PRECISION = 1.0e-11;
+    private static final int MAX_ITERATIONS = 50;
+
+    private RMSDMatrix() {
+    }
+
+    /**
+     * Calculate the RMSD between every pair of structures in a block. The
+     * rows are calculated in parallel on the common fork-join pool.
+     *
+     * @param block the coordinates of the atoms to superimpose
+     * @return the symmetric matrix of RMSDs, indexed by the index of the
+     * structures in the block. The diagonal is zero and pairs with fewer than
+     * three atoms in common are NaN.
+     */
+    public static double[][] calcMatrix(CoordinateBlock block) {
+        int n = block.getStructureCount();
+        double[][] matrix = new double[n][n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            double[] fix = block.getCoordinates(i);
+            for (int j = i + 1; j < n; j++) {
+                matrix[i][j] = calcRMSD(fix, block.getCoordinates(j));
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < i; j++) {
+                matrix[i][j] = matrix[j][i];
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Calculate the RMSD between two structures after optimal superposition.
+     *
+     * @param fix  the coordinates of the first structure
+     * @param move the coordinates of the second structure
+     * @return the RMSD or NaN if there are fewer than three atoms with
+     * coordinates in both structures
+     */
+    public static double calcRMSD(double[] fix, double[] move) {
+        int nAtoms = Math.min(fix.length, move.length) / 3;
+        double[] fixCenter = new double[3];
+        double[] moveCenter = new double[3];
+        int n = 0;
+        for (int i = 0; i < nAtoms; i++) {
+            if (Double.isNaN(fix[i * 3]) || Double.isNaN(move[i * 3])) {
+                continue;
+            }
+            for (int k = 0; k < 3; k++) {
+                fixCenter[k] += fix[i * 3 + k];
+                moveCenter[k] += move[i * 3 + k];
+            }
+            n++;
+        }
+        if (n < 3) {
+            return Double.NaN;
+        }
+        for (int k = 0; k < 3; k++) {
+            fixCenter[k] /= n;
+            moveCenter[k] /= n;
+        }
+        // inner products of the centered coordinates and their correlation matrix
+        double gFix = 0.0;
+        double gMove = 0.0;
+        double[] s = new double[9];
+        for (int i = 0; i < nAtoms; i++) {
+            if (Double.isNaN(fix[i * 3]) || Double.isNaN(move[i * 3])) {
+                continue;
+            }
+            double fx = fix[i * 3] - fixCenter[0];
+            double fy = fix[i * 3 + 1] - fixCenter[1];
+            double fz = fix[i * 3 + 2] - fixCenter[2];
+            double mx = move[i * 3] - moveCenter[0];
+            double my = move[i * 3 + 1] - moveCenter[1];
+            double mz = move[i * 3 + 2] - moveCenter[2];
+            gFix += fx * fx + fy * fy + fz * fz;
+            gMove += mx * mx + my * my + mz * mz;
+            s[0] += fx * mx;
+            s[1] += fx * my;
+            s[2] += fx * mz;
+            s[3] += fy * mx;
+            s[4] += fy * my;
+            s[5] += fy * mz;
+            s[6] += fz * mx;
+            s[7] += fz * my;
+            s[8] += fz * mz;
+        }
+        double maxEigenValue = getMaxEigenValue(s, (gFix + gMove) * 0.5);
+        return Math.sqrt(Math.abs(2.0 * ((gFix + gMove) * 0.5 - maxEigenValue) / n));
+    }
+
+    /**
+     * Find the largest eigenvalue of the quaternion key matrix built from a
+     * correlation matrix.
+     *
+     * @param s  the correlation matrix, row by row
+     * @param e0 half the sum of the inner products of the two structures,
+     *           which is an upper bound on the eigenvalue
+     * @return the largest eigenvalue
+     */
+    static double getMaxEigenValue(double[] s, double e0) {
+        double sxx = s[0];
+        double sxy = s[1];
+        double sxz = s[2];
+        double syx = s[3];
+        double syy = s[4];
+        double syz = s[5];
+        double szx = s[6];
+        double szy = s[7];
+        double szz = s[8];
+
+        double sxx2 = sxx * sxx;
+        double syy2 = syy * syy;
+        double szz2 = szz * szz;
+        double sxy2 = sxy * sxy;
+        double syz2 = syz * syz;
+        double sxz2 = sxz * sxz;
+        double syx2 = syx * syx;
+        double szy2 = szy * szy;
+        double szx2 = szx * szx;
+
+        double syzSzymSyySzz2 = 2.0 * (syz * szy - syy * szz);
+        double sxx2Syy2Szz2Syz2Szy2 = syy2 + szz2 - sxx2 + syz2 + szy2;
+
+        double c2 = -2.0 * (sxx2 + syy2 + szz2 + sxy2 + syx2 + sxz2 + szx2 + syz2 + szy2);
+        double c1 = 8.0 * (sxx * syz * szy + syy * szx * sxz + szz * sxy * syx
+                - sxx * syy * szz - syz * szx * sxy - szy * syx * sxz);
+
+        double sxzpSzx = sxz + szx;
+        double syzpSzy = syz + szy;
+        double sxypSyx = sxy + syx;
+        double syzmSzy = syz - szy;
+        double sxzmSzx = sxz - szx;
+        double sxymSyx = sxy - syx;
+        double sxxpSyy = sxx + syy;
+        double sxxmSyy = sxx - syy;
+        double sxy2Sxz2Syx2Szx2 = sxy2 + sxz2 - syx2 - szx2;
+
+        double c0 = sxy2Sxz2Syx2Szx2 * sxy2Sxz2Syx2Szx2
+                + (sxx2Syy2Szz2Syz2Szy2 + syzSzymSyySzz2) * (sxx2Syy2Szz2Syz2Szy2 - syzSzymSyySzz2)
+                + (-sxzpSzx * syzmSzy + sxymSyx * (sxxmSyy - szz)) * (-sxzmSzx * syzpSzy + sxymSyx * (sxxmSyy + szz))
+                + (-sxzpSzx * syzpSzy - sxypSyx * (sxxpSyy - szz)) * (-sxzmSzx * syzmSzy - sxypSyx * (sxxpSyy + szz))
+                + (sxypSyx * syzpSzy + sxzpSzx * (sxxmSyy + szz)) * (-sxymSyx * syzmSzy + sxzpSzx * (sxxpSyy + szz))
+                + (sxypSyx * syzmSzy + sxzmSzx * (sxxmSyy - szz)) * (-sxymSyx * syzpSzy + sxzmSzx * (sxxpSyy - szz));
+
+        double eigenValue = e0;
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            double lastValue = eigenValue;
+            double x2 = eigenValue * eigenValue;
+            double b = (x2 + c2) * eigenValue;
+            double a = b + c1;
+            double delta = (a * eigenValue + c0) / (2.0 * x2 * eigenValue + b + a);
+            eigenValue -= delta;
+            if (Math.abs(eigenValue - lastValue) < Math.abs(EIGEN_PRECISION * eigenValue)) {
+                break;
+            }
+        }
+        return eigenValue;
+    }
+}
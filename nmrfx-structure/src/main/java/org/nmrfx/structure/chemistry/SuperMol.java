@@ -18,6 +18,7 @@
 package org.nmrfx.structure.chemistry;
 
 import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.CoordinateBlock;
 import org.nmrfx.chemistry.MoleculeBase;
 import org.nmrfx.chemistry.Point3;
 import org.nmrfx.chemistry.SpatialSet;
@@ -25,6 +26,7 @@ import org.nmrfx.chemistry.SpatialSet;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.IntStream;
 
 public class SuperMol {
 
@@ -46,9 +48,6 @@ public class SuperMol {
 
     public ArrayList<SuperResult> doSuper(int fixMol, int moveMol, boolean changeCoordinates) {
         int j = 0;
-        SpatialSet spatialSet;
-        Point3 pt1;
-        Point3 pt2;
         double t_rms = 0.0;
         List<SpatialSet> selected = molecule.getAtomsByProp(Atom.SUPER);
         x = new double[selected.size()][3];
@@ -64,34 +63,30 @@ public class SuperMol {
             moveStructures = new int[1];
             moveStructures[0] = moveMol;
         }
+        int[] blockStructures = IntStream.concat(IntStream.of(fixStructures), IntStream.of(moveStructures))
+                .distinct().toArray();
+        CoordinateBlock block = new CoordinateBlock(selected, blockStructures);
+        if (!changeCoordinates) {
+            return calcSuperRMS(block, fixStructures, moveStructures);
+        }
 
         for (int iFix : fixStructures) {
+            double[] fixCoords = block.getCoordinates(block.getStructureIndex(iFix));
             for (int iMov : moveStructures) {
                 if (iFix == iMov) {
                     continue;
                 }
+                int kMov = block.getStructureIndex(iMov);
+                double[] movCoords = block.getCoordinates(kMov);
                 j = 0;
                 for (int i = 0; i < selected.size(); i++) {
-                    spatialSet = selected.get(i);
-
-                    pt1 = (Point3) spatialSet.getPoint(iFix);
-
-                    if (pt1 == null) {
+                    if (Double.isNaN(fixCoords[i * 3]) || Double.isNaN(movCoords[i * 3])) {
                         continue;
                     }
-
-                    pt2 = (Point3) spatialSet.getPoint(iMov);
-
-                    if (pt2 == null) {
-                        continue;
+                    for (int k = 0; k < 3; k++) {
+                        x[j][k] = fixCoords[i * 3 + k];
+                        y[j][k] = movCoords[i * 3 + k];
                     }
-
-                    x[j][0] = pt1.getX();
-                    x[j][1] = pt1.getY();
-                    x[j][2] = pt1.getZ();
-                    y[j][0] = pt2.getX();
-                    y[j][1] = pt2.getY();
-                    y[j][2] = pt2.getZ();
                     j++;
                 }
 
@@ -106,7 +101,7 @@ public class SuperMol {
                         Iterator iter = molecule.getSpatialSetIterator();
                         while (iter.hasNext()) {
                             SpatialSet sSet = (SpatialSet) iter.next();
-                            pt2 = sSet.getPoint(iMov);
+                            Point3 pt2 = sSet.getPoint(iMov);
                             if (pt2 != null) {
                                 s[0] = pt2.getX();
                                 s[1] = pt2.getY();
@@ -122,6 +117,8 @@ public class SuperMol {
                                 sSet.setPoint(iMov, pt2);
                             }
                         }
+                        // the moved structure may be the fixed one of a later pair
+                        block.load(kMov);
                     }
                 }
             }
@@ -129,6 +126,48 @@ public class SuperMol {
         return superRMS;
     }
 
+    /**
+     * Calculate the RMSD after superposition of each pair of fixed and moving
+     * structures, in parallel, without calculating the rotations.
+     */
+    private ArrayList<SuperResult> calcSuperRMS(CoordinateBlock block, int[] fixStructures, int[] moveStructures) {
+        int nMove = moveStructures.length;
+        double[] rmsValues = new double[fixStructures.length * nMove];
+        IntStream.range(0, rmsValues.length).parallel().forEach(p -> {
+            int iFix = fixStructures[p / nMove];
+            int iMov = moveStructures[p % nMove];
+            if (iFix == iMov) {
+                rmsValues[p] = Double.NaN;
+            } else {
+                double[] fixCoords = block.getCoordinates(block.getStructureIndex(iFix));
+                double[] movCoords = block.getCoordinates(block.getStructureIndex(iMov));
+                rmsValues[p] = RMSDMatrix.calcRMSD(fixCoords, movCoords);
+            }
+        });
+        ArrayList<SuperResult> superRMS = new ArrayList<>();
+        for (int p = 0; p < rmsValues.length; p++) {
+            if (!Double.isNaN(rmsValues[p])) {
+                rms = rmsValues[p];
+                superRMS.add(new SuperResult(fixStructures[p / nMove], moveStructures[p % nMove], rms));
+            }
+        }
+        return superRMS;
+    }
+
+    /**
+     * Calculate the RMSD after superposition between every pair of active
+     * structures, using the atoms with the SUPER property. The coordinates
+     * aren't changed. The matrix can be used to cluster the structures.
+     *
+     * @return the symmetric matrix of RMSDs, indexed by the position of the
+     * structures in the array returned by getActiveStructures.
+     */
+    public double[][] calcRMSDMatrix() {
+        List<SpatialSet> selected = molecule.getAtomsByProp(Atom.SUPER);
+        CoordinateBlock block = new CoordinateBlock(selected, molecule.getActiveStructures());
+        return RMSDMatrix.calcMatrix(block);
+    }
+
     public void cal_super(double[][] x, double[][] y, int n) {
         int i;
         int j;
@@ -25,7 +25,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Map;
 import java.util.Set;
 
@@ -43,6 +42,14 @@ public class EnergyCoords {
             {-1, -1, 1}, {0, -1, 1}, {1, -1, 1}
     };
     FastVector3D[] vecCoords = null;
+    /**
+     * Copies of the coordinates in vecCoords stored as contiguous arrays, so
+     * the pair energy loops don't follow a reference for each atom of each
+     * pair. Updated with updateCoordArrays.
+     */
+    double[] xCoords = null;
+    double[] yCoords = null;
+    double[] zCoords = null;
     EnergyDistancePairs eDistancePairs;
     EnergyConstraintPairs eConstraintPairs;
     EnergyShiftPairs eShiftPairs;
@@ -63,11 +70,12 @@ public class EnergyCoords {
     double[] cValues = null;
     int[] cellIndex = null;
     int nAtoms = 0;
-    boolean[][] fixed;
+    FixedPairs fixed;
     Map<Integer, Set<Integer>> kSwap = null;
     boolean setupShifts = false;
 
     private static double hbondDelta = 0.60;
+    static final double STACK_LIMIT = 6.0;
 
     public EnergyCoords() {
         this.forceWeight = new ForceWeight();
@@ -90,6 +98,9 @@ public class EnergyCoords {
     public FastVector3D[] getVecCoords(int size) {
         if ((vecCoords == null) || (vecCoords.length != size)) {
             vecCoords = new FastVector3D[size];
+            xCoords = new double[size];
+            yCoords = new double[size];
+            zCoords = new double[size];
             resNums = new int[size];
             atoms = new Atom[size];
             mAtoms = new int[size];
@@ -118,6 +129,20 @@ public class EnergyCoords {
         return vecCoords;
     }
 
+    /**
+     * Copy the current coordinates from vecCoords into the x, y and z
+     * coordinate arrays. Called before pair energies and derivatives are
+     * calculated, as the coordinates are changed through the vector objects.
+     */
+    void updateCoordArrays() {
+        for (int i = 0; i < nAtoms; i++) {
+            double[] values = vecCoords[i].getValues();
+            xCoords[i] = values[0];
+            yCoords[i] = values[1];
+            zCoords[i] = values[2];
+        }
+    }
+
     public void setCoords(int i, double x, double y, double z, int resNum, Atom atomType) {
         vecCoords[i].set(x, y, z);
         resNums[i] = resNum;
@@ -432,7 +457,7 @@ public class EnergyCoords {
                                         Atom[] planeAtoms1 = null;
                                         Atom[] planeAtoms2 = null;
                                         if (stackCheck) {
-                                            limit2R = 36.0;
+                                            limit2R = STACK_LIMIT * STACK_LIMIT;
                                             planeAtoms1 = atom1.getPlaneAtoms();
                                             planeAtoms2 = atom2.getPlaneAtoms();
                                         }
@@ -500,66 +525,42 @@ public class EnergyCoords {
     }
 
     boolean getFixed(int i, int j) {
-        return fixed[i][j];
+        return fixed.get(i, j);
     }
 
     void setFixed(int i, int j, boolean state) {
-        fixed[i][j] = state;
+        fixed.set(i, j, state);
     }
 
-    public double[][][] getFixedRange() {
-        double[][][] disRange = new double[2][nAtoms][nAtoms];
-        fixed = new boolean[nAtoms][nAtoms];
-        for (int i = 0; i < nAtoms; i++) {
-            Arrays.fill(disRange[0][i], Double.MAX_VALUE);
-            Arrays.fill(disRange[1][i], Double.NEGATIVE_INFINITY);
-
-        }
-        return disRange;
+    /**
+     * Start finding the atom pairs with fixed separations. Only pairs within
+     * the interaction limit (or the base stacking limit, if larger) are
+     * tracked, as more distant pairs are never considered in setCells.
+     *
+     * @param limit the distance limit that will be used in setCells
+     */
+    public void initFixedRange(double limit) {
+        fixed = new FixedPairs(nAtoms, Math.max(limit, STACK_LIMIT));
     }
 
-    public void updateRanges(double[][][] disRanges) {
-        for (int i = 0; i < nAtoms; i++) {
-            FastVector3D v1 = vecCoords[i];
-            for (int j = 0; j < nAtoms; j++) {
-                FastVector3D v2 = vecCoords[j];
-                double dis = v1.dis(v2);
-                disRanges[0][i][j] = Math.min(dis, disRanges[0][i][j]);
-                disRanges[1][i][j] = Math.max(dis, disRanges[1][i][j]);
-            }
-        }
+    public void updateRanges() {
+        fixed.updateRanges(vecCoords);
     }
 
-    public void updateFixed(double[][][] disRanges) {
-        double tol = 0.2;
-        int nFixed = 0;
-        for (int i = 0; i < nAtoms; i++) {
-            for (int j = 0; j < nAtoms; j++) {
-                double delta = Math.abs(disRanges[1][i][j] - disRanges[0][i][j]);
-                if (delta < tol) {
-                    setFixed(i, j, true);
-                }
-                if (getFixed(i, j)) {
-                    nFixed++;
-                }
-
-            }
-        }
+    public void updateFixed() {
+        fixed.updateFixed();
     }
 
     public void dumpFixed() {
-        for (int i = 0; i < fixed.length; i++) {
+        for (int i = 0; i < nAtoms; i++) {
             String name1 = atoms[i].getFullName();
-            for (int j = 0; j < fixed[i].length; j++) {
-
-                if ((i != j) && fixed[i][j]) {
-                    String name2 = atoms[j].getFullName();
-                    if (name1.compareTo(name2) <= 0) {
-                        System.out.println("fix " + name1 + " " + name2);
-                    } else {
-                        System.out.println("fix " + name2 + " " + name1);
+            for (int k = 0; k < fixed.getPartnerCount(i); k++) {
+                String name2 = atoms[fixed.getPartner(i, k)].getFullName();
+                if (name1.compareTo(name2) <= 0) {
+                    System.out.println("fix " + name1 + " " + name2);
+                } else {
+                    System.out.println("fix " + name2 + " " + name1);
 
-                    }
                 }
             }
         }
@@ -570,10 +571,21 @@ public class EnergyCoords {
     }
 
     public boolean fixedCurrent() {
-        boolean status = (fixed != null) && (fixed.length == nAtoms);
+        boolean status = (fixed != null) && (fixed.getAtomCount() == nAtoms);
         return status;
     }
 
+    /**
+     * Check whether the fixed pairs are current and were found with a cutoff
+     * that covers a distance limit.
+     *
+     * @param limit the distance limit that will be used in setCells
+     * @return true if the fixed pairs can be used
+     */
+    public boolean fixedCurrent(double limit) {
+        return fixedCurrent() && (fixed.getCutoff() >= limit);
+    }
+
     public boolean checkCloseAtoms(Atom atom1, Atom atom2) {
         boolean close = false;
         if ((atom1.getAtomicNumber() != 1) || (atom2.getAtomicNumber() != 1)) {
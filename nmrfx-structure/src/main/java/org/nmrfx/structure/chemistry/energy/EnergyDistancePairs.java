@@ -6,7 +6,6 @@
 package org.nmrfx.structure.chemistry.energy;
 
 import org.nmrfx.chemistry.Atom;
-import org.nmrfx.structure.fastlinear.FastVector3D;
 
 import static org.nmrfx.structure.chemistry.energy.AtomMath.RADJ;
 
@@ -45,15 +44,10 @@ public class EnergyDistancePairs extends EnergyPairs {
     }
 
     public double calcEnergy(boolean calcDeriv, double weight, double eWeight) {
-        FastVector3D[] vecCoords = eCoords.getVecCoords();
+        calcDisSq(disSq);
         double sum = 0.0;
         for (int i = 0; i < nPairs; i++) {
-            int iAtom = iAtoms[i];
-            int jAtom = jAtoms[i];
-            FastVector3D iV = vecCoords[iAtom];
-            FastVector3D jV = vecCoords[jAtom];
-            double r2 = iV.disSq(jV);
-            disSq[i] = r2;
+            double r2 = disSq[i];
             derivs[i] = 0.0;
             viol[i] = 0.0;
             if (r2 <= rDis2[i]) {
@@ -6,7 +6,8 @@
 package org.nmrfx.structure.chemistry.energy;
 
 import org.nmrfx.chemistry.Atom;
-import org.nmrfx.structure.fastlinear.FastVector3D;
+
+import java.util.Arrays;
 
 /**
  * @author brucejohnson
@@ -48,7 +49,6 @@ public class EnergyFFPairs extends EnergyDistancePairs {
 
     @Override
     public double calcEnergy(boolean calcDeriv, double weight, double eWeight) {
-        FastVector3D[] vecCoords = eCoords.getVecCoords();
         double sum = 0.0;
         double cutoffScale = -1.0;
         double rMin = eCoords.forceWeight.getNBMin();
@@ -79,27 +79,20 @@ public class EnergyFFPairs extends EnergyDistancePairs {
         double a12 = a1 * a1;
         double b12 = b1 * b1;
 
+        // charges are only used if the electrostatic weight is set
+        double chargeScale = eWeight < 0.0 ? 0.0 : 1.0;
+        calcDisSq(disSq);
         for (int i = 0; i < nPairs; i++) {
-            int iAtom = iAtoms[i];
-            int jAtom = jAtoms[i];
             double a = aValues[i];
             double b = bValues[i];
-            double c = charge[i]; // fixme
-            if (eWeight < 0.0) {
-                c = 0.0;
-            }
+            double c = charge[i] * chargeScale; // fixme
 //derivative of ( (2.0 + 0.5 *  x^2)/(1.0 + (0.0625 *  x^2 + 1.5) * x^2))
 // derivative of ( 2.0*(a + b *  x^2)/((a+b*x^2)^2 + x^2))
 // derivative of ( 2.0*(1.0 + 0.25 *  x^2)/((1.0+0.25*x^2)^2 + x^2)) 
 //derivative of ( 2.0*(2.0 + 0.15 *  x^2)/((2.0+0.15*x^2)^2 + x^2)) 
 // derivative of ( 2.0*q/(q^2+x^2))
 // derivative of (a*s3-b)*(s6)
-            FastVector3D iV = vecCoords[iAtom];
-            FastVector3D jV = vecCoords[jAtom];
-            double r2 = iV.disSq(jV);
-            disSq[i] = r2;
-            derivs[i] = 0.0;
-            viol[i] = 0.0;
+            double r2 = disSq[i];
             final double q = a1 + b1 * r2;
             final double u = c1 * q;
             final double v = q * q + r2;
@@ -109,8 +102,17 @@ public class EnergyFFPairs extends EnergyDistancePairs {
             double e = weight * ((a * s3 - b) * s6 + c * s);
             viol[i] = e;
             sum += e;
-            if (calcDeriv) {
-                double s2 = s * s;
+        }
+        if (calcDeriv) {
+            for (int i = 0; i < nPairs; i++) {
+                double a = aValues[i];
+                double b = bValues[i];
+                double c = charge[i] * chargeScale;
+                double r2 = disSq[i];
+                final double q = a1 + b1 * r2;
+                final double s = c1 * q / (q * q + r2);
+                final double s2 = s * s;
+                final double s3 = s2 * s;
                 double s5 = s2 * s3;
                 double deds = (9.0 * a * s3 - 6.0 * b) * s5 + c;
                 double r4 = r2 * r2;
@@ -122,10 +124,10 @@ public class EnergyFFPairs extends EnergyDistancePairs {
                  * would be in following drops out
                  * double dqdx = 0.5 * r;
                  */
-                double deriv = deds * dsdp * 2.0 * weight;
-                derivs[i] = deriv;
+                derivs[i] = deds * dsdp * 2.0 * weight;
             }
-
+        } else {
+            Arrays.fill(derivs, 0, nPairs, 0.0);
         }
         return sum;
     }
@@ -147,7 +149,7 @@ public class EnergyFFPairs extends EnergyDistancePairs {
     }
 
     public double calcLKEnergy(boolean calcDeriv, double weight) {
-        FastVector3D[] vecCoords = eCoords.getVecCoords();
+        calcDisSq(disSq);
         double sum = 0.0;
         double cutoffScale = -1.0;
 
@@ -160,10 +162,7 @@ public class EnergyFFPairs extends EnergyDistancePairs {
             double sigmaI = eCoords.contactRadii[iAtom] / EnergyCoords.RSCALE;
             double sigmaIJ = (eCoords.contactRadii[iAtom] + eCoords.contactRadii[jAtom]) / EnergyCoords.RSCALE;
 
-            FastVector3D iV = vecCoords[iAtom];
-            FastVector3D jV = vecCoords[jAtom];
-            double r2 = iV.disSq(jV);
-            disSq[i] = r2;
+            double r2 = disSq[i];
             derivs[i] = 0.0;
             viol[i] = 0.0;
             double r = Math.sqrt(r2);
@@ -457,14 +457,14 @@ public class EnergyLists {
         }
         dihedrals.saveDihedrals();
         EnergyCoords eCoords = molecule.getEnergyCoords();
-        double[][][] dRange = eCoords.getFixedRange();
+        eCoords.initFixedRange(distanceLimit);
         int nUpdates = 10;
         for (int i = 0; i < nUpdates; i++) {
             dihedrals.randomizeAngles();
             molecule.genCoordsFastVec3D(null);
-            eCoords.updateRanges(dRange);
+            eCoords.updateRanges();
         }
-        eCoords.updateFixed(dRange);
+        eCoords.updateFixed();
         dihedrals.restoreDihedrals();
         molecule.genCoordsFastVec3D(null);
     }
@@ -1022,7 +1022,7 @@ public class EnergyLists {
         EnergyCoords eCoords = molecule.getEnergyCoords();
         molecule.updateVecCoords();
         eCoords.eConstraintPairs.clear();
-        if (!eCoords.fixedCurrent()) {
+        if (!eCoords.fixedCurrent(distanceLimit)) {
             if (molecule.getDihedrals() == null) {
                 return;
             }
@@ -1343,11 +1343,13 @@ public class EnergyLists {
 
     public void makeAtomListFast() {
         EnergyCoords eCoords = molecule.getEnergyCoords();
-        if (!eCoords.fixedCurrent()) {
+        if (!eCoords.fixedCurrent(distanceLimit)) {
             if (molecule.getDihedrals() == null) {
                 return;
             }
             updateFixed(molecule.getDihedrals());
+            // bond constraints mark their atoms as fixed, so add them again
+            constraintsSetup = false;
         }
         if (!constraintsSetup) {
             updateNOEPairs();
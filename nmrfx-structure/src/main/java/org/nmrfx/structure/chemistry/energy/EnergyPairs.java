@@ -5,8 +5,6 @@
  */
 package org.nmrfx.structure.chemistry.energy;
 
-import org.nmrfx.structure.fastlinear.FastVector3D;
-
 /**
  * @author brucejohnson
  */
@@ -89,11 +87,36 @@ public class EnergyPairs {
         }
     }
 
+    /**
+     * Calculate the squared distance between the atoms of each pair. The
+     * coordinates are read from the coordinate arrays of EnergyCoords, which
+     * are updated first.
+     *
+     * @param disSq array to store the squared distances in
+     */
+    void calcDisSq(double[] disSq) {
+        eCoords.updateCoordArrays();
+        double[] x = eCoords.xCoords;
+        double[] y = eCoords.yCoords;
+        double[] z = eCoords.zCoords;
+        for (int i = 0; i < nPairs; i++) {
+            int iAtom = iAtoms[i];
+            int jAtom = jAtoms[i];
+            double delX = x[iAtom] - x[jAtom];
+            double delY = y[iAtom] - y[jAtom];
+            double delZ = z[iAtom] - z[jAtom];
+            disSq[i] = delX * delX + delY * delY + delZ * delZ;
+        }
+    }
+
     public void addDerivs(AtomBranch[] branches) {
-        FastVector3D[] vecCoords = eCoords.getVecCoords();
+        eCoords.updateCoordArrays();
+        double[] x = eCoords.xCoords;
+        double[] y = eCoords.yCoords;
+        double[] z = eCoords.zCoords;
 
-        FastVector3D v1 = new FastVector3D();
-        FastVector3D v2 = new FastVector3D();
+        double[] v1 = new double[3];
+        double[] v2 = new double[3];
         int iMax = 0;
         double dMax = 0.0;
         for (int i = 0; i < nPairs; i++) {
@@ -107,26 +130,31 @@ public class EnergyPairs {
             }
             int iAtom = iAtoms[i];
             int jAtom = jAtoms[i];
-
-            FastVector3D pv1 = vecCoords[iAtom];
-            FastVector3D pv2 = vecCoords[jAtom];
-
-            pv1.crossProduct(pv2, v1);
-            v1.multiply(derivs[i]);
-
-            pv1.subtract(pv2, v2);
-            v2.multiply(derivs[i]);
+            double x1 = x[iAtom];
+            double y1 = y[iAtom];
+            double z1 = z[iAtom];
+            double x2 = x[jAtom];
+            double y2 = y[jAtom];
+            double z2 = z[jAtom];
+
+            v1[0] = (y1 * z2 - z1 * y2) * deriv;
+            v1[1] = (z1 * x2 - x1 * z2) * deriv;
+            v1[2] = (x1 * y2 - y1 * x2) * deriv;
+
+            v2[0] = (x1 - x2) * deriv;
+            v2[1] = (y1 - y2) * deriv;
+            v2[2] = (z1 - z2) * deriv;
             int iUnit = iUnits[i];
             int jUnit = jUnits[i];
 
             if (iUnit >= 0) {
-                branches[iUnit].addToF(v1.getValues());
-                branches[iUnit].addToG(v2.getValues());
+                branches[iUnit].addToF(v1);
+                branches[iUnit].addToG(v2);
 
             }
             if (jUnit >= 0) {
-                branches[jUnit].subtractToF(v1.getValues());
-                branches[jUnit].subtractToG(v2.getValues());
+                branches[jUnit].subtractToF(v1);
+                branches[jUnit].subtractToG(v2);
             }
         }
         if (dMax > 100000.0) {
@@ -0,0 +1,217 @@
+/*
+ * NMRFx Structure : A Program for Calculating Structures
+ * Copyright (C) 2004-2017 One Moon Scientific, Inc., Westfield, N.J., USA
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.nmrfx.structure.chemistry.energy;
+
+import org.nmrfx.structure.fastlinear.FastVector3D;
+
+import java.util.Arrays;
+
+/**
+ * The pairs of atoms whose separation doesn't change when the dihedral angles
+ * change, so no repulsive interaction needs to be calculated between them.
+ * Only pairs within a cutoff distance are tracked: a pair with a fixed
+ * separation beyond the cutoff can never come within the interaction limit
+ * used when setting up the atom pairs. Candidate pairs are found with a cell
+ * list on the first set of coordinates, so memory and time scale with the
+ * number of atoms rather than its square.
+ */
+class FixedPairs {
+
+    private static final double TOLERANCE = 0.2;
+
+    private final int nAtoms;
+    private final double cutoff;
+    // for each atom, the sorted indices of the higher numbered atoms it is fixed to
+    private final int[][] partners;
+    private final int[] nPartners;
+
+    private int nCandidates = 0;
+    private int[] iCandidates = null;
+    private int[] jCandidates = null;
+    private double[] minDis = null;
+    private double[] maxDis = null;
+
+    FixedPairs(int nAtoms, double cutoff) {
+        this.nAtoms = nAtoms;
+        this.cutoff = cutoff;
+        partners = new int[nAtoms][];
+        nPartners = new int[nAtoms];
+    }
+
+    int getAtomCount() {
+        return nAtoms;
+    }
+
+    double getCutoff() {
+        return cutoff;
+    }
+
+    boolean get(int i, int j) {
+        if (i == j) {
+            return true;
+        }
+        int iAtom = Math.min(i, j);
+        int jAtom = Math.max(i, j);
+        return (partners[iAtom] != null) && (Arrays.binarySearch(partners[iAtom], 0, nPartners[iAtom], jAtom) >= 0);
+    }
+
+    void set(int i, int j, boolean state) {
+        if (i == j) {
+            return;
+        }
+        int iAtom = Math.min(i, j);
+        int jAtom = Math.max(i, j);
+        int[] list = partners[iAtom];
+        int n = nPartners[iAtom];
+        int index = list == null ? -1 : Arrays.binarySearch(list, 0, n, jAtom);
+        if (state && (index < 0)) {
+            int insertAt = -index - 1;
+            if (list == null) {
+                list = new int[4];
+            } else if (n == list.length) {
+                list = Arrays.copyOf(list, n * 2);
+            }
+            System.arraycopy(list, insertAt, list, insertAt + 1, n - insertAt);
+            list[insertAt] = jAtom;
+            partners[iAtom] = list;
+            nPartners[iAtom]++;
+        } else if (!state && (index >= 0)) {
+            System.arraycopy(list, index + 1, list, index, n - index - 1);
+            nPartners[iAtom]--;
+        }
+    }
+
+    int getPartnerCount(int i) {
+        return nPartners[i];
+    }
+
+    int getPartner(int i, int k) {
+        return partners[i][k];
+    }
+
+    /**
+     * Update the range of separations of the candidate pairs with the current
+     * coordinates. The first call finds the candidates: the pairs within the
+     * cutoff distance.
+     *
+     * @param coords the atom coordinates
+     */
+    void updateRanges(FastVector3D[] coords) {
+        if (iCandidates == null) {
+            findCandidates(coords);
+        }
+        for (int k = 0; k < nCandidates; k++) {
+            double dis = coords[iCandidates[k]].dis(coords[jCandidates[k]]);
+            minDis[k] = Math.min(dis, minDis[k]);
+            maxDis[k] = Math.max(dis, maxDis[k]);
+        }
+    }
+
+    /**
+     * Mark the candidate pairs whose separation stayed within the tolerance
+     * over all the updates as fixed, and release the range data.
+     */
+    void updateFixed() {
+        for (int k = 0; k < nCandidates; k++) {
+            if (Math.abs(maxDis[k] - minDis[k]) < TOLERANCE) {
+                set(iCandidates[k], jCandidates[k], true);
+            }
+        }
+        nCandidates = 0;
+        iCandidates = null;
+        jCandidates = null;
+        minDis = null;
+        maxDis = null;
+    }
+
+    private void findCandidates(FastVector3D[] coords) {
+        double limit = cutoff + TOLERANCE;
+        double limit2 = limit * limit;
+        double[] mins = new double[3];
+        int[] nCells = new int[3];
+        Arrays.fill(mins, Double.MAX_VALUE);
+        double[] maxs = new double[3];
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < nAtoms; i++) {
+            double[] data = coords[i].getValues();
+            for (int d = 0; d < 3; d++) {
+                mins[d] = Math.min(data[d], mins[d]);
+                maxs[d] = Math.max(data[d], maxs[d]);
+            }
+        }
+        for (int d = 0; d < 3; d++) {
+            nCells[d] = 1 + (int) Math.floor((maxs[d] - mins[d]) / limit);
+        }
+        int[][] cellIdx = new int[nAtoms][3];
+        int[] heads = new int[nCells[0] * nCells[1] * nCells[2]];
+        int[] next = new int[nAtoms];
+        Arrays.fill(heads, -1);
+        for (int i = nAtoms - 1; i >= 0; i--) {
+            double[] data = coords[i].getValues();
+            for (int d = 0; d < 3; d++) {
+                cellIdx[i][d] = (int) Math.floor((data[d] - mins[d]) / limit);
+            }
+            int cell = cellIdx[i][0] + nCells[0] * (cellIdx[i][1] + nCells[1] * cellIdx[i][2]);
+            next[i] = heads[cell];
+            heads[cell] = i;
+        }
+
+        iCandidates = new int[Math.max(nAtoms, 16)];
+        jCandidates = new int[iCandidates.length];
+        for (int i = 0; i < nAtoms; i++) {
+            for (int dx = -1; dx <= 1; dx++) {
+                int jx = cellIdx[i][0] + dx;
+                if ((jx < 0) || (jx >= nCells[0])) {
+                    continue;
+                }
+                for (int dy = -1; dy <= 1; dy++) {
+                    int jy = cellIdx[i][1] + dy;
+                    if ((jy < 0) || (jy >= nCells[1])) {
+                        continue;
+                    }
+                    for (int dz = -1; dz <= 1; dz++) {
+                        int jz = cellIdx[i][2] + dz;
+                        if ((jz < 0) || (jz >= nCells[2])) {
+                            continue;
+                        }
+                        int cell = jx + nCells[0] * (jy + nCells[1] * jz);
+                        for (int j = heads[cell]; j >= 0; j = next[j]) {
+                            if ((j > i) && (coords[i].disSq(coords[j]) < limit2)) {
+                                addCandidate(i, j);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        minDis = new double[nCandidates];
+        maxDis = new double[nCandidates];
+        Arrays.fill(minDis, Double.MAX_VALUE);
+        Arrays.fill(maxDis, Double.NEGATIVE_INFINITY);
+    }
+
+    private void addCandidate(int i, int j) {
+        if (nCandidates == iCandidates.length) {
+            iCandidates = Arrays.copyOf(iCandidates, nCandidates * 2);
+            jCandidates = Arrays.copyOf(jCandidates, nCandidates * 2);
+        }
+        iCandidates[nCandidates] = i;
+        jCandidates[nCandidates] = j;
+        nCandidates++;
+    }
+}
@@ -10,6 +10,7 @@ import javafx.scene.control.ButtonType;
 import org.nmrfx.chemistry.*;
 import org.nmrfx.structure.chemistry.HoseCodeGenerator;
 import org.nmrfx.structure.chemistry.Molecule;
+import org.nmrfx.structure.chemistry.NeighborIndex;
 import org.nmrfx.structure.chemistry.energy.EnergyCoords;
 import org.nmrfx.structure.chemistry.energy.RingCurrentShift;
 import org.nmrfx.structure.chemistry.miner.NodeEvaluatorFactory;
@@ -481,13 +482,14 @@ public class Predictor {
         } else {
             List<Atom> atoms = polymer.getAtoms();
             double[] angleValues = new double[4];
+            NeighborIndex neighborIndex = molecule.getNeighborIndex(iStruct, getRMax());
             for (Atom atom : atoms) {
                 String aName = atom.getName();
                 String nucName = atom.getEntity().getName();
                 int alphaType = getAlphaIndex(nucName, aName);
                 if (alphaType >= 0) {
                     int nAlpha = alphas[alphaType].length - 1;
-                    double[] distances = molecule.calcDistanceInputMatrixRow(iStruct, getRMax(), atom, getIntraScale());
+                    double[] distances = molecule.calcDistanceInputMatrixRow(neighborIndex, iStruct, getRMax(), atom, getIntraScale());
                     double distPPM = 0.0;
                     double chi = ((Residue) atom.getEntity()).calcChi(iStruct);
                     angleValues[0] = Math.cos(chi);
@@ -0,0 +1,103 @@
+package org.nmrfx.structure.seqassign;
+
+import org.nmrfx.peaks.Peak;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Chemical shifts of a list of items (peaks or spin systems) sorted by value,
+ * so the items with a shift within a tolerance of a value can be found by a
+ * binary search instead of by comparing against every item. Items are
+ * identified by their position in the list the index was built from, and
+ * searches return positions in ascending order so callers can keep the order
+ * of a loop over the whole list.
+ */
+class ShiftIndex {
+
+    private final double[] values;
+    private final int[] ids;
+
+    /**
+     * Create an index.
+     *
+     * @param shifts the shift of each item, NaN for items without a shift
+     */
+    ShiftIndex(double[] shifts) {
+        Integer[] sorted = IntStream.range(0, shifts.length).filter(i -> Double.isFinite(shifts[i]))
+                .boxed().toArray(Integer[]::new);
+        Arrays.sort(sorted, Comparator.comparingDouble(i -> shifts[i]));
+        values = new double[sorted.length];
+        ids = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            ids[i] = sorted[i];
+            values[i] = shifts[sorted[i]];
+        }
+    }
+
+    static ShiftIndex forPeaks(List<Peak> peaks, int iDim) {
+        double[] shifts = new double[peaks.size()];
+        for (int i = 0; i < shifts.length; i++) {
+            Float shift = peaks.get(i).peakDims[iDim].getChemShift();
+            shifts[i] = shift == null ? Double.NaN : shift;
+        }
+        return new ShiftIndex(shifts);
+    }
+
+    static ShiftIndex forSpinSystems(List<SpinSystem> spinSystems, int dir, SpinSystem.AtomEnum atomEnum) {
+        double[] shifts = new double[spinSystems.size()];
+        for (int i = 0; i < shifts.length; i++) {
+            shifts[i] = spinSystems.get(i).getValue(dir, atomEnum).orElse(Double.NaN);
+        }
+        return new ShiftIndex(shifts);
+    }
+
+    private int lowerBound(double value) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Mark the items with a shift within a tolerance of a value.
+     *
+     * @param value  the shift to search around
+     * @param tol    the tolerance
+     * @param marked set to true at the position of each item found
+     */
+    void mark(double value, double tol, boolean[] marked) {
+        double max = value + tol;
+        for (int k = lowerBound(value - tol); (k < values.length) && (values[k] <= max); k++) {
+            marked[ids[k]] = true;
+        }
+    }
+
+    /**
+     * Get the items with a shift within a tolerance of a value.
+     *
+     * @param value the shift to search around
+     * @param tol   the tolerance
+     * @return the positions of the items, in ascending order
+     */
+    int[] find(double value, double tol) {
+        double max = value + tol;
+        int start = lowerBound(value - tol);
+        int end = start;
+        while ((end < values.length) && (values[end] <= max)) {
+            end++;
+        }
+        int[] found = Arrays.copyOfRange(ids, start, end);
+        Arrays.sort(found);
+        return found;
+    }
+}
@@ -1096,12 +1096,16 @@ public class SpinSystem {
     }
 
     public void compare() {
+        setMatches(spinSystems.compare(this, true), spinSystems.compare(this, false));
+    }
+
+    void setMatches(List<SpinSystemMatch> matchesP, List<SpinSystemMatch> matchesS) {
         spinMatchP.clear();
         spinMatchS.clear();
         double sumsP = 0.0;
         double sumsS = 0.0;
-        spinMatchP.addAll(spinSystems.compare(this, true));
-        spinMatchS.addAll(spinSystems.compare(this, false));
+        spinMatchP.addAll(matchesP);
+        spinMatchS.addAll(matchesS);
         for (var match : spinMatchP) {
             sumsP += match.score;
         }
@@ -165,27 +165,82 @@ public class SpinSystems {
         return result;
     }
 
+    /**
+     * Finds the peaks of one list that could match peaks of another. The peaks
+     * are indexed by their shift in the dimension matching the first matched
+     * dimension of the other list, so only peaks within the tolerance used by
+     * comparePeaks in that dimension have to be compared.
+     */
+    static class PeakMatcher {
+        // comparePeaks compares float shifts, so search a little past its limit
+        static final double SEARCH_SLACK = 1.0e-3;
+
+        final PeakList peakListB;
+        final int[] aMatch;
+        final int keyDim;
+        final double keyTol;
+        final ShiftIndex index;
+
+        PeakMatcher(PeakList peakListA, PeakList peakListB) {
+            this.peakListB = peakListB;
+            aMatch = matchDims(peakListA, peakListB);
+            int dim = -1;
+            for (int i = 0; i < aMatch.length; i++) {
+                if (aMatch[i] != -1) {
+                    dim = i;
+                    break;
+                }
+            }
+            keyDim = dim;
+            if (keyDim >= 0) {
+                keyTol = 2.0 * peakListA.getSpectralDim(keyDim).getIdTol() + SEARCH_SLACK;
+                index = ShiftIndex.forPeaks(peakListB.peaks(), aMatch[keyDim]);
+            } else {
+                keyTol = 0.0;
+                index = null;
+            }
+        }
+
+        /**
+         * Get the peaks that could give a non-zero result from comparePeaks.
+         *
+         * @param pkA the peak to match
+         * @return the candidate peaks, in the order of the peak list
+         */
+        List<Peak> getCandidates(Peak pkA) {
+            List<Peak> peaksB = peakListB.peaks();
+            if (index == null) {
+                return peaksB;
+            }
+            Float valueA = pkA.peakDims[keyDim].getChemShift();
+            if (valueA == null) {
+                return Collections.emptyList();
+            }
+            int[] found = index.find(valueA, keyTol);
+            List<Peak> candidates = new ArrayList<>(found.length);
+            for (int j : found) {
+                candidates.add(peaksB.get(j));
+            }
+            return candidates;
+        }
+
+        double sum(Peak pkA, List<Peak> candidates) {
+            return candidates.stream().filter(pkB -> pkB.getStatus() >= 0).
+                    mapToDouble(pkB -> comparePeaks(pkA, pkB, aMatch)).sum();
+        }
+    }
+
     Map<PeakList, double[]> calcNormalization(List<PeakList> peakLists) {
         PeakList refList = peakLists.get(0);
         Map<PeakList, double[]> sumMap = new HashMap<>();
-        int i = 0;
-        for (Peak pkA : refList.peaks()) {
-            int j = 0;
-            for (PeakList peakListB : peakLists) {
-                int[] aMatch = matchDims(refList, peakListB);
-                if (peakListB != refList) {
-                    double sumF = peakListB.peaks().stream().filter(pkB -> pkB.getStatus() >= 0).
-                            mapToDouble(pkB -> comparePeaks(pkA, pkB, aMatch)).sum();
-                    double[] sumArray = sumMap.get(peakListB);
-                    if (sumArray == null) {
-                        sumArray = new double[refList.size()];
-                        sumMap.put(peakListB, sumArray);
-                    }
-                    sumArray[pkA.getIndex()] = sumF;
-                    j++;
-                }
+        for (PeakList peakListB : peakLists) {
+            if (peakListB != refList) {
+                PeakMatcher matcher = new PeakMatcher(refList, peakListB);
+                double[] sumArray = new double[refList.size()];
+                sumMap.put(peakListB, sumArray);
+                refList.peaks().parallelStream().forEach(pkA ->
+                        sumArray[pkA.getIndex()] = matcher.sum(pkA, matcher.getCandidates(pkA)));
             }
-            i++;
         }
         return sumMap;
     }
@@ -340,15 +395,17 @@ public class SpinSystems {
 
         int spinID = 0;
         peakLists.forEach(peakListA -> {
+            List<PeakMatcher> matchers = peakLists.stream().filter(peakListB -> peakListB != peakListA).
+                    map(peakListB -> new PeakMatcher(peakListA, peakListB)).toList();
             peakListA.peaks().stream().filter(pkA -> pkA.getStatus() == 0).forEach(pkA -> {
                 SpinSystem spinSys = new SpinSystem(pkA, this);
                 systems.add(spinSys);
                 pkA.setStatus(1);
-                peakLists.stream().filter(peakListB -> peakListB != peakListA).forEach(peakListB -> {
-                    int[] aMatch = matchDims(peakListA, peakListB);
-                    double sumF = peakListB.peaks().stream().filter(pkB -> pkB.getStatus() >= 0).
-                            mapToDouble(pkB -> comparePeaks(pkA, pkB, aMatch)).sum();
-                    peakListB.peaks().stream().filter(pkB -> pkB.getStatus() == 0).
+                matchers.forEach(matcher -> {
+                    int[] aMatch = matcher.aMatch;
+                    List<Peak> candidates = matcher.getCandidates(pkA);
+                    double sumF = matcher.sum(pkA, candidates);
+                    candidates.stream().filter(pkB -> pkB.getStatus() == 0).
                             forEach(pkB -> {
                                 double f = comparePeaks(pkA, pkB, aMatch);
                                 if (f > 0.0) {
@@ -365,8 +422,12 @@ public class SpinSystems {
     }
 
     public List<SpinSystemMatch> compare(SpinSystem spinSystemA, boolean prevMode) {
+        return compare(spinSystemA, prevMode, systems);
+    }
+
+    private List<SpinSystemMatch> compare(SpinSystem spinSystemA, boolean prevMode, List<SpinSystem> candidates) {
         List<SpinSystemMatch> matches = new ArrayList<>();
-        for (SpinSystem spinSysB : systems) {
+        for (SpinSystem spinSysB : candidates) {
             if (spinSystemA != spinSysB) {
                 Optional<SpinSystemMatch> result = spinSystemA.compare(spinSysB, prevMode);
                 result.ifPresent(matches::add);
@@ -375,10 +436,49 @@ public class SpinSystems {
         return matches;
     }
 
+    /**
+     * Get the spin systems that could match a spin system. A match needs at
+     * least one shift within 4 tolerances of the corresponding shift of the
+     * other system, so only systems found by a search of the shift indexes
+     * have to be compared.
+     *
+     * @param spinSysA the spin system to match
+     * @param idxA     the shifts (0 for this residue, 1 for the previous one)
+     *                 of spinSysA to match
+     * @param indexes  indexes of the shifts to match against
+     * @return the candidate spin systems, in the order of the systems list
+     */
+    private List<SpinSystem> getCandidates(SpinSystem spinSysA, int idxA, Map<SpinSystem.AtomEnum, ShiftIndex> indexes) {
+        boolean[] marked = new boolean[systems.size()];
+        for (var entry : spinSysA.getShiftValues(idxA).entrySet()) {
+            double vA = entry.getValue().value();
+            if (Double.isFinite(vA)) {
+                double tol = 4.0 * entry.getKey().tol() + PeakMatcher.SEARCH_SLACK;
+                indexes.get(entry.getKey()).mark(vA, tol, marked);
+            }
+        }
+        List<SpinSystem> candidates = new ArrayList<>();
+        for (int i = 0; i < marked.length; i++) {
+            if (marked[i]) {
+                candidates.add(systems.get(i));
+            }
+        }
+        return candidates;
+    }
+
     public void compare() {
-        for (SpinSystem spinSysA : systems) {
-            spinSysA.compare();
+        List<Map<SpinSystem.AtomEnum, ShiftIndex>> indexes = new ArrayList<>();
+        for (int dir = 0; dir < 2; dir++) {
+            Map<SpinSystem.AtomEnum, ShiftIndex> dirIndexes = new EnumMap<>(SpinSystem.AtomEnum.class);
+            for (SpinSystem.AtomEnum atomEnum : SpinSystem.AtomEnum.values()) {
+                dirIndexes.put(atomEnum, ShiftIndex.forSpinSystems(systems, dir, atomEnum));
+            }
+            indexes.add(dirIndexes);
         }
+        // each system only changes its own matches, so they can be scored in parallel
+        systems.parallelStream().forEach(spinSysA -> spinSysA.setMatches(
+                compare(spinSysA, true, getCandidates(spinSysA, 0, indexes.get(1))),
+                compare(spinSysA, false, getCandidates(spinSysA, 1, indexes.get(0)))));
     }
 
 
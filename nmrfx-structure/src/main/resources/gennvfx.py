@@ -5,6 +5,7 @@ import os
 import re
 import osfiles
 import runpy
+import time
 import anneal
 from optparse import OptionParser
 from org.yaml.snakeyaml import Yaml
@@ -72,10 +73,17 @@ def dumpStages(mode, nefFile):
             else:
                 print "        " + k + " : " + str(v)
 
+def runScripts(data, args):
+    if 'script' in data:
+        runpy.run_path(data['script'], init_globals=globals())
+    if len(args) > 1:
+        scriptFile = args[1]
+        runpy.run_path(scriptFile, init_globals=globals())
+
 def parseArgs():
     homeDir = os.getcwd()
     parser = OptionParser()
-    parser.add_option("-s", "--seed", dest="seed",default='0', help="Random number generator seed")
+    parser.add_option("-s", "--seed", dest="seed",default='0', help="Random number generator seed, or comma separated list of seeds to calculate in turn")
     parser.add_option("-d", "--directory", dest="directory",default=homeDir, help="Base directory for output files ")
     parser.add_option("-v", "--viol", action="store_true",dest="report",default=False, help="Report violations during calculations in energy dump file ")
     parser.add_option("-y", "--yaml", dest="dumpYamlMode",default="", help="Dump stages to .yaml file")
@@ -96,7 +104,8 @@ def parseArgs():
     outDir = os.path.join(homeDir,'output')
     finDir = os.path.join(homeDir,'final')
     refineDir = os.path.join(homeDir,'refine')
-    seed = long(options.seed)
+    seeds = [long(seedStr) for seedStr in options.seed.split(',')]
+    seed = seeds[0]
     report = options.report
     refineFile = options.refineFile
     if refineFile != '':
@@ -154,13 +163,22 @@ def parseArgs():
                 refiner.refine(refiner.dOpt)
             else:
                 refiner.anneal(refiner.dOpt)
-        if 'script' in data:
-            runpy.run_path(data['script'], init_globals=globals())
-        if len(args) > 1:
-            scriptFile = args[1]
-            runpy.run_path(scriptFile, init_globals=globals())
+        runScripts(data, args)
         refiner.output()
 
+        # The molecule, constraints and angle tree set up by loadFromYaml
+        # are reused for any remaining seeds; annealing randomizes the
+        # angles for each seed, so only the seed and output files change.
+        if 'anneal' in data and refineFile == '':
+            for seed in seeds[1:]:
+                osfiles.setOutFiles(refiner,dataDir, seed)
+                refiner.seed = seed
+                refiner.eTimeStart = time.time()
+                anneal.initialize = True
+                refiner.anneal(refiner.dOpt)
+                runScripts(data, args)
+                refiner.output()
+
     else:
         if argFile.endswith(".py"):
             runpy.run_path(argFile)
@@ -29,6 +29,18 @@ def cleanDirs():
         for file in existingFiles:
             os.remove(file)
 
+def removeOutputs(startSeed, nSeeds):
+    """
+    Remove the structure files a killed process wrote for its seeds, so its
+    structures can be calculated again without ending up with extra ones.
+    The process log (cmdout_*.txt) is kept.
+    """
+    for seed in range(startSeed, startSeed + nSeeds):
+        pat = re.compile(r'.*\D' + str(seed) + r'\.(pdb|txt|ang)$')
+        for file in glob.glob(os.path.join(outDir, '*' + str(seed) + '.*')):
+            if pat.match(file) and not os.path.basename(file).startswith('cmdout_'):
+                os.remove(file)
+
 def getCmd():
     classPath = System.getProperties().get('java.class.path').split(':')
     cmd = System.getenv("pgm")
@@ -41,8 +53,11 @@ def getCmd():
         cmd = os.path.join(dir,'nmrfxs')
     return cmd
 
-def calcStructures(calcScript,startStructure,nStructures,dir,nProcesses=4, heapMemory=512):
+def calcStructures(calcScript,startStructure,nStructures,dir,nProcesses=4, heapMemory=512, groupSize=1):
     """
+    Each process calculates up to groupSize structures with consecutive seeds,
+    so the molecule and constraints are only set up once per group.
+
     Returns errStatus (int)
     - zero if calculations successful
     - nonzero otherwise
@@ -54,12 +69,14 @@ def calcStructures(calcScript,startStructure,nStructures,dir,nProcesses=4, heapM
     processes = [None]*nProcesses
     startTimes = [None]*nProcesses
     seedNums = [None]*nProcesses
+    groupSizes = [None]*nProcesses
     fOut = [None]*nProcesses
     myEnv = os.environ.copy()
     myEnv["NMRFXSTR_MEMORY"] = str(heapMemory)
     errStatus = 0
     errExit = False
     eTimes = []
+    nFinished = 0
     nSeed = 0
 
     while (True):
@@ -72,16 +89,19 @@ def calcStructures(calcScript,startStructure,nStructures,dir,nProcesses=4, heapM
             if (processes[i]==None and (not errStatus)):
                 if nSubmitted < nStructures:
                     strNum = nSeed+startStructure
+                    nGroup = min(groupSize, nStructures - nSubmitted)
+                    seeds = [str(strNum + j) for j in range(nGroup)]
                     fOutName = os.path.join(outDir,'cmdout_'+str(strNum)+'.txt')
                     fOut[i] = open(fOutName,'w')
-                    processes[i] = subprocess.Popen([cmd,"gen","-d",dir,"-s",str(strNum),calcScript,],stdout=fOut[i],stderr=subprocess.STDOUT,env=myEnv)
+                    processes[i] = subprocess.Popen([cmd,"gen","-d",dir,"-s",",".join(seeds),calcScript,],stdout=fOut[i],stderr=subprocess.STDOUT,env=myEnv)
                     startTimes[i] = time.time()
                     seedNums[i] = strNum
+                    groupSizes[i] = nGroup
                     pid = processes[i].pid
                     outStr =  "submit %d seed: %3d Structure # %3d of %3d pid %7d" % (i,strNum,(nSubmitted+1),nStructures,pid)
                     print outStr
-                    nSubmitted += 1
-                    nSeed += 1
+                    nSubmitted += nGroup
+                    nSeed += nGroup
                 else:
                     #print "Submitted all",nStructures
                     break
@@ -91,18 +111,22 @@ def calcStructures(calcScript,startStructure,nStructures,dir,nProcesses=4, heapM
         for i in range(nProcesses):
             if (processes[i] != None):
                 retCode = processes[i].poll()
-                eTime = time.time() - startTimes[i]
+                eTime = (time.time() - startTimes[i]) / groupSizes[i]
                 if (retCode == None):
                     # still running, process hasn't terminated
                     if len(eTimes) > 1 and eTime > (3.0 * sum(eTimes)/len(eTimes)):
-                        nSubmitted -= 1
+                        nSubmitted -= groupSizes[i]
                         strNum = seedNums[i]
                         print "Kill",i,"seed",strNum, "PID",processes[i].pid,"eTime",eTime
                         try:
                             processes[i].kill()
+                            processes[i].wait()
                         finally:
                             fOut[i].close()
                             processes[i] = None
+                        # the group may have finished some of its structures, but
+                        # they are all calculated again with the next seeds
+                        removeOutputs(strNum, groupSizes[i])
                     else:
                         gotProcess = True
                 else:
@@ -115,7 +139,7 @@ def calcStructures(calcScript,startStructure,nStructures,dir,nProcesses=4, heapM
                         print "Please see '{}'".format(fOut[i].name)
                     else:
                         eTimes.append(eTime)
-                        nFinished = len(eTimes)
+                        nFinished += groupSizes[i]
                         strNum = seedNums[i]
                         outStr =  "Finish %d seed: %3d Finished    %3d of %3d pid %7d eTime %6.1f" % (i,strNum,nFinished,nStructures,processes[i].pid,eTime)
                         print outStr
@@ -200,6 +224,7 @@ def parseArgs():
     parser.add_option("-d", "--directory", dest="directory",default=homeDir, help="Base directory for output files ")
     parser.add_option("-c", "--clean", action="store_true", dest="clean", default=False, help="Clean Directories (False)")
     parser.add_option("-m", "--memory", dest="heapMemory",default='512', help="Amount of heap memory to use in MBytes")
+    parser.add_option("-g", "--group", dest="groupSize",default='1', help="Number of structures calculated by each process (1)")
 
     (options, args) = parser.parse_args()
     print 'args',args
@@ -218,6 +243,7 @@ def parseArgs():
     heapMemory = int(options.heapMemory)
     start = int(options.start)
     nProcesses = int(options.nProcesses)
+    groupSize = max(1, int(options.groupSize))
     align = options.align
     if nKeep == 0:
         if nStructures <= 10:
@@ -238,7 +264,7 @@ def parseArgs():
         else:
            print 'Must specify script'
            exit()
-        retCode = calcStructures(calcScript,start,nStructures,homeDir,nProcesses,heapMemory)
+        retCode = calcStructures(calcScript,start,nStructures,homeDir,nProcesses,heapMemory,groupSize)
     if nKeep > 0 and (not retCode):
         keepStructures(nKeep)
         checke.outDir = homeDir
@@ -0,0 +1,82 @@
+package org.nmrfx.structure.chemistry;
+
+import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class NeighborIndexTest {
+
+    private static List<Vector3D> getPoints(int n, double size, long seed) {
+        Random random = new Random(seed);
+        List<Vector3D> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (i % 17 == 5) {
+                points.add(null);
+            } else {
+                points.add(new Vector3D(random.nextDouble() * size, random.nextDouble() * size * 0.5,
+                        random.nextDouble() * size * 2.0 - size));
+            }
+        }
+        return points;
+    }
+
+    private static int[] bruteForce(List<Vector3D> points, Vector3D pt, double limit, int skip) {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < points.size(); i++) {
+            Vector3D point = points.get(i);
+            if ((i != skip) && (point != null) && (Vector3D.distance(pt, point) < limit)) {
+                found.add(i);
+            }
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void testNeighborsMatchBruteForce() {
+        List<Vector3D> points = getPoints(500, 40.0, 11L);
+        for (double limit : new double[]{2.5, 6.0, 15.0}) {
+            NeighborIndex index = new NeighborIndex(points, limit);
+            for (int i = 0; i < points.size(); i++) {
+                Vector3D pt = points.get(i);
+                if (pt == null) {
+                    Assert.assertFalse(index.contains(i));
+                    Assert.assertEquals(0, index.getNeighbors(i, limit).length);
+                } else {
+                    Assert.assertTrue(index.contains(i));
+                    Assert.assertArrayEquals(bruteForce(points, pt, limit, i), index.getNeighbors(i, limit));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSearchOutsideBounds() {
+        List<Vector3D> points = getPoints(200, 20.0, 3L);
+        NeighborIndex index = new NeighborIndex(points, 4.0);
+        Vector3D outside = new Vector3D(-3.0, 25.0, 2.0);
+        Assert.assertArrayEquals(bruteForce(points, outside, 8.0, -1), index.getNeighbors(outside, 8.0));
+        Assert.assertEquals(0, index.getNeighbors(new Vector3D(1000.0, 0.0, 0.0), 8.0).length);
+    }
+
+    @Test
+    public void testLargeSearchWithSmallCells() {
+        List<Vector3D> points = getPoints(300, 100.0, 7L);
+        NeighborIndex index = new NeighborIndex(points, 0.1);
+        Assert.assertTrue(index.getCellSize() > 0.1);
+        Vector3D pt = points.get(0);
+        Assert.assertArrayEquals(bruteForce(points, pt, 30.0, -1), index.getNeighbors(pt, 30.0));
+    }
+
+    @Test
+    public void testEmpty() {
+        List<Vector3D> points = new ArrayList<>();
+        points.add(null);
+        NeighborIndex index = new NeighborIndex(points, 5.0);
+        Assert.assertEquals(1, index.size());
+        Assert.assertEquals(0, index.getNeighbors(new Vector3D(0.0, 0.0, 0.0), 5.0).length);
+    }
+}
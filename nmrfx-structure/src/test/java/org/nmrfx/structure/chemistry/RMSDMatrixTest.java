@@ -0,0 +1,127 @@
+package org.nmrfx.structure.chemistry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.chemistry.Atom;
+import org.nmrfx.chemistry.CoordinateBlock;
+import org.nmrfx.chemistry.MoleculeBase;
+import org.nmrfx.chemistry.Point3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class RMSDMatrixTest {
+
+    private static double[] getCoords(int nAtoms, Random random) {
+        double[] coords = new double[nAtoms * 3];
+        for (int i = 0; i < coords.length; i++) {
+            coords[i] = random.nextDouble() * 20.0 - 10.0;
+        }
+        return coords;
+    }
+
+    private static double[] perturb(double[] coords, double size, Random random) {
+        double[] result = coords.clone();
+        for (int i = 0; i < result.length; i++) {
+            result[i] += random.nextGaussian() * size;
+        }
+        return result;
+    }
+
+    private static double[] rotateAndShift(double[] coords, double angle) {
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        double[] result = new double[coords.length];
+        for (int i = 0; i < coords.length; i += 3) {
+            double x = coords[i];
+            double y = coords[i + 1] * cos - coords[i + 2] * sin;
+            double z = coords[i + 1] * sin + coords[i + 2] * cos;
+            result[i] = x * cos - y * sin + 3.0;
+            result[i + 1] = x * sin + y * cos - 1.0;
+            result[i + 2] = z + 7.5;
+        }
+        return result;
+    }
+
+    private static double[][] toRows(double[] coords, int n) {
+        double[][] rows = new double[n][3];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(coords, i * 3, rows[i], 0, 3);
+        }
+        return rows;
+    }
+
+    @Test
+    public void testRotatedCopy() {
+        Random random = new Random(5L);
+        double[] coords = getCoords(40, random);
+        Assert.assertEquals(0.0, RMSDMatrix.calcRMSD(coords, rotateAndShift(coords, 1.1)), 1.0e-5);
+    }
+
+    @Test
+    public void testMatchesIterativeFit() {
+        Random random = new Random(9L);
+        for (int trial = 0; trial < 10; trial++) {
+            int n = 10 + trial * 7;
+            double[] coords = getCoords(n, random);
+            double[] other = rotateAndShift(perturb(coords, 0.3 + trial * 0.2, random), trial * 0.6);
+            SuperMol superMol = new SuperMol((MoleculeBase) null);
+            superMol.cal_super(toRows(coords, n), toRows(other, n), n);
+            Assert.assertEquals(superMol.rms, RMSDMatrix.calcRMSD(coords, other), 1.0e-3);
+        }
+    }
+
+    @Test
+    public void testMissingAtoms() {
+        Random random = new Random(2L);
+        double[] coords = getCoords(6, random);
+        double[] other = perturb(coords, 0.5, random);
+        double[] fewer = other.clone();
+        for (int i = 0; i < 3; i++) {
+            fewer[3 + i] = Double.NaN;
+        }
+        double[] expected = new double[15];
+        double[] expectedOther = new double[15];
+        System.arraycopy(coords, 0, expected, 0, 3);
+        System.arraycopy(coords, 6, expected, 3, 12);
+        System.arraycopy(other, 0, expectedOther, 0, 3);
+        System.arraycopy(other, 6, expectedOther, 3, 12);
+        Assert.assertEquals(RMSDMatrix.calcRMSD(expected, expectedOther), RMSDMatrix.calcRMSD(coords, fewer), 1.0e-12);
+        for (int i = 9; i < fewer.length; i++) {
+            fewer[i] = Double.NaN;
+        }
+        Assert.assertTrue(Double.isNaN(RMSDMatrix.calcRMSD(coords, fewer)));
+    }
+
+    @Test
+    public void testMatrix() {
+        Random random = new Random(13L);
+        int nAtoms = 25;
+        int nStructures = 7;
+        double[] base = getCoords(nAtoms, random);
+        double[][] structures = new double[nStructures][];
+        List<Atom> atoms = new ArrayList<>();
+        for (int i = 0; i < nAtoms; i++) {
+            atoms.add(Atom.genAtomWithElement("C" + i, 6));
+        }
+        int[] structureNums = new int[nStructures];
+        for (int k = 0; k < nStructures; k++) {
+            structures[k] = rotateAndShift(perturb(base, 0.5, random), k * 0.4);
+            structureNums[k] = k;
+            for (int i = 0; i < nAtoms; i++) {
+                atoms.get(i).setPoint(k, new Point3(structures[k][i * 3], structures[k][i * 3 + 1], structures[k][i * 3 + 2]));
+            }
+        }
+        double[][] matrix = RMSDMatrix.calcMatrix(CoordinateBlock.of(atoms, structureNums));
+        for (int i = 0; i < nStructures; i++) {
+            Assert.assertEquals(0.0, matrix[i][i], 0.0);
+            for (int j = 0; j < nStructures; j++) {
+                if (i != j) {
+                    Assert.assertEquals(RMSDMatrix.calcRMSD(structures[i], structures[j]), matrix[i][j], 1.0e-9);
+                    Assert.assertEquals(matrix[j][i], matrix[i][j], 0.0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package org.nmrfx.structure.chemistry.energy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.structure.fastlinear.FastVector3D;
+
+import static org.nmrfx.structure.chemistry.energy.AtomMath.RADJ;
+
+public class EnergyPairsTest {
+
+    // ethanol, with the atoms of the hydroxyl and methyl groups in their own branches
+    private static final double[][] COORDS = {
+            {-0.0012, 1.0136, 0.0083}, // C1
+            {0.0021, -0.0041, 0.0020}, // C2
+            {1.3500, -0.4765, -0.0102}, // O
+            {1.0271, 1.3749, 0.0011}, // H11
+            {-0.5241, 1.3893, -0.8762}, // H12
+            {-0.5076, 1.3807, 0.8998}, // H13
+            {-0.5194, -0.3804, 0.8829}, // H21
+            {-0.5301, -0.3717, -0.8780}, // H22
+            {1.3705, -1.4389, -0.0150} // HO
+    };
+    private static final int[] UNITS = {1, 0, 2, 1, 1, 1, 0, 0, 2};
+    private static final double[] CHARGES = {-0.18, 0.15, -0.68, 0.06, 0.06, 0.06, 0.03, 0.03, 0.42};
+
+    private static EnergyCoords getCoords() {
+        EnergyCoords eCoords = new EnergyCoords();
+        FastVector3D[] vecCoords = eCoords.getVecCoords(COORDS.length);
+        for (int i = 0; i < COORDS.length; i++) {
+            vecCoords[i].set(COORDS[i][0], COORDS[i][1], COORDS[i][2]);
+            eCoords.contactRadii[i] = i < 3 ? 1.6 : 1.0;
+        }
+        return eCoords;
+    }
+
+    private static AtomBranch[] getBranches() {
+        AtomBranch[] branches = new AtomBranch[3];
+        for (int i = 0; i < branches.length; i++) {
+            branches[i] = new AtomBranch(new FastVector3D(), new FastVector3D());
+        }
+        return branches;
+    }
+
+    private static double getR0(int i, int j) {
+        return (i < 3) && (j < 3) ? 3.0 : 2.2;
+    }
+
+    private static void addPairs(EnergyDistancePairs pairs) {
+        for (int i = 0; i < COORDS.length; i++) {
+            for (int j = i + 1; j < COORDS.length; j++) {
+                if (pairs instanceof EnergyFFPairs) {
+                    pairs.addPair(i, j, UNITS[i], UNITS[j], getR0(i, j), 0.8 + 0.01 * i, 0.6 + 0.01 * j,
+                            CHARGES[i] * CHARGES[j]);
+                } else {
+                    pairs.addPair(i, j, UNITS[i], UNITS[j], getR0(i, j));
+                }
+            }
+        }
+    }
+
+    private static double disSq(EnergyPairs pairs, int i) {
+        FastVector3D[] vecCoords = pairs.eCoords.getVecCoords();
+        return vecCoords[pairs.iAtoms[i]].disSq(vecCoords[pairs.jAtoms[i]]);
+    }
+
+    /**
+     * The distance energy and derivatives calculated from the coordinate
+     * vectors, as they were before the coordinate arrays were added.
+     */
+    private static double referenceDistanceEnergy(EnergyDistancePairs pairs, double weight, double[] derivs) {
+        double sum = 0.0;
+        for (int i = 0; i < pairs.nPairs; i++) {
+            double r2 = disSq(pairs, i);
+            derivs[i] = 0.0;
+            if (r2 <= pairs.rDis2[i]) {
+                double r = Math.sqrt(r2);
+                double dif = pairs.rDis[i] - r;
+                sum += pairs.weights[i] * weight * dif * dif;
+                derivs[i] = -2.0 * pairs.weights[i] * weight * dif / (r + RADJ);
+            }
+        }
+        return sum;
+    }
+
+    private static double referenceFFEnergy(EnergyFFPairs pairs, double weight, double eWeight, double[] derivs) {
+        // the constants used for the default nbMin of 0.5
+        double a1 = 1.057;
+        double b1 = 0.1661;
+        double c1 = 2.01;
+        double sum = 0.0;
+        for (int i = 0; i < pairs.nPairs; i++) {
+            double a = pairs.aValues[i];
+            double b = pairs.bValues[i];
+            double c = eWeight < 0.0 ? 0.0 : pairs.charge[i];
+            double r2 = disSq(pairs, i);
+            double q = a1 + b1 * r2;
+            double s = c1 * q / (q * q + r2);
+            double s3 = s * s * s;
+            double s6 = s3 * s3;
+            sum += weight * ((a * s3 - b) * s6 + c * s);
+            double s5 = s * s * s3;
+            double deds = (9.0 * a * s3 - 6.0 * b) * s5 + c;
+            double dem2 = a1 * a1 + 2 * a1 * b1 * r2 + b1 * b1 * r2 * r2 + r2;
+            double dsdp = -(c1 * (a1 * a1 * b1 + 2 * a1 * b1 * b1 * r2 + a1 + b1 * b1 * b1 * r2 * r2)) / (dem2 * dem2);
+            derivs[i] = deds * dsdp * 2.0 * weight;
+        }
+        return sum;
+    }
+
+    private static void referenceAddDerivs(EnergyPairs pairs, double[] derivs, AtomBranch[] branches) {
+        FastVector3D[] vecCoords = pairs.eCoords.getVecCoords();
+        FastVector3D v1 = new FastVector3D();
+        FastVector3D v2 = new FastVector3D();
+        for (int i = 0; i < pairs.nPairs; i++) {
+            if (derivs[i] == 0.0) {
+                continue;
+            }
+            FastVector3D pv1 = vecCoords[pairs.iAtoms[i]];
+            FastVector3D pv2 = vecCoords[pairs.jAtoms[i]];
+            FastVector3D.crossProduct(pv1, pv2, v1);
+            pv1.subtract(pv2, v2);
+            double[] f = new double[3];
+            double[] g = new double[3];
+            for (int k = 0; k < 3; k++) {
+                f[k] = v1.getValues()[k] * derivs[i];
+                g[k] = v2.getValues()[k] * derivs[i];
+            }
+            branches[pairs.iUnits[i]].addToF(f);
+            branches[pairs.iUnits[i]].addToG(g);
+            branches[pairs.jUnits[i]].subtractToF(f);
+            branches[pairs.jUnits[i]].subtractToG(g);
+        }
+    }
+
+    private static void checkDerivs(EnergyPairs pairs, double[] derivs) {
+        for (int i = 0; i < pairs.nPairs; i++) {
+            Assert.assertEquals(derivs[i], pairs.derivs[i], 1.0e-12 * Math.max(1.0, Math.abs(derivs[i])));
+        }
+        AtomBranch[] branches = getBranches();
+        AtomBranch[] refBranches = getBranches();
+        pairs.addDerivs(branches);
+        referenceAddDerivs(pairs, derivs, refBranches);
+        for (int i = 0; i < branches.length; i++) {
+            Assert.assertArrayEquals(refBranches[i].farr, branches[i].farr, 1.0e-10);
+            Assert.assertArrayEquals(refBranches[i].garr, branches[i].garr, 1.0e-10);
+        }
+    }
+
+    @Test
+    public void testDistanceEnergy() {
+        EnergyCoords eCoords = getCoords();
+        EnergyDistancePairs pairs = new EnergyDistancePairs(eCoords);
+        addPairs(pairs);
+        double[] derivs = new double[pairs.nPairs];
+        double refEnergy = referenceDistanceEnergy(pairs, 2.0, derivs);
+        Assert.assertTrue(refEnergy > 0.0);
+        Assert.assertEquals(refEnergy, pairs.calcEnergy(true, 2.0, -1.0), 1.0e-12);
+        checkDerivs(pairs, derivs);
+
+        // moving atoms through the vectors is seen by the next calculation
+        eCoords.getVecCoords()[8].set(1.0, 0.5, 0.0);
+        refEnergy = referenceDistanceEnergy(pairs, 2.0, derivs);
+        Assert.assertEquals(refEnergy, pairs.calcEnergy(true, 2.0, -1.0), 1.0e-12);
+        checkDerivs(pairs, derivs);
+    }
+
+    @Test
+    public void testFFEnergy() {
+        EnergyCoords eCoords = getCoords();
+        EnergyFFPairs pairs = new EnergyFFPairs(eCoords);
+        addPairs(pairs);
+        double[] derivs = new double[pairs.nPairs];
+        for (double eWeight : new double[]{-1.0, 1.0}) {
+            double refEnergy = referenceFFEnergy(pairs, 1.5, eWeight, derivs);
+            Assert.assertEquals(refEnergy, pairs.calcEnergy(true, 1.5, eWeight), 1.0e-10 * Math.abs(refEnergy));
+            checkDerivs(pairs, derivs);
+        }
+        pairs.calcEnergy(false, 1.5, 1.0);
+        for (int i = 0; i < pairs.nPairs; i++) {
+            Assert.assertEquals(0.0, pairs.derivs[i], 0.0);
+            Assert.assertEquals(disSq(pairs, i), pairs.disSq[i], 1.0e-12);
+        }
+    }
+
+    @Test
+    public void testLKEnergy() {
+        EnergyCoords eCoords = getCoords();
+        EnergyFFPairs pairs = new EnergyFFPairs(eCoords);
+        addPairs(pairs);
+        double[] derivs = new double[pairs.nPairs];
+        double refEnergy = 0.0;
+        for (int i = 0; i < pairs.nPairs; i++) {
+            double sigmaI = eCoords.contactRadii[pairs.iAtoms[i]] / EnergyCoords.RSCALE;
+            double sigmaIJ = (eCoords.contactRadii[pairs.iAtoms[i]] + eCoords.contactRadii[pairs.jAtoms[i]])
+                    / EnergyCoords.RSCALE;
+            double r = Math.sqrt(disSq(pairs, i));
+            double alphaTerm = -1.0 / (EnergyFFPairs.TWOPI3_2 * sigmaI * sigmaI);
+            double expTerm = Math.exp(-(r - sigmaIJ) * (r - sigmaIJ));
+            // the energy is added twice when derivatives are calculated
+            refEnergy += 2.0 * alphaTerm * expTerm;
+            derivs[i] = -2.0 * alphaTerm * (r - sigmaIJ) * expTerm;
+        }
+        Assert.assertEquals(refEnergy, pairs.calcLKEnergy(true, 1.0), 1.0e-12);
+        checkDerivs(pairs, derivs);
+    }
+}
@@ -0,0 +1,47 @@
+package org.nmrfx.structure.chemistry.energy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.nmrfx.structure.fastlinear.FastVector3D;
+
+public class FixedPairsTest {
+
+    @Test
+    public void testSetAndGet() {
+        FixedPairs fixedPairs = new FixedPairs(10, 8.0);
+        Assert.assertFalse(fixedPairs.get(2, 7));
+        fixedPairs.set(7, 2, true);
+        fixedPairs.set(2, 5, true);
+        fixedPairs.set(2, 9, true);
+        Assert.assertTrue(fixedPairs.get(2, 7));
+        Assert.assertTrue(fixedPairs.get(7, 2));
+        Assert.assertEquals(3, fixedPairs.getPartnerCount(2));
+        Assert.assertEquals(5, fixedPairs.getPartner(2, 0));
+        fixedPairs.set(2, 7, false);
+        Assert.assertFalse(fixedPairs.get(2, 7));
+        Assert.assertTrue(fixedPairs.get(2, 9));
+        Assert.assertTrue(fixedPairs.get(4, 4));
+    }
+
+    @Test
+    public void testUpdateFixed() {
+        // atoms 0 and 1 move together, atom 2 moves relative to them and
+        // atom 3 is rigidly attached but beyond the cutoff
+        FixedPairs fixedPairs = new FixedPairs(4, 6.0);
+        for (int i = 0; i < 5; i++) {
+            double shift = i * 1.5;
+            FastVector3D[] coords = {
+                    new FastVector3D(shift, 0.0, 0.0),
+                    new FastVector3D(shift + 1.5, 0.0, 0.0),
+                    new FastVector3D(0.0, 2.0, 0.0),
+                    new FastVector3D(shift + 20.0, 0.0, 0.0)
+            };
+            fixedPairs.updateRanges(coords);
+        }
+        fixedPairs.updateFixed();
+        Assert.assertTrue(fixedPairs.get(0, 1));
+        Assert.assertFalse(fixedPairs.get(0, 2));
+        Assert.assertFalse(fixedPairs.get(1, 2));
+        Assert.assertFalse(fixedPairs.get(0, 3));
+    }
+}
@@ -0,0 +1,55 @@
+package org.nmrfx.structure.seqassign;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class ShiftIndexTest {
+
+    private static double[] getShifts(int n, long seed) {
+        Random random = new Random(seed);
+        double[] shifts = new double[n];
+        for (int i = 0; i < n; i++) {
+            shifts[i] = (i % 11 == 3) ? Double.NaN : 40.0 + random.nextDouble() * 30.0;
+        }
+        return shifts;
+    }
+
+    private static int[] bruteForce(double[] shifts, double value, double tol) {
+        return IntStream.range(0, shifts.length).filter(i -> Math.abs(shifts[i] - value) <= tol).toArray();
+    }
+
+    @Test
+    public void testFind() {
+        double[] shifts = getShifts(400, 3L);
+        ShiftIndex index = new ShiftIndex(shifts);
+        for (double value = 35.0; value < 75.0; value += 0.37) {
+            for (double tol : new double[]{0.05, 0.6, 4.0}) {
+                Assert.assertArrayEquals(bruteForce(shifts, value, tol), index.find(value, tol));
+            }
+        }
+    }
+
+    @Test
+    public void testMark() {
+        double[] shifts = getShifts(200, 8L);
+        ShiftIndex index = new ShiftIndex(shifts);
+        boolean[] marked = new boolean[shifts.length];
+        index.mark(50.0, 1.0, marked);
+        index.mark(60.0, 0.5, marked);
+        for (int i = 0; i < shifts.length; i++) {
+            boolean expected = (Math.abs(shifts[i] - 50.0) <= 1.0) || (Math.abs(shifts[i] - 60.0) <= 0.5);
+            Assert.assertEquals(expected, marked[i]);
+        }
+    }
+
+    @Test
+    public void testExactBounds() {
+        ShiftIndex index = new ShiftIndex(new double[]{1.0, 2.0, Double.NaN, 2.0, 3.0});
+        Assert.assertArrayEquals(new int[]{0, 1, 3, 4}, index.find(2.0, 1.0));
+        Assert.assertArrayEquals(new int[]{1, 3}, index.find(2.0, 0.0));
+        Assert.assertEquals(0, index.find(10.0, 1.0).length);
+    }
+}
@@ -0,0 +1,130 @@
+package org.nmrfx.utils;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Create and check files and directories that only the current user can
+ * access, for data that another local user must not be able to read or
+ * replace, like compiled code that is loaded later or a session token. On
+ * file systems without POSIX permissions only the owner is checked.
+ */
+public final class OwnerOnlyFiles {
+    private static final Set<PosixFilePermission> OWNER_DIR = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> OWNER_FILE = PosixFilePermissions.fromString("rw-------");
+    private static final Set<PosixFilePermission> OTHERS = EnumSet.of(
+            PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_EXECUTE);
+
+    private OwnerOnlyFiles() {
+    }
+
+    private static boolean isPosix(Path path) {
+        return path.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static UserPrincipal currentUser(Path path) throws IOException {
+        return path.getFileSystem().getUserPrincipalLookupService()
+                .lookupPrincipalByName(System.getProperty("user.name"));
+    }
+
+    /**
+     * Check that a file or directory is owned by the current user, is not a
+     * symbolic link and, where permissions are supported, can't be accessed
+     * by anyone else.
+     *
+     * @param path the file or directory
+     * @return true if only the current user can access it
+     */
+    public static boolean isOwnerOnly(Path path) {
+        try {
+            if (Files.isSymbolicLink(path) || !Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                return false;
+            }
+            if (!Files.getOwner(path, LinkOption.NOFOLLOW_LINKS).equals(currentUser(path))) {
+                return false;
+            }
+            if (isPosix(path)) {
+                Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS);
+                return permissions.stream().noneMatch(OTHERS::contains);
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create a directory, if it doesn't exist, that only the current user can
+     * access. Missing parent directories are created with the default
+     * permissions.
+     *
+     * @param dir the directory
+     * @throws IOException if the directory can't be created or already exists
+     *                     and can be accessed by another user
+     */
+    public static void createDirectory(Path dir) throws IOException {
+        Path parent = dir.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try {
+            if (isPosix(dir)) {
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_DIR));
+            } else {
+                Files.createDirectory(dir);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // checked below
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS) || !isOwnerOnly(dir)) {
+            throw new IOException("Directory " + dir + " can be accessed by other users");
+        }
+    }
+
+    /**
+     * Create a new, empty file that only the current user can access, in the
+     * directory of a file, to write data to before moving it over the file.
+     * The new file never replaces or follows an existing file or link.
+     *
+     * @param file the file the data will be moved to
+     * @return the new file
+     * @throws IOException if the file can't be created
+     */
+    public static Path createTempFile(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        FileAttribute<?>[] attributes = isPosix(dir)
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(OWNER_FILE)}
+                : new FileAttribute<?>[0];
+        return Files.createTempFile(dir, file.getFileName().toString(), ".tmp", attributes);
+    }
+
+    /**
+     * Write a file that only the current user can access. The data is
+     * written to a new file that is then moved over any existing file, so
+     * the file is never readable by others, even briefly.
+     *
+     * @param file  the file to write
+     * @param bytes the data to write
+     * @throws IOException if the file can't be written
+     */
+    public static void write(Path file, byte[] bytes) throws IOException {
+        Path tmpFile = createTempFile(file);
+        try {
+            Files.write(tmpFile, bytes);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+}
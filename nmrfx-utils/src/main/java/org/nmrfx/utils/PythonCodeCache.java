@@ -0,0 +1,254 @@
+package org.nmrfx.utils;
+
+import org.python.core.BytecodeLoader;
+import org.python.core.CodeFlag;
+import org.python.core.CompileMode;
+import org.python.core.CompilerFlags;
+import org.python.core.Py;
+import org.python.core.PyBaseCode;
+import org.python.core.PyCode;
+import org.python.core.imp;
+import org.python.util.PythonInterpreter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of compiled python scripts, keyed by a hash of the script text, so
+ * that a script that is run again (a processing script that is rerun as
+ * parameters are adjusted, or the script of a python operation that is run
+ * for every vector) is parsed and compiled by Jython only once. Compiled
+ * scripts are also written, as class files, to a cache directory so a script
+ * doesn't have to be compiled again when the program is restarted. Class
+ * files are loaded and run, so the directory, in the user's home directory by
+ * default, and each file in it are only used if no other user can access
+ * them.
+ */
+public final class PythonCodeCache {
+    private static final Logger log = LoggerFactory.getLogger(PythonCodeCache.class);
+    private static final int MAX_ENTRIES = 256;
+    private static final String SCRIPT_FILE_NAME = "<script>";
+
+    private static final Map<String, PyCode> CODES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PyCode> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private static final CodeFlag[] FUTURE_FLAGS = {CodeFlag.CO_FUTURE_DIVISION, CodeFlag.CO_FUTURE_ABSOLUTE_IMPORT,
+            CodeFlag.CO_WITH_STATEMENT, CodeFlag.CO_FUTURE_PRINT_FUNCTION, CodeFlag.CO_FUTURE_UNICODE_LITERALS};
+
+    private static Path cacheDir = Path.of(System.getProperty("user.home"), ".nmrfx", "pycache");
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong diskHits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+
+    private PythonCodeCache() {
+    }
+
+    /**
+     * Set the directory compiled scripts are saved in. The directory is
+     * created, if needed, so only the current user can access it, and isn't
+     * used if it already exists and other users can access it.
+     *
+     * @param dir the directory, or null to only keep compiled scripts in
+     *            memory
+     */
+    public static synchronized void setCacheDir(Path dir) {
+        cacheDir = dir;
+    }
+
+    public static synchronized Path getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Get the compiled code for a script, compiling it with no __future__
+     * features in effect if it isn't in the cache.
+     *
+     * @param script the script text
+     * @return the compiled code
+     */
+    public static PyCode getCode(String script) {
+        return getCode(script, new CompilerFlags());
+    }
+
+    /**
+     * Get the compiled code for a script, compiling it if it isn't in the
+     * cache. As when an interpreter compiles a script, the __future__
+     * features in the flags are used, and features the script imports from
+     * __future__ are added to the flags.
+     *
+     * @param script the script text
+     * @param cflags the flags of the interpreter the code will be run in
+     * @return the compiled code
+     */
+    public static PyCode getCode(String script, CompilerFlags cflags) {
+        int futures = getFutures(cflags);
+        String key = hash(script, futures);
+        PyCode code;
+        synchronized (CODES) {
+            code = CODES.get(key);
+        }
+        if (code != null) {
+            hits.incrementAndGet();
+        } else {
+            code = futures == 0 ? loadCode(key) : null;
+            if (code == null) {
+                misses.incrementAndGet();
+                code = compile(key, script, futures, cflags);
+            } else {
+                diskHits.incrementAndGet();
+            }
+            synchronized (CODES) {
+                CODES.put(key, code);
+            }
+        }
+        addFutures(code, cflags);
+        return code;
+    }
+
+    /**
+     * Execute a script in an interpreter using the cached compiled code.
+     *
+     * @param interpreter the interpreter
+     * @param cflags      the compiler flags of the interpreter
+     * @param script      the script text
+     */
+    public static void exec(PythonInterpreter interpreter, CompilerFlags cflags, String script) {
+        interpreter.exec(getCode(script, cflags));
+    }
+
+    /**
+     * Remove the compiled scripts from memory. Scripts saved in the cache
+     * directory are kept.
+     */
+    public static void clear() {
+        synchronized (CODES) {
+            CODES.clear();
+        }
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    private static int getFutures(CompilerFlags cflags) {
+        int futures = 0;
+        for (CodeFlag flag : FUTURE_FLAGS) {
+            if (cflags.isFlagSet(flag)) {
+                futures |= flag.flag;
+            }
+        }
+        return futures;
+    }
+
+    private static void addFutures(PyCode code, CompilerFlags cflags) {
+        if (code instanceof PyBaseCode baseCode) {
+            for (CodeFlag flag : FUTURE_FLAGS) {
+                if (baseCode.co_flags.isFlagSet(flag)) {
+                    cflags.setFlag(flag);
+                }
+            }
+        }
+    }
+
+    private static String hash(String script, int futures) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // compiled code depends on the Jython version and the __future__
+            // features in effect, so they're part of the key
+            digest.update(org.python.Version.PY_VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update(Integer.toString(futures).getBytes(StandardCharsets.UTF_8));
+            digest.update(script.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest(), 0, 20);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String className(String key) {
+        return "nmrfxscript_" + key;
+    }
+
+    private static PyCode compile(String key, String script, int futures, CompilerFlags cflags) {
+        Path dir = getCacheDir();
+        // class files are only made for plain ASCII scripts, whose source
+        // bytes can't be read differently from the text, compiled without
+        // __future__ features from earlier scripts, which compileSource can't use
+        if ((dir != null) && (futures == 0) && isAscii(script)) {
+            try {
+                byte[] bytes = imp.compileSource(className(key),
+                        new ByteArrayInputStream(script.getBytes(StandardCharsets.US_ASCII)), SCRIPT_FILE_NAME);
+                PyCode code = BytecodeLoader.makeCode(className(key) + "$py", bytes, SCRIPT_FILE_NAME);
+                saveCode(dir, key, bytes);
+                return code;
+            } catch (RuntimeException e) {
+                // syntax errors are reported below, with the usual compile
+                log.debug("Can't compile script to class {}", e.getMessage());
+            }
+        }
+        return Py.compile_flags(script, SCRIPT_FILE_NAME, CompileMode.exec, cflags);
+    }
+
+    private static boolean isAscii(String script) {
+        for (int i = 0; i < script.length(); i++) {
+            if (script.charAt(i) > 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static PyCode loadCode(String key) {
+        Path dir = getCacheDir();
+        if (dir == null) {
+            return null;
+        }
+        Path file = dir.resolve(key + ".class");
+        if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+            return null;
+        }
+        // anyone who could write the file could run code as this user
+        if (!OwnerOnlyFiles.isOwnerOnly(dir) || !OwnerOnlyFiles.isOwnerOnly(file)) {
+            log.warn("Not loading compiled script {} that other users can access", file);
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            return BytecodeLoader.makeCode(className(key) + "$py", bytes, SCRIPT_FILE_NAME);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Can't load compiled script {} {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void saveCode(Path dir, String key, byte[] bytes) {
+        try {
+            OwnerOnlyFiles.createDirectory(dir);
+            OwnerOnlyFiles.write(dir.resolve(key + ".class"), bytes);
+        } catch (IOException e) {
+            log.warn("Can't save compiled script in {} {}", dir, e.getMessage());
+        }
+    }
+}
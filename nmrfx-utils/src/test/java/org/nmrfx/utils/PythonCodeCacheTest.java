@@ -0,0 +1,90 @@
+package org.nmrfx.utils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.python.core.CodeFlag;
+import org.python.core.CompilerFlags;
+import org.python.core.PyCode;
+import org.python.util.PythonInterpreter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class PythonCodeCacheTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private final Path defaultDir = PythonCodeCache.getCacheDir();
+
+    @After
+    public void restore() {
+        PythonCodeCache.setCacheDir(defaultDir);
+    }
+
+    @Test
+    public void testMemoryCache() {
+        PythonCodeCache.setCacheDir(null);
+        String script = "x = 3\ny = x * 2\n";
+        PyCode code = PythonCodeCache.getCode(script);
+        Assert.assertSame(code, PythonCodeCache.getCode(script));
+        PythonInterpreter interpreter = new PythonInterpreter();
+        PythonCodeCache.exec(interpreter, script);
+        Assert.assertEquals(6, interpreter.get("y").asInt());
+    }
+
+    @Test
+    public void testDiskCache() {
+        Path dir = tmpFolder.getRoot().toPath().resolve("pycache");
+        PythonCodeCache.setCacheDir(dir);
+        String script = "z = [i * i for i in range(4)]\n";
+        PythonCodeCache.getCode(script);
+        PythonCodeCache.clear();
+        long diskHits = PythonCodeCache.getDiskHits();
+        PyCode code = PythonCodeCache.getCode(script);
+        Assert.assertEquals(diskHits + 1, PythonCodeCache.getDiskHits());
+        PythonInterpreter interpreter = new PythonInterpreter();
+        interpreter.exec(code);
+        Assert.assertEquals(9, interpreter.eval("z[3]").asInt());
+    }
+
+    @Test
+    public void testSharedDirNotLoaded() throws IOException {
+        Path dir = tmpFolder.getRoot().toPath().resolve("pycache");
+        PythonCodeCache.setCacheDir(dir);
+        String script = "w = 5\n";
+        PythonCodeCache.getCode(script);
+        Assert.assertTrue(OwnerOnlyFiles.isOwnerOnly(dir));
+        Assume.assumeTrue(dir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxrwxrwx"));
+        PythonCodeCache.clear();
+        long diskHits = PythonCodeCache.getDiskHits();
+        PythonCodeCache.getCode(script);
+        Assert.assertEquals(diskHits, PythonCodeCache.getDiskHits());
+    }
+
+    @Test
+    public void testFutureFlags() {
+        PythonCodeCache.setCacheDir(null);
+        PythonInterpreter interpreter = new PythonInterpreter();
+        CompilerFlags cflags = new CompilerFlags();
+        PythonCodeCache.exec(interpreter, cflags, "from __future__ import division\n");
+        Assert.assertTrue(cflags.isFlagSet(CodeFlag.CO_FUTURE_DIVISION));
+        PythonCodeCache.exec(interpreter, cflags, "q = 3 / 2\n");
+        Assert.assertEquals(1.5, interpreter.get("q").asDouble(), 1.0e-12);
+
+        CompilerFlags newFlags = new CompilerFlags();
+        PythonCodeCache.exec(interpreter, newFlags, "q = 3 / 2\n");
+        Assert.assertEquals(1, interpreter.get("q").asInt());
+
+        CompilerFlags cachedFlags = new CompilerFlags();
+        PythonCodeCache.exec(interpreter, cachedFlags, "from __future__ import division\n");
+        Assert.assertTrue(cachedFlags.isFlagSet(CodeFlag.CO_FUTURE_DIVISION));
+    }
+}